@@ -0,0 +1,211 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * BenchmarkData.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Generates the data for the benchmarks. The data is random, but
+ * reproducible (fixed seed), with roughly the given accuracy.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class BenchmarkData {
+
+  /** the seed for the random numbers. */
+  public final static long SEED = 42;
+
+  /** the fraction of correct predictions. */
+  public final static double ACCURACY = 0.8;
+
+  /**
+   * Lightweight prediction without class distribution, so that tens of
+   * millions of predictions fit into memory.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class LightPrediction
+    implements Prediction {
+
+    /** the actual class label. */
+    protected int m_Actual;
+
+    /** the predicted class label. */
+    protected int m_Predicted;
+
+    /**
+     * Initializes the prediction.
+     *
+     * @param actual	the actual class label
+     * @param predicted	the predicted class label
+     */
+    public LightPrediction(int actual, int predicted) {
+      m_Actual    = actual;
+      m_Predicted = predicted;
+    }
+
+    /**
+     * Returns the weight.
+     *
+     * @return		always 1
+     */
+    @Override
+    public double weight() {
+      return 1.0;
+    }
+
+    /**
+     * Returns the actual class label.
+     *
+     * @return		the label
+     */
+    @Override
+    public double actual() {
+      return m_Actual;
+    }
+
+    /**
+     * Returns the predicted class label.
+     *
+     * @return		the label
+     */
+    @Override
+    public double predicted() {
+      return m_Predicted;
+    }
+  }
+
+  /**
+   * Writer that discards everything, so that only the generation of the
+   * output gets measured.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class NullWriter
+    extends Writer {
+
+    /**
+     * Discards the characters.
+     *
+     * @param cbuf	the characters
+     * @param off	the offset
+     * @param len	the number of characters
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+    }
+
+    /**
+     * Does nothing.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Does nothing.
+     */
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Generates a class attribute with the specified number of labels.
+   *
+   * @param numClasses	the number of labels
+   * @return		the attribute
+   */
+  public static Attribute newClassAttribute(int numClasses) {
+    List<String>	labels;
+    int			i;
+
+    labels = new ArrayList<String>(numClasses);
+    for (i = 0; i < numClasses; i++)
+      labels.add("class-" + i);
+
+    return new Attribute("class", labels);
+  }
+
+  /**
+   * Generates the predictions.
+   *
+   * @param numClasses		the number of class labels
+   * @param numPredictions	the number of predictions
+   * @return			the predictions
+   */
+  public static List<Prediction> newPredictions(int numClasses, int numPredictions) {
+    List<Prediction>	result;
+    Random		rand;
+    int			actual;
+    int			i;
+
+    result = new ArrayList<Prediction>(numPredictions);
+    rand   = new Random(SEED);
+    for (i = 0; i < numPredictions; i++) {
+      actual = rand.nextInt(numClasses);
+      if (rand.nextDouble() < ACCURACY)
+	result.add(new LightPrediction(actual, actual));
+      else
+	result.add(new LightPrediction(actual, rand.nextInt(numClasses)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates a matrix with counts as if built from the specified number of
+   * predictions, without generating the predictions themselves.
+   *
+   * @param numClasses		the number of class labels
+   * @param numPredictions	the number of predictions
+   * @return			the matrix
+   */
+  public static ConfusionMatrix newMatrix(int numClasses, int numPredictions) {
+    ConfusionMatrix	result;
+    double[][]		cells;
+    Random		rand;
+    int			actual;
+    int			i;
+
+    result = new ConfusionMatrix(new ArrayList<Prediction>(), newClassAttribute(numClasses));
+    cells  = result.getMatrix();
+    rand   = new Random(SEED);
+    for (i = 0; i < numPredictions; i++) {
+      actual = rand.nextInt(numClasses);
+      if (rand.nextDouble() < ACCURACY)
+	cells[actual][actual]++;
+      else
+	cells[actual][rand.nextInt(numClasses)]++;
+    }
+    result.invalidate();
+
+    return result;
+  }
+}
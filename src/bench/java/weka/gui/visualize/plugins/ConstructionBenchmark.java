@@ -0,0 +1,99 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConstructionBenchmark.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Measures building a {@link ConfusionMatrix} from predictions, for 2 to
+ * 10,000 class labels and 1,000 to 50,000,000 predictions. The largest
+ * combinations require a heap of several GB.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class ConstructionBenchmark {
+
+  /** the number of class labels. */
+  @Param({"2", "100", "1000", "10000"})
+  public int numClasses;
+
+  /** the number of predictions. */
+  @Param({"1000", "1000000", "50000000"})
+  public int numPredictions;
+
+  /** the class attribute. */
+  protected Attribute m_ClassAttribute;
+
+  /** the predictions. */
+  protected List<Prediction> m_Predictions;
+
+  /**
+   * Generates the predictions.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    m_ClassAttribute = BenchmarkData.newClassAttribute(numClasses);
+    m_Predictions    = BenchmarkData.newPredictions(numClasses, numPredictions);
+  }
+
+  /**
+   * Releases the predictions.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_Predictions = null;
+    ConfusionMatrixCache.clear();
+  }
+
+  /**
+   * Builds the matrix from the predictions.
+   *
+   * @return		the matrix
+   */
+  @Benchmark
+  public ConfusionMatrix construct() {
+    return new ConfusionMatrix(m_Predictions, m_ClassAttribute);
+  }
+}
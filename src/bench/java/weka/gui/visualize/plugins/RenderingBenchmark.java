@@ -0,0 +1,151 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * RenderingBenchmark.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering and reporting: generating the heatmap image, the text
+ * report and the table model (incl. sorting and column widths). The matrix
+ * is built from 1,000,000 simulated predictions. The size of the heatmap
+ * squares is reduced for large numbers of class labels, to keep the image
+ * at most {@link #MAX_IMAGE_SIZE} pixels wide (but at least 1 pixel per
+ * cell). Runs in headless mode.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Djava.awt.headless=true"})
+public class RenderingBenchmark {
+
+  /** the number of predictions the matrix is built from. */
+  public final static int NUM_PREDICTIONS = 1000000;
+
+  /** the maximum width/height of the heatmap image. */
+  public final static int MAX_IMAGE_SIZE = 4096;
+
+  /** the number of class labels. */
+  @Param({"2", "100", "1000", "10000"})
+  public int numClasses;
+
+  /** the matrix. */
+  protected ConfusionMatrix m_Matrix;
+
+  /** the heatmap renderer. */
+  protected HeatmapRenderer m_Heatmap;
+
+  /** the text visualization. */
+  protected TextVisualization m_Text;
+
+  /** the table visualization. */
+  protected TableVisualization m_Table;
+
+  /** the writer for the text report. */
+  protected BenchmarkData.NullWriter m_Writer;
+
+  /** the graphics context for the font metrics. */
+  protected Graphics2D m_Graphics;
+
+  /** the font metrics of the table cells. */
+  protected FontMetrics m_Metrics;
+
+  /**
+   * Generates the matrix and sets up the visualizations.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    m_Matrix  = BenchmarkData.newMatrix(numClasses, NUM_PREDICTIONS);
+    m_Heatmap = new HeatmapRenderer(m_Matrix);
+    m_Heatmap.setSizeSquares(Math.max(1, Math.min(HeatmapPanel.CELL_SIZE, MAX_IMAGE_SIZE / numClasses)));
+    m_Text     = new TextVisualization();
+    m_Table    = new TableVisualization();
+    m_Writer   = new BenchmarkData.NullWriter();
+    m_Graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    m_Metrics  = m_Graphics.getFontMetrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+  }
+
+  /**
+   * Releases the graphics context.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_Graphics.dispose();
+  }
+
+  /**
+   * Generates the complete heatmap image.
+   *
+   * @return		the image
+   */
+  @Benchmark
+  public BufferedImage heatmapGenerateImage() {
+    return m_Heatmap.generateImage();
+  }
+
+  /**
+   * Generates the text report.
+   *
+   * @throws IOException	never
+   */
+  @Benchmark
+  public void textDoGenerate() throws IOException {
+    m_Text.doGenerate(m_Matrix, m_Writer);
+  }
+
+  /**
+   * Builds the table model, sorted by incorrect count, and calculates the
+   * column widths.
+   *
+   * @return		the column widths
+   */
+  @Benchmark
+  public int[] tableModelBuild() {
+    ConfusionMatrixTableModel	model;
+
+    model = m_Table.createModel(m_Matrix);
+    model.setView(ConfusionMatrixTableModel.SORT_INCORRECT, true, 0.0);
+
+    return m_Table.calcColumnWidths(model, m_Metrics, m_Metrics);
+  }
+}
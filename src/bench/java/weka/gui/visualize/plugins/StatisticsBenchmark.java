@@ -0,0 +1,121 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * StatisticsBenchmark.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the statistics of a {@link ConfusionMatrix}: scaling the rows,
+ * the totals (with and without cached totals) and the incorrect counts.
+ * The matrix is built from 1,000,000 simulated predictions.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class StatisticsBenchmark {
+
+  /** the number of predictions the matrix is built from. */
+  public final static int NUM_PREDICTIONS = 1000000;
+
+  /** the number of class labels. */
+  @Param({"2", "100", "1000", "10000"})
+  public int numClasses;
+
+  /** the matrix. */
+  protected ConfusionMatrix m_Matrix;
+
+  /**
+   * Generates the matrix.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    m_Matrix = BenchmarkData.newMatrix(numClasses, NUM_PREDICTIONS);
+  }
+
+  /**
+   * Scales the rows. After the first call the rows sum up to 1, but every
+   * call still sums and divides all the cells.
+   */
+  @Benchmark
+  public void scaleRows() {
+    m_Matrix.scaleRows();
+  }
+
+  /**
+   * Obtains the totals of all class labels, after discarding the cached
+   * totals.
+   *
+   * @param bh		for consuming the totals
+   */
+  @Benchmark
+  public void getTotalUncached(Blackhole bh) {
+    int		i;
+
+    m_Matrix.invalidate();
+    for (i = 0; i < numClasses; i++)
+      bh.consume(m_Matrix.getTotal(i));
+  }
+
+  /**
+   * Obtains the totals of all class labels, using the cached totals.
+   *
+   * @param bh		for consuming the totals
+   */
+  @Benchmark
+  public void getTotalCached(Blackhole bh) {
+    int		i;
+
+    for (i = 0; i < numClasses; i++)
+      bh.consume(m_Matrix.getTotal(i));
+  }
+
+  /**
+   * Obtains the incorrect counts of all class labels.
+   *
+   * @param bh		for consuming the counts
+   */
+  @Benchmark
+  public void getIncorrect(Blackhole bh) {
+    int		i;
+
+    for (i = 0; i < numClasses; i++)
+      bh.consume(m_Matrix.getIncorrect(i));
+  }
+}
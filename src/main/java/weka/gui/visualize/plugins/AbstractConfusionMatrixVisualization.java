@@ -22,18 +22,31 @@ package weka.gui.visualize.plugins;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
+import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.SwingWorker;
 
+import weka.classifiers.CostMatrix;
 import weka.classifiers.evaluation.Prediction;
 import weka.core.Attribute;
 import weka.gui.ComponentHelper;
@@ -50,6 +63,149 @@ public abstract class AbstractConfusionMatrixVisualization
   /** for serialization. */
   private static final long serialVersionUID = 8547782264818608668L;
 
+  /**
+   * Builds the matrix (or obtains it from the {@link ConfusionMatrixCache})
+   * in the background and calls {@link #precompute(ConfusionMatrix, CostMatrix)}
+   * with the cost matrix selected for this display. Reports the progress in
+   * percent. The results of the precomputations
+   * belong to the worker (see {@link #getPrecomputed()}), i.e., several
+   * workers of the same visualization don't interfere. If the worker gets
+   * cancelled after the precomputations, they get discarded via
+   * {@link #discard(Object)}, either by the background thread or by
+   * {@link #done()}, whichever notices the cancellation.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public class MatrixWorker
+    extends SwingWorker<ConfusionMatrix, Object>
+    implements ConfusionMatrixCache.BuildMonitor {
+
+    /** the predictions. */
+    protected List<Prediction> m_Predictions;
+
+    /** the class attribute. */
+    protected Attribute m_ClassAttribute;
+
+    /** the cost matrix selected for the display, can be null. */
+    protected CostMatrix m_Costs;
+
+    /** the results of {@link #precompute(ConfusionMatrix)}. */
+    protected Object m_Precomputed;
+
+    /** whether {@link #doInBackground()} has finished. */
+    protected boolean m_Finished;
+
+    /** whether {@link #doInBackground()} discarded the precomputations already. */
+    protected boolean m_Discarded;
+
+    /**
+     * Initializes the worker.
+     * 
+     * @param preds	the predictions
+     * @param classAtt	the class attribute
+     */
+    public MatrixWorker(List<Prediction> preds, Attribute classAtt) {
+      this(preds, classAtt, null);
+    }
+
+    /**
+     * Initializes the worker.
+     * 
+     * @param preds	the predictions
+     * @param classAtt	the class attribute
+     * @param costs	the cost matrix selected for the display, null if none
+     */
+    public MatrixWorker(List<Prediction> preds, Attribute classAtt, CostMatrix costs) {
+      super();
+      m_Predictions    = preds;
+      m_ClassAttribute = classAtt;
+      m_Costs          = costs;
+    }
+
+    /**
+     * Reports the progress of building the matrix.
+     * 
+     * @param processed	the number of predictions processed so far
+     * @param total	the total number of predictions
+     */
+    @Override
+    public void progress(int processed, int total) {
+      if (total > 0)
+	setProgress((int) (100L * processed / total));
+    }
+
+    /**
+     * Builds the matrix and performs the precomputations.
+     * 
+     * @return		the matrix, null if cancelled
+     * @throws Exception	if building fails
+     */
+    @Override
+    protected ConfusionMatrix doInBackground() throws Exception {
+      ConfusionMatrix	result;
+      Object		precomputed;
+      boolean		cancelled;
+
+      result      = ConfusionMatrixCache.get(m_Predictions, m_ClassAttribute, this);
+      precomputed = null;
+      if ((result != null) && !isCancelled())
+	precomputed = precompute(result, m_Costs);
+
+      synchronized(this) {
+	cancelled     = isCancelled();
+	m_Precomputed = cancelled ? null : precomputed;
+	m_Finished    = true;
+	m_Discarded   = cancelled;
+      }
+      if (cancelled)
+	discard(precomputed);
+
+      return result;
+    }
+
+    /**
+     * Returns the results of {@link #precompute(ConfusionMatrix)}.
+     *
+     * @return		the results, null if none available or discarded
+     */
+    public synchronized Object getPrecomputed() {
+      return m_Precomputed;
+    }
+
+    /**
+     * Discards the precomputations if the worker got cancelled after
+     * {@link #doInBackground()} had checked for cancellation. Gets called
+     * on the event dispatch thread.
+     */
+    @Override
+    protected void done() {
+      Object	precomputed;
+
+      if (!isCancelled())
+	return;
+      synchronized(this) {
+	precomputed   = m_Discarded ? null : m_Precomputed;
+	m_Precomputed = null;
+	m_Discarded   = m_Finished;
+      }
+      if (precomputed != null)
+	discard(precomputed);
+    }
+  }
+
+  /**
+   * Checks whether the current thread got interrupted, e.g., by the timeout
+   * of {@link BatchRenderer}. Gets called once per row by the loops that
+   * render or export a matrix, so that cancelled jobs actually stop.
+   *
+   * @throws CancellationException	if interrupted
+   */
+  public static void checkInterrupted() {
+    if (Thread.currentThread().isInterrupted())
+      throw new CancellationException("Interrupted: " + Thread.currentThread().getName());
+  }
+
   /**
    * Returns the text for the menu item.
    * 
@@ -148,6 +304,222 @@ public abstract class AbstractConfusionMatrixVisualization
    */
   public abstract JPanel generate(ConfusionMatrix matrix);
   
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   * 
+   * @return		the extension, null if exporting is not supported
+   */
+  public String getExportExtension() {
+    return null;
+  }
+  
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires 
+   * (on top of the matrix itself).
+   * 
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return (long) matrix.getNumClasses() * (long) matrix.getNumClasses() * 8L;
+  }
+  
+  /**
+   * Exports the visualization of the matrix to the specified file. Does not 
+   * require a GUI, i.e., can be used in headless mode.
+   * 
+   * @param matrix	the matrix to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  public String export(ConfusionMatrix matrix, File file) {
+    return "Exporting not supported: " + getClass().getName();
+  }
+  
+  /**
+   * Generates the visualization from the results of
+   * {@link #precompute(ConfusionMatrix)}. Gets called on the event dispatch
+   * thread and takes over the results.
+   * <p/>
+   * Default implementation ignores the results and calls
+   * {@link #generate(ConfusionMatrix)}.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param precomputed	the results of the precomputations for this
+   * 			matrix, null if none available
+   * @return		the panel with the visualization
+   */
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    return generate(matrix);
+  }
+  
+  /**
+   * Performs the expensive computations that {@link #generate(ConfusionMatrix)}
+   * requires for this matrix, e.g., building models. Gets called from a
+   * background thread before {@link #generate(ConfusionMatrix, Object)} gets
+   * called with the same matrix and the results on the event dispatch
+   * thread, must not create or modify any Swing components. As several
+   * workers can use the same visualization, the results must not be stored
+   * in the visualization.
+   * <p/>
+   * Default implementation does nothing.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @return		the results, null if none
+   */
+  protected Object precompute(ConfusionMatrix matrix) {
+    return null;
+  }
+  
+  /**
+   * Performs the expensive computations for a display with the specified
+   * cost matrix, which only applies to this display (i.e., does not get
+   * stored in the visualization).
+   * <p/>
+   * Default implementation ignores the costs and calls
+   * {@link #precompute(ConfusionMatrix)}.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @param costs	the cost matrix selected for the display, null if none
+   * @return		the results, null if none
+   */
+  protected Object precompute(ConfusionMatrix matrix, CostMatrix costs) {
+    return precompute(matrix);
+  }
+  
+  /**
+   * Discards the results of {@link #precompute(ConfusionMatrix)}, e.g.,
+   * when the build got cancelled. Derived matrices that hold resources
+   * outside the heap must get released (see
+   * {@link ConfusionMatrix#release(ConfusionMatrix)}), the matrix passed to
+   * {@link #precompute(ConfusionMatrix)} must not, as it is shared via the
+   * {@link ConfusionMatrixCache}.
+   * <p/>
+   * Default implementation does nothing.
+   * 
+   * @param precomputed	the results to discard, not null
+   */
+  protected void discard(Object precomputed) {
+  }
+  
+  /**
+   * Opens a frame for the visualization straight away, without a cost
+   * matrix (see {@link #display(List, Attribute, CostMatrix)}).
+   * 
+   * @param preds 	the predictions
+   * @param classAtt 	the class attribute
+   */
+  protected void display(List<Prediction> preds, Attribute classAtt) {
+    display(preds, classAtt, null);
+  }
+  
+  /**
+   * Opens a frame for the visualization straight away, using the specified
+   * cost matrix for this display only. The matrix (and whatever
+   * {@link #precompute(ConfusionMatrix, CostMatrix)} does) gets built in
+   * the background, while the frame displays the progress and allows the
+   * user to cancel the operation.
+   * 
+   * @param preds 	the predictions
+   * @param classAtt 	the class attribute
+   * @param costs 	the cost matrix for the display, null if none
+   */
+  protected void display(final List<Prediction> preds, final Attribute classAtt, CostMatrix costs) {
+    final JFrame	jf;
+    final JPanel	panelProgress;
+    final JProgressBar	progress;
+    final JButton	buttonCancel;
+    final MatrixWorker	worker;
+    JPanel		panel;
+    
+    jf = new JFrame(classAtt.name() + " - " + getMenuItemText());
+    jf.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    jf.setSize(getFrameDimension());
+    jf.setIconImage(ComponentHelper.getImage("weka/gui", "confusionmatrix_logo.png"));
+    jf.getContentPane().setLayout(new BorderLayout());
+
+    progress = new JProgressBar(0, 100);
+    progress.setStringPainted(true);
+    progress.setString("Building confusion matrix...");
+    buttonCancel = new JButton("Cancel");
+    panelProgress = new JPanel(new FlowLayout(FlowLayout.CENTER));
+    panel = new JPanel(new BorderLayout(5, 5));
+    panel.add(progress, BorderLayout.CENTER);
+    panel.add(buttonCancel, BorderLayout.EAST);
+    panelProgress.add(panel);
+    jf.getContentPane().add(panelProgress, BorderLayout.NORTH);
+
+    worker = new MatrixWorker(preds, classAtt, costs) {
+      @Override
+      protected void done() {
+	ConfusionMatrix matrix;
+	if (isCancelled()) {
+	  super.done();
+	  jf.dispose();
+	  return;
+	}
+	jf.getContentPane().remove(panelProgress);
+	try {
+	  matrix = get();
+	  jf.getContentPane().add(generate(matrix, getPrecomputed()), BorderLayout.CENTER);
+	  jf.setJMenuBar(getMenuBar(jf));
+	}
+	catch (Exception ex) {
+	  System.err.println("Failed to generate visualization: " + getMenuItemText());
+	  ex.printStackTrace();
+	  jf.getContentPane().add(new JLabel("Failed to generate visualization: " + ex), BorderLayout.NORTH);
+	}
+	jf.getContentPane().validate();
+	jf.getContentPane().repaint();
+      }
+    };
+    worker.addPropertyChangeListener(new PropertyChangeListener() {
+      @Override
+      public void propertyChange(PropertyChangeEvent evt) {
+	if (evt.getPropertyName().equals("progress"))
+	  progress.setValue((Integer) evt.getNewValue());
+      }
+    });
+    buttonCancel.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	worker.cancel(true);
+      }
+    });
+    jf.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosed(WindowEvent e) {
+	worker.cancel(true);
+      }
+    });
+
+    jf.setLocationRelativeTo(null);
+    jf.setVisible(true);
+    worker.execute();
+  }
+
+  /**
+   * Opens a frame for the visualization of an existing matrix, e.g., one
+   * loaded via {@link ConfusionMatrixFile#map(File)}.
+   *
+   * @param matrix 	the matrix to display
+   * @param title 	the title of the frame
+   */
+  public void display(ConfusionMatrix matrix, String title) {
+    JFrame	jf;
+
+    jf = new JFrame(title + " - " + getMenuItemText());
+    jf.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    jf.setSize(getFrameDimension());
+    jf.setIconImage(ComponentHelper.getImage("weka/gui", "confusionmatrix_logo.png"));
+    jf.getContentPane().setLayout(new BorderLayout());
+    jf.getContentPane().add(generate(matrix), BorderLayout.CENTER);
+    jf.setJMenuBar(getMenuBar(jf));
+    jf.setLocationRelativeTo(null);
+    jf.setVisible(true);
+  }
+
   /**
    * Get a JMenu or JMenuItem which contain action listeners that perform the
    * visualization, using some but not necessarily all of the data. Exceptions
@@ -174,16 +546,7 @@ public abstract class AbstractConfusionMatrixVisualization
     result.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-	ConfusionMatrix matrix = new ConfusionMatrix(preds, classAtt);
-	final JFrame jf = new JFrame(classAtt.name() + " - " + getMenuItemText());
-	jf.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-	jf.setSize(getFrameDimension());
-	jf.setIconImage(ComponentHelper.getImage("weka/gui", "confusionmatrix_logo.png"));
-	jf.getContentPane().setLayout(new BorderLayout());
-	jf.getContentPane().add(generate(matrix), BorderLayout.CENTER);
-	jf.setLocationRelativeTo(null);
-	jf.setJMenuBar(getMenuBar(jf));
-	jf.setVisible(true);
+	display(preds, classAtt);
       }
     });
     
@@ -0,0 +1,962 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * BatchRenderer.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import weka.classifiers.CostMatrix;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.SerializationHelper;
+import weka.core.SingleIndex;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Renders the confusion matrix visualizations of many inputs without a GUI,
+ * using a bounded thread pool. Inputs are either serialized
+ * {@link ConfusionMatrix} objects (extension .ser) or datasets in any format
+ * Weka can read that contain the actual and predicted labels
+ * (e.g., the CSV output of the Explorer's prediction output).
+ * <p/>
+ * One job gets generated per input and visualization; the matrix of an
+ * input is only built once and shared among its jobs. Jobs that run longer
+ * than the timeout get cancelled. The memory cap bounds the estimated memory
+ * of all jobs that render at the same time: a job only starts rendering once
+ * its estimate fits into the remaining budget, jobs whose estimate exceeds
+ * the whole cap are skipped. Once all jobs have finished, matrices that hold
+ * resources (e.g., {@link OffHeapConfusionMatrix}) get closed.
+ * <p/>
+ * The output files are named after the input file (without extension) and
+ * the visualization. If several inputs share the same name (e.g., a/x.ser
+ * and b/x.arff), a counter gets appended to the names of the later ones.
+ * <p/>
+ * If a baseline is supplied, the difference heatmap of each input against
+ * the baseline gets generated as well (see {@link DiffHeatmapVisualization}).
+ * If a cost matrix is supplied, the costs get evaluated for all inputs, i.e.,
+ * the table gets a cost column and the cost heatmap gets generated as well
+ * (see {@link CostHeatmapVisualization}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class BatchRenderer
+  implements OptionHandler {
+
+  /** the extension for serialized matrices. */
+  public final static String EXTENSION_SERIALIZED = ".ser";
+
+  /** the seconds to wait for cancelled jobs before closing the matrices. */
+  public final static int CLOSE_TIMEOUT = 10;
+
+  /** the granularity of the memory budget in bytes. */
+  public final static int MEMORY_UNIT = 1024;
+
+  /**
+   * Container for the result of a job.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class JobResult {
+
+    /** the input file. */
+    public File input;
+
+    /** the visualization. */
+    public String visualization;
+
+    /** the output file. */
+    public File output;
+
+    /** the time in msec it took to obtain the matrix. */
+    public long loadTime;
+
+    /** the time in msec it took to render the visualization. */
+    public long renderTime;
+
+    /** the allocated bytes while rendering, -1 if not available. */
+    public long allocated = -1;
+
+    /** null if successful, otherwise error message. */
+    public String error;
+
+    /**
+     * Returns a tab-separated representation of the result.
+     *
+     * @return		the representation
+     */
+    @Override
+    public String toString() {
+      return input
+	  + "\t" + visualization
+	  + "\t" + ((error == null) ? "OK" : error)
+	  + "\t" + loadTime
+	  + "\t" + renderTime
+	  + "\t" + allocated
+	  + "\t" + ((output == null) ? "" : output.toString());
+    }
+  }
+
+  /**
+   * Loads the confusion matrix for an input file.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected class MatrixLoader
+    implements Callable<ConfusionMatrix> {
+
+    /** the file to load. */
+    protected File m_Input;
+
+    /**
+     * Initializes the loader.
+     *
+     * @param input	the file to load
+     */
+    public MatrixLoader(File input) {
+      m_Input = input;
+    }
+
+    /**
+     * Loads the matrix.
+     *
+     * @return		the matrix
+     * @throws Exception	if loading fails
+     */
+    @Override
+    public ConfusionMatrix call() throws Exception {
+      return load(m_Input);
+    }
+  }
+
+  /**
+   * Renders a single visualization for an input file.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected class RenderJob
+    implements Callable<JobResult> {
+
+    /** the shared loader for the matrix. */
+    protected FutureTask<ConfusionMatrix> m_Loader;
+
+    /** the visualization to use. */
+    protected AbstractConfusionMatrixVisualization m_Visualization;
+
+    /** the result. */
+    protected JobResult m_Result;
+
+    /** the future of this job, used for cancelling it. */
+    protected FutureTask<JobResult> m_Future;
+
+    /**
+     * Initializes the job.
+     *
+     * @param input		the input file
+     * @param prefix		the unique prefix for the output file
+     * @param loader		the shared loader for the matrix
+     * @param visualization	the visualization to use
+     */
+    public RenderJob(File input, String prefix, FutureTask<ConfusionMatrix> loader, AbstractConfusionMatrixVisualization visualization) {
+      m_Loader        = loader;
+      m_Visualization = visualization;
+      m_Result        = new JobResult();
+      m_Result.input         = input;
+      m_Result.visualization = visualization.getMenuItemText();
+      m_Result.output        = new File(
+	  m_OutputDir,
+	  prefix + "-" + visualization.getMenuItemText().toLowerCase().replaceAll("[^a-z0-9]+", "_").replaceAll("_$", "") + "." + visualization.getExportExtension());
+    }
+
+    /**
+     * Sets the future wrapping this job.
+     *
+     * @param value	the future
+     */
+    public void setFuture(FutureTask<JobResult> value) {
+      m_Future = value;
+    }
+
+    /**
+     * Returns the result container.
+     *
+     * @return		the result
+     */
+    public JobResult getResult() {
+      return m_Result;
+    }
+
+    /**
+     * Obtains the matrix and renders the visualization.
+     *
+     * @return		the result
+     * @throws Exception	if job fails
+     */
+    @Override
+    public JobResult call() throws Exception {
+      ScheduledFuture<?>	watchdog;
+      ConfusionMatrix		matrix;
+      long			start;
+      long			allocStart;
+      long			estimate;
+      int			units;
+      int			permits;
+
+      watchdog = null;
+      permits  = 0;
+      if (m_Timeout > 0) {
+	watchdog = m_Watchdog.schedule(new Runnable() {
+	  @Override
+	  public void run() {
+	    m_Future.cancel(true);
+	  }
+	}, m_Timeout, TimeUnit.SECONDS);
+      }
+
+      try {
+	// shared matrix: only the first job actually loads it
+	start = System.currentTimeMillis();
+	m_Loader.run();
+	matrix = m_Loader.get();
+	m_Result.loadTime = System.currentTimeMillis() - start;
+
+	if (m_Memory != null) {
+	  estimate = m_Visualization.estimateExportMemory(matrix);
+	  if (estimate > m_MaxMemory * 1024L * 1024L) {
+	    m_Result.output = null;
+	    m_Result.error  = "Estimated memory of " + (estimate / 1024 / 1024) + "MB exceeds cap of " + m_MaxMemory + "MB";
+	    return m_Result;
+	  }
+	  // wait until the estimate fits into what the running jobs left over
+	  units = (int) Math.max(1, (estimate + MEMORY_UNIT - 1) / MEMORY_UNIT);
+	  m_Memory.acquire(units);
+	  permits = units;
+	}
+
+	AbstractConfusionMatrixVisualization.checkInterrupted();
+	start      = System.currentTimeMillis();
+	allocStart = getAllocatedBytes();
+	m_Result.error      = m_Visualization.export(matrix, m_Result.output);
+	m_Result.renderTime = System.currentTimeMillis() - start;
+	if (allocStart > -1)
+	  m_Result.allocated = getAllocatedBytes() - allocStart;
+	if (m_Result.error != null)
+	  m_Result.output = null;
+      }
+      finally {
+	if (permits > 0)
+	  m_Memory.release(permits);
+	if (watchdog != null)
+	  watchdog.cancel(false);
+	// allow the matrix to get garbage collected once all jobs have finished
+	m_Loader = null;
+      }
+
+      return m_Result;
+    }
+  }
+
+  /** the input files. */
+  protected List<File> m_Inputs = new ArrayList<File>();
+
+  /** the output directory. */
+  protected File m_OutputDir = new File(".");
+
+  /** the classnames of the visualizations to use (empty = all). */
+  protected List<String> m_Visualizations = new ArrayList<String>();
+
+  /** the number of threads to use. */
+  protected int m_NumThreads = Runtime.getRuntime().availableProcessors();
+
+  /** the timeout in seconds per job (0 = no timeout). */
+  protected int m_Timeout = 0;
+
+  /** the memory cap in MB for the concurrently rendering jobs (0 = no cap). */
+  protected int m_MaxMemory = 0;
+
+  /** the index of the attribute with the actual labels. */
+  protected SingleIndex m_Actual = new SingleIndex("first");
+
+  /** the index of the attribute with the predicted labels. */
+  protected SingleIndex m_Predicted = new SingleIndex("last");
+
+  /** the index of the attribute with the weights (empty = none). */
+  protected String m_Weight = "";
+
+  /** the baseline to compare the inputs against (null = none). */
+  protected File m_Baseline = null;
+
+  /** whether to normalize the counts when comparing against the baseline. */
+  protected boolean m_Normalized = false;
+
+  /** the loaded baseline. */
+  protected transient ConfusionMatrix m_BaselineMatrix;
+
+  /** the cost matrix to evaluate (null = none). */
+  protected File m_Costs = null;
+
+  /** the loaded cost matrix. */
+  protected transient CostMatrix m_CostMatrix;
+
+  /** the watchdog for cancelling jobs that exceed the timeout. */
+  protected transient ScheduledExecutorService m_Watchdog;
+
+  /** the memory budget in units of {@link #MEMORY_UNIT} (null = no cap). */
+  protected transient Semaphore m_Memory;
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option>	result;
+
+    result = new Vector<Option>();
+
+    result.addElement(new Option(
+	"\tThe input file (serialized matrix with extension '" + EXTENSION_SERIALIZED + "',\n"
+	+ "\tbinary matrix with extension '" + ConfusionMatrixFile.EXTENSION + "'\n"
+	+ "\tor dataset with actual/predicted labels), can be supplied multiple times.",
+	"input", 1, "-input <file>"));
+
+    result.addElement(new Option(
+	"\tThe directory to write the generated files to.\n"
+	+ "\t(default: .)",
+	"output-dir", 1, "-output-dir <dir>"));
+
+    result.addElement(new Option(
+	"\tThe classname of the visualization to use, can be supplied multiple times.\n"
+	+ "\t(default: all visualizations that support exporting)",
+	"visualization", 1, "-visualization <classname>"));
+
+    result.addElement(new Option(
+	"\tThe number of threads to use.\n"
+	+ "\t(default: number of available processors)",
+	"num-threads", 1, "-num-threads <int>"));
+
+    result.addElement(new Option(
+	"\tThe timeout in seconds per job, 0 for no timeout.\n"
+	+ "\t(default: 0)",
+	"timeout", 1, "-timeout <seconds>"));
+
+    result.addElement(new Option(
+	"\tThe memory cap in MB for all jobs rendering at the same time,\n"
+	+ "\tbased on the estimates of the visualizations, 0 for no cap.\n"
+	+ "\t(default: 0)",
+	"max-memory", 1, "-max-memory <MB>"));
+
+    result.addElement(new Option(
+	"\tThe index of the attribute with the actual labels in datasets.\n"
+	+ "\t(default: first)",
+	"actual", 1, "-actual <index>"));
+
+    result.addElement(new Option(
+	"\tThe index of the attribute with the predicted labels in datasets.\n"
+	+ "\t(default: last)",
+	"predicted", 1, "-predicted <index>"));
+
+    result.addElement(new Option(
+	"\tThe index of the attribute with the weights in datasets.\n"
+	+ "\t(default: none)",
+	"weight", 1, "-weight <index>"));
+
+    result.addElement(new Option(
+	"\tThe baseline to compare the inputs against (same formats as input).\n"
+	+ "\t(default: none)",
+	"baseline", 1, "-baseline <file>"));
+
+    result.addElement(new Option(
+	"\tWhether to normalize the counts by the row totals when comparing\n"
+	+ "\tagainst the baseline.",
+	"normalized", 0, "-normalized"));
+
+    result.addElement(new Option(
+	"\tThe cost matrix to evaluate (Weka's " + CostMatrix.FILE_EXTENSION + " format).\n"
+	+ "\t(default: none)",
+	"costs", 1, "-costs <file>"));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmp;
+
+    m_Inputs.clear();
+    while (!(tmp = Utils.getOption("input", options)).isEmpty())
+      m_Inputs.add(new File(tmp));
+
+    tmp = Utils.getOption("output-dir", options);
+    if (tmp.isEmpty())
+      m_OutputDir = new File(".");
+    else
+      m_OutputDir = new File(tmp);
+
+    m_Visualizations.clear();
+    while (!(tmp = Utils.getOption("visualization", options)).isEmpty())
+      m_Visualizations.add(tmp);
+
+    tmp = Utils.getOption("num-threads", options);
+    if (tmp.isEmpty())
+      m_NumThreads = Runtime.getRuntime().availableProcessors();
+    else
+      m_NumThreads = Integer.parseInt(tmp);
+
+    tmp = Utils.getOption("timeout", options);
+    if (tmp.isEmpty())
+      m_Timeout = 0;
+    else
+      m_Timeout = Integer.parseInt(tmp);
+
+    tmp = Utils.getOption("max-memory", options);
+    if (tmp.isEmpty())
+      m_MaxMemory = 0;
+    else
+      m_MaxMemory = Integer.parseInt(tmp);
+
+    tmp = Utils.getOption("actual", options);
+    if (tmp.isEmpty())
+      m_Actual.setSingleIndex("first");
+    else
+      m_Actual.setSingleIndex(tmp);
+
+    tmp = Utils.getOption("predicted", options);
+    if (tmp.isEmpty())
+      m_Predicted.setSingleIndex("last");
+    else
+      m_Predicted.setSingleIndex(tmp);
+
+    m_Weight = Utils.getOption("weight", options);
+
+    tmp = Utils.getOption("baseline", options);
+    if (tmp.isEmpty())
+      m_Baseline = null;
+    else
+      m_Baseline = new File(tmp);
+
+    m_Normalized = Utils.getFlag("normalized", options);
+
+    tmp = Utils.getOption("costs", options);
+    if (tmp.isEmpty())
+      m_Costs = null;
+    else
+      m_Costs = new File(tmp);
+
+    Utils.checkForRemainingOptions(options);
+  }
+
+  /**
+   * Gets the current settings.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String>	result;
+
+    result = new ArrayList<String>();
+
+    for (File input: m_Inputs) {
+      result.add("-input");
+      result.add(input.toString());
+    }
+
+    result.add("-output-dir");
+    result.add(m_OutputDir.toString());
+
+    for (String vis: m_Visualizations) {
+      result.add("-visualization");
+      result.add(vis);
+    }
+
+    result.add("-num-threads");
+    result.add("" + m_NumThreads);
+
+    result.add("-timeout");
+    result.add("" + m_Timeout);
+
+    result.add("-max-memory");
+    result.add("" + m_MaxMemory);
+
+    result.add("-actual");
+    result.add(m_Actual.getSingleIndex());
+
+    result.add("-predicted");
+    result.add(m_Predicted.getSingleIndex());
+
+    if (!m_Weight.isEmpty()) {
+      result.add("-weight");
+      result.add(m_Weight);
+    }
+
+    if (m_Baseline != null) {
+      result.add("-baseline");
+      result.add(m_Baseline.toString());
+    }
+
+    if (m_Normalized)
+      result.add("-normalized");
+
+    if (m_Costs != null) {
+      result.add("-costs");
+      result.add(m_Costs.toString());
+    }
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far.
+   *
+   * @return		the bytes, -1 if not supported by the JVM
+   */
+  protected long getAllocatedBytes() {
+    return ConfusionMatrixMetrics.getAllocatedBytes();
+  }
+
+  /**
+   * Removes the "index:" prefix that Weka's prediction output adds to labels.
+   *
+   * @param label	the label to process
+   * @return		the cleaned up label
+   */
+  protected String stripIndex(String label) {
+    return label.replaceFirst("^[0-9]+:", "");
+  }
+
+  /**
+   * Returns the index of the label (without the "index:" prefix that
+   * Weka's prediction output adds), adds it to the labels if not present
+   * yet.
+   *
+   * @param label	the label to look up
+   * @param index	the growing label index
+   * @return		the index
+   */
+  protected int indexOf(String label, LabelIndex index) {
+    int		start;
+
+    start = 0;
+    while ((start < label.length()) && (label.charAt(start) >= '0') && (label.charAt(start) <= '9'))
+      start++;
+    if ((start > 0) && (start < label.length()) && (label.charAt(start) == ':'))
+      start++;
+    else
+      start = 0;
+
+    return index.indexOf(label, start, label.length());
+  }
+
+  /**
+   * Generates a matrix from the actual/predicted labels in the dataset.
+   *
+   * @param data	the dataset to use
+   * @return		the matrix
+   * @throws Exception	if attributes are not nominal or string
+   */
+  protected ConfusionMatrix fromDataset(Instances data) throws Exception {
+    Attribute			actual;
+    Attribute			predicted;
+    SingleIndex			index;
+    int				weight;
+    LabelIndex			labels;
+    ConfusionMatrixIngest	ingest;
+    Instance			inst;
+    int				i;
+
+    // local copies, the loaders of the inputs run concurrently
+    index = new SingleIndex(m_Actual.getSingleIndex());
+    index.setUpper(data.numAttributes() - 1);
+    actual = data.attribute(index.getIndex());
+    index  = new SingleIndex(m_Predicted.getSingleIndex());
+    index.setUpper(data.numAttributes() - 1);
+    predicted = data.attribute(index.getIndex());
+    if (!actual.isNominal() && !actual.isString())
+      throw new IllegalArgumentException("Attribute with actual labels is neither nominal nor string: " + actual.name());
+    if (!predicted.isNominal() && !predicted.isString())
+      throw new IllegalArgumentException("Attribute with predicted labels is neither nominal nor string: " + predicted.name());
+    weight = -1;
+    if (!m_Weight.isEmpty()) {
+      index = new SingleIndex(m_Weight);
+      index.setUpper(data.numAttributes() - 1);
+      weight = index.getIndex();
+    }
+
+    // determine labels: declared ones of actual attribute first
+    labels = new LabelIndex();
+    ingest = new ConfusionMatrixIngest(labels, stripIndex(actual.name()));
+    if (actual.isNominal()) {
+      for (i = 0; i < actual.numValues(); i++)
+	indexOf(actual.value(i), labels);
+    }
+    for (i = 0; i < data.numInstances(); i++) {
+      inst = data.instance(i);
+      if (inst.isMissing(actual) || inst.isMissing(predicted))
+	continue;
+      ingest.add(
+	  indexOf(inst.stringValue(actual), labels),
+	  indexOf(inst.stringValue(predicted), labels),
+	  (weight == -1) ? 1.0 : inst.value(weight));
+    }
+
+    if (m_CostMatrix != null)
+      return ingest.build(ConfusionMatrix.toArray(m_CostMatrix, labels.getNumLabels()));
+    else
+      return ingest.build();
+  }
+
+  /**
+   * Loads the matrix from the specified file.
+   *
+   * @param input	the file to load
+   * @return		the matrix
+   * @throws Exception	if loading fails
+   */
+  protected ConfusionMatrix load(File input) throws Exception {
+    ConfusionMatrix	result;
+    Object		obj;
+
+    if (input.getName().toLowerCase().endsWith(EXTENSION_SERIALIZED)) {
+      obj = SerializationHelper.read(input.getAbsolutePath());
+      if (!(obj instanceof ConfusionMatrix))
+	throw new IllegalArgumentException("Not a serialized confusion matrix: " + input);
+      result = (ConfusionMatrix) obj;
+    }
+    else if (input.getName().toLowerCase().endsWith(ConfusionMatrixFile.EXTENSION)) {
+      result = ConfusionMatrixFile.map(input);
+    }
+    else {
+      return fromDataset(DataSource.read(input.getAbsolutePath()));
+    }
+
+    if (m_CostMatrix != null)
+      result.setCosts(m_CostMatrix);
+
+    return result;
+  }
+
+  /**
+   * Loads the cost matrix.
+   *
+   * @param file	the file to load
+   * @return		the cost matrix
+   * @throws Exception	if loading fails
+   */
+  protected CostMatrix loadCosts(File file) throws Exception {
+    BufferedReader	reader;
+
+    reader = new BufferedReader(new FileReader(file));
+    try {
+      return new CostMatrix(reader);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Instantiates the visualizations to use, skips the ones that don't
+   * support exporting.
+   *
+   * @return		the visualizations
+   */
+  protected List<AbstractConfusionMatrixVisualization> newVisualizations() {
+    List<AbstractConfusionMatrixVisualization>	result;
+    List<String>				classnames;
+    AbstractConfusionMatrixVisualization	vis;
+
+    result     = new ArrayList<AbstractConfusionMatrixVisualization>();
+    classnames = m_Visualizations;
+    if (classnames.size() == 0)
+      classnames = VisualizationRegistry.getClassnames();
+    for (String classname: classnames) {
+      try {
+	vis = VisualizationRegistry.newInstance(classname);
+	if (vis instanceof DiffHeatmapVisualization) {
+	  ((DiffHeatmapVisualization) vis).setBaseline(m_BaselineMatrix);
+	  ((DiffHeatmapVisualization) vis).setNormalized(m_Normalized);
+	}
+	if (vis instanceof CostHeatmapVisualization)
+	  ((CostHeatmapVisualization) vis).setCosts(m_CostMatrix);
+	if (vis.getExportExtension() != null)
+	  result.add(vis);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to instantiate visualization: " + classname);
+	e.printStackTrace();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the prefixes for the output files of the inputs: the name of
+   * the input without extension, with a counter appended if an earlier input
+   * already uses that prefix (e.g., a/x.ser and b/x.arff).
+   *
+   * @return		the prefixes, one per input
+   */
+  protected List<String> getOutputPrefixes() {
+    List<String>	result;
+    Set<String>		used;
+    String		name;
+    String		prefix;
+    int			count;
+
+    result = new ArrayList<String>();
+    used   = new HashSet<String>();
+    for (File input: m_Inputs) {
+      name   = input.getName().replaceAll("\\.[^.]*$", "");
+      prefix = name;
+      count  = 1;
+      // case-insensitive, the output directory may be on such a file system
+      while (!used.add(prefix.toLowerCase())) {
+	count++;
+	prefix = name + "-" + count;
+      }
+      result.add(prefix);
+    }
+
+    return result;
+  }
+
+  /**
+   * Renders all inputs with all visualizations.
+   *
+   * @return		the results of the jobs
+   */
+  public List<JobResult> execute() {
+    List<JobResult>			result;
+    ExecutorService			executor;
+    List<RenderJob>			jobs;
+    List<FutureTask<JobResult>>		futures;
+    List<FutureTask<ConfusionMatrix>>	loaders;
+    FutureTask<ConfusionMatrix>		loader;
+    FutureTask<JobResult>		future;
+    RenderJob				job;
+    JobResult				res;
+    List<String>			prefixes;
+    int					i;
+    Throwable				cause;
+
+    result = new ArrayList<JobResult>();
+    if (!m_OutputDir.exists() && !m_OutputDir.mkdirs())
+      System.err.println("Failed to create output directory: " + m_OutputDir);
+
+    m_CostMatrix = null;
+    if (m_Costs != null) {
+      try {
+	m_CostMatrix = loadCosts(m_Costs);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to load cost matrix: " + m_Costs);
+	e.printStackTrace();
+      }
+    }
+
+    m_BaselineMatrix = null;
+    if (m_Baseline != null) {
+      try {
+	m_BaselineMatrix = load(m_Baseline);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to load baseline: " + m_Baseline);
+	e.printStackTrace();
+      }
+    }
+
+    m_Memory = null;
+    if (m_MaxMemory > 0)
+      m_Memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, m_MaxMemory * (1024L * 1024L / MEMORY_UNIT)), true);
+
+    executor   = Executors.newFixedThreadPool(Math.max(1, m_NumThreads));
+    m_Watchdog = Executors.newSingleThreadScheduledExecutor();
+    jobs       = new ArrayList<RenderJob>();
+    futures    = new ArrayList<FutureTask<JobResult>>();
+    loaders    = new ArrayList<FutureTask<ConfusionMatrix>>();
+    prefixes   = getOutputPrefixes();
+    for (i = 0; i < m_Inputs.size(); i++) {
+      loader = new FutureTask<ConfusionMatrix>(new MatrixLoader(m_Inputs.get(i)));
+      loaders.add(loader);
+      for (AbstractConfusionMatrixVisualization vis: newVisualizations()) {
+	job    = new RenderJob(m_Inputs.get(i), prefixes.get(i), loader, vis);
+	future = new FutureTask<JobResult>(job);
+	job.setFuture(future);
+	jobs.add(job);
+	futures.add(future);
+	executor.execute(future);
+      }
+    }
+
+    for (i = 0; i < futures.size(); i++) {
+      try {
+	res = futures.get(i).get();
+      }
+      catch (CancellationException e) {
+	res        = jobs.get(i).getResult();
+	res.output = null;
+	res.error  = "Timed out after " + m_Timeout + " seconds";
+      }
+      catch (Exception e) {
+	cause = e;
+	while ((cause instanceof ExecutionException) && (cause.getCause() != null))
+	  cause = cause.getCause();
+	res        = jobs.get(i).getResult();
+	res.output = null;
+	res.error  = "Failed: " + cause;
+      }
+      result.add(res);
+    }
+
+    executor.shutdownNow();
+    m_Watchdog.shutdownNow();
+    m_Watchdog = null;
+    m_Memory   = null;
+    try {
+      // timed out jobs must not read from matrices that get closed below
+      executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (i = 0; i < loaders.size(); i++)
+      close(loaders.get(i));
+    if (m_BaselineMatrix instanceof Closeable)
+      close((Closeable) m_BaselineMatrix);
+    m_BaselineMatrix = null;
+    m_CostMatrix     = null;
+
+    return result;
+  }
+
+  /**
+   * Closes the matrix of the loader if it got loaded successfully and holds
+   * resources (e.g., the temporary file of an {@link OffHeapConfusionMatrix}).
+   *
+   * @param loader	the loader to get the matrix from
+   */
+  protected void close(FutureTask<ConfusionMatrix> loader) {
+    ConfusionMatrix	matrix;
+
+    if (!loader.isDone() || loader.isCancelled())
+      return;
+    try {
+      matrix = loader.get();
+    }
+    catch (Exception e) {
+      // failure already reported by the jobs
+      return;
+    }
+    if (matrix instanceof Closeable)
+      close((Closeable) matrix);
+  }
+
+  /**
+   * Closes the resource, outputs any failure on stderr.
+   *
+   * @param closeable	the resource to close
+   */
+  protected void close(Closeable closeable) {
+    try {
+      closeable.close();
+    }
+    catch (Exception e) {
+      System.err.println("Failed to close matrix: " + e);
+    }
+  }
+
+  /**
+   * Runs the renderer from the command-line. Use "-h" to see all options.
+   * Exits with code 1 if at least one job failed.
+   *
+   * @param args	the command-line options
+   * @throws Exception	if setting of options fails
+   */
+  public static void main(String[] args) throws Exception {
+    BatchRenderer	renderer;
+    List<JobResult>	results;
+    boolean		failed;
+    Enumeration<Option>	enm;
+    Option		option;
+
+    if (System.getProperty("java.awt.headless") == null)
+      System.setProperty("java.awt.headless", "true");
+
+    renderer = new BatchRenderer();
+    if (Utils.getFlag('h', args) || (args.length == 0)) {
+      System.out.println("\nHelp requested.\n\nOptions:\n");
+      enm = renderer.listOptions();
+      while (enm.hasMoreElements()) {
+	option = enm.nextElement();
+	System.out.println(option.synopsis());
+	System.out.println(option.description());
+	System.out.println();
+      }
+      return;
+    }
+    renderer.setOptions(args);
+
+    results = renderer.execute();
+    failed  = false;
+    System.out.println("input\tvisualization\tstatus\tload-msec\trender-msec\tallocated-bytes\toutput");
+    for (JobResult result: results) {
+      System.out.println(result);
+      if (result.error != null)
+	failed = true;
+    }
+
+    if (failed)
+      System.exit(1);
+  }
+}
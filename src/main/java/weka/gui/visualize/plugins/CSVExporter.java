@@ -0,0 +1,238 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CSVExporter.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+
+import weka.core.Utils;
+
+/**
+ * Writes a confusion matrix as CSV or TSV, streaming straight from the
+ * matrix (no table model required). Uses the same layout as
+ * {@link ConfusionMatrixTableModel}. Labels get quoted only once and
+ * numbers get formatted with a {@link NumberFormatter}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CSVExporter {
+
+  /** the size of the output buffer. */
+  public final static int BUFFER_SIZE = 64 * 1024;
+
+  /** the separator to use. */
+  protected char m_Separator;
+
+  /** the rows to output (null = all in class order). */
+  protected int[] m_Rows;
+
+  /** the cost totals per class label to output (null = the ones of the matrix). */
+  protected double[] m_CostTotals;
+
+  /** the formatter for the numbers. */
+  protected NumberFormatter m_Formatter = new NumberFormatter();
+
+  /**
+   * Initializes the exporter with comma as separator.
+   */
+  public CSVExporter() {
+    this(',');
+  }
+
+  /**
+   * Initializes the exporter with the specified separator.
+   *
+   * @param separator	the separator, e.g., ',' or '\t'
+   */
+  public CSVExporter(char separator) {
+    super();
+    m_Separator = separator;
+  }
+
+  /**
+   * Returns the separator in use.
+   *
+   * @return		the separator
+   */
+  public char getSeparator() {
+    return m_Separator;
+  }
+
+  /**
+   * Sets the class indices of the rows to output.
+   *
+   * @param value	the indices, null for all rows in class order
+   */
+  public void setRows(int[] value) {
+    m_Rows = value;
+  }
+
+  /**
+   * Returns the class indices of the rows to output.
+   *
+   * @return		the indices, null if all rows in class order
+   */
+  public int[] getRows() {
+    return m_Rows;
+  }
+
+  /**
+   * Sets the cost totals per class label to output instead of the ones of
+   * the matrix, e.g., the ones of a {@link ConfusionMatrixTableModel}.
+   *
+   * @param value	the totals, null to use the ones of the matrix
+   */
+  public void setCostTotals(double[] value) {
+    m_CostTotals = value;
+  }
+
+  /**
+   * Returns the cost totals per class label to output.
+   *
+   * @return		the totals, null if the ones of the matrix get used
+   */
+  public double[] getCostTotals() {
+    return m_CostTotals;
+  }
+
+  /**
+   * Writes the number to the writer. Integral values get formatted without
+   * creating any objects, the output is the same as
+   * {@link Double#toString(double)}.
+   *
+   * @param writer	the writer to write to
+   * @param value	the value to write
+   * @throws IOException	if writing fails
+   * @see NumberFormatter#appendPlain(Appendable, double)
+   */
+  protected void writeNumber(Writer writer, double value) throws IOException {
+    m_Formatter.appendPlain(writer, value);
+  }
+
+  /**
+   * Writes the matrix to the writer. Does not close the writer.
+   *
+   * @param matrix	the matrix to write
+   * @param writer	the writer to write to
+   * @throws IOException	if writing fails
+   */
+  public void write(ConfusionMatrix matrix, Writer writer) throws IOException {
+    String[]	quoted;
+    int		numClasses;
+    int		numRows;
+    int		i;
+    int		n;
+    int		row;
+    boolean	costs;
+
+    numClasses = matrix.getNumClasses();
+    costs      = (m_CostTotals != null) || matrix.hasCosts();
+    quoted     = new String[numClasses];
+    for (i = 0; i < numClasses; i++)
+      quoted[i] = Utils.quote(matrix.getLabels()[i]);
+
+    // header
+    for (n = 0; n < numClasses; n++) {
+      writer.write(quoted[n]);
+      writer.write(m_Separator);
+    }
+    writer.write(Utils.quote("<-- classified as"));
+    writer.write(m_Separator);
+    writer.write("incorrect");
+    writer.write(m_Separator);
+    writer.write("correct");
+    writer.write(m_Separator);
+    writer.write("total");
+    if (costs) {
+      writer.write(m_Separator);
+      writer.write("cost");
+    }
+    writer.write('\n');
+
+    // data
+    numRows = (m_Rows == null) ? numClasses : m_Rows.length;
+    for (i = 0; i < numRows; i++) {
+      AbstractConfusionMatrixVisualization.checkInterrupted();
+      row = (m_Rows == null) ? i : m_Rows[i];
+      for (n = 0; n < numClasses; n++) {
+	writeNumber(writer, matrix.getValue(row, n));
+	writer.write(m_Separator);
+      }
+      writer.write(quoted[row]);
+      writer.write(m_Separator);
+      writeNumber(writer, matrix.getIncorrect(row));
+      writer.write(m_Separator);
+      writeNumber(writer, matrix.getCorrect(row));
+      writer.write(m_Separator);
+      writeNumber(writer, matrix.getTotal(row));
+      if (costs) {
+	writer.write(m_Separator);
+	writeNumber(writer, (m_CostTotals != null) ? m_CostTotals[row] : matrix.getCost(row));
+      }
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Writes the matrix to the file, using a buffered channel.
+   *
+   * @param matrix	the matrix to write
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  public String write(ConfusionMatrix matrix, File file) {
+    String		result;
+    FileOutputStream	stream;
+    Writer		writer;
+
+    result = null;
+    stream = null;
+    writer = null;
+    try {
+      stream = new FileOutputStream(file);
+      writer = new BufferedWriter(Channels.newWriter(stream.getChannel(), "UTF-8"), BUFFER_SIZE);
+      write(matrix, writer);
+      writer.flush();
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write content to " + file + "!");
+      e.printStackTrace();
+      result = "Failed to write content to " + file + ": " + e;
+    }
+    finally {
+      try {
+	if (writer != null)
+	  writer.close();
+	else if (stream != null)
+	  stream.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    return result;
+  }
+}
@@ -19,15 +19,42 @@
  */
 package weka.gui.visualize.plugins;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
+import weka.classifiers.CostMatrix;
 import weka.classifiers.evaluation.Prediction;
 import weka.core.Attribute;
 import weka.core.Utils;
 
 /**
  * Represents a confusion matrix.
+ * <p/>
+ * The counts are kept in a dense 2-dim array. Use
+ * {@link #create(List, Attribute)} to let the required heap (see
+ * {@link MatrixFootprint}) decide on the representation instead, which
+ * may result in an {@link IntegerConfusionMatrix},
+ * {@link SparseConfusionMatrix} or {@link OffHeapConfusionMatrix}.
+ * <p/>
+ * Optionally, a cost matrix (rows: actual, columns: predicted) can be
+ * supplied, either as Weka {@link CostMatrix} or as plain array. The cost
+ * totals per class label then get accumulated while adding the
+ * predictions. Costs supplied later on (see {@link #setCosts(double[][])})
+ * get evaluated over the non-zero cells only.
+ * <p/>
+ * Serialization only writes class attribute, labels and counts (dense or,
+ * if smaller, only the non-zero cells), never the predictions. The
+ * serialVersionUID is unchanged, i.e., matrices serialized by older
+ * versions (counts as field) can still be read. Older versions, however,
+ * cannot read the compact form: for exchanging matrices with them, set the
+ * system property {@link #PROPERTY_LEGACY_SERIALIZATION} to "true" (or use
+ * {@link #setLegacySerialization(boolean)}), which writes dense matrices in
+ * the old form again.
  * 
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -38,8 +65,14 @@ public class ConfusionMatrix
   /** for serialization. */
   private static final long serialVersionUID = -2212913330894559303L;
 
-  /** the predictions. */
-  protected List<Prediction> m_Predictions;
+  /** the system property for writing dense matrices in the form of older versions. */
+  public final static String PROPERTY_LEGACY_SERIALIZATION = "weka.confusionmatrix.legacySerialization";
+
+  /** whether to write dense matrices in the form of older versions. */
+  protected static boolean m_LegacySerialization = Boolean.getBoolean(PROPERTY_LEGACY_SERIALIZATION);
+
+  /** the predictions (only available during {@link #initialize()}). */
+  protected transient List<Prediction> m_Predictions;
   
   /** the class attribute. */
   protected Attribute m_ClassAttribute;
@@ -50,6 +83,23 @@ public class ConfusionMatrix
   /** the labels. */
   protected String[] m_Labels;
   
+  /** the cached totals per class label (null if not calculated yet). */
+  protected transient double[] m_Totals;
+  
+  /** the costs (actual, predicted), null if none. */
+  protected double[][] m_Costs;
+  
+  /** the cost totals per class label, kept up to date while adding weights
+   * (null if no costs or not calculated yet). */
+  protected transient double[] m_CostTotals;
+  
+  /**
+   * For subclasses that provide the counts differently.
+   */
+  protected ConfusionMatrix() {
+    super();
+  }
+  
   /**
    * Initializes the matrix.
    * 
@@ -57,37 +107,386 @@ public class ConfusionMatrix
    * @param classAtt	the class attribute
    */
   public ConfusionMatrix(List<Prediction> preds, Attribute classAtt) {
+    this(preds, classAtt, null, null);
+  }
+  
+  /**
+   * Initializes the matrix and the cost totals.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param costs	the cost matrix
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute or contain expressions
+   */
+  public ConfusionMatrix(List<Prediction> preds, Attribute classAtt, CostMatrix costs) {
+    this(preds, classAtt, null, toArray(costs, classAtt.numValues()));
+  }
+  
+  /**
+   * Initializes the matrix and the cost totals.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param costs	the costs (actual, predicted)
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute
+   */
+  public ConfusionMatrix(List<Prediction> preds, Attribute classAtt, double[][] costs) {
+    this(preds, classAtt, null, check(costs, classAtt.numValues()));
+  }
+  
+  /**
+   * Initializes the matrix, using the labels that were derived from the
+   * class attribute already (e.g., shared by several matrices).
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   */
+  protected ConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels) {
+    this(preds, classAtt, labels, null);
+  }
+  
+  /**
+   * Initializes the matrix and the cost totals, using the labels that were
+   * derived from the class attribute already.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   */
+  protected ConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs) {
     super();
     m_Predictions    = preds;
     m_ClassAttribute = classAtt;
+    m_Labels         = labels;
+    m_Costs          = costs;
     initialize();
+    // only required for building the matrix, don't keep the (potentially
+    // huge) list alive, e.g., when cached by ConfusionMatrixCache
+    m_Predictions = null;
   }
   
   /**
    * Initializes the matrix.
+   * 
+   * @see		ConfusionMatrixMetrics#BUILD
    */
   protected void initialize() {
-    int		i;
+    ConfusionMatrixMetrics.Sample	sample;
+    int					i;
+    
+    sample = ConfusionMatrixMetrics.start();
     
     // labels
-    m_Labels = new String[m_ClassAttribute.numValues()];
-    for (i = 0; i < m_ClassAttribute.numValues(); i++)
-      m_Labels[i] = m_ClassAttribute.value(i);
+    if (m_Labels == null) {
+      m_Labels = new String[m_ClassAttribute.numValues()];
+      for (i = 0; i < m_ClassAttribute.numValues(); i++)
+	m_Labels[i] = m_ClassAttribute.value(i);
+    }
     
     // matrix
+    allocate();
+    if (m_Costs != null)
+      m_CostTotals = new double[m_Labels.length];
+    accumulate(m_Predictions);
+    
+    ConfusionMatrixMetrics.BUILD.record(sample, m_Predictions.size(), m_Labels.length);
+  }
+  
+  /**
+   * Allocates the (empty) storage for the counts.
+   */
+  protected void allocate() {
     m_Matrix = new double[m_ClassAttribute.numValues()][m_ClassAttribute.numValues()];
-    for (Prediction pred: m_Predictions)
-      m_Matrix[(int) pred.actual()][(int) pred.predicted()] += pred.weight();
   }
   
   /**
-   * Returns a clone of ifself.
+   * Adds the weights of the predictions to the counts.
+   * 
+   * @param preds	the predictions to add
+   */
+  protected void accumulate(List<Prediction> preds) {
+    if (m_CostTotals != null) {
+      for (Prediction pred: preds)
+	add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+    }
+    else {
+      for (Prediction pred: preds)
+	m_Matrix[(int) pred.actual()][(int) pred.predicted()] += pred.weight();
+    }
+  }
+  
+  /**
+   * Adds the weight to the specified cell. {@link #invalidate()} must be
+   * called once all weights have been added.
+   * 
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight to add
+   */
+  protected void add(int actual, int predicted, double weight) {
+    m_Matrix[actual][predicted] += weight;
+    addCost(actual, predicted, weight);
+  }
+  
+  /**
+   * Adds the cost of the weight to the cost totals, if they are being kept
+   * up to date.
+   * 
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight that got added
+   */
+  protected void addCost(int actual, int predicted, double weight) {
+    if (m_CostTotals != null)
+      m_CostTotals[actual] += weight * m_Costs[actual][predicted];
+  }
+  
+  /**
+   * Adds the counts of this matrix to the other one, skipping empty rows
+   * and zero cells. {@link #invalidate()} must be called on the target
+   * afterwards.
+   * 
+   * @param target	the matrix to add the counts to
+   * @param row		the scratch row to use, needs to have room for all
+   * 			classes
+   */
+  protected void addTo(ConfusionMatrix target, double[] row) {
+    addTo(target, row, null);
+  }
+  
+  /**
+   * Adds the counts (or costs) of this matrix to the other one, skipping
+   * empty rows and zero cells. {@link #invalidate()} must be called on the
+   * target afterwards.
+   * 
+   * @param target	the matrix to add the counts to
+   * @param row		the scratch row to use, needs to have room for all
+   * 			classes
+   * @param costs	the costs to multiply the counts with, null to add
+   * 			the counts
+   */
+  protected void addTo(ConfusionMatrix target, double[] row, double[][] costs) {
+    int		i;
+    int		n;
+    
+    for (i = 0; i < getNumClasses(); i++) {
+      if (getTotal(i) == 0)
+	continue;
+      getRow(i, row);
+      for (n = 0; n < getNumClasses(); n++) {
+	if (row[n] != 0)
+	  target.add(i, n, (costs == null) ? row[n] : row[n] * costs[i][n]);
+      }
+    }
+  }
+  
+  /**
+   * Turns the cost matrix into an array.
+   * 
+   * @param costs	the cost matrix
+   * @param numClasses	the number of class labels
+   * @return		the costs (actual, predicted)
+   * @throws IllegalArgumentException	if the size doesn't match or the
+   * 					costs contain expressions
+   */
+  public static double[][] toArray(CostMatrix costs, int numClasses) {
+    double[][]	result;
+    int		i;
+    int		n;
+    
+    if (costs.size() != numClasses)
+      throw new IllegalArgumentException("Cost matrix has size " + costs.size() + ", but " + numClasses + " class labels!");
+    
+    result = new double[numClasses][numClasses];
+    for (i = 0; i < numClasses; i++) {
+      for (n = 0; n < numClasses; n++) {
+	try {
+	  result[i][n] = costs.getElement(i, n);
+	}
+	catch (Exception e) {
+	  throw new IllegalArgumentException("Cost matrix contains non-fixed costs: " + e.getMessage());
+	}
+      }
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Checks whether the costs match the number of class labels.
+   * 
+   * @param costs	the costs to check
+   * @param numClasses	the number of class labels
+   * @return		the costs
+   * @throws IllegalArgumentException	if the size doesn't match
+   */
+  protected static double[][] check(double[][] costs, int numClasses) {
+    int		i;
+    
+    if (costs.length != numClasses)
+      throw new IllegalArgumentException("Cost matrix has " + costs.length + " rows, but " + numClasses + " class labels!");
+    for (i = 0; i < numClasses; i++) {
+      if (costs[i].length != numClasses)
+	throw new IllegalArgumentException("Row " + (i+1) + " of cost matrix has " + costs[i].length + " columns, but " + numClasses + " class labels!");
+    }
+    
+    return costs;
+  }
+  
+  /**
+   * Builds the matrix using the representation that fits into the
+   * available heap.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @return		the matrix
+   * @see		MatrixFootprint
+   */
+  public static ConfusionMatrix create(List<Prediction> preds, Attribute classAtt) {
+    return create(preds, classAtt, new MatrixFootprint(classAtt, preds.size()));
+  }
+  
+  /**
+   * Builds the matrix using the representation that the estimate picks.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param footprint	the estimate to use
+   * @return		the matrix
+   */
+  public static ConfusionMatrix create(List<Prediction> preds, Attribute classAtt, MatrixFootprint footprint) {
+    return newInstance(classAtt, null, preds, null, getRepresentation(preds, footprint));
+  }
+  
+  /**
+   * Builds the matrix and the cost totals using the representation that
+   * fits into the available heap.
+   * 
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param costs	the costs (actual, predicted)
+   * @return		the matrix
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute
+   */
+  public static ConfusionMatrix create(List<Prediction> preds, Attribute classAtt, double[][] costs) {
+    return newInstance(
+	classAtt, null, preds, check(costs, classAtt.numValues()),
+	getRepresentation(preds, new MatrixFootprint(classAtt, preds.size())));
+  }
+  
+  /**
+   * Determines the representation for the predictions.
+   * 
+   * @param preds	the predictions
+   * @param footprint	the estimate to use
+   * @return		the representation, e.g.,
+   * 			{@link MatrixFootprint#REPRESENTATION_DENSE}
+   */
+  protected static int getRepresentation(List<Prediction> preds, MatrixFootprint footprint) {
+    // avoid scanning the weights if not necessary
+    if (footprint.fits(MatrixFootprint.REPRESENTATION_DENSE))
+      return MatrixFootprint.REPRESENTATION_DENSE;
+    
+    return footprint.getRepresentation(isIntegral(preds));
+  }
+  
+  /**
+   * Instantiates the matrix for the representation.
+   * 
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param preds	the predictions
+   * @param costs	the (checked) costs, null if none
+   * @param representation	the representation, e.g.,
+   * 			{@link MatrixFootprint#REPRESENTATION_DENSE}
+   * @return		the matrix
+   */
+  protected static ConfusionMatrix newInstance(Attribute classAtt, String[] labels, List<Prediction> preds, double[][] costs, int representation) {
+    switch (representation) {
+      case MatrixFootprint.REPRESENTATION_DENSE:
+	return new ConfusionMatrix(preds, classAtt, labels, costs);
+      case MatrixFootprint.REPRESENTATION_INTEGER:
+	return new IntegerConfusionMatrix(preds, classAtt, labels, costs);
+      case MatrixFootprint.REPRESENTATION_SPARSE:
+	return new SparseConfusionMatrix(preds, classAtt, labels, costs);
+      case MatrixFootprint.REPRESENTATION_OFFHEAP:
+	return OffHeapConfusionMatrix.newTemporary(preds, classAtt, labels, costs);
+      default:
+	throw new IllegalArgumentException("Unknown representation: " + representation);
+    }
+  }
+  
+  /**
+   * Releases the storage of matrices that hold resources outside the heap
+   * (e.g., the temporary file of an {@link OffHeapConfusionMatrix}), does
+   * nothing for other matrices. Failures get output on stderr.
+   * 
+   * @param matrix	the matrix to release, can be null
+   */
+  public static void release(ConfusionMatrix matrix) {
+    if (!(matrix instanceof Closeable))
+      return;
+    try {
+      ((Closeable) matrix).close();
+    }
+    catch (Exception e) {
+      System.err.println("Failed to release matrix: " + e);
+    }
+  }
+  
+  /**
+   * Returns whether all weights are integral and non-negative and their sum
+   * fits into an int.
+   * 
+   * @param preds	the predictions to check
+   * @return		true if integral
+   */
+  protected static boolean isIntegral(List<Prediction> preds) {
+    double	sum;
+    double	weight;
+    
+    sum = 0;
+    for (Prediction pred: preds) {
+      weight = pred.weight();
+      if ((weight < 0) || (weight != Math.rint(weight)))
+	return false;
+      sum += weight;
+    }
+    
+    return (sum <= Integer.MAX_VALUE);
+  }
+  
+  /**
+   * Returns a clone of ifself. Copies the current counts rather than
+   * re-scanning the predictions.
    * 
    * @return		the clone
    */
   @Override
   public ConfusionMatrix clone() {
-    return new ConfusionMatrix(m_Predictions, m_ClassAttribute);
+    ConfusionMatrix	result;
+    int			i;
+    
+    try {
+      result = (ConfusionMatrix) super.clone();
+    }
+    catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+    if (m_Matrix != null) {
+      result.m_Matrix = new double[m_Matrix.length][];
+      for (i = 0; i < m_Matrix.length; i++)
+	result.m_Matrix[i] = m_Matrix[i].clone();
+    }
+    result.m_Totals     = (m_Totals == null) ? null : m_Totals.clone();
+    result.m_CostTotals = (m_CostTotals == null) ? null : m_CostTotals.clone();
+    
+    return result;
   }
   
   /**
@@ -100,14 +499,88 @@ public class ConfusionMatrix
   }
   
   /**
-   * Returns the matrix.
+   * Returns the matrix. Subclasses that don't store the counts in a 2-dim
+   * array return a dense copy (see {@link #toDense()}), i.e., the square of
+   * the number of class labels as doubles on the heap; use
+   * {@link #getValue(int, int)} or {@link #getRow(int, double[])} for
+   * large matrices instead.
    * 
    * @return		the matrix
+   * @see		#getValue(int, int)
    */
   public double[][] getMatrix() {
     return m_Matrix;
   }
   
+  /**
+   * Returns a dense copy of the counts, read row by row via
+   * {@link #getRow(int, double[])}.
+   * 
+   * @return		the copy
+   */
+  protected double[][] toDense() {
+    double[][]	result;
+    int		i;
+    
+    result = new double[getNumClasses()][getNumClasses()];
+    for (i = 0; i < result.length; i++)
+      getRow(i, result[i]);
+    
+    return result;
+  }
+  
+  /**
+   * Returns the count of the specified cell. Use this method for reading
+   * the counts, as not all matrices keep them in a 2-dim array (see
+   * {@link MappedConfusionMatrix}).
+   * 
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  public double getValue(int actual, int predicted) {
+    return m_Matrix[actual][predicted];
+  }
+  
+  /**
+   * Copies the counts of the specified row into the array.
+   * 
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  public void getRow(int actual, double[] row) {
+    System.arraycopy(m_Matrix[actual], 0, row, 0, m_Matrix[actual].length);
+  }
+  
+  /**
+   * Copies the non-zero cells of the specified row into the arrays, i.e.,
+   * the predicted class labels (ascending) and their counts. Matrices that
+   * store their counts sparsely only touch the non-zero cells.
+   * 
+   * @param actual	the 0-based index of the actual class label
+   * @param columns	the array for the predicted class labels, needs to
+   * 			have room for all classes
+   * @param values	the array for the counts, needs to have room for all
+   * 			classes
+   * @return		the number of non-zero cells
+   */
+  public int getNonZero(int actual, int[] columns, double[] values) {
+    int		result;
+    int		n;
+    
+    getRow(actual, values);
+    result = 0;
+    for (n = 0; n < getNumClasses(); n++) {
+      if (values[n] != 0) {
+	columns[result] = n;
+	values[result]  = values[n];
+	result++;
+      }
+    }
+    
+    return result;
+  }
+  
   /**
    * Returns the number of classes.
    * 
@@ -126,6 +599,35 @@ public class ConfusionMatrix
     return m_Labels;
   }
   
+  /**
+   * Discards cached values like the totals per class label. Must be called
+   * after modifying the array returned by {@link #getMatrix()} directly.
+   */
+  public void invalidate() {
+    m_Totals     = null;
+    m_CostTotals = null;
+  }
+  
+  /**
+   * Returns the totals for all class labels, calculates them if necessary.
+   * 
+   * @return		the totals
+   */
+  protected double[] getTotals() {
+    double[]	result;
+    int		i;
+    
+    result = m_Totals;
+    if (result == null) {
+      result = new double[getNumClasses()];
+      for (i = 0; i < getNumClasses(); i++)
+	result[i] = Utils.sum(m_Matrix[i]);
+      m_Totals = result;
+    }
+    
+    return result;
+  }
+  
   /**
    * Returns the total count for the specified class label.
    * 
@@ -133,7 +635,7 @@ public class ConfusionMatrix
    * @return		the count
    */
   public double getTotal(int index) {
-    return Utils.sum(m_Matrix[index]);
+    return getTotals()[index];
   }
   
   /**
@@ -159,7 +661,7 @@ public class ConfusionMatrix
    * @return		the count
    */
   public double getCorrect(int index) {
-    return m_Matrix[index][index];
+    return getValue(index, index);
   }
   
   /**
@@ -204,6 +706,219 @@ public class ConfusionMatrix
     return result;
   }
   
+  /**
+   * Sets the costs. The cost totals get evaluated over the non-zero cells
+   * when requested.
+   * 
+   * @param value	the costs (actual, predicted), null to remove them
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute
+   */
+  public void setCosts(double[][] value) {
+    m_Costs      = (value == null) ? null : check(value, getNumClasses());
+    m_CostTotals = null;
+  }
+  
+  /**
+   * Sets the costs. The cost totals get evaluated over the non-zero cells
+   * when requested.
+   * 
+   * @param value	the cost matrix
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute or contain expressions
+   */
+  public void setCosts(CostMatrix value) {
+    setCosts(toArray(value, getNumClasses()));
+  }
+  
+  /**
+   * Returns the costs.
+   * 
+   * @return		the costs (actual, predicted), null if none
+   */
+  public double[][] getCosts() {
+    return m_Costs;
+  }
+  
+  /**
+   * Returns whether all counts are guaranteed to be whole numbers, i.e.,
+   * whether they can be merged into integer storage without loss (see
+   * {@link MatrixFootprint#getRepresentation(boolean)}). Conservatively
+   * returns false, as double storage may hold weighted or scaled counts.
+   * 
+   * @return		true if integral
+   */
+  public boolean hasIntegralCounts() {
+    return false;
+  }
+
+  /**
+   * Returns whether costs are available.
+   * 
+   * @return		true if available
+   */
+  public boolean hasCosts() {
+    return (m_Costs != null);
+  }
+  
+  /**
+   * Evaluates the cost totals per class label, only visiting the non-zero
+   * cells.
+   * 
+   * @return		the cost totals
+   */
+  protected double[] computeCostTotals() {
+    return computeCostTotals(m_Costs);
+  }
+  
+  /**
+   * Evaluates the cost totals per class label for the specified costs,
+   * only visiting the non-zero cells (see {@link #getNonZero(int, int[], double[])}).
+   * Neither copies nor modifies the matrix.
+   * 
+   * @param costs	the costs (rows: actual, columns: predicted)
+   * @return		the cost totals
+   * @throws IllegalArgumentException	if the costs don't match the class labels
+   */
+  public double[] computeCostTotals(double[][] costs) {
+    double[]	result;
+    double[]	values;
+    int[]	columns;
+    int		count;
+    int		i;
+    int		n;
+    
+    check(costs, getNumClasses());
+    result  = new double[getNumClasses()];
+    values  = new double[getNumClasses()];
+    columns = new int[getNumClasses()];
+    for (i = 0; i < getNumClasses(); i++) {
+      if (getTotal(i) == 0)
+	continue;
+      count = getNonZero(i, columns, values);
+      for (n = 0; n < count; n++)
+	result[i] += values[n] * costs[i][columns[n]];
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Returns the cost totals for all class labels, evaluates them if
+   * necessary.
+   * 
+   * @return		the cost totals, null if no costs available
+   */
+  protected double[] getCostTotals() {
+    double[]	result;
+    
+    if (m_Costs == null)
+      return null;
+    
+    result = m_CostTotals;
+    if (result == null) {
+      result       = computeCostTotals();
+      m_CostTotals = result;
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Returns the total cost for the specified class label.
+   * 
+   * @param index	the 0-based class label
+   * @return		the cost, 0 if no costs available
+   */
+  public double getCost(int index) {
+    if (m_Costs == null)
+      return 0;
+    return getCostTotals()[index];
+  }
+  
+  /**
+   * Returns the total cost for all class labels.
+   * 
+   * @return		the cost, 0 if no costs available
+   */
+  public double getCost() {
+    double	result;
+    int		i;
+    
+    result = 0;
+    for (i = 0; i < getNumClasses(); i++)
+      result += getCost(i);
+    
+    return result;
+  }
+  
+  /**
+   * Returns the expected cost for an instance of the specified class label,
+   * i.e., the total cost divided by the total count.
+   * 
+   * @param index	the 0-based class label
+   * @return		the expected cost, 0 if no costs or no instances
+   */
+  public double getExpectedCost(int index) {
+    double	total;
+    
+    total = getTotal(index);
+    if (total == 0)
+      return 0;
+    return getCost(index) / total;
+  }
+  
+  /**
+   * Returns the expected cost for an instance.
+   * 
+   * @return		the expected cost, 0 if no costs or no instances
+   */
+  public double getExpectedCost() {
+    double	total;
+    
+    total = getTotal();
+    if (total == 0)
+      return 0;
+    return getCost() / total;
+  }
+  
+  /**
+   * Returns a matrix with the costs of the cells (count times cost), e.g.,
+   * for displaying them as heatmap. Only the non-zero cells get evaluated;
+   * unless this matrix is dense, the costs are stored sparse.
+   * 
+   * @return		the matrix with the costs
+   * @throws IllegalStateException	if no costs available
+   */
+  public ConfusionMatrix toCosts() {
+    if (m_Costs == null)
+      throw new IllegalStateException("No costs available!");
+    
+    return toCosts(m_Costs);
+  }
+  
+  /**
+   * Returns a matrix with the costs of the cells (count times cost), using
+   * the specified costs rather than the ones of this matrix.
+   * 
+   * @param costs	the costs (actual, predicted)
+   * @return		the matrix with the costs
+   * @throws IllegalArgumentException	if the costs don't match the class
+   * 					attribute
+   * @see		#toCosts()
+   */
+  public ConfusionMatrix toCosts(double[][] costs) {
+    ConfusionMatrix	result;
+    
+    result = newInstance(
+	m_ClassAttribute, m_Labels, new ArrayList<Prediction>(), null,
+	(m_Matrix != null) ? MatrixFootprint.REPRESENTATION_DENSE : MatrixFootprint.REPRESENTATION_SPARSE);
+    addTo(result, new double[getNumClasses()], check(costs, getNumClasses()));
+    result.invalidate();
+    
+    return result;
+  }
+  
   /**
    * Returns the maximum count in the matrix.
    * 
@@ -260,5 +975,150 @@ public class ConfusionMatrix
 	  m_Matrix[i][n] /= sum;
       }
     }
+    
+    invalidate();
+  }
+  
+  /**
+   * Sets whether to serialize dense matrices in the form of older versions,
+   * i.e., with the counts as field, so that these versions can read them.
+   * 
+   * @param value	true for the old form
+   * @see		#PROPERTY_LEGACY_SERIALIZATION
+   */
+  public static void setLegacySerialization(boolean value) {
+    m_LegacySerialization = value;
+  }
+  
+  /**
+   * Returns whether dense matrices get serialized in the form of older
+   * versions.
+   * 
+   * @return		true if the old form
+   */
+  public static boolean isLegacySerialization() {
+    return m_LegacySerialization;
+  }
+  
+  /**
+   * Writes the class attribute, the labels, the costs and the counts. The
+   * counts are written separately from the fields (which contain null for
+   * the matrix), either dense or as non-zero cells per row, whichever is
+   * smaller. In legacy mode (see {@link #setLegacySerialization(boolean)}),
+   * the counts of dense matrices get written as field instead.
+   * Subclasses that don't use the 2-dim array serialize the counts
+   * themselves (they didn't exist in older versions).
+   * 
+   * @param out		the stream to write to
+   * @throws IOException	if writing fails
+   */
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField	fields;
+    int				numClasses;
+    long			nonZero;
+    int				i;
+    int				n;
+    int				count;
+    
+    fields = out.putFields();
+    fields.put("m_ClassAttribute", m_ClassAttribute);
+    fields.put("m_Labels", m_Labels);
+    fields.put("m_Costs", m_Costs);
+    if (m_LegacySerialization && (m_Matrix != null)) {
+      fields.put("m_Matrix", m_Matrix);
+      out.writeFields();
+      return;
+    }
+    fields.put("m_Matrix", null);
+    out.writeFields();
+    
+    // counts are kept (and serialized) by a subclass
+    if (m_Matrix == null) {
+      out.writeInt(-1);
+      return;
+    }
+    
+    numClasses = m_Matrix.length;
+    nonZero    = 0;
+    for (i = 0; i < numClasses; i++) {
+      for (n = 0; n < numClasses; n++) {
+	if (m_Matrix[i][n] != 0)
+	  nonZero++;
+      }
+    }
+    out.writeInt(numClasses);
+    if (numClasses * 4L + nonZero * 12L < (long) numClasses * numClasses * 8L) {
+      out.writeInt(ConfusionMatrixFile.STORAGE_SPARSE);
+      for (i = 0; i < numClasses; i++) {
+	count = 0;
+	for (n = 0; n < numClasses; n++) {
+	  if (m_Matrix[i][n] != 0)
+	    count++;
+	}
+	out.writeInt(count);
+	for (n = 0; n < numClasses; n++) {
+	  if (m_Matrix[i][n] != 0) {
+	    out.writeInt(n);
+	    out.writeDouble(m_Matrix[i][n]);
+	  }
+	}
+      }
+    }
+    else {
+      out.writeInt(ConfusionMatrixFile.STORAGE_DENSE);
+      for (i = 0; i < numClasses; i++) {
+	for (n = 0; n < numClasses; n++)
+	  out.writeDouble(m_Matrix[i][n]);
+      }
+    }
+  }
+  
+  /**
+   * Reads the class attribute, the labels, the costs and the counts. Streams of older
+   * versions (or written in legacy mode) contain the matrix as field and no
+   * further data; older versions also contain the predictions, which get
+   * discarded, and no costs.
+   * 
+   * @param in		the stream to read from
+   * @throws IOException	if reading fails
+   * @throws ClassNotFoundException	if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField	fields;
+    int				numClasses;
+    int				storage;
+    int				i;
+    int				n;
+    int				count;
+    
+    fields           = in.readFields();
+    m_ClassAttribute = (Attribute) fields.get("m_ClassAttribute", null);
+    m_Labels         = (String[]) fields.get("m_Labels", null);
+    m_Costs          = (double[][]) fields.get("m_Costs", null);
+    m_Matrix         = (double[][]) fields.get("m_Matrix", null);
+    if (m_Matrix != null)
+      return;
+    
+    numClasses = in.readInt();
+    if (numClasses < 0)
+      return;
+    storage    = in.readInt();
+    m_Matrix   = new double[numClasses][numClasses];
+    if (storage == ConfusionMatrixFile.STORAGE_SPARSE) {
+      for (i = 0; i < numClasses; i++) {
+	count = in.readInt();
+	for (n = 0; n < count; n++)
+	  m_Matrix[i][in.readInt()] = in.readDouble();
+      }
+    }
+    else if (storage == ConfusionMatrixFile.STORAGE_DENSE) {
+      for (i = 0; i < numClasses; i++) {
+	for (n = 0; n < numClasses; n++)
+	  m_Matrix[i][n] = in.readDouble();
+      }
+    }
+    else {
+      throw new IOException("Unknown storage of counts: " + storage);
+    }
   }
 }
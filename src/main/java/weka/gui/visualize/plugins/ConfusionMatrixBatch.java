@@ -0,0 +1,378 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixBatch.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Computes the confusion matrices of many prediction sets over the same
+ * class attribute (e.g., several models evaluated with cross-validation)
+ * in a single parallel job, as well as the aggregates per model (over all
+ * folds), per fold (over all models) and overall.
+ * <p/>
+ * The labels get derived from the class attribute only once and are
+ * shared by all matrices. The aggregates get merged from the matrices of
+ * the prediction sets (only their non-zero cells, using a scratch row per
+ * worker) rather than recomputed from the predictions. Each matrix uses the representation
+ * that fits into its share of the available heap (see
+ * {@link MatrixFootprint}).
+ * <p/>
+ * Example:
+ * <pre>
+ * batch = new ConfusionMatrixBatch(data.classAttribute());
+ * for (i = 0; i &lt; models.length; i++) {
+ *   for (n = 0; n &lt; folds; n++)
+ *     batch.add(models[i], n, predictions[i][n]);
+ * }
+ * batch.execute();
+ * matrix = batch.getModelAggregate(models[0]);
+ * </pre>
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixBatch {
+
+  /** the class attribute. */
+  protected Attribute m_ClassAttribute;
+
+  /** the labels shared by all matrices. */
+  protected String[] m_Labels;
+
+  /** the number of threads to use. */
+  protected int m_NumThreads = Runtime.getRuntime().availableProcessors();
+
+  /** the predictions per model and fold. */
+  protected Map<String,Map<Integer,List<Prediction>>> m_Predictions;
+
+  /** the matrices per model and fold. */
+  protected Map<String,Map<Integer,ConfusionMatrix>> m_Matrices;
+
+  /** the aggregates per model. */
+  protected Map<String,ConfusionMatrix> m_ModelAggregates;
+
+  /** the aggregates per fold. */
+  protected Map<Integer,ConfusionMatrix> m_FoldAggregates;
+
+  /** the overall aggregate. */
+  protected ConfusionMatrix m_Aggregate;
+
+  /** the scratch rows of the workers. */
+  protected ThreadLocal<double[]> m_Scratch;
+
+  /**
+   * Initializes the batch.
+   *
+   * @param classAtt	the class attribute of all prediction sets
+   */
+  public ConfusionMatrixBatch(Attribute classAtt) {
+    super();
+
+    int		i;
+
+    m_ClassAttribute = classAtt;
+    m_Labels         = new String[classAtt.numValues()];
+    for (i = 0; i < m_Labels.length; i++)
+      m_Labels[i] = classAtt.value(i);
+    m_Predictions = new LinkedHashMap<String,Map<Integer,List<Prediction>>>();
+    m_Scratch     = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+	return new double[m_Labels.length];
+      }
+    };
+  }
+
+  /**
+   * Returns the class attribute.
+   *
+   * @return		the attribute
+   */
+  public Attribute getClassAttribute() {
+    return m_ClassAttribute;
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, &lt;= 0 for number of CPUs
+   */
+  public void setNumThreads(int value) {
+    if (value <= 0)
+      value = Runtime.getRuntime().availableProcessors();
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Adds the predictions of a model on a fold. Any previous results get
+   * discarded.
+   *
+   * @param model	the name of the model
+   * @param fold	the index of the fold
+   * @param preds	the predictions
+   */
+  public void add(String model, int fold, List<Prediction> preds) {
+    if (!m_Predictions.containsKey(model))
+      m_Predictions.put(model, new TreeMap<Integer,List<Prediction>>());
+    m_Predictions.get(model).put(fold, preds);
+    m_Matrices = null;
+  }
+
+  /**
+   * Returns the names of the models, in the order they were added.
+   *
+   * @return		the models
+   */
+  public List<String> getModels() {
+    return new ArrayList<String>(m_Predictions.keySet());
+  }
+
+  /**
+   * Returns the (sorted) indices of all folds.
+   *
+   * @return		the folds
+   */
+  public List<Integer> getFolds() {
+    TreeMap<Integer,Object>	result;
+
+    result = new TreeMap<Integer,Object>();
+    for (Map<Integer,List<Prediction>> folds: m_Predictions.values()) {
+      for (Integer fold: folds.keySet())
+	result.put(fold, null);
+    }
+
+    return new ArrayList<Integer>(result.keySet());
+  }
+
+  /**
+   * Returns whether the matrices have been computed.
+   *
+   * @return		true if computed
+   */
+  public boolean isExecuted() {
+    return (m_Matrices != null);
+  }
+
+  /**
+   * Merges the matrices into the target.
+   *
+   * @param target	the matrix to add the counts to
+   * @param matrices	the matrices to merge
+   * @see		ConfusionMatrix#addTo(ConfusionMatrix, double[])
+   */
+  protected void merge(ConfusionMatrix target, List<ConfusionMatrix> matrices) {
+    double[]	row;
+
+    row = m_Scratch.get();
+    for (ConfusionMatrix matrix: matrices)
+      matrix.addTo(target, row);
+    target.invalidate();
+  }
+
+  /**
+   * Returns a task that merges the matrices into a new one.
+   *
+   * @param matrices	the matrices to merge
+   * @return		the task
+   */
+  protected Callable<ConfusionMatrix> newMergeTask(final List<ConfusionMatrix> matrices) {
+    return new Callable<ConfusionMatrix>() {
+      @Override
+      public ConfusionMatrix call() throws Exception {
+	ConfusionMatrix		result;
+	MatrixFootprint		footprint;
+	int			representation;
+	boolean			integral;
+	long			total;
+
+	total    = 0;
+	integral = true;
+	for (ConfusionMatrix matrix: matrices) {
+	  total    += (long) matrix.getTotal();
+	  integral  = integral && matrix.hasIntegralCounts();
+	}
+	footprint      = new MatrixFootprint(m_Labels.length, total, MatrixFootprint.getAvailableHeap() / m_NumThreads);
+	representation = footprint.getRepresentation(integral && (total <= Integer.MAX_VALUE));
+	result = ConfusionMatrix.newInstance(m_ClassAttribute, m_Labels, new ArrayList<Prediction>(), null, representation);
+	merge(result, matrices);
+
+	return result;
+      }
+    };
+  }
+
+  /**
+   * Returns a task that builds the matrix of a prediction set.
+   *
+   * @param preds	the predictions
+   * @return		the task
+   */
+  protected Callable<ConfusionMatrix> newBuildTask(final List<Prediction> preds) {
+    return new Callable<ConfusionMatrix>() {
+      @Override
+      public ConfusionMatrix call() throws Exception {
+	MatrixFootprint	footprint;
+
+	footprint = new MatrixFootprint(m_Labels.length, preds.size(), MatrixFootprint.getAvailableHeap() / m_NumThreads);
+
+	return ConfusionMatrix.newInstance(m_ClassAttribute, m_Labels, preds, null, ConfusionMatrix.getRepresentation(preds, footprint));
+      }
+    };
+  }
+
+  /**
+   * Computes all matrices and aggregates.
+   *
+   * @throws InterruptedException	if interrupted
+   * @throws ExecutionException	if building a matrix failed
+   */
+  public void execute() throws InterruptedException, ExecutionException {
+    ExecutorService					executor;
+    Map<String,Map<Integer,Future<ConfusionMatrix>>>	builds;
+    Map<String,Map<Integer,ConfusionMatrix>>		built;
+    Map<String,Future<ConfusionMatrix>>			models;
+    Map<Integer,Future<ConfusionMatrix>>		folds;
+    Map<Integer,List<ConfusionMatrix>>			perFold;
+    ConfusionMatrix					matrix;
+
+    m_Matrices        = null;
+    m_ModelAggregates = new LinkedHashMap<String,ConfusionMatrix>();
+    m_FoldAggregates  = new HashMap<Integer,ConfusionMatrix>();
+    m_Aggregate       = null;
+
+    executor = Executors.newFixedThreadPool(Math.max(1, m_NumThreads));
+    try {
+      // prediction sets
+      builds = new LinkedHashMap<String,Map<Integer,Future<ConfusionMatrix>>>();
+      for (String model: m_Predictions.keySet()) {
+	builds.put(model, new TreeMap<Integer,Future<ConfusionMatrix>>());
+	for (Integer fold: m_Predictions.get(model).keySet())
+	  builds.get(model).put(fold, executor.submit(newBuildTask(m_Predictions.get(model).get(fold))));
+      }
+      built   = new LinkedHashMap<String,Map<Integer,ConfusionMatrix>>();
+      perFold = new TreeMap<Integer,List<ConfusionMatrix>>();
+      for (String model: builds.keySet()) {
+	built.put(model, new TreeMap<Integer,ConfusionMatrix>());
+	for (Integer fold: builds.get(model).keySet()) {
+	  matrix = builds.get(model).get(fold).get();
+	  built.get(model).put(fold, matrix);
+	  if (!perFold.containsKey(fold))
+	    perFold.put(fold, new ArrayList<ConfusionMatrix>());
+	  perFold.get(fold).add(matrix);
+	}
+      }
+
+      // aggregates
+      models = new LinkedHashMap<String,Future<ConfusionMatrix>>();
+      for (String model: built.keySet())
+	models.put(model, executor.submit(newMergeTask(new ArrayList<ConfusionMatrix>(built.get(model).values()))));
+      folds = new TreeMap<Integer,Future<ConfusionMatrix>>();
+      for (Integer fold: perFold.keySet())
+	folds.put(fold, executor.submit(newMergeTask(perFold.get(fold))));
+      for (String model: models.keySet())
+	m_ModelAggregates.put(model, models.get(model).get());
+      for (Integer fold: folds.keySet())
+	m_FoldAggregates.put(fold, folds.get(fold).get());
+      m_Aggregate = executor.submit(newMergeTask(new ArrayList<ConfusionMatrix>(m_ModelAggregates.values()))).get();
+      m_Matrices  = built;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Checks whether the matrices have been computed.
+   *
+   * @throws IllegalStateException	if not computed yet
+   */
+  protected void check() {
+    if (!isExecuted())
+      throw new IllegalStateException("Matrices have not been computed yet, call execute() first!");
+  }
+
+  /**
+   * Returns the matrix of a model on a fold.
+   *
+   * @param model	the name of the model
+   * @param fold	the index of the fold
+   * @return		the matrix, null if no predictions were added
+   */
+  public ConfusionMatrix getMatrix(String model, int fold) {
+    check();
+    if (!m_Matrices.containsKey(model))
+      return null;
+    return m_Matrices.get(model).get(fold);
+  }
+
+  /**
+   * Returns the aggregate of a model over all its folds.
+   *
+   * @param model	the name of the model
+   * @return		the matrix, null if no predictions were added
+   */
+  public ConfusionMatrix getModelAggregate(String model) {
+    check();
+    return m_ModelAggregates.get(model);
+  }
+
+  /**
+   * Returns the aggregate of a fold over all models.
+   *
+   * @param fold	the index of the fold
+   * @return		the matrix, null if no predictions were added
+   */
+  public ConfusionMatrix getFoldAggregate(int fold) {
+    check();
+    return m_FoldAggregates.get(fold);
+  }
+
+  /**
+   * Returns the aggregate of all models and folds.
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix getAggregate() {
+    check();
+    return m_Aggregate;
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixCache.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Caches the confusion matrices per result, so that all visualizations of
+ * a result share the same matrix (incl. its cached totals) instead of
+ * re-scanning the predictions each time a window gets opened.
+ * <p/>
+ * Results are identified by the identity of the list of predictions and
+ * of the class attribute (the lists can be huge, comparing their content
+ * would defeat the purpose). The keys are only weakly referenced and the
+ * matrices softly, i.e., entries disappear once the Explorer discards the
+ * result or memory gets tight.
+ * <p/>
+ * Builds that are still running get shared as well: callers asking for the
+ * same result wait for the pending build instead of scanning the
+ * predictions again. The build only gets cancelled once all callers
+ * waiting for it have cancelled.
+ * <p/>
+ * Visualizations must not modify a shared matrix, they need to work on a
+ * {@link ConfusionMatrix#clone()} instead (see
+ * {@link HeatmapVisualizationScaled}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixCache {
+
+  /** the number of predictions after which progress gets reported. */
+  public final static int PROGRESS_INTERVAL = 100000;
+
+  /** the interval in msec in which callers waiting for a pending build check for cancellation. */
+  public final static int WAIT_INTERVAL = 100;
+
+  /**
+   * Interface for monitoring (and cancelling) the construction of a matrix.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static interface BuildMonitor {
+
+    /**
+     * Returns whether the construction should be stopped.
+     *
+     * @return		true if to stop
+     */
+    public boolean isCancelled();
+
+    /**
+     * Gets called with the progress of the construction.
+     *
+     * @param processed	the number of predictions processed so far
+     * @param total	the total number of predictions
+     */
+    public void progress(int processed, int total);
+  }
+
+  /**
+   * Key that references the predictions weakly and compares by identity.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected static class Key
+    extends WeakReference<List<Prediction>> {
+
+    /** the class attribute. */
+    protected WeakReference<Attribute> m_ClassAttribute;
+
+    /** the hashcode. */
+    protected int m_HashCode;
+
+    /**
+     * Initializes the key.
+     *
+     * @param preds	the predictions
+     * @param classAtt	the class attribute
+     * @param queue	the queue to register with, can be null
+     */
+    public Key(List<Prediction> preds, Attribute classAtt, ReferenceQueue<List<Prediction>> queue) {
+      super(preds, queue);
+      m_ClassAttribute = new WeakReference<Attribute>(classAtt);
+      m_HashCode       = 31 * System.identityHashCode(preds) + System.identityHashCode(classAtt);
+    }
+
+    /**
+     * Returns the hashcode, based on the identities of predictions and
+     * class attribute.
+     *
+     * @return		the hashcode
+     */
+    @Override
+    public int hashCode() {
+      return m_HashCode;
+    }
+
+    /**
+     * Checks whether the object refers to the same predictions and class
+     * attribute. Keys whose referents have been collected are only equal to
+     * themselves.
+     *
+     * @param obj	the object to compare with
+     * @return		true if the same
+     */
+    @Override
+    public boolean equals(Object obj) {
+      Key	other;
+
+      if (obj == this)
+	return true;
+      if (!(obj instanceof Key))
+	return false;
+      other = (Key) obj;
+      return (get() != null)
+	  && (get() == other.get())
+	  && (m_ClassAttribute.get() == other.m_ClassAttribute.get());
+    }
+  }
+
+  /**
+   * Container for a cached matrix.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected static class Entry {
+
+    /** the matrix. */
+    public SoftReference<ConfusionMatrix> matrix;
+
+    /** the number of predictions the matrix was built from. */
+    public int numPredictions;
+  }
+
+  /**
+   * A build that is still running, shared by all callers asking for the
+   * same result. Forwards the progress to all callers waiting for it and
+   * reports the build as cancelled only once all of them have cancelled.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected static class PendingBuild
+    implements BuildMonitor, Callable<ConfusionMatrix> {
+
+    /** the predictions. */
+    protected List<Prediction> m_Predictions;
+
+    /** the class attribute. */
+    protected Attribute m_ClassAttribute;
+
+    /** the number of predictions the matrix gets built from. */
+    protected int m_NumPredictions;
+
+    /** the task performing the build. */
+    protected FutureTask<ConfusionMatrix> m_Task;
+
+    /** the monitors of the waiting callers. */
+    protected List<BuildMonitor> m_Monitors;
+
+    /** the number of waiting callers (incl. the ones without monitor). */
+    protected int m_NumWaiting;
+
+    /**
+     * Initializes the build.
+     *
+     * @param preds	the predictions
+     * @param classAtt	the class attribute
+     */
+    public PendingBuild(List<Prediction> preds, Attribute classAtt) {
+      super();
+      m_Predictions    = preds;
+      m_ClassAttribute = classAtt;
+      m_NumPredictions = preds.size();
+      m_Task           = new FutureTask<ConfusionMatrix>(this);
+      m_Monitors       = new ArrayList<BuildMonitor>();
+    }
+
+    /**
+     * Registers a caller waiting for the build.
+     *
+     * @param monitor	the monitor of the caller, can be null
+     */
+    public synchronized void join(BuildMonitor monitor) {
+      m_NumWaiting++;
+      if (monitor != null)
+	m_Monitors.add(monitor);
+    }
+
+    /**
+     * Deregisters a caller that no longer waits for the build.
+     *
+     * @param monitor	the monitor of the caller, can be null
+     */
+    public synchronized void leave(BuildMonitor monitor) {
+      m_NumWaiting--;
+      if (monitor != null)
+	m_Monitors.remove(monitor);
+    }
+
+    /**
+     * Returns the monitors of the waiting callers.
+     *
+     * @return		a copy of the monitors
+     */
+    protected synchronized List<BuildMonitor> getMonitors() {
+      return new ArrayList<BuildMonitor>(m_Monitors);
+    }
+
+    /**
+     * Returns whether all waiting callers have cancelled. Callers without
+     * monitor never cancel.
+     *
+     * @return		true if to stop
+     */
+    @Override
+    public boolean isCancelled() {
+      List<BuildMonitor>	monitors;
+      int			numWaiting;
+
+      synchronized(this) {
+	monitors   = new ArrayList<BuildMonitor>(m_Monitors);
+	numWaiting = m_NumWaiting;
+      }
+      if (monitors.size() < numWaiting)
+	return false;
+      for (BuildMonitor monitor: monitors) {
+	if (!monitor.isCancelled())
+	  return false;
+      }
+
+      return true;
+    }
+
+    /**
+     * Forwards the progress to the waiting callers.
+     *
+     * @param processed	the number of predictions processed so far
+     * @param total	the total number of predictions
+     */
+    @Override
+    public void progress(int processed, int total) {
+      for (BuildMonitor monitor: getMonitors())
+	monitor.progress(processed, total);
+    }
+
+    /**
+     * Builds the matrix.
+     *
+     * @return		the matrix, null if cancelled
+     */
+    @Override
+    public ConfusionMatrix call() {
+      return build(m_Predictions, m_ClassAttribute, this);
+    }
+
+    /**
+     * Performs the build in the current thread.
+     */
+    public void run() {
+      m_Task.run();
+    }
+
+    /**
+     * Waits for the build to finish, until the monitor of the caller
+     * cancels or the thread gets interrupted.
+     *
+     * @param monitor	the monitor of the caller, can be null
+     * @return		the matrix, null if the build or the caller got
+     * 			cancelled
+     * @throws RuntimeException	if the build failed
+     */
+    public ConfusionMatrix await(BuildMonitor monitor) {
+      while (true) {
+	try {
+	  return m_Task.get(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	catch (TimeoutException e) {
+	  if ((monitor != null) && monitor.isCancelled())
+	    return null;
+	}
+	catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  return null;
+	}
+	catch (ExecutionException e) {
+	  if (e.getCause() instanceof RuntimeException)
+	    throw (RuntimeException) e.getCause();
+	  if (e.getCause() instanceof Error)
+	    throw (Error) e.getCause();
+	  throw new IllegalStateException("Failed to build matrix!", e.getCause());
+	}
+      }
+    }
+  }
+
+  /** the cached matrices. */
+  protected static Map<Key, Entry> m_Cache = new HashMap<Key, Entry>();
+
+  /** the builds that are still running. */
+  protected static Map<Key, PendingBuild> m_Pending = new HashMap<Key, PendingBuild>();
+
+  /** the queue for collected predictions. */
+  protected static ReferenceQueue<List<Prediction>> m_Queue = new ReferenceQueue<List<Prediction>>();
+
+  /**
+   * Removes the entries whose predictions have been garbage collected.
+   */
+  protected static void purge() {
+    Reference<? extends List<Prediction>>	ref;
+
+    while ((ref = m_Queue.poll()) != null)
+      m_Cache.remove(ref);
+  }
+
+  /**
+   * Returns the matrix for the predictions, builds and caches it if
+   * necessary. A cached matrix gets rebuilt if the number of predictions
+   * has changed.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @return		the (shared) matrix
+   */
+  public static ConfusionMatrix get(List<Prediction> preds, Attribute classAtt) {
+    return get(preds, classAtt, null);
+  }
+
+  /**
+   * Returns the matrix for the predictions, builds and caches it if
+   * necessary. A cached matrix gets rebuilt if the number of predictions
+   * has changed. The matrix gets built without holding the lock of the
+   * cache. If a build for the same predictions is running already, the
+   * caller waits for it instead (see {@link PendingBuild}).
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param monitor	for reporting progress and cancelling the build, can
+   * 			be null
+   * @return		the (shared) matrix, null if cancelled
+   * @throws RuntimeException	if the build failed
+   */
+  public static ConfusionMatrix get(List<Prediction> preds, Attribute classAtt, BuildMonitor monitor) {
+    ConfusionMatrix	result;
+    Entry		entry;
+    Key			key;
+    PendingBuild	pending;
+    boolean		owner;
+
+    while (true) {
+      synchronized(ConfusionMatrixCache.class) {
+	purge();
+	result = null;
+	key    = new Key(preds, classAtt, null);
+	entry  = m_Cache.get(key);
+	if ((entry != null) && (entry.numPredictions == preds.size()))
+	  result = entry.matrix.get();
+	if (result != null)
+	  return result;
+	pending = m_Pending.get(key);
+	owner   = (pending == null) || (pending.m_NumPredictions != preds.size());
+	if (owner) {
+	  pending = new PendingBuild(preds, classAtt);
+	  m_Pending.put(key, pending);
+	}
+	pending.join(monitor);
+      }
+
+      try {
+	if (owner)
+	  pending.run();
+	result = pending.await(monitor);
+      }
+      finally {
+	pending.leave(monitor);
+	if (owner) {
+	  synchronized(ConfusionMatrixCache.class) {
+	    if (m_Pending.get(key) == pending)
+	      m_Pending.remove(key);
+	    if (result != null) {
+	      entry                = new Entry();
+	      entry.matrix         = new SoftReference<ConfusionMatrix>(result);
+	      entry.numPredictions = preds.size();
+	      m_Cache.put(new Key(preds, classAtt, m_Queue), entry);
+	    }
+	  }
+	}
+      }
+
+      if ((monitor != null) && monitor.isCancelled())
+	return null;
+      if (Thread.currentThread().isInterrupted())
+	return null;
+      // build got cancelled by the other callers before this one joined?
+      if (result != null)
+	return result;
+    }
+  }
+
+  /**
+   * Builds the matrix from the predictions, reporting progress every
+   * {@link #PROGRESS_INTERVAL} predictions. The representation of the
+   * counts depends on the available heap (see {@link MatrixFootprint}).
+   * If the build gets cancelled or fails, the partial matrix gets released
+   * (see {@link ConfusionMatrix#release(ConfusionMatrix)}).
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param monitor	for reporting progress and cancelling the build, can
+   * 			be null
+   * @return		the matrix, null if cancelled
+   */
+  protected static ConfusionMatrix build(List<Prediction> preds, Attribute classAtt, BuildMonitor monitor) {
+    ConfusionMatrix			result;
+    ConfusionMatrixMetrics.Sample	sample;
+    MatrixFootprint			footprint;
+    int					representation;
+    int					total;
+    int					count;
+
+    footprint = new MatrixFootprint(classAtt, preds.size());
+    if (monitor == null)
+      return ConfusionMatrix.create(preds, classAtt, footprint);
+
+    sample         = ConfusionMatrixMetrics.start();
+    representation = ConfusionMatrix.getRepresentation(preds, footprint);
+    result = ConfusionMatrix.newInstance(classAtt, null, new ArrayList<Prediction>(), null, representation);
+    total  = preds.size();
+    count  = 0;
+    try {
+      for (Prediction pred: preds) {
+	if (count % PROGRESS_INTERVAL == 0) {
+	  if (monitor.isCancelled()) {
+	    // partial matrix, e.g., off-heap storage with a temp file
+	    ConfusionMatrix.release(result);
+	    return null;
+	  }
+	  monitor.progress(count, total);
+	}
+	result.add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+	count++;
+      }
+    }
+    catch (RuntimeException e) {
+      ConfusionMatrix.release(result);
+      throw e;
+    }
+    result.invalidate();
+    monitor.progress(total, total);
+    ConfusionMatrixMetrics.BUILD.record(sample, total, result.getNumClasses());
+
+    return result;
+  }
+
+  /**
+   * Returns the number of cached entries (incl. ones whose matrix may have
+   * been reclaimed already).
+   *
+   * @return		the number of entries
+   */
+  public static synchronized int size() {
+    purge();
+    return m_Cache.size();
+  }
+
+  /**
+   * Removes all cached matrices. Builds that are still running are not
+   * affected.
+   */
+  public static synchronized void clear() {
+    m_Cache.clear();
+  }
+}
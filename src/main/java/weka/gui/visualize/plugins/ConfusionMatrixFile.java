@@ -0,0 +1,452 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixFile.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes confusion matrices in a compact binary format. All
+ * numbers are stored as little-endian primitives:
+ * <pre>
+ * header:
+ *   int     magic ({@link #MAGIC})
+ *   int     version ({@link #VERSION})
+ *   int     number of classes n
+ *   int     storage ({@link #STORAGE_DENSE} or {@link #STORAGE_SPARSE})
+ *   long    number of stored cells
+ *   double  minimum count
+ *   double  maximum count
+ * label table:
+ *   string  name of the class attribute
+ *   n x string  class labels
+ *   (string = int number of bytes + UTF-8 bytes)
+ *   padding to multiple of 8 bytes
+ * totals:
+ *   n x double  total count per actual class label
+ * counts (dense):
+ *   n x n x double  counts, row by row
+ * counts (sparse, only non-zero cells):
+ *   (n+1) x long  start of each row in the cell blocks
+ *   m x int  predicted class label of each cell, ascending per row
+ *   padding to multiple of 8 bytes
+ *   m x double  count of each cell
+ * </pre>
+ * Files get opened with {@link #map(File)}, which memory-maps the counts
+ * rather than reading them (see {@link MappedConfusionMatrix}). Empty
+ * dense files for accumulating the counts in place get created with
+ * {@link #createDense(File, String, String[])} (see
+ * {@link OffHeapConfusionMatrix}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixFile {
+
+  /** the file extension. */
+  public final static String EXTENSION = ".cmb";
+
+  /** the magic number. */
+  public final static int MAGIC = 0x424D4346;
+
+  /** the version of the format. */
+  public final static int VERSION = 1;
+
+  /** dense storage of the counts. */
+  public final static int STORAGE_DENSE = 0;
+
+  /** sparse storage of the counts. */
+  public final static int STORAGE_SPARSE = 1;
+
+  /** choose the storage that results in the smaller file. */
+  public final static int STORAGE_AUTO = -1;
+
+  /** the size of the header in bytes. */
+  public final static int HEADER_SIZE = 40;
+
+  /** the offset of the minimum count in the header. */
+  public final static int OFFSET_MIN = 24;
+
+  /** the offset of the maximum count in the header. */
+  public final static int OFFSET_MAX = 32;
+
+  /** the size of the write buffer. */
+  public final static int BUFFER_SIZE = 64 * 1024;
+
+  /** the charset for strings. */
+  public final static Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Buffered, little-endian output to a file channel.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected static class Output {
+
+    /** the channel to write to. */
+    protected FileChannel m_Channel;
+
+    /** the buffer. */
+    protected ByteBuffer m_Buffer;
+
+    /** the number of bytes written so far. */
+    protected long m_Position;
+
+    /**
+     * Initializes the output.
+     *
+     * @param channel	the channel to write to
+     */
+    public Output(FileChannel channel) {
+      m_Channel = channel;
+      m_Buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Makes sure that the buffer has room for the number of bytes.
+     *
+     * @param bytes	the number of bytes
+     * @throws IOException	if flushing fails
+     */
+    protected void ensure(int bytes) throws IOException {
+      if (m_Buffer.remaining() < bytes)
+	flush();
+    }
+
+    /**
+     * Writes the int.
+     *
+     * @param value	the value
+     * @throws IOException	if writing fails
+     */
+    public void putInt(int value) throws IOException {
+      ensure(4);
+      m_Buffer.putInt(value);
+      m_Position += 4;
+    }
+
+    /**
+     * Writes the long.
+     *
+     * @param value	the value
+     * @throws IOException	if writing fails
+     */
+    public void putLong(long value) throws IOException {
+      ensure(8);
+      m_Buffer.putLong(value);
+      m_Position += 8;
+    }
+
+    /**
+     * Writes the double.
+     *
+     * @param value	the value
+     * @throws IOException	if writing fails
+     */
+    public void putDouble(double value) throws IOException {
+      ensure(8);
+      m_Buffer.putDouble(value);
+      m_Position += 8;
+    }
+
+    /**
+     * Writes the string (number of bytes, UTF-8 bytes).
+     *
+     * @param value	the string
+     * @throws IOException	if writing fails
+     */
+    public void putString(String value) throws IOException {
+      byte[]	bytes;
+      int	offset;
+      int	len;
+
+      bytes = value.getBytes(UTF8);
+      putInt(bytes.length);
+      offset = 0;
+      while (offset < bytes.length) {
+	ensure(1);
+	len = Math.min(m_Buffer.remaining(), bytes.length - offset);
+	m_Buffer.put(bytes, offset, len);
+	offset += len;
+      }
+      m_Position += bytes.length;
+    }
+
+    /**
+     * Writes zero bytes until the position is a multiple of 8.
+     *
+     * @throws IOException	if writing fails
+     */
+    public void align() throws IOException {
+      ensure(8);
+      while (m_Position % 8 != 0) {
+	m_Buffer.put((byte) 0);
+	m_Position++;
+      }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException	if writing fails
+     */
+    public void flush() throws IOException {
+      m_Buffer.flip();
+      while (m_Buffer.hasRemaining())
+	m_Channel.write(m_Buffer);
+      m_Buffer.clear();
+    }
+  }
+
+  /**
+   * Returns the number of non-zero cells.
+   *
+   * @param matrix	the matrix to inspect
+   * @return		the number of cells
+   */
+  public static long countNonZero(ConfusionMatrix matrix) {
+    long	result;
+    double[]	row;
+    int		i;
+    int		n;
+
+    result = 0;
+    row    = new double[matrix.getNumClasses()];
+    for (i = 0; i < matrix.getNumClasses(); i++) {
+      matrix.getRow(i, row);
+      for (n = 0; n < matrix.getNumClasses(); n++) {
+	if (row[n] != 0)
+	  result++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes header and label table, including the padding.
+   *
+   * @param out		the output to write to
+   * @param storage	the storage, e.g., {@link #STORAGE_DENSE}
+   * @param numCells	the number of stored cells
+   * @param min		the minimum count
+   * @param max		the maximum count
+   * @param name	the name of the class attribute
+   * @param labels	the class labels
+   * @throws IOException	if writing fails
+   */
+  protected static void writeHeader(Output out, int storage, long numCells, double min, double max, String name, String[] labels) throws IOException {
+    int		i;
+
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putInt(labels.length);
+    out.putInt(storage);
+    out.putLong(numCells);
+    out.putDouble(min);
+    out.putDouble(max);
+
+    out.putString(name);
+    for (i = 0; i < labels.length; i++)
+      out.putString(labels[i]);
+    out.align();
+  }
+
+  /**
+   * Creates a file with dense storage in which all counts (and totals) are
+   * 0. The counts don't get written, the file just gets extended to its
+   * full size, i.e., file systems that support sparse files only allocate
+   * the blocks that get written to when the counts get filled in via a
+   * memory-mapping.
+   *
+   * @param file	the file to create (gets overwritten)
+   * @param name	the name of the class attribute
+   * @param labels	the class labels
+   * @return		the offset of the totals, the counts follow directly
+   * 			after them
+   * @throws IOException	if writing fails
+   */
+  public static long createDense(File file, String name, String[] labels) throws IOException {
+    RandomAccessFile	raf;
+    Output		out;
+    long		numClasses;
+    long		result;
+
+    numClasses = labels.length;
+    raf        = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      out = new Output(raf.getChannel());
+      writeHeader(out, STORAGE_DENSE, numClasses * numClasses, 0.0, 0.0, name, labels);
+      out.flush();
+      result = out.m_Position;
+      raf.setLength(result + numClasses * 8L + numClasses * numClasses * 8L);
+    }
+    finally {
+      raf.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes the matrix to the file, using the storage that results in the
+   * smaller file.
+   *
+   * @param matrix	the matrix to write
+   * @param file	the file to write to
+   * @throws IOException	if writing fails
+   */
+  public static void write(ConfusionMatrix matrix, File file) throws IOException {
+    write(matrix, file, STORAGE_AUTO);
+  }
+
+  /**
+   * Writes the matrix to the file.
+   *
+   * @param matrix	the matrix to write
+   * @param file	the file to write to
+   * @param storage	the storage to use, e.g., {@link #STORAGE_SPARSE}
+   * @throws IOException	if writing fails
+   */
+  public static void write(ConfusionMatrix matrix, File file, int storage) throws IOException {
+    FileOutputStream	stream;
+    Output		out;
+    int			numClasses;
+    long		nonZero;
+    long		dense;
+    long		sparse;
+    long		offset;
+    double[]		row;
+    int			i;
+    int			n;
+
+    numClasses = matrix.getNumClasses();
+    row        = new double[numClasses];
+    nonZero    = countNonZero(matrix);
+    dense      = (long) numClasses * (long) numClasses * 8L;
+    sparse     = (numClasses + 1L) * 8L + nonZero * 12L + 4L;
+    if (storage == STORAGE_AUTO)
+      storage = (sparse < dense) ? STORAGE_SPARSE : STORAGE_DENSE;
+    if ((storage != STORAGE_DENSE) && (storage != STORAGE_SPARSE))
+      throw new IllegalArgumentException("Unknown storage: " + storage);
+
+    stream = new FileOutputStream(file);
+    try {
+      out = new Output(stream.getChannel());
+
+      writeHeader(
+	  out, storage, (storage == STORAGE_DENSE) ? (long) numClasses * (long) numClasses : nonZero,
+	  matrix.getMin(), matrix.getMax(), matrix.getClassAttribute().name(), matrix.getLabels());
+
+      // totals
+      for (i = 0; i < numClasses; i++)
+	out.putDouble(matrix.getTotal(i));
+
+      // counts
+      if (storage == STORAGE_DENSE) {
+	for (i = 0; i < numClasses; i++) {
+	  matrix.getRow(i, row);
+	  for (n = 0; n < numClasses; n++)
+	    out.putDouble(row[n]);
+	}
+      }
+      else {
+	offset = 0;
+	for (i = 0; i < numClasses; i++) {
+	  out.putLong(offset);
+	  matrix.getRow(i, row);
+	  for (n = 0; n < numClasses; n++) {
+	    if (row[n] != 0)
+	      offset++;
+	  }
+	}
+	out.putLong(offset);
+	for (i = 0; i < numClasses; i++) {
+	  matrix.getRow(i, row);
+	  for (n = 0; n < numClasses; n++) {
+	    if (row[n] != 0)
+	      out.putInt(n);
+	  }
+	}
+	out.align();
+	for (i = 0; i < numClasses; i++) {
+	  matrix.getRow(i, row);
+	  for (n = 0; n < numClasses; n++) {
+	    if (row[n] != 0)
+	      out.putDouble(row[n]);
+	  }
+	}
+      }
+
+      out.flush();
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Opens the file, memory-mapping the counts.
+   *
+   * @param file	the file to open
+   * @return		the matrix
+   * @throws IOException	if opening fails or not a valid file
+   */
+  public static MappedConfusionMatrix map(File file) throws IOException {
+    return new MappedConfusionMatrix(file);
+  }
+
+  /**
+   * Converts a matrix into the binary format or, if only a binary file is
+   * supplied, displays it in the table and heatmap visualizations.
+   * <p/>
+   * Usage: <code>input output.cmb</code> or <code>input.cmb</code>.
+   * The input can be anything that {@link BatchRenderer} can load.
+   *
+   * @param args	the files
+   * @throws Exception	if conversion or loading fails
+   */
+  public static void main(String[] args) throws Exception {
+    ConfusionMatrix	matrix;
+
+    if (args.length == 2) {
+      matrix = new BatchRenderer().load(new File(args[0]));
+      write(matrix, new File(args[1]));
+    }
+    else if (args.length == 1) {
+      matrix = map(new File(args[0]));
+      new TableVisualization().display(matrix, args[0]);
+      new HeatmapVisualization().display(matrix, args[0]);
+    }
+    else {
+      System.err.println("Usage: " + ConfusionMatrixFile.class.getName() + " <input> <output" + EXTENSION + ">");
+      System.err.println("   or: " + ConfusionMatrixFile.class.getName() + " <input" + EXTENSION + ">");
+      System.exit(1);
+    }
+  }
+}
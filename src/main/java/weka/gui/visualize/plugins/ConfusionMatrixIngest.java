@@ -0,0 +1,354 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixIngest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Builds a confusion matrix from predictions that arrive as label strings
+ * (e.g., parsed from log files), as characters or UTF-8 bytes. The labels
+ * get resolved via a {@link LabelIndex} and the weights get accumulated
+ * per cell (actual, predicted) right away, i.e., neither a String nor a
+ * {@link Prediction} gets created per record and the memory only depends on
+ * the number of distinct cells, not on the number of records. If the index
+ * is growing, labels not declared upfront get appended in order of
+ * appearance (the indices of existing labels don't change), otherwise
+ * records with unknown labels get skipped.
+ * <p/>
+ * Example:
+ * <pre>
+ * ingest = new ConfusionMatrixIngest(new LabelIndex(classAtt, false), classAtt.name());
+ * while (...)
+ *   ingest.add(line, 0, tab, line, tab + 1, line.length, 1.0);
+ * matrix = ingest.build();
+ * </pre>
+ * Not thread-safe.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixIngest {
+
+  /** the initial number of slots for the cells (power of 2). */
+  public final static int INITIAL_SLOTS = 1024;
+
+  /** the maximum number of slots for the cells (power of 2). */
+  public final static int MAX_SLOTS = 1 << 30;
+
+  /** the marker for an empty slot. */
+  protected final static long EMPTY = -1L;
+
+  /** the label index. */
+  protected LabelIndex m_Index;
+
+  /** the name of the class attribute. */
+  protected String m_Name;
+
+  /** the cells (actual in upper, predicted in lower 32 bits), open addressing. */
+  protected long[] m_Cells;
+
+  /** the accumulated weights of the cells. */
+  protected double[] m_Counts;
+
+  /** the number of distinct cells. */
+  protected int m_NumCells;
+
+  /** the number of records. */
+  protected long m_Size;
+
+  /** the number of skipped records. */
+  protected long m_NumSkipped;
+
+  /** the sum of the weights. */
+  protected double m_Sum;
+
+  /** whether all weights are integral and non-negative. */
+  protected boolean m_Integral;
+
+  /**
+   * Initializes the ingest with an empty, growing index.
+   *
+   * @param name	the name of the class attribute
+   */
+  public ConfusionMatrixIngest(String name) {
+    this(new LabelIndex(), name);
+  }
+
+  /**
+   * Initializes the ingest.
+   *
+   * @param index	the label index to use
+   * @param name	the name of the class attribute
+   */
+  public ConfusionMatrixIngest(LabelIndex index, String name) {
+    super();
+
+    m_Index    = index;
+    m_Name     = name;
+    m_Cells    = newCells(INITIAL_SLOTS);
+    m_Counts   = new double[INITIAL_SLOTS];
+    m_Integral = true;
+  }
+
+  /**
+   * Returns the label index.
+   *
+   * @return		the index
+   */
+  public LabelIndex getIndex() {
+    return m_Index;
+  }
+
+  /**
+   * Returns the number of records added.
+   *
+   * @return		the number of records
+   */
+  public long size() {
+    return m_Size;
+  }
+
+  /**
+   * Returns the number of distinct cells (actual, predicted) added so far.
+   *
+   * @return		the number of cells
+   */
+  public int getNumCells() {
+    return m_NumCells;
+  }
+
+  /**
+   * Returns the number of records that got skipped due to unknown labels.
+   *
+   * @return		the number of records
+   */
+  public long getNumSkipped() {
+    return m_NumSkipped;
+  }
+
+  /**
+   * Returns empty slots for cells.
+   *
+   * @param slots	the number of slots
+   * @return		the slots
+   */
+  protected static long[] newCells(int slots) {
+    long[]	result;
+
+    result = new long[slots];
+    Arrays.fill(result, EMPTY);
+
+    return result;
+  }
+
+  /**
+   * Returns the slot of the cell, either the one occupied by it or the
+   * empty one where it belongs.
+   *
+   * @param cells	the slots
+   * @param cell	the cell
+   * @return		the slot
+   */
+  protected static int slotOf(long[] cells, long cell) {
+    int		mask;
+    int		slot;
+
+    mask = cells.length - 1;
+    slot = LabelIndex.mix(31 * (int) (cell >>> 32) + (int) cell) & mask;
+    while ((cells[slot] != EMPTY) && (cells[slot] != cell))
+      slot = (slot + 1) & mask;
+
+    return slot;
+  }
+
+  /**
+   * Doubles the number of slots, rehashing the cells.
+   *
+   * @throws IllegalStateException	if the maximum number of slots is reached
+   */
+  protected void grow() {
+    long[]	cells;
+    double[]	counts;
+    int		slot;
+    int		i;
+
+    if (m_Cells.length >= MAX_SLOTS)
+      throw new IllegalStateException(
+	  "Too many distinct cells (actual, predicted) to ingest: " + m_NumCells
+	  + " (labels: " + m_Index.getNumLabels() + ")");
+
+    cells  = newCells(m_Cells.length * 2);
+    counts = new double[cells.length];
+    for (i = 0; i < m_Cells.length; i++) {
+      if (m_Cells[i] == EMPTY)
+	continue;
+      slot         = slotOf(cells, m_Cells[i]);
+      cells[slot]  = m_Cells[i];
+      counts[slot] = m_Counts[i];
+    }
+    m_Cells  = cells;
+    m_Counts = counts;
+  }
+
+  /**
+   * Adds the record with the labels resolved already.
+   *
+   * @param actual	the 0-based index of the actual label, -1 if unknown
+   * @param predicted	the 0-based index of the predicted label, -1 if unknown
+   * @param weight	the weight
+   * @return		true if added, false if skipped
+   * @throws IllegalStateException	if too many distinct cells got added
+   */
+  public boolean add(int actual, int predicted, double weight) {
+    long	cell;
+    int		slot;
+
+    if ((actual < 0) || (predicted < 0)) {
+      m_NumSkipped++;
+      return false;
+    }
+
+    cell = ((long) actual << 32) | predicted;
+    slot = slotOf(m_Cells, cell);
+    if (m_Cells[slot] == EMPTY) {
+      // keep at most half full
+      if (2L * (m_NumCells + 1) > m_Cells.length) {
+	grow();
+	slot = slotOf(m_Cells, cell);
+      }
+      m_Cells[slot] = cell;
+      m_NumCells++;
+    }
+    m_Counts[slot] += weight;
+    m_Size++;
+    m_Sum += weight;
+    if (m_Integral && ((weight < 0) || (weight != Math.rint(weight))))
+      m_Integral = false;
+
+    return true;
+  }
+
+  /**
+   * Adds the record.
+   *
+   * @param actual	the actual label
+   * @param predicted	the predicted label
+   * @param weight	the weight
+   * @return		true if added, false if skipped
+   */
+  public boolean add(CharSequence actual, CharSequence predicted, double weight) {
+    return add(actual, 0, actual.length(), predicted, 0, predicted.length(), weight);
+  }
+
+  /**
+   * Adds the record, with the labels stored in ranges of the sequences.
+   *
+   * @param actual	the sequence with the actual label
+   * @param actualStart	the first character of the actual label (incl)
+   * @param actualEnd	the last character of the actual label (excl)
+   * @param predicted	the sequence with the predicted label
+   * @param predictedStart	the first character of the predicted label (incl)
+   * @param predictedEnd	the last character of the predicted label (excl)
+   * @param weight	the weight
+   * @return		true if added, false if skipped
+   */
+  public boolean add(CharSequence actual, int actualStart, int actualEnd, CharSequence predicted, int predictedStart, int predictedEnd, double weight) {
+    return add(m_Index.indexOf(actual, actualStart, actualEnd), m_Index.indexOf(predicted, predictedStart, predictedEnd), weight);
+  }
+
+  /**
+   * Adds the record, with the labels stored UTF-8 encoded in ranges of the
+   * byte arrays.
+   *
+   * @param actual	the bytes with the actual label
+   * @param actualStart	the first byte of the actual label (incl)
+   * @param actualEnd	the last byte of the actual label (excl)
+   * @param predicted	the bytes with the predicted label
+   * @param predictedStart	the first byte of the predicted label (incl)
+   * @param predictedEnd	the last byte of the predicted label (excl)
+   * @param weight	the weight
+   * @return		true if added, false if skipped
+   */
+  public boolean add(byte[] actual, int actualStart, int actualEnd, byte[] predicted, int predictedStart, int predictedEnd, double weight) {
+    return add(
+	m_Index.indexOf(actual, actualStart, actualEnd - actualStart),
+	m_Index.indexOf(predicted, predictedStart, predictedEnd - predictedStart),
+	weight);
+  }
+
+  /**
+   * Returns the class attribute with the labels of the index.
+   *
+   * @return		the attribute
+   */
+  public Attribute getClassAttribute() {
+    return m_Index.toAttribute(m_Name);
+  }
+
+  /**
+   * Builds the matrix from the records added so far. The ingest can be
+   * continued afterwards.
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix build() {
+    return build(null);
+  }
+
+  /**
+   * Builds the matrix (and the cost totals) from the records added so far,
+   * using the representation that fits into the available heap (see
+   * {@link MatrixFootprint}).
+   *
+   * @param costs	the costs (actual, predicted), null if none
+   * @return		the matrix
+   * @throws IllegalArgumentException	if the costs don't match the labels
+   * @see		ConfusionMatrixMetrics#BUILD
+   */
+  public ConfusionMatrix build(double[][] costs) {
+    ConfusionMatrix			result;
+    ConfusionMatrixMetrics.Sample	sample;
+    MatrixFootprint			footprint;
+    Attribute				classAtt;
+    int					i;
+
+    sample    = ConfusionMatrixMetrics.start();
+    classAtt  = getClassAttribute();
+    // each distinct cell gets added only once
+    footprint = new MatrixFootprint(classAtt, m_NumCells);
+    if (costs != null)
+      costs = ConfusionMatrix.check(costs, classAtt.numValues());
+    result = ConfusionMatrix.newInstance(
+	classAtt, m_Index.getLabels(), new ArrayList<Prediction>(), costs,
+	footprint.getRepresentation(m_Integral && (m_Sum <= Integer.MAX_VALUE)));
+    for (i = 0; i < m_Cells.length; i++) {
+      if (m_Cells[i] != EMPTY)
+	result.add((int) (m_Cells[i] >>> 32), (int) m_Cells[i], m_Counts[i]);
+    }
+    result.invalidate();
+    ConfusionMatrixMetrics.BUILD.record(sample, m_NumCells, classAtt.numValues());
+
+    return result;
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixMetrics.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Timings of building matrices and rendering visualizations, see
+ * {@link #BUILD}, {@link #HEATMAP}, {@link #TEXT} and {@link #TABLE}.
+ * <p/>
+ * Disabled by default, in which case {@link #start()} returns null and
+ * recording does nothing; loading the class neither starts the platform
+ * MBean server nor registers anything. Enable via {@link #setEnabled(boolean)}
+ * or with the system property {@link #PROPERTY_ENABLED} set to "true".
+ * Once enabled, the metrics get published via JMX under
+ * {@link #OBJECT_NAME} (one MBean per timer, with "name=..." appended), where
+ * they can be disabled and reset. Use {@link #register()} to publish them
+ * without enabling them, e.g., to enable them from a JMX console later on.
+ * <p/>
+ * If the names are already taken (e.g., when the class got loaded again by
+ * another classloader), the existing MBeans are left in place.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixMetrics {
+
+  /** the system property for enabling the metrics. */
+  public final static String PROPERTY_ENABLED = "weka.confusionmatrix.metrics";
+
+  /** the JMX object name. */
+  public final static String OBJECT_NAME = "weka.gui.visualize.plugins:type=ConfusionMatrixMetrics";
+
+  /**
+   * The start of a recorded operation.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Sample {
+
+    /** the start time in nsec. */
+    public long startNanos;
+
+    /** the bytes allocated by the thread so far, -1 if not available. */
+    public long startBytes;
+  }
+
+  /** building a matrix (items: predictions). */
+  public final static MetricsTimer BUILD = new MetricsTimer("build");
+
+  /** generating a heatmap image (items: cells). */
+  public final static MetricsTimer HEATMAP = new MetricsTimer("heatmap");
+
+  /** generating a text report (items: cells). */
+  public final static MetricsTimer TEXT = new MetricsTimer("text");
+
+  /** generating a table (items: cells). */
+  public final static MetricsTimer TABLE = new MetricsTimer("table");
+
+  /** whether metrics get recorded. */
+  protected static volatile boolean m_Enabled;
+
+  /** whether the MBeans have been registered. */
+  protected static boolean m_Registered;
+
+  static {
+    if (Boolean.getBoolean(PROPERTY_ENABLED))
+      setEnabled(true);
+  }
+
+  /**
+   * Returns whether metrics get recorded.
+   *
+   * @return		true if enabled
+   */
+  public static boolean isEnabled() {
+    return m_Enabled;
+  }
+
+  /**
+   * Sets whether to record metrics. Enabling them registers the MBeans, if
+   * not registered yet.
+   *
+   * @param value	true if to enable
+   */
+  public static void setEnabled(boolean value) {
+    if (value)
+      register();
+    m_Enabled = value;
+  }
+
+  /**
+   * Returns all timers.
+   *
+   * @return		the timers
+   */
+  public static List<MetricsTimer> getTimers() {
+    List<MetricsTimer>	result;
+
+    result = new ArrayList<MetricsTimer>();
+    result.add(BUILD);
+    result.add(HEATMAP);
+    result.add(TEXT);
+    result.add(TABLE);
+
+    return result;
+  }
+
+  /**
+   * Resets all timers.
+   */
+  public static void reset() {
+    for (MetricsTimer timer: getTimers())
+      timer.reset();
+  }
+
+  /**
+   * Registers the MBeans with the platform MBean server, if not registered
+   * yet. Names that are already taken count as registered.
+   *
+   * @return		true if registered, false if registration failed
+   */
+  public static synchronized boolean register() {
+    MBeanServer		server;
+
+    if (m_Registered)
+      return true;
+
+    try {
+      server = ManagementFactory.getPlatformMBeanServer();
+      register(server,
+	  new StandardMBean(new ConfusionMatrixMetricsMBean() {
+	    @Override
+	    public boolean isEnabled() {
+	      return ConfusionMatrixMetrics.isEnabled();
+	    }
+	    @Override
+	    public void setEnabled(boolean value) {
+	      ConfusionMatrixMetrics.setEnabled(value);
+	    }
+	    @Override
+	    public void reset() {
+	      ConfusionMatrixMetrics.reset();
+	    }
+	  }, ConfusionMatrixMetricsMBean.class),
+	  new ObjectName(OBJECT_NAME));
+      for (MetricsTimer timer: getTimers())
+	register(server, timer, new ObjectName(OBJECT_NAME + ",name=" + timer.getName()));
+      m_Registered = true;
+    }
+    catch (Exception e) {
+      System.err.println("Failed to register confusion matrix metrics with JMX: " + e);
+    }
+
+    return m_Registered;
+  }
+
+  /**
+   * Registers the MBean under the name, unless the name is already taken.
+   *
+   * @param server	the server to register with
+   * @param mbean	the MBean to register
+   * @param name	the name to use
+   * @throws Exception	if registration fails
+   */
+  protected static void register(MBeanServer server, Object mbean, ObjectName name) throws Exception {
+    if (server.isRegistered(name))
+      return;
+    try {
+      server.registerMBean(mbean, name);
+    }
+    catch (InstanceAlreadyExistsException e) {
+      // registered concurrently, e.g., by another classloader
+    }
+  }
+
+  /**
+   * Starts recording an operation.
+   *
+   * @return		the sample to pass on to the timer, null if disabled
+   */
+  public static Sample start() {
+    Sample	result;
+
+    if (!m_Enabled)
+      return null;
+
+    result            = new Sample();
+    result.startBytes = getAllocatedBytes();
+    result.startNanos = System.nanoTime();
+
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far.
+   *
+   * @return		the bytes, -1 if not supported by the JVM or disabled
+   */
+  public static long getAllocatedBytes() {
+    ThreadMXBean			bean;
+    com.sun.management.ThreadMXBean	sunBean;
+
+    try {
+      bean = ManagementFactory.getThreadMXBean();
+      if (!(bean instanceof com.sun.management.ThreadMXBean))
+	return -1;
+      sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+	return -1;
+      return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    catch (LinkageError e) {
+      // com.sun.management not available, e.g., on non-HotSpot JVMs
+      return -1;
+    }
+    catch (UnsupportedOperationException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixMetricsMBean.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+/**
+ * JMX interface for controlling the metrics of {@link ConfusionMatrixMetrics}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public interface ConfusionMatrixMetricsMBean {
+
+  /**
+   * Returns whether metrics get recorded.
+   *
+   * @return		true if enabled
+   */
+  public boolean isEnabled();
+
+  /**
+   * Sets whether to record metrics.
+   *
+   * @param value	true if to enable
+   */
+  public void setEnabled(boolean value);
+
+  /**
+   * Resets all timers.
+   */
+  public void reset();
+}
@@ -0,0 +1,551 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixSlices.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Computes the confusion matrices of slices of the predictions, e.g., per
+ * country or device, to find the segments where a model fails. The slices
+ * are defined by the value of an attribute of the instances that the
+ * predictions were made for (same order), or by an arbitrary group index
+ * per prediction.
+ * <p/>
+ * All slices get accumulated in a single pass over the predictions, split
+ * into chunks that get processed in parallel. Each worker fills its own
+ * flat, row-major count arrays per slice (only for the slices that occur in
+ * its chunk), which get summed up afterwards. The number of workers is
+ * reduced if their arrays wouldn't fit into the available heap (see
+ * {@link MatrixFootprint}).
+ * <p/>
+ * Example:
+ * <pre>
+ * slices = new ConfusionMatrixSlices(test.classAttribute());
+ * slices.execute(predictions, test, test.attribute("country").index());
+ * for (int slice: slices.getSortedByDrop())
+ *   System.out.println(slices.getSlice(slice) + ": " + slices.getAccuracyDrop(slice));
+ * </pre>
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixSlices {
+
+  /** the class attribute. */
+  protected Attribute m_ClassAttribute;
+
+  /** the labels shared by all matrices. */
+  protected String[] m_Labels;
+
+  /** the number of threads to use. */
+  protected int m_NumThreads = Runtime.getRuntime().availableProcessors();
+
+  /** the names of the slices. */
+  protected String[] m_Slices;
+
+  /** the counts per slice (row-major, null if empty). */
+  protected double[][] m_Counts;
+
+  /** the total count per slice. */
+  protected double[] m_Totals;
+
+  /** the correct count per slice. */
+  protected double[] m_Correct;
+
+  /** the number of predictions that didn't belong to any slice. */
+  protected long m_NumSkipped;
+
+  /** the total count of all slices. */
+  protected double m_Total;
+
+  /** the correct count of all slices. */
+  protected double m_TotalCorrect;
+
+  /** the matrix over all slices. */
+  protected ConfusionMatrix m_Overall;
+
+  /**
+   * Initializes the slices.
+   *
+   * @param classAtt	the class attribute of the predictions
+   */
+  public ConfusionMatrixSlices(Attribute classAtt) {
+    super();
+
+    int		i;
+
+    m_ClassAttribute = classAtt;
+    m_Labels         = new String[classAtt.numValues()];
+    for (i = 0; i < m_Labels.length; i++)
+      m_Labels[i] = classAtt.value(i);
+  }
+
+  /**
+   * Returns the class attribute.
+   *
+   * @return		the attribute
+   */
+  public Attribute getClassAttribute() {
+    return m_ClassAttribute;
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, &lt;= 0 for number of CPUs
+   */
+  public void setNumThreads(int value) {
+    if (value <= 0)
+      value = Runtime.getRuntime().availableProcessors();
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns a task that accumulates a chunk of the predictions.
+   *
+   * @param preds	the predictions
+   * @param slices	the slice index per prediction (-1 to skip)
+   * @param numSlices	the number of slices
+   * @param from	the first prediction of the chunk (incl)
+   * @param to		the last prediction of the chunk (excl)
+   * @return		the task, returns the counts per slice
+   */
+  protected Callable<double[][]> newChunkTask(final List<Prediction> preds, final int[] slices, final int numSlices, final int from, final int to) {
+    return new Callable<double[][]>() {
+      @Override
+      public double[][] call() throws Exception {
+	double[][]	result;
+	double[]	counts;
+	Prediction	pred;
+	int		numClasses;
+	int		i;
+
+	result     = new double[numSlices][];
+	numClasses = m_Labels.length;
+	for (i = from; i < to; i++) {
+	  if (slices[i] < 0)
+	    continue;
+	  counts = result[slices[i]];
+	  if (counts == null) {
+	    counts            = new double[numClasses * numClasses];
+	    result[slices[i]] = counts;
+	  }
+	  pred = preds.get(i);
+	  counts[(int) pred.actual() * numClasses + (int) pred.predicted()] += pred.weight();
+	}
+
+	return result;
+      }
+    };
+  }
+
+  /**
+   * Determines the number of workers whose count arrays fit into the
+   * available heap.
+   *
+   * @param numSlices	the number of slices
+   * @param numPreds	the number of predictions
+   * @return		the number of workers
+   */
+  protected int getNumWorkers(int numSlices, int numPreds) {
+    long	bytes;
+    long	available;
+
+    bytes     = (long) numSlices * (long) m_Labels.length * (long) m_Labels.length * 8L;
+    available = (long) (MatrixFootprint.getAvailableHeap() * MatrixFootprint.HEAP_FRACTION);
+
+    // the merged counts require one set of arrays as well
+    return (int) Math.max(1, Math.min(Math.min(m_NumThreads, numPreds), available / Math.max(1, bytes) - 1));
+  }
+
+  /**
+   * Computes the slices defined by the value of the attribute. Predictions
+   * whose instance has a missing value don't belong to any slice.
+   *
+   * @param preds	the predictions
+   * @param data	the instances the predictions were made for (same order)
+   * @param attIndex	the 0-based index of the nominal or string attribute
+   * 			that defines the slices
+   * @throws IllegalArgumentException	if the attribute is neither nominal
+   * 					nor string or the number of
+   * 					predictions and instances differ
+   * @throws InterruptedException	if interrupted
+   * @throws ExecutionException	if accumulating failed
+   */
+  public void execute(List<Prediction> preds, Instances data, int attIndex) throws InterruptedException, ExecutionException {
+    Attribute	att;
+    LabelIndex	index;
+    String[]	names;
+    int[]	slices;
+    Instance	inst;
+    int		i;
+
+    att = data.attribute(attIndex);
+    if (!att.isNominal() && !att.isString())
+      throw new IllegalArgumentException("Attribute defining the slices is neither nominal nor string: " + att.name());
+    if (preds.size() != data.numInstances())
+      throw new IllegalArgumentException("Number of predictions and instances differ: " + preds.size() + " != " + data.numInstances());
+
+    // string values get indexed in order of occurrence
+    index  = att.isNominal() ? null : new LabelIndex();
+    slices = new int[data.numInstances()];
+    for (i = 0; i < data.numInstances(); i++) {
+      inst = data.instance(i);
+      if (inst.isMissing(attIndex))
+	slices[i] = -1;
+      else if (index == null)
+	slices[i] = (int) inst.value(attIndex);
+      else
+	slices[i] = index.indexOf(inst.stringValue(attIndex));
+    }
+    if (index == null) {
+      names = new String[att.numValues()];
+      for (i = 0; i < names.length; i++)
+	names[i] = att.value(i);
+    }
+    else {
+      names = index.getLabels();
+    }
+
+    execute(preds, slices, names);
+  }
+
+  /**
+   * Computes the slices.
+   *
+   * @param preds	the predictions
+   * @param slices	the 0-based slice index per prediction, -1 if the
+   * 			prediction doesn't belong to any slice
+   * @param names	the names of the slices
+   * @throws IllegalArgumentException	if the number of predictions and
+   * 					slice indices differ
+   * @throws InterruptedException	if interrupted
+   * @throws ExecutionException	if accumulating failed
+   * @see		ConfusionMatrixMetrics#BUILD
+   */
+  public void execute(List<Prediction> preds, int[] slices, String[] names) throws InterruptedException, ExecutionException {
+    ConfusionMatrixMetrics.Sample	sample;
+    ExecutorService			executor;
+    List<Future<double[][]>>		chunks;
+    double[][]				partial;
+    double[]				overall;
+    int					numWorkers;
+    int					numClasses;
+    int					size;
+    int					i;
+    int					n;
+    int					s;
+
+    if (preds.size() != slices.length)
+      throw new IllegalArgumentException("Number of predictions and slice indices differ: " + preds.size() + " != " + slices.length);
+
+    sample     = ConfusionMatrixMetrics.start();
+    numClasses = m_Labels.length;
+    m_Slices   = names.clone();
+    m_Counts   = new double[names.length][];
+    numWorkers = getNumWorkers(names.length, preds.size());
+    size       = (preds.size() + numWorkers - 1) / numWorkers;
+
+    executor = Executors.newFixedThreadPool(numWorkers);
+    try {
+      chunks = new ArrayList<Future<double[][]>>();
+      for (i = 0; i < numWorkers; i++)
+	chunks.add(executor.submit(newChunkTask(preds, slices, names.length, i * size, Math.min(preds.size(), (i + 1) * size))));
+      for (Future<double[][]> chunk: chunks) {
+	partial = chunk.get();
+	for (s = 0; s < names.length; s++) {
+	  if (partial[s] == null)
+	    continue;
+	  if (m_Counts[s] == null) {
+	    m_Counts[s] = partial[s];
+	  }
+	  else {
+	    for (n = 0; n < partial[s].length; n++)
+	      m_Counts[s][n] += partial[s][n];
+	  }
+	}
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    // totals
+    m_Totals       = new double[names.length];
+    m_Correct      = new double[names.length];
+    m_Total        = 0;
+    m_TotalCorrect = 0;
+    m_NumSkipped   = 0;
+    overall        = new double[numClasses * numClasses];
+    for (s = 0; s < names.length; s++) {
+      if (m_Counts[s] == null)
+	continue;
+      for (n = 0; n < m_Counts[s].length; n++) {
+	m_Totals[s] += m_Counts[s][n];
+	overall[n]  += m_Counts[s][n];
+      }
+      for (i = 0; i < numClasses; i++)
+	m_Correct[s] += m_Counts[s][i * numClasses + i];
+      m_Total        += m_Totals[s];
+      m_TotalCorrect += m_Correct[s];
+    }
+    m_Overall = toMatrix(overall);
+    for (i = 0; i < slices.length; i++) {
+      if (slices[i] < 0)
+	m_NumSkipped++;
+    }
+
+    ConfusionMatrixMetrics.BUILD.record(sample, preds.size(), numClasses);
+  }
+
+  /**
+   * Returns whether the slices have been computed.
+   *
+   * @return		true if computed
+   */
+  public boolean isExecuted() {
+    return (m_Counts != null);
+  }
+
+  /**
+   * Checks whether the slices have been computed.
+   *
+   * @throws IllegalStateException	if not computed yet
+   */
+  protected void check() {
+    if (!isExecuted())
+      throw new IllegalStateException("Slices have not been computed yet, call execute() first!");
+  }
+
+  /**
+   * Returns the number of slices.
+   *
+   * @return		the number of slices
+   */
+  public int getNumSlices() {
+    check();
+    return m_Slices.length;
+  }
+
+  /**
+   * Returns the name of the slice.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the name
+   */
+  public String getSlice(int slice) {
+    check();
+    return m_Slices[slice];
+  }
+
+  /**
+   * Returns the number of predictions that didn't belong to any slice.
+   *
+   * @return		the number of predictions
+   */
+  public long getNumSkipped() {
+    check();
+    return m_NumSkipped;
+  }
+
+  /**
+   * Returns the total count of the slice.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the count
+   */
+  public double getTotal(int slice) {
+    check();
+    return m_Totals[slice];
+  }
+
+  /**
+   * Returns the total count of all slices.
+   *
+   * @return		the count
+   */
+  public double getTotal() {
+    check();
+    return m_Total;
+  }
+
+  /**
+   * Returns the correct count of the slice.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the count
+   */
+  public double getCorrect(int slice) {
+    check();
+    return m_Correct[slice];
+  }
+
+  /**
+   * Returns the correct count of all slices.
+   *
+   * @return		the count
+   */
+  public double getCorrect() {
+    check();
+    return m_TotalCorrect;
+  }
+
+  /**
+   * Returns the accuracy of the slice.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the accuracy (0-1), NaN if the slice is empty
+   */
+  public double getAccuracy(int slice) {
+    check();
+    if (m_Totals[slice] == 0)
+      return Double.NaN;
+    return m_Correct[slice] / m_Totals[slice];
+  }
+
+  /**
+   * Returns the accuracy over all slices.
+   *
+   * @return		the accuracy (0-1), NaN if all slices are empty
+   */
+  public double getAccuracy() {
+    check();
+    if (m_Total == 0)
+      return Double.NaN;
+    return m_TotalCorrect / m_Total;
+  }
+
+  /**
+   * Returns by how much the accuracy of the slice is lower than the
+   * accuracy over all slices.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the drop (positive if lower), NaN if the slice is empty
+   */
+  public double getAccuracyDrop(int slice) {
+    return getAccuracy() - getAccuracy(slice);
+  }
+
+  /**
+   * Returns the indices of the slices, sorted by accuracy drop (largest
+   * first). Empty slices come last.
+   *
+   * @return		the 0-based indices of the slices
+   */
+  public int[] getSortedByDrop() {
+    Integer[]		sorted;
+    final double[]	drops;
+    double		accuracy;
+    int[]		result;
+    int			i;
+
+    check();
+    accuracy = getAccuracy();
+    drops    = new double[m_Slices.length];
+    sorted   = new Integer[m_Slices.length];
+    for (i = 0; i < m_Slices.length; i++) {
+      drops[i]  = accuracy - getAccuracy(i);
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+	// NaN is considered larger than any value, i.e., comes first otherwise
+	if (Double.isNaN(drops[o1]) || Double.isNaN(drops[o2]))
+	  return Double.compare(drops[o1], drops[o2]);
+	return Double.compare(drops[o2], drops[o1]);
+      }
+    });
+    result = new int[sorted.length];
+    for (i = 0; i < sorted.length; i++)
+      result[i] = sorted[i];
+
+    return result;
+  }
+
+  /**
+   * Turns the counts into a (dense) matrix.
+   *
+   * @param counts	the row-major counts, null if empty
+   * @return		the matrix
+   */
+  protected ConfusionMatrix toMatrix(double[] counts) {
+    ConfusionMatrix	result;
+    int			numClasses;
+    int			i;
+
+    numClasses              = m_Labels.length;
+    result                  = new ConfusionMatrix();
+    result.m_ClassAttribute = m_ClassAttribute;
+    result.m_Labels         = m_Labels;
+    result.m_Matrix         = new double[numClasses][numClasses];
+    if (counts != null) {
+      for (i = 0; i < numClasses; i++)
+	System.arraycopy(counts, i * numClasses, result.m_Matrix[i], 0, numClasses);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the matrix of the slice.
+   *
+   * @param slice	the 0-based index of the slice
+   * @return		the matrix
+   */
+  public ConfusionMatrix getMatrix(int slice) {
+    check();
+    return toMatrix(m_Counts[slice]);
+  }
+
+  /**
+   * Returns the matrix over all slices. Gets computed once by
+   * {@link #execute(List, int[], String[])}, i.e., the same instance is
+   * returned on every call and must not be modified.
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix getMatrix() {
+    check();
+    return m_Overall;
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixTableModel.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import javax.swing.table.AbstractTableModel;
+
+import weka.core.Utils;
+
+/**
+ * Table model that reads the cells and the totals straight from the
+ * underlying {@link ConfusionMatrix} on demand, i.e., it does not copy any
+ * data. Layout: one column per class label, followed by the columns
+ * "&lt;-- classified as" (label of the row), "incorrect", "correct" and
+ * "total" (plus "cost", if the matrix has costs). The rows can be sorted by error metrics and filtered by error
+ * rate, see {@link #setView(int, boolean, double)}. Costs for matrices
+ * without costs can be supplied separately, only their totals per row get
+ * stored (see {@link #ConfusionMatrixTableModel(ConfusionMatrix, double[][])}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixTableModel
+  extends AbstractTableModel {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2925796420393087735L;
+
+  /** the number of additional columns (without costs). */
+  public final static int NUM_ADDITIONAL_COLUMNS = 4;
+
+  /** no sorting, i.e., order of class labels. */
+  public final static int SORT_NONE = 0;
+
+  /** sort by incorrect count. */
+  public final static int SORT_INCORRECT = 1;
+
+  /** sort by recall (correct / total). */
+  public final static int SORT_RECALL = 2;
+
+  /** sort by total count. */
+  public final static int SORT_TOTAL = 3;
+
+  /** sort by total cost. */
+  public final static int SORT_COST = 4;
+
+  /** the names of the sort modes. */
+  public final static String[] SORT_NAMES = {
+    "class label",
+    "incorrect",
+    "recall",
+    "total",
+    "cost"
+  };
+
+  /** the underlying matrix. */
+  protected ConfusionMatrix m_Matrix;
+
+  /** the cost totals per class label (null to use the ones of the matrix). */
+  protected double[] m_CostTotals;
+
+  /** the class indices of the rows in the view (null if all rows in class order). */
+  protected int[] m_Rows;
+
+  /** the sort mode. */
+  protected int m_SortBy = SORT_NONE;
+
+  /** whether to sort in descending order. */
+  protected boolean m_Descending;
+
+  /** the minimum error rate (incorrect / total) of rows to display. */
+  protected double m_MinErrorRate;
+
+  /**
+   * Initializes the model.
+   *
+   * @param matrix	the underlying matrix
+   */
+  public ConfusionMatrixTableModel(ConfusionMatrix matrix) {
+    this(matrix, null);
+  }
+
+  /**
+   * Initializes the model with costs that get used instead of the ones of
+   * the matrix. The matrix itself doesn't get copied or modified.
+   *
+   * @param matrix	the underlying matrix
+   * @param costs	the costs, null to use the ones of the matrix (if any)
+   * @throws IllegalArgumentException	if the costs don't match the class labels
+   * @see		ConfusionMatrix#computeCostTotals(double[][])
+   */
+  public ConfusionMatrixTableModel(ConfusionMatrix matrix, double[][] costs) {
+    super();
+    m_Matrix     = matrix;
+    m_CostTotals = (costs == null) ? null : matrix.computeCostTotals(costs);
+  }
+
+  /**
+   * Returns the underlying matrix.
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix getMatrix() {
+    return m_Matrix;
+  }
+
+  /**
+   * Returns whether costs are available, either supplied or from the matrix.
+   *
+   * @return		true if costs available
+   */
+  public boolean hasCosts() {
+    return (m_CostTotals != null) || m_Matrix.hasCosts();
+  }
+
+  /**
+   * Returns the supplied cost totals per class label.
+   *
+   * @return		the totals, null if the ones of the matrix get used
+   */
+  public double[] getCostTotals() {
+    return m_CostTotals;
+  }
+
+  /**
+   * Returns the total cost for the class label.
+   *
+   * @param index	the 0-based class label
+   * @return		the cost, 0 if no costs available
+   */
+  public double getCost(int index) {
+    if (m_CostTotals != null)
+      return m_CostTotals[index];
+    else
+      return m_Matrix.getCost(index);
+  }
+
+  /**
+   * Returns the recall for the class label.
+   *
+   * @param index	the 0-based class label
+   * @return		the recall, 0 if no instances
+   */
+  protected double getRecall(int index) {
+    double	total;
+
+    total = m_Matrix.getTotal(index);
+    if (total == 0)
+      return 0;
+    else
+      return m_Matrix.getCorrect(index) / total;
+  }
+
+  /**
+   * Sorts and filters the rows. The row indices get sorted as primitive
+   * array using the cached totals of the matrix; ties keep the order of
+   * the class labels.
+   *
+   * @param sortBy	the sort mode, e.g., {@link #SORT_RECALL}
+   * @param descending	whether to sort in descending order
+   * @param minErrorRate	the minimum error rate (incorrect / total) a row
+   * 			must have to be displayed, 0 for all rows
+   */
+  public void setView(int sortBy, boolean descending, double minErrorRate) {
+    int[]	rows;
+    int[]	sorted;
+    double[]	keys;
+    int		numRows;
+    int		i;
+    double	total;
+
+    m_SortBy       = sortBy;
+    m_Descending   = descending;
+    m_MinErrorRate = minErrorRate;
+
+    if ((sortBy == SORT_NONE) && !descending && (minErrorRate <= 0)) {
+      m_Rows = null;
+      fireTableDataChanged();
+      return;
+    }
+
+    // filter
+    rows    = new int[m_Matrix.getNumClasses()];
+    numRows = 0;
+    for (i = 0; i < m_Matrix.getNumClasses(); i++) {
+      if (minErrorRate > 0) {
+	total = m_Matrix.getTotal(i);
+	if ((total == 0) || (m_Matrix.getIncorrect(i) / total < minErrorRate))
+	  continue;
+      }
+      rows[numRows] = i;
+      numRows++;
+    }
+
+    // sort
+    keys = new double[numRows];
+    for (i = 0; i < numRows; i++) {
+      switch (sortBy) {
+	case SORT_INCORRECT:
+	  keys[i] = m_Matrix.getIncorrect(rows[i]);
+	  break;
+	case SORT_RECALL:
+	  keys[i] = getRecall(rows[i]);
+	  break;
+	case SORT_TOTAL:
+	  keys[i] = m_Matrix.getTotal(rows[i]);
+	  break;
+	case SORT_COST:
+	  keys[i] = getCost(rows[i]);
+	  break;
+	default:
+	  keys[i] = rows[i];
+      }
+      if (descending)
+	keys[i] = -keys[i];
+    }
+    sorted = Utils.stableSort(keys);
+    m_Rows = new int[numRows];
+    for (i = 0; i < numRows; i++)
+      m_Rows[i] = rows[sorted[i]];
+
+    fireTableDataChanged();
+  }
+
+  /**
+   * Returns the current sort mode.
+   *
+   * @return		the mode
+   */
+  public int getSortBy() {
+    return m_SortBy;
+  }
+
+  /**
+   * Returns whether rows are sorted in descending order.
+   *
+   * @return		true if descending
+   */
+  public boolean isDescending() {
+    return m_Descending;
+  }
+
+  /**
+   * Returns the minimum error rate for rows to be displayed.
+   *
+   * @return		the minimum error rate
+   */
+  public double getMinErrorRate() {
+    return m_MinErrorRate;
+  }
+
+  /**
+   * Returns the 0-based class label indices of the rows in the view.
+   *
+   * @return		the indices, null if all rows in class order
+   */
+  public int[] getClassIndices() {
+    return m_Rows;
+  }
+
+  /**
+   * Returns the 0-based class label index for the row in the view.
+   *
+   * @param row		the row in the view
+   * @return		the class label index
+   */
+  public int getClassIndex(int row) {
+    if (m_Rows == null)
+      return row;
+    else
+      return m_Rows[row];
+  }
+
+  /**
+   * Returns the number of rows in the view.
+   *
+   * @return		the number of rows
+   */
+  @Override
+  public int getRowCount() {
+    if (m_Rows == null)
+      return m_Matrix.getNumClasses();
+    else
+      return m_Rows.length;
+  }
+
+  /**
+   * Returns the number of additional columns.
+   *
+   * @return		the number of columns, including the cost column
+   * 			if costs are available
+   */
+  public int getNumAdditionalColumns() {
+    return NUM_ADDITIONAL_COLUMNS + (hasCosts() ? 1 : 0);
+  }
+
+  /**
+   * Returns the number of columns.
+   *
+   * @return		the number of class labels plus additional columns
+   */
+  @Override
+  public int getColumnCount() {
+    return m_Matrix.getNumClasses() + getNumAdditionalColumns();
+  }
+
+  /**
+   * Returns the name of the column.
+   *
+   * @param column	the column to get the name for
+   * @return		the name
+   */
+  @Override
+  public String getColumnName(int column) {
+    int		numClasses;
+
+    numClasses = m_Matrix.getNumClasses();
+    if (column < numClasses)
+      return m_Matrix.getLabels()[column];
+    else if (column == numClasses)
+      return "<-- classified as";
+    else if (column == numClasses + 1)
+      return "incorrect";
+    else if (column == numClasses + 2)
+      return "correct";
+    else if (column == numClasses + 3)
+      return "total";
+    else
+      return "cost";
+  }
+
+  /**
+   * Returns the numeric value of the cell, i.e., without the column with
+   * the labels.
+   *
+   * @param row		the row of the cell
+   * @param column	the column of the cell
+   * @return		the value, NaN for the label column
+   */
+  public double getDoubleAt(int row, int column) {
+    int		numClasses;
+
+    numClasses = m_Matrix.getNumClasses();
+    row        = getClassIndex(row);
+    if (column < numClasses)
+      return m_Matrix.getValue(row, column);
+    else if (column == numClasses)
+      return Double.NaN;
+    else if (column == numClasses + 1)
+      return m_Matrix.getIncorrect(row);
+    else if (column == numClasses + 2)
+      return m_Matrix.getCorrect(row);
+    else if (column == numClasses + 3)
+      return m_Matrix.getTotal(row);
+    else
+      return getCost(row);
+  }
+
+  /**
+   * Returns the value of the cell.
+   *
+   * @param row		the row of the cell
+   * @param column	the column of the cell
+   * @return		the value
+   */
+  @Override
+  public Object getValueAt(int row, int column) {
+    if (column == m_Matrix.getNumClasses())
+      return m_Matrix.getLabels()[getClassIndex(row)];
+    else
+      return getDoubleAt(row, column);
+  }
+}
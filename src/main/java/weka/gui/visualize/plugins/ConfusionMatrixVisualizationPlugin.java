@@ -20,17 +20,16 @@
 package weka.gui.visualize.plugins;
 
 import java.util.ArrayList;
-import java.util.Vector;
 
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 
 import weka.classifiers.evaluation.Prediction;
 import weka.core.Attribute;
-import weka.core.ClassDiscovery;
 
 /**
- * Menu for confusion matrix visualizations.
+ * Menu for confusion matrix visualizations. The available visualizations
+ * are provided by the {@link VisualizationRegistry}.
  * 
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -54,7 +53,6 @@ public class ConfusionMatrixVisualizationPlugin
    */
   public JMenuItem getVisualizeMenuItem(final ArrayList<Prediction> preds, final Attribute classAtt) {
     JMenu					result;
-    Vector<String>				plugins;
     AbstractConfusionMatrixVisualization	visualization;
     
     if (!classAtt.isNominal()) {
@@ -62,11 +60,10 @@ public class ConfusionMatrixVisualizationPlugin
       return null;
     }
     
-    result  = null;
-    plugins = ClassDiscovery.find(AbstractConfusionMatrixVisualization.class, getClass().getPackage().getName());
-    for (String plugin: plugins) {
+    result = null;
+    for (String plugin: VisualizationRegistry.getClassnames()) {
       try {
-	visualization = (AbstractConfusionMatrixVisualization) Class.forName(plugin).newInstance();
+	visualization = VisualizationRegistry.newInstance(plugin);
 	if (result == null)
 	  result = new JMenu("Confusion matrix");
 	result.add(visualization.getVisualizeMenuItem(preds, classAtt));
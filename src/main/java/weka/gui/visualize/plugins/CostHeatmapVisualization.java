@@ -0,0 +1,243 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CostHeatmapVisualization.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+
+import javax.swing.JFileChooser;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+
+import weka.classifiers.CostMatrix;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.gui.ExtensionFileFilter;
+
+/**
+ * Visualizes the costs of the cells (count times cost) as heatmap (see
+ * {@link ConfusionMatrix#toCosts(double[][])}).
+ * <p/>
+ * The costs are taken from the cost matrix set via
+ * {@link #setCosts(CostMatrix)} or, if none set, from the matrix itself.
+ * In the Explorer, the cost matrix gets loaded from a file when the
+ * visualization is selected and handed to that display only (see
+ * {@link #display(java.util.List, Attribute, CostMatrix)}), i.e., it
+ * doesn't get stored in the visualization.
+ * Without a cost matrix set, exporting is not available.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CostHeatmapVisualization
+  extends HeatmapVisualization {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2829683474207546107L;
+
+  /** the cost matrix (takes precedence over the matrix' costs). */
+  protected CostMatrix m_Costs;
+
+  /**
+   * Returns the text for the menu item.
+   *
+   * @return		the text
+   */
+  @Override
+  public String getMenuItemText() {
+    return "Heatmap (cost)";
+  }
+
+  /**
+   * Sets the cost matrix to use.
+   *
+   * @param value	the cost matrix, null to use the one of the matrix
+   */
+  public void setCosts(CostMatrix value) {
+    m_Costs = value;
+  }
+
+  /**
+   * Returns the cost matrix to use.
+   *
+   * @return		the cost matrix, null if none set
+   */
+  public CostMatrix getCosts() {
+    return m_Costs;
+  }
+
+  /**
+   * Returns whether a cost matrix was set.
+   *
+   * @return		true if available
+   */
+  public boolean hasCosts() {
+    return (getCosts() != null);
+  }
+
+  /**
+   * Prepares the matrix before generating the heatmap: computes the costs
+   * of the cells, using the cost matrix set via {@link #setCosts(CostMatrix)}.
+   *
+   * @param matrix	the matrix to prepare
+   * @return		the costs
+   * @throws IllegalStateException	if no costs available
+   */
+  @Override
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix) {
+    return prepare(matrix, null);
+  }
+
+  /**
+   * Prepares the matrix before generating the heatmap: computes the costs
+   * of the cells.
+   *
+   * @param matrix	the matrix to prepare
+   * @param costs	the cost matrix for the display, null to use the one
+   * 			set via {@link #setCosts(CostMatrix)} or the one of
+   * 			the matrix
+   * @return		the costs
+   * @throws IllegalStateException	if no costs available
+   */
+  @Override
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix, CostMatrix costs) {
+    double[][]	array;
+
+    if (costs == null)
+      costs = m_Costs;
+    if (costs != null)
+      array = ConfusionMatrix.toArray(costs, matrix.getNumClasses());
+    else if (matrix.hasCosts())
+      array = matrix.getCosts();
+    else
+      throw new IllegalStateException("No cost matrix available!");
+
+    return matrix.toCosts(array);
+  }
+
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   *
+   * @return		the extension, null if no cost matrix available
+   */
+  @Override
+  public String getExportExtension() {
+    if (!hasCosts())
+      return null;
+    return super.getExportExtension();
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., the costs, the costs of the cells and the size of the ARGB image.
+   *
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return super.estimateExportMemory(matrix) + 2L * (long) matrix.getNumClasses() * (long) matrix.getNumClasses() * 8L;
+  }
+
+  /**
+   * Lets the user load a cost matrix from a file.
+   *
+   * @param parent	the parent for the dialogs, can be null
+   * @param numClasses	the number of class labels the costs must match
+   * @return		the cost matrix, null if cancelled, failed to load or
+   * 			not matching the class labels
+   */
+  public static CostMatrix loadCosts(Component parent, int numClasses) {
+    JFileChooser	fileChooser;
+    int			retVal;
+    BufferedReader	reader;
+    CostMatrix		result;
+
+    fileChooser = new JFileChooser();
+    fileChooser.setFileFilter(new ExtensionFileFilter(CostMatrix.FILE_EXTENSION, "Cost files"));
+    retVal = fileChooser.showOpenDialog(parent);
+    if (retVal != JFileChooser.APPROVE_OPTION)
+      return null;
+
+    result = null;
+    reader = null;
+    try {
+      reader = new BufferedReader(new FileReader(fileChooser.getSelectedFile()));
+      result = new CostMatrix(reader);
+      // fails if not matching the class labels
+      ConfusionMatrix.toArray(result, numClasses);
+    }
+    catch (Exception e) {
+      System.err.println("Failed to load cost matrix: " + fileChooser.getSelectedFile());
+      e.printStackTrace();
+      JOptionPane.showMessageDialog(parent, "Failed to load cost matrix " + fileChooser.getSelectedFile() + ":\n" + e);
+      result = null;
+    }
+    finally {
+      if (reader != null) {
+	try {
+	  reader.close();
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns a menu item that loads a cost matrix and then displays the
+   * costs with it.
+   *
+   * @param preds 	predictions
+   * @param classAtt 	class attribute
+   * @return 		the menu item, null if class is not nominal
+   */
+  @Override
+  public JMenuItem getVisualizeMenuItem(final ArrayList<Prediction> preds, final Attribute classAtt) {
+    JMenuItem	result;
+
+    if (!classAtt.isNominal()) {
+      System.err.println("Class is not nominal: " + classAtt.name());
+      return null;
+    }
+
+    result = new JMenuItem(getMenuItemText() + "...");
+    result.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	CostMatrix costs = loadCosts(null, classAtt.numValues());
+	if (costs == null)
+	  return;
+	display(preds, classAtt, costs);
+      }
+    });
+
+    return result;
+  }
+}
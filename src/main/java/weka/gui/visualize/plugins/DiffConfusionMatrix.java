@@ -0,0 +1,225 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DiffConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+
+import weka.classifiers.evaluation.Prediction;
+
+/**
+ * Cell-wise difference between two confusion matrices over the same class
+ * attribute (candidate minus baseline), either of the counts or of the
+ * counts normalized by the totals of their rows. Positive values mean that
+ * the candidate has more (or a larger fraction of) instances in that cell.
+ * <p/>
+ * Computed in a single pass over the non-zero cells of the rows of both
+ * matrices (see {@link ConfusionMatrix#getNonZero(int, int[], double[])}),
+ * i.e., sparse matrices only contribute their non-zero cells and rows that
+ * are empty in both matrices are skipped.
+ * <p/>
+ * Instances of this class store the difference densely. Use
+ * {@link #create(ConfusionMatrix, ConfusionMatrix, boolean)}, which lets
+ * {@link MatrixFootprint} pick the representation, e.g., sparse storage if
+ * the inputs are sparse and the dense difference doesn't fit into the heap.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class DiffConfusionMatrix
+  extends ConfusionMatrix {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -5310786349318427640L;
+
+  /** whether the counts were normalized per row. */
+  protected boolean m_Normalized;
+
+  /**
+   * Computes the difference between the two matrices, stored densely.
+   *
+   * @param candidate	the matrix to compare
+   * @param baseline	the matrix to compare against
+   * @param normalized	whether to normalize the counts by the row totals
+   * @throws IllegalArgumentException	if the class attributes differ
+   */
+  public DiffConfusionMatrix(ConfusionMatrix candidate, ConfusionMatrix baseline, boolean normalized) {
+    super();
+
+    int		numClasses;
+
+    check(candidate, baseline);
+    m_ClassAttribute = candidate.getClassAttribute();
+    m_Labels         = candidate.getLabels();
+    m_Normalized     = normalized;
+    numClasses       = candidate.getNumClasses();
+    m_Matrix         = new double[numClasses][numClasses];
+    fill(this, candidate, baseline, normalized);
+  }
+
+  /**
+   * Ensures that the matrices are compatible.
+   *
+   * @param candidate	the matrix to compare
+   * @param baseline	the matrix to compare against
+   * @throws IllegalArgumentException	if the class attributes differ
+   */
+  protected static void check(ConfusionMatrix candidate, ConfusionMatrix baseline) {
+    String	msg;
+
+    msg = baseline.getClassAttribute().equalsMsg(candidate.getClassAttribute());
+    if (msg != null)
+      throw new IllegalArgumentException("Matrices are not compatible: " + msg);
+  }
+
+  /**
+   * Adds the differences to the (empty) target matrix, merging the sorted
+   * non-zero cells of the rows of both matrices.
+   *
+   * @param target	the matrix to add the differences to
+   * @param candidate	the matrix to compare
+   * @param baseline	the matrix to compare against
+   * @param normalized	whether to normalize the counts by the row totals
+   */
+  protected static void fill(ConfusionMatrix target, ConfusionMatrix candidate, ConfusionMatrix baseline, boolean normalized) {
+    int		numClasses;
+    int[]	colsCandidate;
+    double[]	valuesCandidate;
+    int[]	colsBaseline;
+    double[]	valuesBaseline;
+    int		numCandidate;
+    int		numBaseline;
+    double	totalCandidate;
+    double	totalBaseline;
+    double	factorCandidate;
+    double	factorBaseline;
+    double	value;
+    int		col;
+    int		i;
+    int		c;
+    int		b;
+
+    numClasses      = candidate.getNumClasses();
+    colsCandidate   = new int[numClasses];
+    valuesCandidate = new double[numClasses];
+    colsBaseline    = new int[numClasses];
+    valuesBaseline  = new double[numClasses];
+    for (i = 0; i < numClasses; i++) {
+      totalCandidate = candidate.getTotal(i);
+      totalBaseline  = baseline.getTotal(i);
+      if ((totalCandidate == 0) && (totalBaseline == 0))
+	continue;
+      factorCandidate = 1.0;
+      factorBaseline  = 1.0;
+      if (normalized) {
+	factorCandidate = (totalCandidate == 0) ? 0.0 : 1.0 / totalCandidate;
+	factorBaseline  = (totalBaseline  == 0) ? 0.0 : 1.0 / totalBaseline;
+      }
+      numCandidate = candidate.getNonZero(i, colsCandidate, valuesCandidate);
+      numBaseline  = baseline.getNonZero(i, colsBaseline, valuesBaseline);
+      c = 0;
+      b = 0;
+      while ((c < numCandidate) || (b < numBaseline)) {
+	if ((b == numBaseline) || ((c < numCandidate) && (colsCandidate[c] < colsBaseline[b]))) {
+	  col   = colsCandidate[c];
+	  value = valuesCandidate[c++] * factorCandidate;
+	}
+	else if ((c == numCandidate) || (colsBaseline[b] < colsCandidate[c])) {
+	  col   = colsBaseline[b];
+	  value = -valuesBaseline[b++] * factorBaseline;
+	}
+	else {
+	  col   = colsCandidate[c];
+	  value = valuesCandidate[c++] * factorCandidate - valuesBaseline[b++] * factorBaseline;
+	}
+	if (value != 0)
+	  target.add(i, col, value);
+      }
+    }
+    target.invalidate();
+  }
+
+  /**
+   * Returns the (maximum) number of non-zero cells of the matrix.
+   *
+   * @param matrix	the matrix to inspect
+   * @return		the number of cells
+   */
+  protected static long getMaxNonZero(ConfusionMatrix matrix) {
+    if (matrix instanceof SparseConfusionMatrix)
+      return ((SparseConfusionMatrix) matrix).getNumNonZero();
+    return (long) matrix.getNumClasses() * (long) matrix.getNumClasses();
+  }
+
+  /**
+   * Computes the difference between the two matrices, using the
+   * representation that fits into the currently available heap.
+   *
+   * @param candidate	the matrix to compare
+   * @param baseline	the matrix to compare against
+   * @param normalized	whether to normalize the counts by the row totals
+   * @return		the difference
+   * @throws IllegalArgumentException	if the class attributes differ
+   */
+  public static ConfusionMatrix create(ConfusionMatrix candidate, ConfusionMatrix baseline, boolean normalized) {
+    return create(candidate, baseline, normalized, MatrixFootprint.getAvailableHeap());
+  }
+
+  /**
+   * Computes the difference between the two matrices, using the
+   * representation that {@link MatrixFootprint} picks. The number of
+   * non-zero cells is bounded by the non-zero cells of both inputs. As the
+   * differences are neither integral nor non-negative, integer storage is
+   * never used.
+   *
+   * @param candidate	the matrix to compare
+   * @param baseline	the matrix to compare against
+   * @param normalized	whether to normalize the counts by the row totals
+   * @param availableHeap	the available heap in bytes
+   * @return		the difference
+   * @throws IllegalArgumentException	if the class attributes differ
+   */
+  public static ConfusionMatrix create(ConfusionMatrix candidate, ConfusionMatrix baseline, boolean normalized, long availableHeap) {
+    MatrixFootprint	footprint;
+    ConfusionMatrix	result;
+    int			representation;
+
+    check(candidate, baseline);
+    footprint = new MatrixFootprint(
+	candidate.getNumClasses(), getMaxNonZero(candidate) + getMaxNonZero(baseline), availableHeap);
+    representation = footprint.getRepresentation(false);
+    if (representation == MatrixFootprint.REPRESENTATION_DENSE)
+      return new DiffConfusionMatrix(candidate, baseline, normalized);
+
+    result = newInstance(
+	candidate.getClassAttribute(), candidate.getLabels(), new ArrayList<Prediction>(), null, representation);
+    fill(result, candidate, baseline, normalized);
+
+    return result;
+  }
+
+  /**
+   * Returns whether the counts were normalized by the row totals.
+   *
+   * @return		true if normalized
+   */
+  public boolean isNormalized() {
+    return m_Normalized;
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DiffHeatmapVisualization.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Visualizes the cell-wise difference between the confusion matrix and the
+ * one of a baseline (e.g., the production model) as heatmap with a
+ * diverging color scale (see {@link DiffConfusionMatrix}).
+ * <p/>
+ * In the Explorer, one result gets selected as baseline via "Use as
+ * baseline", other results can then be compared against it. Without a
+ * baseline (see {@link #setBaseline(ConfusionMatrix)}), exporting is not
+ * available.
+ * <p/>
+ * The selected result is only referenced weakly, i.e., it doesn't keep the
+ * predictions alive once the Explorer discards the result. A visualization
+ * holds on to the baseline matrix (obtained from
+ * {@link ConfusionMatrixCache}) only while it is in use.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class DiffHeatmapVisualization
+  extends HeatmapVisualization {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -1850279286339462385L;
+
+  /** the predictions of the baseline selected in the Explorer. */
+  protected static WeakReference<List<Prediction>> m_SelectedPredictions;
+
+  /** the class attribute of the baseline selected in the Explorer. */
+  protected static WeakReference<Attribute> m_SelectedClassAttribute;
+
+  /** the baseline matrix (takes precedence over the selected one). */
+  protected ConfusionMatrix m_Baseline;
+
+  /** the matrix of the selected baseline this visualization uses. */
+  protected transient ConfusionMatrix m_SelectedBaseline;
+
+  /** the predictions that {@link #m_SelectedBaseline} got built from. */
+  protected transient WeakReference<List<Prediction>> m_SelectedBaselinePredictions;
+
+  /** whether to normalize the counts per row. */
+  protected boolean m_Normalized;
+
+  /**
+   * Returns the text for the menu item.
+   *
+   * @return		the text
+   */
+  @Override
+  public String getMenuItemText() {
+    if (m_Normalized)
+      return "Heatmap (diff, normalized)";
+    else
+      return "Heatmap (diff)";
+  }
+
+  /**
+   * Sets the baseline to compare against.
+   *
+   * @param value	the baseline, null to use the one selected in the
+   * 			Explorer
+   */
+  public void setBaseline(ConfusionMatrix value) {
+    m_Baseline = value;
+  }
+
+  /**
+   * Returns the baseline to compare against.
+   *
+   * @return		the baseline, null if none available
+   */
+  public ConfusionMatrix getBaseline() {
+    List<Prediction>	preds;
+    Attribute		classAtt;
+
+    if (m_Baseline != null)
+      return m_Baseline;
+
+    preds    = null;
+    classAtt = null;
+    synchronized(DiffHeatmapVisualization.class) {
+      if (m_SelectedPredictions != null) {
+	preds    = m_SelectedPredictions.get();
+	classAtt = m_SelectedClassAttribute.get();
+      }
+    }
+    if ((preds == null) || (classAtt == null)) {
+      m_SelectedBaseline            = null;
+      m_SelectedBaselinePredictions = null;
+      return null;
+    }
+
+    if ((m_SelectedBaseline == null) || (m_SelectedBaselinePredictions.get() != preds)) {
+      m_SelectedBaseline            = ConfusionMatrixCache.get(preds, classAtt);
+      m_SelectedBaselinePredictions = new WeakReference<List<Prediction>>(preds);
+    }
+
+    return m_SelectedBaseline;
+  }
+
+  /**
+   * Selects the result as baseline for all diff visualizations. Only weak
+   * references to the predictions and class attribute are kept.
+   *
+   * @param preds	the predictions, null to clear the selection
+   * @param classAtt	the class attribute
+   */
+  public static void select(List<Prediction> preds, Attribute classAtt) {
+    synchronized(DiffHeatmapVisualization.class) {
+      if (preds == null) {
+	m_SelectedPredictions    = null;
+	m_SelectedClassAttribute = null;
+      }
+      else {
+	m_SelectedPredictions    = new WeakReference<List<Prediction>>(preds);
+	m_SelectedClassAttribute = new WeakReference<Attribute>(classAtt);
+      }
+    }
+  }
+
+  /**
+   * Returns whether a baseline is available.
+   *
+   * @return		true if available
+   */
+  public boolean hasBaseline() {
+    synchronized(DiffHeatmapVisualization.class) {
+      return (m_Baseline != null)
+	  || ((m_SelectedPredictions != null) && (m_SelectedPredictions.get() != null));
+    }
+  }
+
+  /**
+   * Sets whether to compare the counts normalized by the row totals.
+   *
+   * @param value	true if to normalize
+   */
+  public void setNormalized(boolean value) {
+    m_Normalized = value;
+  }
+
+  /**
+   * Returns whether to compare the counts normalized by the row totals.
+   *
+   * @return		true if to normalize
+   */
+  public boolean isNormalized() {
+    return m_Normalized;
+  }
+
+  /**
+   * Prepares the matrix before generating the heatmap: computes the
+   * difference to the baseline.
+   *
+   * @param matrix	the matrix to prepare
+   * @return		the difference
+   * @throws IllegalStateException	if no baseline available
+   */
+  @Override
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix) {
+    ConfusionMatrix	baseline;
+
+    baseline = getBaseline();
+    if (baseline == null)
+      throw new IllegalStateException("No baseline selected!");
+
+    return DiffConfusionMatrix.create(matrix, baseline, m_Normalized);
+  }
+
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, java.io.File)}
+   * generates.
+   *
+   * @return		the extension, null if no baseline available
+   */
+  @Override
+  public String getExportExtension() {
+    if (!hasBaseline())
+      return null;
+    return super.getExportExtension();
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., the difference matrix and the size of the ARGB image.
+   *
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return super.estimateExportMemory(matrix) + (long) matrix.getNumClasses() * (long) matrix.getNumClasses() * 8L;
+  }
+
+  /**
+   * Returns a menu for selecting the result as baseline and for comparing
+   * it with the current baseline.
+   *
+   * @param preds 	predictions
+   * @param classAtt 	class attribute
+   * @return 		the menu, null if class is not nominal
+   */
+  @Override
+  public JMenuItem getVisualizeMenuItem(final ArrayList<Prediction> preds, final Attribute classAtt) {
+    JMenu	result;
+    JMenuItem	menuitem;
+
+    if (!classAtt.isNominal()) {
+      System.err.println("Class is not nominal: " + classAtt.name());
+      return null;
+    }
+
+    result = new JMenu(getMenuItemText());
+
+    menuitem = new JMenuItem("Use as baseline");
+    menuitem.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	select(preds, classAtt);
+      }
+    });
+    result.add(menuitem);
+
+    menuitem = new JMenuItem("Compare with baseline");
+    menuitem.setEnabled(hasBaseline());
+    menuitem.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	setNormalized(false);
+	display(preds, classAtt);
+      }
+    });
+    result.add(menuitem);
+
+    menuitem = new JMenuItem("Compare with baseline (normalized)");
+    menuitem.setEnabled(hasBaseline());
+    menuitem.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	setNormalized(true);
+	display(preds, classAtt);
+      }
+    });
+    result.add(menuitem);
+
+    return result;
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ErrorListVisualization.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Dimension;
+import java.io.IOException;
+
+import weka.core.Utils;
+
+/**
+ * Generates a textual report for problems with many class labels: lists
+ * only the non-zero cells off the diagonal (i.e., the errors), sorted by
+ * count, followed by a summary per class label. Rows without any errors
+ * get skipped using the cached totals of the matrix and only the non-zero
+ * cells of the other rows get visited (see
+ * {@link ConfusionMatrix#getNonZero(int, int[], double[])}), so for sparse
+ * matrices the size of the report and the time to generate it depend on
+ * the number of errors rather than the size of the matrix.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ErrorListVisualization
+  extends TextVisualization {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2853780185574536203L;
+
+  /** the number of lines before the errors. */
+  public final static int NUM_HEADER_LINES = 1;
+
+  /** the number of lines between errors and summaries. */
+  public final static int NUM_SEPARATOR_LINES = 2;
+
+  /**
+   * Container for the errors of a matrix, sorted by count.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class ErrorList {
+
+    /** the 0-based indices of the actual class labels. */
+    public int[] actual;
+
+    /** the 0-based indices of the predicted class labels. */
+    public int[] predicted;
+
+    /** the counts. */
+    public double[] counts;
+
+    /** the number of errors. */
+    public int size;
+
+    /** the width for the counts. */
+    public int width;
+
+    /** the number of decimals for the counts. */
+    public int decimals;
+
+    /** the formatter for the numbers. */
+    public NumberFormatter formatter = new NumberFormatter();
+  }
+
+  /**
+   * Model that renders the lines of the report on demand.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public class ErrorListModel
+    extends LinesModel {
+
+    /** for serialization. */
+    private static final long serialVersionUID = -4796125300553316562L;
+
+    /** the matrix. */
+    protected ConfusionMatrix m_Matrix;
+
+    /** the errors. */
+    protected ErrorList m_Errors;
+
+    /**
+     * Initializes the model.
+     *
+     * @param matrix	the matrix to render
+     */
+    public ErrorListModel(ConfusionMatrix matrix) {
+      super();
+      m_Matrix = matrix;
+      m_Errors = collectErrors(matrix);
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return		the number of lines
+     */
+    @Override
+    public int getRowCount() {
+      return getNumLines(m_Matrix, m_Errors);
+    }
+
+    /**
+     * Renders the specified line (incl. new line).
+     *
+     * @param row	the line to render
+     * @param output	the output to append to
+     * @throws IOException	if appending fails
+     */
+    @Override
+    protected void renderLine(int row, Appendable output) throws IOException {
+      generateLine(m_Matrix, m_Errors, row, output);
+    }
+
+    /**
+     * Returns the number of characters in the longest line.
+     *
+     * @return		the number of characters
+     */
+    @Override
+    public int getMaxLineLength() {
+      int	maxLabel;
+      double	maxTotal;
+      int	i;
+
+      maxLabel = 0;
+      maxTotal = 0;
+      for (i = 0; i < m_Matrix.getNumClasses(); i++) {
+	maxLabel = Math.max(maxLabel, m_Matrix.getLabels()[i].length());
+	maxTotal = Math.max(maxTotal, m_Matrix.getTotal(i));
+      }
+
+      return Math.max(
+	  m_Errors.width + 2 * maxLabel + 6,
+	  maxLabel + 3 * Utils.doubleToString(maxTotal, 3).length() + 20);
+    }
+  }
+
+  /**
+   * Returns the text for the menu item.
+   *
+   * @return		the text
+   */
+  @Override
+  public String getMenuItemText() {
+    return "Text (error list)";
+  }
+
+  /**
+   * Returns the initial size of the frame.
+   *
+   * @return		the dimensions
+   */
+  @Override
+  protected Dimension getFrameDimension() {
+    return new Dimension(600, 600);
+  }
+
+  /**
+   * Collects the non-zero cells off the diagonal, sorted by count
+   * (descending). Ties keep the order of actual/predicted class labels.
+   *
+   * @param matrix	the matrix to process
+   * @return		the errors
+   */
+  protected ErrorList collectErrors(ConfusionMatrix matrix) {
+    ErrorList	result;
+    int[]	actual;
+    int[]	predicted;
+    double[]	counts;
+    int[]	rowColumns;
+    double[]	rowValues;
+    double[]	keys;
+    int[]	sorted;
+    int		numClasses;
+    int		numCells;
+    int		size;
+    int		i;
+    int		n;
+    double	max;
+
+    numClasses = matrix.getNumClasses();
+    actual     = new int[Math.max(16, numClasses)];
+    predicted  = new int[actual.length];
+    counts     = new double[actual.length];
+    rowColumns = new int[numClasses];
+    rowValues  = new double[numClasses];
+    size       = 0;
+    for (i = 0; i < numClasses; i++) {
+      // nothing to find in this row
+      if (matrix.getIncorrect(i) == 0)
+	continue;
+      checkInterrupted();
+      numCells = matrix.getNonZero(i, rowColumns, rowValues);
+      for (n = 0; n < numCells; n++) {
+	if (rowColumns[n] == i)
+	  continue;
+	if (size == actual.length) {
+	  actual    = grow(actual);
+	  predicted = grow(predicted);
+	  counts    = grow(counts);
+	}
+	actual[size]    = i;
+	predicted[size] = rowColumns[n];
+	counts[size]    = rowValues[n];
+	size++;
+      }
+    }
+
+    result           = new ErrorList();
+    result.size      = size;
+    result.actual    = new int[size];
+    result.predicted = new int[size];
+    result.counts    = new double[size];
+    keys             = new double[size];
+    for (i = 0; i < size; i++)
+      keys[i] = -counts[i];
+    sorted = Utils.stableSort(keys);
+    max    = 0;
+    for (i = 0; i < size; i++) {
+      result.actual[i]    = actual[sorted[i]];
+      result.predicted[i] = predicted[sorted[i]];
+      result.counts[i]    = counts[sorted[i]];
+      max = Math.max(max, Math.abs(result.counts[i]));
+      if ((result.decimals == 0) && (result.counts[i] != Math.rint(result.counts[i])))
+	result.decimals = 2;
+    }
+    result.width = Utils.doubleToString(max, result.decimals).length() + 1;
+    if (result.decimals > 0)
+      result.width = Math.max(result.width, Utils.doubleToString(Math.floor(max), 0).length() + result.decimals + 2);
+
+    return result;
+  }
+
+  /**
+   * Doubles the capacity of the array.
+   *
+   * @param array	the array to grow
+   * @return		the new array
+   */
+  protected int[] grow(int[] array) {
+    int[]	result;
+
+    result = new int[array.length * 2];
+    System.arraycopy(array, 0, result, 0, array.length);
+
+    return result;
+  }
+
+  /**
+   * Doubles the capacity of the array.
+   *
+   * @param array	the array to grow
+   * @return		the new array
+   */
+  protected double[] grow(double[] array) {
+    double[]	result;
+
+    result = new double[array.length * 2];
+    System.arraycopy(array, 0, result, 0, array.length);
+
+    return result;
+  }
+
+  /**
+   * Returns the number of lines of the report.
+   *
+   * @param matrix	the matrix
+   * @param errors	the errors of the matrix
+   * @return		the number of lines
+   */
+  protected int getNumLines(ConfusionMatrix matrix, ErrorList errors) {
+    return NUM_HEADER_LINES + Math.max(1, errors.size) + NUM_SEPARATOR_LINES + matrix.getNumClasses();
+  }
+
+  /**
+   * Generates the specified line of the report (incl. new line).
+   *
+   * @param matrix	the matrix
+   * @param errors	the errors of the matrix
+   * @param line	the 0-based line
+   * @param output	the output to append to
+   * @throws IOException	if appending fails
+   */
+  protected void generateLine(ConfusionMatrix matrix, ErrorList errors, int line, Appendable output) throws IOException {
+    int		numErrorLines;
+    int		index;
+    double	total;
+
+    numErrorLines = Math.max(1, errors.size);
+
+    // errors
+    if (line == 0) {
+      output.append("Errors [count actual -> predicted]: ");
+      errors.formatter.append(output, errors.size, 0);
+      output.append('\n');
+    }
+    else if (line < NUM_HEADER_LINES + numErrorLines) {
+      index = line - NUM_HEADER_LINES;
+      if (errors.size == 0) {
+	output.append(" none\n");
+      }
+      else {
+	errors.formatter.append(output, errors.counts[index], errors.width, errors.decimals);
+	output.append("  ");
+	output.append(matrix.getLabels()[errors.actual[index]]);
+	output.append(" -> ");
+	output.append(matrix.getLabels()[errors.predicted[index]]);
+	output.append('\n');
+      }
+    }
+    // separator
+    else if (line == NUM_HEADER_LINES + numErrorLines) {
+      output.append('\n');
+    }
+    else if (line == NUM_HEADER_LINES + numErrorLines + 1) {
+      output.append("Classes [incorr/correct/total] recall:\n");
+    }
+    // summaries
+    else {
+      index = line - NUM_HEADER_LINES - numErrorLines - NUM_SEPARATOR_LINES;
+      total = matrix.getTotal(index);
+      output.append(' ');
+      output.append(matrix.getLabels()[index]);
+      output.append(" [");
+      errors.formatter.append(output, matrix.getIncorrect(index), 3);
+      output.append('/');
+      errors.formatter.append(output, matrix.getCorrect(index), 3);
+      output.append('/');
+      errors.formatter.append(output, total, 3);
+      output.append("] ");
+      if (total == 0)
+	output.append('?');
+      else
+	errors.formatter.append(output, matrix.getCorrect(index) / total, 3);
+      output.append('\n');
+    }
+  }
+
+  /**
+   * Generates the report, appending it line by line to the output, e.g., a
+   * {@link java.io.Writer}.
+   *
+   * @param matrix	the matrix to use
+   * @param output	the output to append to
+   * @throws IOException	if appending fails
+   */
+  @Override
+  protected void doGenerate(ConfusionMatrix matrix, Appendable output) throws IOException {
+    ConfusionMatrixMetrics.Sample	sample;
+    ErrorList				errors;
+    int					numLines;
+    int					i;
+
+    sample   = ConfusionMatrixMetrics.start();
+    errors   = collectErrors(matrix);
+    numLines = getNumLines(matrix, errors);
+    for (i = 0; i < numLines; i++)
+      generateLine(matrix, errors, i, output);
+    ConfusionMatrixMetrics.TEXT.record(sample, (long) matrix.getNumClasses() * (long) matrix.getNumClasses(), matrix.getNumClasses());
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires:
+   * the writer's buffer, the scratch rows and the sorted list of errors.
+   * The number of errors is estimated from the totals: a row has at most
+   * one error cell per incorrectly classified instance (integral weights)
+   * and at most one per other class label.
+   *
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    long	numErrors;
+    double	incorrect;
+    int		i;
+
+    numErrors = 0;
+    for (i = 0; i < matrix.getNumClasses(); i++) {
+      incorrect = matrix.getIncorrect(i);
+      if (incorrect > 0)
+	numErrors += (long) Math.min(matrix.getNumClasses() - 1, Math.ceil(incorrect));
+    }
+
+    // temporary + final arrays, sort keys and indices
+    return super.estimateExportMemory(matrix) + matrix.getNumClasses() * 12L + numErrors * 48;
+  }
+
+  /**
+   * Creates the model that renders the lines for the viewer.
+   *
+   * @param matrix	the matrix to render
+   * @return		the model
+   */
+  @Override
+  protected LinesModel createModel(ConfusionMatrix matrix) {
+    return new ErrorListModel(matrix);
+  }
+}
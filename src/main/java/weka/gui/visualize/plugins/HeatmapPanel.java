@@ -32,7 +32,11 @@ import javax.swing.JPanel;
 import weka.gui.visualize.PrintablePanel;
 
 /**
- * Panel for displaying a heatmap image.
+ * Panel for displaying a heatmap image. If the complete image would get
+ * too large (see {@link #MAX_IMAGE_PIXELS}) or wouldn't fit into the
+ * available heap (see {@link MatrixFootprint}), only the visible cells get
+ * painted on demand. The cells get painted by a {@link HeatmapRenderer},
+ * which holds the colors and the color scale.
  * 
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -49,6 +53,9 @@ public class HeatmapPanel
   /** the number of colors. */
   public final static int NUM_COLORS = 256;
 
+  /** the maximum number of pixels for generating a complete image. */
+  public final static long MAX_IMAGE_PIXELS = 16L * 1024L * 1024L;
+
   /**
    * Displays the generated image.
    * 
@@ -115,55 +122,85 @@ public class HeatmapPanel
   /** the underlying matrix. */
   protected ConfusionMatrix m_Matrix;
   
-  /** the size of the squares. */
-  protected int m_SizeSquares = CELL_SIZE;
-  
-  /** the number of colors. */
-  protected int m_NumColors = NUM_COLORS;
-  
-  /** the first color. */
-  protected Color m_ColorFirst = Color.WHITE;
-  
-  /** the second color. */
-  protected Color m_ColorSecond = Color.BLACK;
+  /** the renderer for the cells. */
+  protected HeatmapRenderer m_Renderer;
   
   /** the panel for displaying the image. */
   protected ImagePanel m_PanelImage;
   
+  /** the formatter for the tooltip. */
+  protected NumberFormatter m_Formatter = new NumberFormatter();
+  
   /**
    * Initializes the panel.
    * 
-   * @param img	the image to display
+   * @param matrix	the matrix to display
    */
   public HeatmapPanel(ConfusionMatrix matrix) {
-    m_Matrix = matrix;
-    m_PanelImage = new ImagePanel();
+    this(new HeatmapRenderer(matrix), null);
+  }
+
+  /**
+   * Initializes the panel with an image that the renderer generated
+   * already, e.g., in a background thread.
+   * 
+   * @param renderer	the renderer for the cells
+   * @param image	the image generated by the renderer, null to generate
+   * 			it (or to paint on demand, using the scale of the
+   * 			renderer if already initialized)
+   */
+  public HeatmapPanel(HeatmapRenderer renderer, BufferedImage image) {
+    m_Matrix     = renderer.getMatrix();
+    m_Renderer   = renderer;
+    m_PanelImage = new ImagePanel() {
+      private static final long serialVersionUID = -3384213766950287185L;
+      @Override
+      protected void paintComponent(Graphics g) {
+	super.paintComponent(g);
+	if (getImage() == null)
+	  m_Renderer.paintCells(g);
+      }
+    };
     setLayout(new FlowLayout(FlowLayout.CENTER));
     add(m_PanelImage);
-    setImage(generateImage());
+    if (image != null)
+      setImage(image);
+    else if (renderer.hasScale() && isPaintingOnDemand())
+      initPaintingOnDemand();
+    else
+      update();
     addMouseMotionListener(new MouseMotionAdapter() {
       @Override
       public void mouseMoved(MouseEvent e) {
-	int x = e.getX() / m_SizeSquares;
-	int y = e.getY() / m_SizeSquares;
+	int x = e.getX() / getSizeSquares();
+	int y = e.getY() / getSizeSquares();
 	String tiptext = null;
 	if ((x < m_Matrix.getNumClasses()) && (y < m_Matrix.getNumClasses())) {
 	  tiptext = "act: " + m_Matrix.getLabels()[y] 
 	      + ", pred: " + m_Matrix.getLabels()[x] 
-		  + ", count: " + m_Matrix.getMatrix()[y][x];
+		  + ", count: " + m_Formatter.toPlainString(m_Matrix.getValue(y, x));
 	}
 	setToolTipText(tiptext);
       }
     });
   }
 
+  /**
+   * Returns the renderer for the cells.
+   * 
+   * @return		the renderer
+   */
+  public HeatmapRenderer getRenderer() {
+    return m_Renderer;
+  }
+
   /**
    * Sets the first color to use.
    * 
    * @param value	the color
    */
   public void setFirstColor(Color value) {
-    m_ColorFirst = value;
+    m_Renderer.setFirstColor(value);
     update();
   }
   
@@ -173,7 +210,7 @@ public class HeatmapPanel
    * @return		the color
    */
   public Color getFirstColor() {
-    return m_ColorFirst;
+    return m_Renderer.getFirstColor();
   }
 
   /**
@@ -182,7 +219,7 @@ public class HeatmapPanel
    * @param value	the color
    */
   public void setSecondColor(Color value) {
-    m_ColorSecond = value;
+    m_Renderer.setSecondColor(value);
     update();
   }
   
@@ -192,7 +229,36 @@ public class HeatmapPanel
    * @return		the color
    */
   public Color getSecondColor() {
-    return m_ColorSecond;
+    return m_Renderer.getSecondColor();
+  }
+
+  /**
+   * Sets the color for negative values, only used by the diverging scale.
+   * 
+   * @param value	the color
+   */
+  public void setNegativeColor(Color value) {
+    m_Renderer.setNegativeColor(value);
+    update();
+  }
+  
+  /**
+   * Returns the color for negative values.
+   * 
+   * @return		the color
+   */
+  public Color getNegativeColor() {
+    return m_Renderer.getNegativeColor();
+  }
+  
+  /**
+   * Returns whether a diverging color scale is used, i.e., whether the
+   * matrix contains negative values.
+   * 
+   * @return		true if diverging
+   */
+  public boolean isDiverging() {
+    return m_Renderer.isDiverging();
   }
 
   /**
@@ -201,13 +267,8 @@ public class HeatmapPanel
    * @param value	the size of the squares
    */
   public void setSizeSquares(int value) {
-    if ((value >= 1) && (value <= 1000)) {
-      m_SizeSquares = value;
+    if (m_Renderer.setSizeSquares(value))
       update();
-    }
-    else {
-      System.err.println("Size of squares must satisfy: 1 <= x <= 1000");
-    }
   }
   
   /**
@@ -216,7 +277,7 @@ public class HeatmapPanel
    * @return		the size of the squares
    */
   public int getSizeSquares() {
-    return m_SizeSquares;
+    return m_Renderer.getSizeSquares();
   }
 
   /**
@@ -225,13 +286,8 @@ public class HeatmapPanel
    * @param value	the number of colors
    */
   public void setNumColors(int value) {
-    if ((value >= 1) && (value <= 256)) {
-      m_NumColors = value;
+    if (m_Renderer.setNumColors(value))
       update();
-    }
-    else {
-      System.err.println("Number of colors must satisfy: 1 <= x <= 256");
-    }
   }
   
   /**
@@ -240,89 +296,55 @@ public class HeatmapPanel
    * @return		the number of colors
    */
   public int getNumColors() {
-    return m_NumColors;
+    return m_Renderer.getNumColors();
   }
-  
+
   /**
-   * Performs the actual generation.
-   *
-   * @param first	the first color
-   * @param second	the second color
-   * @param num		the number of colors to generate
-   * @return		the generated colors
+   * Paints a single cell of the matrix, using the color scale of the last
+   * generated image.
+   * 
+   * @param g		the graphics context of the image
+   * @param row		the row of the cell
+   * @param col		the column of the cell
    */
-  protected Color[] generateColors(Color first, Color second, int num) {
-    Color[]	result;
-    int		red1;
-    int		red2;
-    int		redNew;
-    int		green1;
-    int		green2;
-    int		greenNew;
-    int		blue1;
-    int		blue2;
-    int		blueNew;
-    int		i;
-    double	step;
-
-    result = new Color[num];
-    red1   = first.getRed();
-    green1 = first.getGreen();
-    blue1  = first.getBlue();
-
-    red2   = second.getRed();
-    green2 = second.getGreen();
-    blue2  = second.getBlue();
-
-    step   = 1.0 / num;
-
-    for (i = 0; i < num; i++) {
-      redNew   = (int) (red1   + ((red2   < red1)   ? -i : i) * step * Math.abs(red2   - red1));
-      greenNew = (int) (green1 + ((green2 < green1) ? -i : i) * step * Math.abs(green2 - green1));
-      blueNew  = (int) (blue1  + ((blue2  < blue1)  ? -i : i) * step * Math.abs(blue2  - blue1));
+  protected void paintCell(Graphics g, int row, int col) {
+    m_Renderer.paintCell(g, row, col);
+  }
 
-      result[i] = new Color(redNew, greenNew, blueNew);
-    }
+  /**
+   * Returns whether the complete image would be too large, in which case
+   * only the visible cells get painted (see {@link #MAX_IMAGE_PIXELS} and
+   * {@link MatrixFootprint#fitsHeap(long)}).
+   * 
+   * @return		true if painting on demand
+   */
+  public boolean isPaintingOnDemand() {
+    return isPaintingOnDemand(m_Renderer);
+  }
 
-    return result;
+  /**
+   * Returns whether the complete image of the renderer would be too large
+   * for generating it (see {@link #isPaintingOnDemand()}).
+   * 
+   * @param renderer	the renderer to check
+   * @return		true if painting on demand
+   */
+  public static boolean isPaintingOnDemand(HeatmapRenderer renderer) {
+    long	size;
+    
+    size = renderer.getImageSize();
+    
+    return (size * size > MAX_IMAGE_PIXELS) || !MatrixFootprint.fitsHeap(MatrixFootprint.getImageBytes(size, size));
   }
 
   /**
-   * Generates the heatmap image.
+   * Generates the complete heatmap image.
    * 
    * @return		the image
+   * @see		HeatmapRenderer#generateImage()
    */
   protected BufferedImage generateImage() {
-    BufferedImage	image;
-    int			i;
-    int			n;
-    double		min;
-    double		max;
-    double		binWidth;
-    Color[]		colors;
-    int			bin;
-    Graphics		g;
-    
-    // create heatmap image
-    image    = new BufferedImage(m_Matrix.getNumClasses() * m_SizeSquares, m_Matrix.getNumClasses() * m_SizeSquares, BufferedImage.TYPE_INT_ARGB);
-    g        = image.createGraphics();
-    min      = m_Matrix.getMin();
-    max      = m_Matrix.getMax();
-    binWidth = (max - min) / m_NumColors;
-    colors   = generateColors(m_ColorFirst, m_ColorSecond, m_NumColors);
-    for (i = 0; i < m_Matrix.getNumClasses(); i++) {
-      for (n = 0; n < m_Matrix.getNumClasses(); n++) {
-	bin = (int) Math.floor((m_Matrix.getMatrix()[i][n] - min) / binWidth);
-	// max belongs in the top-most bin
-	if (bin == m_NumColors)
-	  bin--;
-	g.setColor(colors[bin]);
-	g.fillRect(n * m_SizeSquares, i * m_SizeSquares, m_SizeSquares, m_SizeSquares);
-      }
-    }
-    g.dispose();
-    
-    return image;
+    return m_Renderer.generateImage();
   }
 
   /**
@@ -337,17 +359,53 @@ public class HeatmapPanel
   /**
    * Returns the current image.
    * 
-   * @return		the image, null if not available
+   * @return		the image, null if not available (e.g., when painting
+   * 			on demand)
    */
   public BufferedImage getImage() {
     return m_PanelImage.getImage();
   }
 
   /**
-   * Updates the image using the current parameters.
+   * Returns the complete image, generates it if necessary (e.g., when
+   * painting on demand).
+   * 
+   * @return		the image
+   */
+  public BufferedImage renderImage() {
+    if (getImage() != null)
+      return getImage();
+    else
+      return generateImage();
+  }
+
+  /**
+   * Updates the image using the current parameters. Only sets up the color
+   * scale and the size of the panel when painting on demand.
    */
   protected void update() {
-    setImage(generateImage());
+    if (isPaintingOnDemand()) {
+      m_Renderer.initScale();
+      initPaintingOnDemand();
+    }
+    else {
+      setImage(generateImage());
+    }
+  }
+
+  /**
+   * Sets up the size of the panel for painting on demand, using the
+   * current color scale of the renderer.
+   */
+  protected void initPaintingOnDemand() {
+    Dimension	size;
+    
+    setImage(null);
+    size = new Dimension((int) m_Renderer.getImageSize(), (int) m_Renderer.getImageSize());
+    m_PanelImage.setSize(size);
+    m_PanelImage.setMinimumSize(size);
+    m_PanelImage.setPreferredSize(size);
+    m_PanelImage.revalidate();
   }
   
   /**
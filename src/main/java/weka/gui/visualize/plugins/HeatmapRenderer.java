@@ -0,0 +1,470 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * HeatmapRenderer.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Serializable;
+
+/**
+ * Paints the cells of a confusion matrix as heatmap, independent of any
+ * Swing component (see {@link HeatmapPanel} for displaying the image).
+ * Can therefore be used for exporting images in headless environments.
+ * <p/>
+ * Matrices with negative values (e.g., {@link DiffConfusionMatrix}) use a
+ * diverging color scale that is symmetric around zero: from the negative
+ * color via the first color (zero) to the second color.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class HeatmapRenderer
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2214637386401557431L;
+
+  /** the underlying matrix. */
+  protected ConfusionMatrix m_Matrix;
+
+  /** the size of the squares. */
+  protected int m_SizeSquares = HeatmapPanel.CELL_SIZE;
+
+  /** the number of colors. */
+  protected int m_NumColors = HeatmapPanel.NUM_COLORS;
+
+  /** the first color. */
+  protected Color m_ColorFirst = Color.WHITE;
+
+  /** the second color. */
+  protected Color m_ColorSecond = Color.BLACK;
+
+  /** the color for negative values (diverging scale only). */
+  protected Color m_ColorNegative = Color.BLUE;
+
+  /** the colors of the current scale. */
+  protected Color[] m_Colors;
+
+  /** the minimum of the current color scale. */
+  protected double m_ScaleMin;
+
+  /** the maximum of the current color scale. */
+  protected double m_ScaleMax;
+
+  /**
+   * Initializes the renderer.
+   *
+   * @param matrix	the matrix to render
+   */
+  public HeatmapRenderer(ConfusionMatrix matrix) {
+    m_Matrix = matrix;
+  }
+
+  /**
+   * Returns the underlying matrix.
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix getMatrix() {
+    return m_Matrix;
+  }
+
+  /**
+   * Sets the first color to use.
+   *
+   * @param value	the color
+   */
+  public void setFirstColor(Color value) {
+    m_ColorFirst = value;
+  }
+
+  /**
+   * Returns the first color.
+   *
+   * @return		the color
+   */
+  public Color getFirstColor() {
+    return m_ColorFirst;
+  }
+
+  /**
+   * Sets the second color to use.
+   *
+   * @param value	the color
+   */
+  public void setSecondColor(Color value) {
+    m_ColorSecond = value;
+  }
+
+  /**
+   * Returns the second color.
+   *
+   * @return		the color
+   */
+  public Color getSecondColor() {
+    return m_ColorSecond;
+  }
+
+  /**
+   * Sets the color for negative values, only used by the diverging scale.
+   *
+   * @param value	the color
+   */
+  public void setNegativeColor(Color value) {
+    m_ColorNegative = value;
+  }
+
+  /**
+   * Returns the color for negative values.
+   *
+   * @return		the color
+   */
+  public Color getNegativeColor() {
+    return m_ColorNegative;
+  }
+
+  /**
+   * Returns whether a diverging color scale is used, i.e., whether the
+   * matrix contains negative values.
+   *
+   * @return		true if diverging
+   */
+  public boolean isDiverging() {
+    return (m_Matrix.getMin() < 0);
+  }
+
+  /**
+   * Sets the size of the squares.
+   *
+   * @param value	the size of the squares (1-1000)
+   * @return		true if valid and set
+   */
+  public boolean setSizeSquares(int value) {
+    if ((value >= 1) && (value <= 1000)) {
+      m_SizeSquares = value;
+      return true;
+    }
+    else {
+      System.err.println("Size of squares must satisfy: 1 <= x <= 1000");
+      return false;
+    }
+  }
+
+  /**
+   * Returns the size of the squares.
+   *
+   * @return		the size of the squares
+   */
+  public int getSizeSquares() {
+    return m_SizeSquares;
+  }
+
+  /**
+   * Sets the number of colors to use.
+   *
+   * @param value	the number of colors (1-256)
+   * @return		true if valid and set
+   */
+  public boolean setNumColors(int value) {
+    if ((value >= 1) && (value <= 256)) {
+      m_NumColors = value;
+      return true;
+    }
+    else {
+      System.err.println("Number of colors must satisfy: 1 <= x <= 256");
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of colors to use.
+   *
+   * @return		the number of colors
+   */
+  public int getNumColors() {
+    return m_NumColors;
+  }
+
+  /**
+   * Returns the minimum of the current color scale.
+   *
+   * @return		the minimum
+   * @see		#initScale()
+   */
+  public double getScaleMin() {
+    return m_ScaleMin;
+  }
+
+  /**
+   * Returns the maximum of the current color scale.
+   *
+   * @return		the maximum
+   * @see		#initScale()
+   */
+  public double getScaleMax() {
+    return m_ScaleMax;
+  }
+
+  /**
+   * Returns the width of a color bin of the current scale.
+   *
+   * @return		the width, 0 if no scale initialized yet
+   * @see		#initScale()
+   */
+  public double getBinWidth() {
+    if (m_Colors == null)
+      return 0;
+    return (m_ScaleMax - m_ScaleMin) / m_Colors.length;
+  }
+
+  /**
+   * Checks whether the color scale no longer fits the minimum and maximum,
+   * i.e., whether either of them moved more than the threshold (in color
+   * bins) away from the current scale.
+   *
+   * @param min		the current minimum
+   * @param max		the current maximum
+   * @param threshold	the threshold in bins
+   * @return		true if the scale needs to be initialized again
+   * @see		#initScale()
+   */
+  public boolean requiresRescale(double min, double max, double threshold) {
+    double	binWidth;
+
+    binWidth = getBinWidth();
+    if (binWidth == 0)
+      return (min != m_ScaleMin) || (max != m_ScaleMax);
+
+    return (Math.abs(min - m_ScaleMin) > threshold * binWidth)
+	|| (Math.abs(max - m_ScaleMax) > threshold * binWidth);
+  }
+
+  /**
+   * Returns whether the color scale has been initialized.
+   *
+   * @return		true if initialized
+   * @see		#initScale()
+   */
+  public boolean hasScale() {
+    return (m_Colors != null);
+  }
+
+  /**
+   * Returns the width and height of the complete image in pixels.
+   *
+   * @return		the size
+   */
+  public long getImageSize() {
+    return (long) m_Matrix.getNumClasses() * (long) m_SizeSquares;
+  }
+
+  /**
+   * Performs the actual generation.
+   *
+   * @param first	the first color
+   * @param second	the second color
+   * @param num		the number of colors to generate
+   * @return		the generated colors
+   */
+  protected Color[] generateColors(Color first, Color second, int num) {
+    Color[]	result;
+    int		red1;
+    int		red2;
+    int		redNew;
+    int		green1;
+    int		green2;
+    int		greenNew;
+    int		blue1;
+    int		blue2;
+    int		blueNew;
+    int		i;
+    double	step;
+
+    result = new Color[num];
+    red1   = first.getRed();
+    green1 = first.getGreen();
+    blue1  = first.getBlue();
+
+    red2   = second.getRed();
+    green2 = second.getGreen();
+    blue2  = second.getBlue();
+
+    step   = 1.0 / num;
+
+    for (i = 0; i < num; i++) {
+      redNew   = (int) (red1   + ((red2   < red1)   ? -i : i) * step * Math.abs(red2   - red1));
+      greenNew = (int) (green1 + ((green2 < green1) ? -i : i) * step * Math.abs(green2 - green1));
+      blueNew  = (int) (blue1  + ((blue2  < blue1)  ? -i : i) * step * Math.abs(blue2  - blue1));
+
+      result[i] = new Color(redNew, greenNew, blueNew);
+    }
+
+    return result;
+  }
+
+  /**
+   * Initializes the color scale from the matrix. A diverging scale uses
+   * half of the colors for the negative and half for the positive values.
+   */
+  public void initScale() {
+    Color[]	negative;
+    Color[]	positive;
+    double	max;
+
+    m_ScaleMin = m_Matrix.getMin();
+    m_ScaleMax = m_Matrix.getMax();
+    if ((m_ScaleMin < 0) && (m_NumColors > 1)) {
+      max        = Math.max(-m_ScaleMin, m_ScaleMax);
+      m_ScaleMin = -max;
+      m_ScaleMax = max;
+      negative   = generateColors(m_ColorNegative, m_ColorFirst, m_NumColors / 2);
+      positive   = generateColors(m_ColorFirst, m_ColorSecond, m_NumColors - negative.length);
+      m_Colors   = new Color[m_NumColors];
+      System.arraycopy(negative, 0, m_Colors, 0, negative.length);
+      System.arraycopy(positive, 0, m_Colors, negative.length, positive.length);
+    }
+    else {
+      m_Colors = generateColors(m_ColorFirst, m_ColorSecond, m_NumColors);
+    }
+  }
+
+  /**
+   * Returns the color bin for the value, using the current color scale.
+   * Values outside the scale get assigned to the first or last bin.
+   *
+   * @param value	the value to get the bin for
+   * @return		the bin
+   */
+  protected int getBin(double value) {
+    int		result;
+    double	binWidth;
+
+    binWidth = (m_ScaleMax - m_ScaleMin) / m_Colors.length;
+    result   = (int) Math.floor((value - m_ScaleMin) / binWidth);
+    // max belongs in the top-most bin
+    if (result >= m_Colors.length)
+      result = m_Colors.length - 1;
+    if (result < 0)
+      result = 0;
+
+    return result;
+  }
+
+  /**
+   * Paints a single cell of the matrix, using the current color scale.
+   *
+   * @param g		the graphics context of the image
+   * @param row		the row of the cell
+   * @param col		the column of the cell
+   */
+  public void paintCell(Graphics g, int row, int col) {
+    paintCell(g, row, col, m_Matrix.getValue(row, col));
+  }
+
+  /**
+   * Paints a single cell of the matrix with the given count, using the
+   * current color scale.
+   *
+   * @param g		the graphics context of the image
+   * @param row		the row of the cell
+   * @param col		the column of the cell
+   * @param value	the count of the cell
+   */
+  public void paintCell(Graphics g, int row, int col, double value) {
+    g.setColor(m_Colors[getBin(value)]);
+    g.fillRect(col * m_SizeSquares, row * m_SizeSquares, m_SizeSquares, m_SizeSquares);
+  }
+
+  /**
+   * Paints the cells that intersect with the clip area of the graphics
+   * context, i.e., only the rows of the visible cells get accessed (as
+   * bulk copy, see {@link ConfusionMatrix#getRow(int, double[])}). Does
+   * nothing if the color scale hasn't been initialized yet.
+   *
+   * @param g		the graphics context
+   */
+  public void paintCells(Graphics g) {
+    Rectangle	clip;
+    double[]	values;
+    int		numClasses;
+    int		fromRow;
+    int		toRow;
+    int		fromCol;
+    int		toCol;
+    int		i;
+    int		n;
+
+    if (m_Colors == null)
+      return;
+
+    numClasses = m_Matrix.getNumClasses();
+    clip       = g.getClipBounds();
+    if (clip == null)
+      clip = new Rectangle(0, 0, numClasses * m_SizeSquares, numClasses * m_SizeSquares);
+    fromRow = Math.max(0, clip.y / m_SizeSquares);
+    toRow   = Math.min(numClasses - 1, (clip.y + clip.height) / m_SizeSquares);
+    fromCol = Math.max(0, clip.x / m_SizeSquares);
+    toCol   = Math.min(numClasses - 1, (clip.x + clip.width) / m_SizeSquares);
+    values  = new double[numClasses];
+    for (i = fromRow; i <= toRow; i++) {
+      m_Matrix.getRow(i, values);
+      for (n = fromCol; n <= toCol; n++)
+	paintCell(g, i, n, values[n]);
+    }
+  }
+
+  /**
+   * Generates the complete heatmap image, reading the counts row by row.
+   * Initializes the color scale from the matrix first.
+   *
+   * @return		the image
+   */
+  public BufferedImage generateImage() {
+    BufferedImage			image;
+    ConfusionMatrixMetrics.Sample	sample;
+    double[]				values;
+    int					numClasses;
+    int					i;
+    int					n;
+    Graphics				g;
+
+    sample = ConfusionMatrixMetrics.start();
+
+    // create heatmap image
+    numClasses = m_Matrix.getNumClasses();
+    image      = new BufferedImage(numClasses * m_SizeSquares, numClasses * m_SizeSquares, BufferedImage.TYPE_INT_ARGB);
+    g          = image.createGraphics();
+    initScale();
+    values     = new double[numClasses];
+    for (i = 0; i < numClasses; i++) {
+      AbstractConfusionMatrixVisualization.checkInterrupted();
+      m_Matrix.getRow(i, values);
+      for (n = 0; n < numClasses; n++)
+	paintCell(g, i, n, values[n]);
+    }
+    g.dispose();
+
+    ConfusionMatrixMetrics.HEATMAP.record(sample, (long) numClasses * (long) numClasses, numClasses);
+
+    return image;
+  }
+}
@@ -26,7 +26,10 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
 
+import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JColorChooser;
 import javax.swing.JFrame;
@@ -38,6 +41,8 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import weka.classifiers.CostMatrix;
+
 /**
  * Visualizes the confusion matrix as heatmap.
  * 
@@ -47,6 +52,60 @@ import javax.swing.event.ChangeListener;
 public class HeatmapVisualization
   extends AbstractConfusionMatrixVisualization {
 
+  /**
+   * The results of {@link HeatmapVisualization#precompute(ConfusionMatrix)}.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Prepared {
+    
+    /** the matrix that got prepared. */
+    protected ConfusionMatrix m_From;
+    
+    /** the prepared matrix. */
+    protected ConfusionMatrix m_Matrix;
+    
+    /** the renderer for the prepared matrix. */
+    protected HeatmapRenderer m_Renderer;
+    
+    /** the generated image, null if painting on demand. */
+    protected BufferedImage m_Image;
+    
+    /**
+     * Initializes the container.
+     * 
+     * @param from	the matrix that got prepared
+     * @param matrix	the prepared matrix
+     * @param renderer	the renderer for the prepared matrix
+     * @param image	the generated image, null if painting on demand
+     */
+    public Prepared(ConfusionMatrix from, ConfusionMatrix matrix, HeatmapRenderer renderer, BufferedImage image) {
+      super();
+      m_From     = from;
+      m_Matrix   = matrix;
+      m_Renderer = renderer;
+      m_Image    = image;
+    }
+    
+    /**
+     * Returns the prepared matrix.
+     * 
+     * @return		the matrix
+     */
+    public ConfusionMatrix getMatrix() {
+      return m_Matrix;
+    }
+    
+    /**
+     * Releases the prepared matrix if it was derived from the shared one.
+     */
+    public void release() {
+      if (m_Matrix != m_From)
+	ConfusionMatrix.release(m_Matrix);
+    }
+  }
+
   /** for serialization. */
   private static final long serialVersionUID = 6739403493248911860L;
   
@@ -62,6 +121,9 @@ public class HeatmapVisualization
   /** the button for selecting the second color. */
   protected JButton m_ButtonSecond;
   
+  /** the button for selecting the color for negative values. */
+  protected JButton m_ButtonNegative;
+  
   /** the spinner for the size of the squares. */
   protected JSpinner m_SpinnerSize;
   
@@ -135,6 +197,18 @@ public class HeatmapVisualization
     return m_Heatmap;
   }
 
+  /**
+   * Generates the heatmap panel from the renderer and its image.
+   * 
+   * @param renderer	the renderer
+   * @param image	the generated image, null if painting on demand
+   * @return		the panel
+   */
+  protected HeatmapPanel generateHeatmap(HeatmapRenderer renderer, BufferedImage image) {
+    m_Heatmap = new HeatmapPanel(renderer, image);
+    return m_Heatmap;
+  }
+
   /**
    * Generats the options panel.
    * 
@@ -147,7 +221,7 @@ public class HeatmapVisualization
     JLabel	label;
     
     result = new JPanel(new BorderLayout());
-    options = new JPanel(new GridLayout(4, 1));
+    options = new JPanel(new GridLayout(0, 1));
     result.add(options, BorderLayout.NORTH);
     
     // first color
@@ -178,6 +252,22 @@ public class HeatmapVisualization
     option.add(m_ButtonSecond);
     options.add(option);
     
+    // negative color
+    if (m_Heatmap.isDiverging()) {
+      option = new JPanel(new FlowLayout(FlowLayout.LEFT));
+      m_ButtonNegative = new JButton("Negative color");
+      m_ButtonNegative.addActionListener(new ActionListener() {
+	@Override
+	public void actionPerformed(ActionEvent e) {
+	  Color chosen = JColorChooser.showDialog(m_ButtonNegative, "Select color for negative values", m_Heatmap.getNegativeColor());
+	  if (chosen != null)
+	    m_Heatmap.setNegativeColor(chosen);
+	}
+      });
+      option.add(m_ButtonNegative);
+      options.add(option);
+    }
+    
     // size
     option = new JPanel(new FlowLayout(FlowLayout.LEFT));
     m_SpinnerSize = new JSpinner();
@@ -218,20 +308,214 @@ public class HeatmapVisualization
   }
   
   /**
-   * Generates the visualization.
+   * Prepares the matrix before generating the heatmap.
+   * <p/>
+   * Default implementation just returns the matrix.
    * 
-   * @param matrix	the matrix to visualize
-   * @return		the panel with the visualization
+   * @param matrix	the matrix to prepare
+   * @return		the matrix to visualize
+   */
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix) {
+    return matrix;
+  }
+  
+  /**
+   * Prepares the matrix before generating the heatmap, using the cost
+   * matrix selected for the display.
+   * <p/>
+   * Default implementation ignores the costs and calls
+   * {@link #prepare(ConfusionMatrix)}.
+   * 
+   * @param matrix	the matrix to prepare
+   * @param costs	the cost matrix for the display, null if none
+   * @return		the matrix to visualize
+   */
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix, CostMatrix costs) {
+    return prepare(matrix);
+  }
+  
+  /**
+   * Prepares the matrix and generates the heatmap image in the background
+   * (unless the image is too large, see
+   * {@link HeatmapPanel#isPaintingOnDemand(HeatmapRenderer)}).
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @param costs	the cost matrix for the display, null if none
+   * @return		the {@link Prepared} container
+   * @see		#prepare(ConfusionMatrix, CostMatrix)
    */
   @Override
-  public JPanel generate(ConfusionMatrix matrix) {
+  protected Object precompute(ConfusionMatrix matrix, CostMatrix costs) {
+    ConfusionMatrix	prepared;
+    HeatmapRenderer	renderer;
+    BufferedImage	image;
+    
+    prepared = prepare(matrix, costs);
+    renderer = new HeatmapRenderer(prepared);
+    if (HeatmapPanel.isPaintingOnDemand(renderer)) {
+      renderer.initScale();
+      image = null;
+    }
+    else {
+      image = renderer.generateImage();
+    }
+    
+    return new Prepared(matrix, prepared, renderer, image);
+  }
+  
+  /**
+   * Prepares the matrix and generates the heatmap image in the background,
+   * without a cost matrix for the display.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @return		the {@link Prepared} container
+   * @see		#precompute(ConfusionMatrix, CostMatrix)
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix) {
+    return precompute(matrix, null);
+  }
+  
+  /**
+   * Discards the prepared matrix and image, releases the prepared matrix
+   * if it was derived from the shared one.
+   * 
+   * @param precomputed	the {@link Prepared} container
+   */
+  @Override
+  protected void discard(Object precomputed) {
+    ((Prepared) precomputed).release();
+  }
+  
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   * 
+   * @return		the extension
+   */
+  @Override
+  public String getExportExtension() {
+    return "png";
+  }
+  
+  /**
+   * Returns the size of the squares for exporting a matrix with the
+   * specified number of class labels: {@link HeatmapPanel#CELL_SIZE}, unless
+   * the image would exceed {@link HeatmapPanel#MAX_IMAGE_PIXELS}, in which
+   * case the squares get smaller (but at least 1 pixel).
+   * 
+   * @param numClasses	the number of class labels
+   * @return		the size of the squares
+   */
+  public static int getExportSizeSquares(int numClasses) {
+    long	side;
+    
+    side = (long) Math.sqrt(HeatmapPanel.MAX_IMAGE_PIXELS);
+    
+    return (int) Math.max(1, Math.min(HeatmapPanel.CELL_SIZE, side / Math.max(1, numClasses)));
+  }
+  
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., the size of the ARGB image (see {@link #getExportSizeSquares(int)}).
+   * 
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    long	size;
+    
+    size = (long) matrix.getNumClasses() * (long) getExportSizeSquares(matrix.getNumClasses());
+    
+    return MatrixFootprint.getImageBytes(size, size);
+  }
+  
+  /**
+   * Exports the heatmap as PNG image. Renders the image directly, i.e.,
+   * without creating a Swing component. The size of the squares gets
+   * reduced for large matrices (see {@link #getExportSizeSquares(int)}).
+   * Derived matrices (see {@link #prepare(ConfusionMatrix)}) get released
+   * afterwards.
+   * 
+   * @param matrix	the matrix to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String export(ConfusionMatrix matrix, File file) {
+    ConfusionMatrix	prepared;
+    HeatmapRenderer	renderer;
+    long		size;
+    
+    prepared = null;
+    try {
+      prepared = prepare(matrix);
+      renderer = new HeatmapRenderer(prepared);
+      renderer.setSizeSquares(getExportSizeSquares(prepared.getNumClasses()));
+      size = renderer.getImageSize();
+      if ((size * size > Integer.MAX_VALUE) || !MatrixFootprint.fitsHeap(MatrixFootprint.getImageBytes(size, size)))
+	return "Heatmap image of " + size + "x" + size + " pixels too large for " + file + "!";
+      if (!ImageIO.write(renderer.generateImage(), "png", file))
+	return "No writer available for PNG images!";
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write heatmap to " + file + "!");
+      e.printStackTrace();
+      return "Failed to write heatmap to " + file + ": " + e;
+    }
+    finally {
+      if ((prepared != null) && (prepared != matrix))
+	ConfusionMatrix.release(prepared);
+    }
+    return null;
+  }
+  
+  /**
+   * Generates the panel with the heatmap and the options.
+   * 
+   * @param heatmap	the heatmap to display
+   * @return		the panel
+   */
+  protected JPanel generate(HeatmapPanel heatmap) {
     JPanel	result;
     
-    m_Matrix = matrix;
-    result   = new JPanel(new BorderLayout());
-    result.add(createScrollPane(generateHeatmap()), BorderLayout.CENTER);
+    result = new JPanel(new BorderLayout());
+    result.add(createScrollPane(heatmap), BorderLayout.CENTER);
     result.add(createScrollPane(generateOptions()), BorderLayout.EAST);
     
     return result;
   }
+  
+  /**
+   * Generates the visualization from the prepared matrix and image.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param precomputed	the {@link Prepared} container, null if not available
+   * @return		the panel with the visualization
+   */
+  @Override
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    Prepared	prepared;
+    
+    if (precomputed == null)
+      return generate(matrix);
+    
+    prepared = (Prepared) precomputed;
+    m_Matrix = prepared.getMatrix();
+    
+    return generate(generateHeatmap(prepared.m_Renderer, prepared.m_Image));
+  }
+  
+  /**
+   * Generates the visualization.
+   * 
+   * @param matrix	the matrix to visualize
+   * @return		the panel with the visualization
+   */
+  @Override
+  public JPanel generate(ConfusionMatrix matrix) {
+    m_Matrix = prepare(matrix);
+    return generate(generateHeatmap());
+  }
 }
@@ -19,8 +19,6 @@
  */
 package weka.gui.visualize.plugins;
 
-import javax.swing.JPanel;
-
 /**
  * Visualizes the confusion matrix as heatmap. Scales the rows by the sum
  * of instances that have this class label. Useful when class distributions
@@ -46,15 +44,28 @@ public class HeatmapVisualizationScaled
   }
 
   /**
-   * Generates the visualization.
+   * Prepares the matrix before generating the heatmap: scales the rows of
+   * a copy of the matrix.
    * 
-   * @param matrix	the matrix to visualize
-   * @return		the panel with the visualization
+   * @param matrix	the matrix to prepare
+   * @return		the scaled matrix
    */
   @Override
-  public JPanel generate(ConfusionMatrix matrix) {
+  protected ConfusionMatrix prepare(ConfusionMatrix matrix) {
     matrix = matrix.clone();
     matrix.scaleRows();
-    return super.generate(matrix);
+    return matrix;
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., the scaled copy of the matrix and the size of the ARGB image.
+   * 
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return super.estimateExportMemory(matrix) + (long) matrix.getNumClasses() * (long) matrix.getNumClasses() * 8L;
   }
 }
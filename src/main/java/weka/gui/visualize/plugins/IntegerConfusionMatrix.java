@@ -0,0 +1,319 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * IntegerConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Confusion matrix that stores the counts in a single, row-major int array,
+ * i.e., half the memory of the dense representation. Only suitable for
+ * integral, non-negative weights, other ones get rejected with an
+ * {@link IllegalArgumentException}. {@link ConfusionMatrix#create(List, Attribute)}
+ * only picks this representation if all weights are integral.
+ * <p/>
+ * {@link #scaleRows()} keeps the counts and only stores a divisor per row.
+ * {@link #getMatrix()} returns a dense copy (twice the memory of the
+ * counts), use {@link #getValue(int, int)} or {@link #getRow(int, double[])}
+ * instead.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class IntegerConfusionMatrix
+  extends ConfusionMatrix {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 6124787066335410985L;
+
+  /** the maximum number of cells. */
+  public final static long MAX_CELLS = Integer.MAX_VALUE - 8;
+
+  /** the number of classes. */
+  protected int m_NumClasses;
+
+  /** the counts (row-major). */
+  protected int[] m_Counts;
+
+  /** the divisors per row (null if not scaled). */
+  protected double[] m_Divisors;
+
+  /**
+   * Initializes the matrix.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @throws IllegalArgumentException	if a weight is not integral or negative
+   */
+  public IntegerConfusionMatrix(List<Prediction> preds, Attribute classAtt) {
+    this(preds, classAtt, null);
+  }
+
+  /**
+   * Initializes the matrix, using the labels that were derived from the
+   * class attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   */
+  protected IntegerConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels) {
+    this(preds, classAtt, labels, null);
+  }
+
+  /**
+   * Initializes the matrix and the cost totals, using the labels that were
+   * derived from the class attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   */
+  protected IntegerConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs) {
+    super(preds, classAtt, labels, costs);
+  }
+
+  /**
+   * Allocates the (empty) storage for the counts.
+   *
+   * @throws IllegalArgumentException	if there are too many cells
+   */
+  @Override
+  protected void allocate() {
+    m_NumClasses = m_ClassAttribute.numValues();
+    if ((long) m_NumClasses * (long) m_NumClasses > MAX_CELLS)
+      throw new IllegalArgumentException("Too many class labels for integer storage: " + m_NumClasses);
+    m_Counts = new int[m_NumClasses * m_NumClasses];
+  }
+
+  /**
+   * Turns the weight into a count.
+   *
+   * @param weight	the weight to convert
+   * @return		the count
+   * @throws IllegalArgumentException	if the weight is not integral or negative
+   */
+  protected static int toCount(double weight) {
+    int		result;
+
+    result = (int) weight;
+    if (result != weight)
+      throw new IllegalArgumentException("Weight is not integral: " + weight);
+    if (result < 0)
+      throw new IllegalArgumentException("Weight is negative: " + weight);
+
+    return result;
+  }
+
+  /**
+   * Adds the weights of the predictions to the counts.
+   *
+   * @param preds	the predictions to add
+   * @throws IllegalArgumentException	if a weight is not integral or negative
+   */
+  @Override
+  protected void accumulate(List<Prediction> preds) {
+    if (m_CostTotals != null) {
+      for (Prediction pred: preds)
+	add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+    }
+    else {
+      for (Prediction pred: preds)
+	m_Counts[(int) pred.actual() * m_NumClasses + (int) pred.predicted()] += toCount(pred.weight());
+    }
+  }
+
+  /**
+   * Adds the weight to the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight to add
+   * @throws IllegalArgumentException	if the weight is not integral or negative
+   */
+  @Override
+  protected void add(int actual, int predicted, double weight) {
+    m_Counts[actual * m_NumClasses + predicted] += toCount(weight);
+    addCost(actual, predicted, weight);
+  }
+
+  /**
+   * Returns a clone of itself.
+   *
+   * @return		the clone
+   */
+  @Override
+  public ConfusionMatrix clone() {
+    IntegerConfusionMatrix	result;
+
+    result            = (IntegerConfusionMatrix) super.clone();
+    result.m_Counts   = m_Counts.clone();
+    result.m_Divisors = (m_Divisors == null) ? null : m_Divisors.clone();
+
+    return result;
+  }
+
+  /**
+   * Returns a dense copy of the (scaled) counts, i.e., modifying it doesn't
+   * change this matrix. Requires twice the memory of the int array, use
+   * {@link #getValue(int, int)} or {@link #getRow(int, double[])} instead.
+   *
+   * @return		the copy
+   */
+  @Override
+  public double[][] getMatrix() {
+    return toDense();
+  }
+
+  /**
+   * Returns the count of the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  @Override
+  public double getValue(int actual, int predicted) {
+    if (m_Divisors == null)
+      return m_Counts[actual * m_NumClasses + predicted];
+    else
+      return m_Counts[actual * m_NumClasses + predicted] / m_Divisors[actual];
+  }
+
+  /**
+   * Copies the counts of the specified row into the array.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  @Override
+  public void getRow(int actual, double[] row) {
+    double	divisor;
+    int		offset;
+    int		i;
+
+    divisor = (m_Divisors == null) ? 1.0 : m_Divisors[actual];
+    offset  = actual * m_NumClasses;
+    for (i = 0; i < m_NumClasses; i++)
+      row[i] = m_Counts[offset + i] / divisor;
+  }
+
+  /**
+   * Returns the totals for all class labels, calculates them if necessary.
+   *
+   * @return		the totals
+   */
+  @Override
+  protected double[] getTotals() {
+    double[]	result;
+    long	sum;
+    int		offset;
+    int		i;
+    int		n;
+
+    result = m_Totals;
+    if (result == null) {
+      result = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++) {
+	sum    = 0;
+	offset = i * m_NumClasses;
+	for (n = 0; n < m_NumClasses; n++)
+	  sum += m_Counts[offset + n];
+	result[i] = (m_Divisors == null) ? sum : sum / m_Divisors[i];
+      }
+      m_Totals = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the maximum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMax() {
+    double	result;
+    int		max;
+    int		offset;
+    int		i;
+    int		n;
+
+    result = 0;
+    for (i = 0; i < m_NumClasses; i++) {
+      max    = 0;
+      offset = i * m_NumClasses;
+      for (n = 0; n < m_NumClasses; n++)
+	max = Math.max(max, m_Counts[offset + n]);
+      result = Math.max(result, (m_Divisors == null) ? max : max / m_Divisors[i]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the minimum count in the matrix, 0 as negative weights get
+   * rejected (see {@link #toCount(double)}).
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMin() {
+    return 0;
+  }
+
+  /**
+   * Returns whether all counts are whole numbers, i.e., as long as the rows
+   * haven't been scaled.
+   *
+   * @return		true if not scaled
+   */
+  @Override
+  public boolean hasIntegralCounts() {
+    return (m_Divisors == null);
+  }
+
+  /**
+   * Scales the rows to 0-1, with 1 being the number of instances with that
+   * class label. Only stores a divisor per row.
+   */
+  @Override
+  public void scaleRows() {
+    double[]	totals;
+    int		i;
+
+    totals = getTotals();
+    if (m_Divisors == null) {
+      m_Divisors = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++)
+	m_Divisors[i] = 1.0;
+    }
+    for (i = 0; i < m_NumClasses; i++) {
+      if (totals[i] > 0)
+	m_Divisors[i] *= totals[i];
+    }
+
+    invalidate();
+  }
+}
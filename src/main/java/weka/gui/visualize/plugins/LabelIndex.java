@@ -0,0 +1,482 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LabelIndex.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.Attribute;
+
+/**
+ * Maps class labels to their 0-based indices, looking them up directly in
+ * character sequences or UTF-8 encoded bytes, i.e., without creating a
+ * String per lookup. Uses two open-addressing hash tables (linear probing)
+ * that store the index of the label, one hashed over the characters and
+ * one over the UTF-8 bytes of the labels.
+ * <p/>
+ * If growing, labels that are not present yet get appended (only then a
+ * String gets created), otherwise they get reported as -1. Byte sequences
+ * that are not valid UTF-8 get decoded with replacement characters, i.e.,
+ * they don't get appended twice but always require decoding.
+ * <p/>
+ * Not thread-safe.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class LabelIndex
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -4816370212591574130L;
+
+  /** the initial number of slots. */
+  public final static int INITIAL_SLOTS = 16;
+
+  /** the labels. */
+  protected String[] m_Labels;
+
+  /** the UTF-8 bytes of the labels. */
+  protected byte[][] m_Bytes;
+
+  /** the hashes of the labels (characters). */
+  protected int[] m_CharHashes;
+
+  /** the hashes of the labels (bytes). */
+  protected int[] m_ByteHashes;
+
+  /** the number of labels. */
+  protected int m_NumLabels;
+
+  /** the slots hashed over the characters (index + 1, 0 if empty). */
+  protected int[] m_CharSlots;
+
+  /** the slots hashed over the bytes (index + 1, 0 if empty). */
+  protected int[] m_ByteSlots;
+
+  /** whether to append unknown labels. */
+  protected boolean m_Growing;
+
+  /**
+   * Initializes an empty, growing index.
+   */
+  public LabelIndex() {
+    this(new String[0], true);
+  }
+
+  /**
+   * Initializes the index with the values of the nominal attribute.
+   *
+   * @param att		the attribute
+   * @param growing	whether to append unknown labels
+   */
+  public LabelIndex(Attribute att, boolean growing) {
+    this(getValues(att), growing);
+  }
+
+  /**
+   * Initializes the index with the labels.
+   *
+   * @param labels	the labels
+   * @param growing	whether to append unknown labels
+   * @throws IllegalArgumentException	if a label is listed twice
+   */
+  public LabelIndex(String[] labels, boolean growing) {
+    super();
+
+    int		capacity;
+    int		numLabels;
+
+    capacity     = Math.max(1, labels.length);
+    m_Labels     = new String[capacity];
+    m_Bytes      = new byte[capacity][];
+    m_CharHashes = new int[capacity];
+    m_ByteHashes = new int[capacity];
+    m_CharSlots  = new int[slotsFor(labels.length)];
+    m_ByteSlots  = new int[m_CharSlots.length];
+    m_Growing    = true;
+    for (String label: labels) {
+      numLabels = m_NumLabels;
+      indexOf(label);
+      if (m_NumLabels == numLabels)
+	throw new IllegalArgumentException("Label listed twice: " + label);
+    }
+    m_Growing = growing;
+  }
+
+  /**
+   * Returns the values of the nominal attribute.
+   *
+   * @param att		the attribute
+   * @return		the values
+   */
+  protected static String[] getValues(Attribute att) {
+    String[]	result;
+    int		i;
+
+    result = new String[att.numValues()];
+    for (i = 0; i < att.numValues(); i++)
+      result[i] = att.value(i);
+
+    return result;
+  }
+
+  /**
+   * Returns the number of slots for the number of labels (power of 2, at
+   * most half full).
+   *
+   * @param numLabels	the number of labels
+   * @return		the number of slots
+   */
+  protected static int slotsFor(int numLabels) {
+    int		result;
+
+    result = INITIAL_SLOTS;
+    while (result < 2L * numLabels)
+      result <<= 1;
+
+    return result;
+  }
+
+  /**
+   * Spreads the bits of the hash code.
+   *
+   * @param hash	the hash code
+   * @return		the mixed hash code
+   */
+  protected static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+
+    return hash;
+  }
+
+  /**
+   * Hashes the characters.
+   *
+   * @param seq		the sequence
+   * @param start	the first character (incl)
+   * @param end		the last character (excl)
+   * @return		the hash code
+   */
+  protected static int hash(CharSequence seq, int start, int end) {
+    int		result;
+    int		i;
+
+    result = 0;
+    for (i = start; i < end; i++)
+      result = 31 * result + seq.charAt(i);
+
+    return mix(result);
+  }
+
+  /**
+   * Hashes the bytes.
+   *
+   * @param bytes	the bytes
+   * @param offset	the first byte
+   * @param length	the number of bytes
+   * @return		the hash code
+   */
+  protected static int hash(byte[] bytes, int offset, int length) {
+    int		result;
+    int		i;
+
+    result = 0;
+    for (i = offset; i < offset + length; i++)
+      result = 31 * result + (bytes[i] & 0xff);
+
+    return mix(result);
+  }
+
+  /**
+   * Checks whether the label equals the characters.
+   *
+   * @param label	the label
+   * @param seq		the sequence
+   * @param start	the first character (incl)
+   * @param end		the last character (excl)
+   * @return		true if equal
+   */
+  protected static boolean equals(String label, CharSequence seq, int start, int end) {
+    int		i;
+
+    if (label.length() != end - start)
+      return false;
+    for (i = start; i < end; i++) {
+      if (label.charAt(i - start) != seq.charAt(i))
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks whether the bytes are equal.
+   *
+   * @param label	the bytes of the label
+   * @param bytes	the bytes to compare with
+   * @param offset	the first byte
+   * @param length	the number of bytes
+   * @return		true if equal
+   */
+  protected static boolean equals(byte[] label, byte[] bytes, int offset, int length) {
+    int		i;
+
+    if (label.length != length)
+      return false;
+    for (i = 0; i < length; i++) {
+      if (label[i] != bytes[offset + i])
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Inserts the index of the label into the slots.
+   *
+   * @param slots	the slots to insert into
+   * @param hash	the hash of the label
+   * @param index	the 0-based index of the label
+   */
+  protected static void insert(int[] slots, int hash, int index) {
+    int		mask;
+    int		slot;
+
+    mask = slots.length - 1;
+    slot = hash & mask;
+    while (slots[slot] != 0)
+      slot = (slot + 1) & mask;
+    slots[slot] = index + 1;
+  }
+
+  /**
+   * Appends the label, which must not be present yet.
+   *
+   * @param label	the label
+   * @param charHash	the hash of the label (characters)
+   * @return		the 0-based index of the label
+   */
+  protected int append(String label, int charHash) {
+    byte[]	bytes;
+    int		capacity;
+    int		i;
+
+    // more room for labels
+    if (m_NumLabels == m_Labels.length) {
+      capacity     = m_Labels.length * 2;
+      m_Labels     = copyOf(m_Labels, new String[capacity]);
+      m_Bytes      = copyOf(m_Bytes, new byte[capacity][]);
+      m_CharHashes = copyOf(m_CharHashes, new int[capacity]);
+      m_ByteHashes = copyOf(m_ByteHashes, new int[capacity]);
+    }
+
+    // rehash if more than half full
+    if (2L * (m_NumLabels + 1) > m_CharSlots.length) {
+      m_CharSlots = new int[m_CharSlots.length * 2];
+      m_ByteSlots = new int[m_CharSlots.length];
+      for (i = 0; i < m_NumLabels; i++) {
+	insert(m_CharSlots, m_CharHashes[i], i);
+	insert(m_ByteSlots, m_ByteHashes[i], i);
+      }
+    }
+
+    bytes                     = label.getBytes(ConfusionMatrixFile.UTF8);
+    m_Labels[m_NumLabels]     = label;
+    m_Bytes[m_NumLabels]      = bytes;
+    m_CharHashes[m_NumLabels] = charHash;
+    m_ByteHashes[m_NumLabels] = hash(bytes, 0, bytes.length);
+    insert(m_CharSlots, charHash, m_NumLabels);
+    insert(m_ByteSlots, m_ByteHashes[m_NumLabels], m_NumLabels);
+    m_NumLabels++;
+
+    return m_NumLabels - 1;
+  }
+
+  /**
+   * Copies the elements into the larger array.
+   *
+   * @param source	the array to copy
+   * @param target	the larger array
+   * @return		the larger array
+   */
+  protected static <T> T[] copyOf(T[] source, T[] target) {
+    System.arraycopy(source, 0, target, 0, source.length);
+    return target;
+  }
+
+  /**
+   * Copies the elements into the larger array.
+   *
+   * @param source	the array to copy
+   * @param target	the larger array
+   * @return		the larger array
+   */
+  protected static int[] copyOf(int[] source, int[] target) {
+    System.arraycopy(source, 0, target, 0, source.length);
+    return target;
+  }
+
+  /**
+   * Returns whether unknown labels get appended.
+   *
+   * @return		true if growing
+   */
+  public boolean isGrowing() {
+    return m_Growing;
+  }
+
+  /**
+   * Sets whether to append unknown labels.
+   *
+   * @param value	true if growing
+   */
+  public void setGrowing(boolean value) {
+    m_Growing = value;
+  }
+
+  /**
+   * Returns the index of the label.
+   *
+   * @param seq		the label
+   * @return		the 0-based index, -1 if not present (and not growing)
+   */
+  public int indexOf(CharSequence seq) {
+    return indexOf(seq, 0, seq.length());
+  }
+
+  /**
+   * Returns the index of the label that is stored in the range of the
+   * sequence.
+   *
+   * @param seq		the sequence
+   * @param start	the first character of the label (incl)
+   * @param end		the last character of the label (excl)
+   * @return		the 0-based index, -1 if not present (and not growing)
+   */
+  public int indexOf(CharSequence seq, int start, int end) {
+    int		hash;
+    int		mask;
+    int		slot;
+    int		entry;
+
+    hash = hash(seq, start, end);
+    mask = m_CharSlots.length - 1;
+    slot = hash & mask;
+    while ((entry = m_CharSlots[slot]) != 0) {
+      if ((m_CharHashes[entry - 1] == hash) && equals(m_Labels[entry - 1], seq, start, end))
+	return entry - 1;
+      slot = (slot + 1) & mask;
+    }
+
+    if (!m_Growing)
+      return -1;
+
+    return append(seq.subSequence(start, end).toString(), hash);
+  }
+
+  /**
+   * Returns the index of the label that is stored UTF-8 encoded in the
+   * range of the bytes.
+   *
+   * @param bytes	the bytes
+   * @param offset	the first byte of the label
+   * @param length	the number of bytes of the label
+   * @return		the 0-based index, -1 if not present (and not growing)
+   */
+  public int indexOf(byte[] bytes, int offset, int length) {
+    String	label;
+    int		hash;
+    int		mask;
+    int		slot;
+    int		entry;
+
+    hash = hash(bytes, offset, length);
+    mask = m_ByteSlots.length - 1;
+    slot = hash & mask;
+    while ((entry = m_ByteSlots[slot]) != 0) {
+      if ((m_ByteHashes[entry - 1] == hash) && equals(m_Bytes[entry - 1], bytes, offset, length))
+	return entry - 1;
+      slot = (slot + 1) & mask;
+    }
+
+    // invalid UTF-8 can decode to a label that is present already
+    label = new String(bytes, offset, length, ConfusionMatrixFile.UTF8);
+
+    return indexOf(label);
+  }
+
+  /**
+   * Returns the number of labels.
+   *
+   * @return		the number of labels
+   */
+  public int getNumLabels() {
+    return m_NumLabels;
+  }
+
+  /**
+   * Returns the label at the specified index.
+   *
+   * @param index	the 0-based index
+   * @return		the label
+   */
+  public String getLabel(int index) {
+    if (index >= m_NumLabels)
+      throw new IndexOutOfBoundsException("Index " + index + " >= " + m_NumLabels);
+    return m_Labels[index];
+  }
+
+  /**
+   * Returns the labels.
+   *
+   * @return		a copy of the labels
+   */
+  public String[] getLabels() {
+    String[]	result;
+
+    result = new String[m_NumLabels];
+    System.arraycopy(m_Labels, 0, result, 0, m_NumLabels);
+
+    return result;
+  }
+
+  /**
+   * Turns the labels into a nominal attribute.
+   *
+   * @param name	the name of the attribute
+   * @return		the attribute
+   */
+  public Attribute toAttribute(String name) {
+    List<String>	values;
+    int			i;
+
+    values = new ArrayList<String>(m_NumLabels);
+    for (i = 0; i < m_NumLabels; i++)
+      values.add(m_Labels[i]);
+
+    return new Attribute(name, values);
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LiveHeatmapPanel.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Heatmap panel that is bound to an {@link ObservableConfusionMatrix}.
+ * Changes to the matrix get coalesced and, at most once per refresh
+ * interval, only the modified cells get repainted. The complete image only
+ * gets regenerated if minimum or maximum of the matrix moved more than the
+ * rescale threshold (in color bins) away from the current color scale
+ * (see {@link HeatmapRenderer#requiresRescale(double, double, double)}).
+ * <p/>
+ * The panel starts listening to the matrix before generating the initial
+ * image, i.e., updates made concurrently while the panel gets constructed
+ * are either part of the initial image or get repainted with the next
+ * refresh.
+ * <p/>
+ * Not used by the Explorer visualizations, which display the final matrix
+ * of a result; meant for displaying matrices that get updated while
+ * predictions arrive (e.g., during a long-running evaluation).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class LiveHeatmapPanel
+  extends HeatmapPanel {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -8325370236436421487L;
+
+  /** the default refresh interval in msec. */
+  public final static int REFRESH_INTERVAL = 200;
+
+  /** the default rescale threshold in bins. */
+  public final static double RESCALE_THRESHOLD = 1.0;
+
+  /** the timer for coalescing updates. */
+  protected Timer m_Timer;
+
+  /** the listener for the matrix. */
+  protected ChangeListener m_ChangeListener;
+
+  /** the threshold (in bins) for rescaling. */
+  protected double m_RescaleThreshold = RESCALE_THRESHOLD;
+
+  /**
+   * Initializes the panel.
+   *
+   * @param matrix	the matrix to display
+   */
+  public LiveHeatmapPanel(ObservableConfusionMatrix matrix) {
+    super(matrix);
+
+    m_Timer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	refresh();
+      }
+    });
+    m_Timer.setRepeats(false);
+
+    m_ChangeListener = new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	SwingUtilities.invokeLater(new Runnable() {
+	  @Override
+	  public void run() {
+	    if (!m_Timer.isRunning())
+	      m_Timer.start();
+	  }
+	});
+      }
+    };
+    // listen first: updates after draining notify the listener, updates
+    // before draining are covered by the initial image
+    matrix.addChangeListener(m_ChangeListener);
+    matrix.drainDirty();
+    update();
+  }
+
+  /**
+   * Updates the image using the current parameters. Skipped while the
+   * superclass constructor runs, the initial image gets generated once the
+   * panel listens to the matrix.
+   */
+  @Override
+  protected void update() {
+    if (m_ChangeListener == null)
+      return;
+    super.update();
+  }
+
+  /**
+   * Returns the underlying matrix.
+   *
+   * @return		the matrix
+   */
+  public ObservableConfusionMatrix getMatrix() {
+    return (ObservableConfusionMatrix) m_Matrix;
+  }
+
+  /**
+   * Sets the refresh interval.
+   *
+   * @param value	the interval in msec
+   */
+  public void setRefreshInterval(int value) {
+    if (value >= 1) {
+      m_Timer.setInitialDelay(value);
+      m_Timer.setDelay(value);
+    }
+    else {
+      System.err.println("Refresh interval must satisfy: 1 <= x");
+    }
+  }
+
+  /**
+   * Returns the refresh interval.
+   *
+   * @return		the interval in msec
+   */
+  public int getRefreshInterval() {
+    return m_Timer.getDelay();
+  }
+
+  /**
+   * Sets how far (in color bins) minimum or maximum can move before the
+   * image gets regenerated completely.
+   *
+   * @param value	the threshold in bins
+   */
+  public void setRescaleThreshold(double value) {
+    if (value >= 0) {
+      m_RescaleThreshold = value;
+    }
+    else {
+      System.err.println("Rescale threshold must satisfy: 0 <= x");
+    }
+  }
+
+  /**
+   * Returns how far (in color bins) minimum or maximum can move before the
+   * image gets regenerated completely.
+   *
+   * @return		the threshold in bins
+   */
+  public double getRescaleThreshold() {
+    return m_RescaleThreshold;
+  }
+
+  /**
+   * Checks whether the color scale needs to be updated.
+   *
+   * @param min		the current minimum
+   * @param max		the current maximum
+   * @return		true if image needs to be regenerated
+   */
+  protected boolean requiresRescale(double min, double max) {
+    return m_Renderer.requiresRescale(min, max, m_RescaleThreshold);
+  }
+
+  /**
+   * Repaints the cells that were modified since the last refresh.
+   */
+  public void refresh() {
+    ObservableConfusionMatrix.DirtyRegion	dirty;
+    BufferedImage				image;
+    Graphics					g;
+    int						i;
+    int						n;
+    int						row;
+    int						size;
+
+    dirty = getMatrix().drainDirty();
+    if (dirty == null)
+      return;
+
+    image = getImage();
+    if (((image == null) && !isPaintingOnDemand()) || requiresRescale(getMatrix().getMin(), getMatrix().getMax())) {
+      update();
+      return;
+    }
+
+    // when painting on demand, repainting the regions suffices
+    if (image != null) {
+      g = image.createGraphics();
+      for (i = 0; i < dirty.rows.length; i++) {
+	row = dirty.rows[i];
+	for (n = dirty.fromCols[i]; n <= dirty.toCols[i]; n++)
+	  paintCell(g, row, n);
+      }
+      g.dispose();
+    }
+
+    size = getSizeSquares();
+    for (i = 0; i < dirty.rows.length; i++) {
+      m_PanelImage.repaint(
+	  dirty.fromCols[i] * size,
+	  dirty.rows[i] * size,
+	  (dirty.toCols[i] - dirty.fromCols[i] + 1) * size,
+	  size);
+    }
+  }
+
+  /**
+   * Stops listening to the matrix, e.g., when the panel is no longer used.
+   */
+  public void cleanUp() {
+    m_Timer.stop();
+    getMatrix().removeChangeListener(m_ChangeListener);
+  }
+}
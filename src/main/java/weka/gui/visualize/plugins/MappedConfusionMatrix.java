@@ -0,0 +1,552 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MappedConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Attribute;
+
+/**
+ * Read-only confusion matrix backed by a memory-mapped file in the format
+ * of {@link ConfusionMatrixFile}. Opening the file only reads header,
+ * labels and totals; the counts get paged in by the operating system when
+ * accessed via {@link #getValue(int, int)}. Minimum and maximum are taken
+ * from the header.
+ * <p/>
+ * {@link #scaleRows()} keeps the file untouched and only stores a divisor
+ * per row. {@link #clone()} shares the mapping, i.e., doesn't copy any
+ * counts. Serializing only writes the path of the file (and the divisors),
+ * which gets mapped again when deserializing. {@link #getMatrix()} returns
+ * a dense copy, use {@link #getValue(int, int)} or
+ * {@link #getRow(int, double[])} instead.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MappedConfusionMatrix
+  extends ConfusionMatrix {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 4409640133796017218L;
+
+  /** the maximum number of elements per mapped block (bits). */
+  public final static int BLOCK_BITS = 27;
+
+  /** the file. */
+  protected File m_File;
+
+  /** the number of classes. */
+  protected int m_NumClasses;
+
+  /** the storage type. */
+  protected int m_Storage;
+
+  /** the minimum count. */
+  protected double m_Min;
+
+  /** the maximum count. */
+  protected double m_Max;
+
+  /** the totals per class label. */
+  protected double[] m_FileTotals;
+
+  /** the number of rows per block (dense). */
+  protected int m_RowsPerBlock;
+
+  /** the counts (dense: blocks of rows; sparse: blocks of cells). */
+  protected transient DoubleBuffer[] m_Values;
+
+  /** the start of each row in the cell blocks (sparse). */
+  protected long[] m_RowStart;
+
+  /** the predicted class labels of the cells (sparse). */
+  protected transient IntBuffer[] m_Columns;
+
+  /** the divisors per row (null if not scaled). */
+  protected double[] m_Divisors;
+
+  /** the scaled totals (null if not scaled or not calculated yet). */
+  protected transient double[] m_ScaledTotals;
+
+  /**
+   * Opens the file and maps the counts.
+   *
+   * @param file	the file to open
+   * @throws IOException	if opening fails or not a valid file
+   */
+  public MappedConfusionMatrix(File file) throws IOException {
+    super();
+    map(file);
+  }
+
+  /**
+   * Opens the file, reads header, labels and totals and maps the counts.
+   *
+   * @param file	the file to open
+   * @throws IOException	if opening fails or not a valid file
+   */
+  protected void map(File file) throws IOException {
+    RandomAccessFile	raf;
+    FileChannel		channel;
+    ByteBuffer		buffer;
+    List<String>	labels;
+    String		name;
+    long		numCells;
+    long		offset;
+    int			i;
+
+    m_File = file;
+    raf    = new RandomAccessFile(file, "r");
+    try {
+      channel = raf.getChannel();
+
+      // header and labels
+      buffer = channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt() != ConfusionMatrixFile.MAGIC)
+	throw new IOException("Not a binary confusion matrix: " + file);
+      if (buffer.getInt() != ConfusionMatrixFile.VERSION)
+	throw new IOException("Unsupported version of binary confusion matrix: " + file);
+      m_NumClasses = buffer.getInt();
+      m_Storage    = buffer.getInt();
+      numCells     = buffer.getLong();
+      m_Min        = buffer.getDouble();
+      m_Max        = buffer.getDouble();
+      name         = readString(buffer);
+      labels       = new ArrayList<String>();
+      for (i = 0; i < m_NumClasses; i++)
+	labels.add(readString(buffer));
+      m_Labels         = labels.toArray(new String[labels.size()]);
+      m_ClassAttribute = new Attribute(name, labels);
+
+      // totals
+      offset       = align(buffer.position());
+      m_FileTotals = new double[m_NumClasses];
+      buffer.position((int) offset);
+      buffer.asDoubleBuffer().get(m_FileTotals);
+      offset += m_NumClasses * 8L;
+
+      // counts
+      if (m_Storage == ConfusionMatrixFile.STORAGE_DENSE) {
+	m_RowsPerBlock = (int) Math.max(1, (1L << BLOCK_BITS) / Math.max(1, m_NumClasses));
+	m_Values       = new DoubleBuffer[(m_NumClasses + m_RowsPerBlock - 1) / m_RowsPerBlock];
+	for (i = 0; i < m_Values.length; i++) {
+	  m_Values[i] = map(channel, offset, Math.min(m_RowsPerBlock, m_NumClasses - i * m_RowsPerBlock) * (long) m_NumClasses * 8L).asDoubleBuffer();
+	  offset += (long) m_RowsPerBlock * (long) m_NumClasses * 8L;
+	}
+      }
+      else if (m_Storage == ConfusionMatrixFile.STORAGE_SPARSE) {
+	m_RowStart = new long[m_NumClasses + 1];
+	map(channel, offset, m_RowStart.length * 8L).asLongBuffer().get(m_RowStart);
+	offset += m_RowStart.length * 8L;
+	m_Columns = new IntBuffer[numBlocks(numCells)];
+	for (i = 0; i < m_Columns.length; i++)
+	  m_Columns[i] = map(channel, offset + ((long) i << BLOCK_BITS) * 4L, blockSize(numCells, i) * 4L).asIntBuffer();
+	offset = align(offset + numCells * 4L);
+	m_Values = new DoubleBuffer[numBlocks(numCells)];
+	for (i = 0; i < m_Values.length; i++)
+	  m_Values[i] = map(channel, offset + ((long) i << BLOCK_BITS) * 8L, blockSize(numCells, i) * 8L).asDoubleBuffer();
+      }
+      else {
+	throw new IOException("Unknown storage " + m_Storage + ": " + file);
+      }
+    }
+    finally {
+      // mappings stay valid after closing the channel
+      raf.close();
+    }
+  }
+
+  /**
+   * Does nothing, the counts are provided by the mapped file.
+   */
+  @Override
+  protected void initialize() {
+  }
+
+  /**
+   * Reads a string (number of bytes, UTF-8 bytes).
+   *
+   * @param buffer	the buffer to read from
+   * @return		the string
+   */
+  protected static String readString(ByteBuffer buffer) {
+    byte[]	bytes;
+
+    bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+
+    return new String(bytes, ConfusionMatrixFile.UTF8);
+  }
+
+  /**
+   * Aligns the offset to a multiple of 8.
+   *
+   * @param offset	the offset
+   * @return		the aligned offset
+   */
+  protected static long align(long offset) {
+    return (offset + 7) / 8 * 8;
+  }
+
+  /**
+   * Maps the region of the file (read-only, little-endian).
+   *
+   * @param channel	the channel to map
+   * @param offset	the start of the region
+   * @param size	the size of the region in bytes
+   * @return		the mapped region
+   * @throws IOException	if mapping fails
+   */
+  protected static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+    return channel.map(MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Returns the number of blocks required for the elements.
+   *
+   * @param numElements	the number of elements
+   * @return		the number of blocks
+   */
+  protected static int numBlocks(long numElements) {
+    return (int) ((numElements + (1L << BLOCK_BITS) - 1) >>> BLOCK_BITS);
+  }
+
+  /**
+   * Returns the number of elements in the block.
+   *
+   * @param numElements	the total number of elements
+   * @param block	the 0-based block
+   * @return		the number of elements in the block
+   */
+  protected static long blockSize(long numElements, int block) {
+    return Math.min(1L << BLOCK_BITS, numElements - ((long) block << BLOCK_BITS));
+  }
+
+  /**
+   * Returns the underlying file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns whether the counts are stored sparsely.
+   *
+   * @return		true if sparse
+   */
+  public boolean isSparse() {
+    return (m_Storage == ConfusionMatrixFile.STORAGE_SPARSE);
+  }
+
+  /**
+   * Returns whether the rows got scaled.
+   *
+   * @return		true if scaled
+   */
+  public boolean isScaled() {
+    return (m_Divisors != null);
+  }
+
+  /**
+   * Returns a dense copy of the (scaled) counts, which pages in the whole
+   * file and requires the square of the number of class labels as doubles
+   * on the heap. Use {@link #getValue(int, int)} or
+   * {@link #getRow(int, double[])} instead.
+   *
+   * @return		the copy
+   */
+  @Override
+  public double[][] getMatrix() {
+    return toDense();
+  }
+
+  /**
+   * Returns the count of the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  @Override
+  public double getValue(int actual, int predicted) {
+    long	low;
+    long	high;
+    long	mid;
+    int		col;
+
+    if (m_Storage == ConfusionMatrixFile.STORAGE_DENSE)
+      return scale(actual, m_Values[actual / m_RowsPerBlock].get((actual % m_RowsPerBlock) * m_NumClasses + predicted));
+
+    low  = m_RowStart[actual];
+    high = m_RowStart[actual + 1] - 1;
+    while (low <= high) {
+      mid = (low + high) >>> 1;
+      col = m_Columns[(int) (mid >>> BLOCK_BITS)].get((int) (mid & ((1L << BLOCK_BITS) - 1)));
+      if (col < predicted)
+	low = mid + 1;
+      else if (col > predicted)
+	high = mid - 1;
+      else
+	return scale(actual, m_Values[(int) (mid >>> BLOCK_BITS)].get((int) (mid & ((1L << BLOCK_BITS) - 1))));
+    }
+
+    return 0;
+  }
+
+  /**
+   * Applies the divisor of the row to the count, if scaled.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param value	the count
+   * @return		the (scaled) count
+   */
+  protected double scale(int actual, double value) {
+    if (m_Divisors == null)
+      return value;
+    return value / m_Divisors[actual];
+  }
+
+  /**
+   * Copies the counts of the specified row into the array. Only touches the
+   * non-zero cells of the row if stored sparsely.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  @Override
+  public void getRow(int actual, double[] row) {
+    DoubleBuffer	values;
+    long		i;
+    int			n;
+    int			block;
+    int			index;
+
+    if (m_Storage == ConfusionMatrixFile.STORAGE_DENSE) {
+      values = m_Values[actual / m_RowsPerBlock].duplicate();
+      values.position((actual % m_RowsPerBlock) * m_NumClasses);
+      values.get(row, 0, m_NumClasses);
+      if (m_Divisors != null) {
+	for (n = 0; n < m_NumClasses; n++)
+	  row[n] /= m_Divisors[actual];
+      }
+      return;
+    }
+
+    Arrays.fill(row, 0, m_NumClasses, 0.0);
+    for (i = m_RowStart[actual]; i < m_RowStart[actual + 1]; i++) {
+      block = (int) (i >>> BLOCK_BITS);
+      index = (int) (i & ((1L << BLOCK_BITS) - 1));
+      row[m_Columns[block].get(index)] = scale(actual, m_Values[block].get(index));
+    }
+  }
+
+  /**
+   * Copies the non-zero cells of the specified row into the arrays. Only
+   * touches the non-zero cells of the row if stored sparsely.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param columns	the array for the predicted class labels
+   * @param values	the array for the counts
+   * @return		the number of non-zero cells
+   */
+  @Override
+  public int getNonZero(int actual, int[] columns, double[] values) {
+    int		result;
+    long	i;
+    int		block;
+    int		index;
+
+    if (m_Storage == ConfusionMatrixFile.STORAGE_DENSE)
+      return super.getNonZero(actual, columns, values);
+
+    result = 0;
+    for (i = m_RowStart[actual]; i < m_RowStart[actual + 1]; i++) {
+      block           = (int) (i >>> BLOCK_BITS);
+      index           = (int) (i & ((1L << BLOCK_BITS) - 1));
+      columns[result] = m_Columns[block].get(index);
+      values[result]  = scale(actual, m_Values[block].get(index));
+      result++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of classes.
+   *
+   * @return		the number of classes
+   */
+  @Override
+  public int getNumClasses() {
+    return m_NumClasses;
+  }
+
+  /**
+   * Does nothing, the matrix is read-only.
+   */
+  @Override
+  public void invalidate() {
+  }
+
+  /**
+   * Returns the totals stored in the file (divided by the divisors, if
+   * scaled).
+   *
+   * @return		the totals
+   */
+  @Override
+  protected double[] getTotals() {
+    double[]	result;
+    int		i;
+
+    if (m_Divisors == null)
+      return m_FileTotals;
+
+    result = m_ScaledTotals;
+    if (result == null) {
+      result = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++)
+	result[i] = m_FileTotals[i] / m_Divisors[i];
+      m_ScaledTotals = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the maximum count stored in the file. If scaled, the rows get
+   * read to determine it (only the non-zero cells if stored sparsely).
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMax() {
+    if (m_Divisors == null)
+      return m_Max;
+    return getScaledExtremum(true);
+  }
+
+  /**
+   * Returns the minimum count stored in the file. If scaled, the rows get
+   * read to determine it (only the non-zero cells if stored sparsely).
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMin() {
+    if (m_Divisors == null)
+      return m_Min;
+    return getScaledExtremum(false);
+  }
+
+  /**
+   * Determines the minimum or maximum of the scaled counts.
+   *
+   * @param max		true for the maximum, false for the minimum
+   * @return		the extremum
+   */
+  protected double getScaledExtremum(boolean max) {
+    double	result;
+    int[]	columns;
+    double[]	values;
+    int		numCells;
+    int		i;
+    int		n;
+
+    result  = 0;
+    columns = new int[m_NumClasses];
+    values  = new double[m_NumClasses];
+    for (i = 0; i < m_NumClasses; i++) {
+      numCells = getNonZero(i, columns, values);
+      for (n = 0; n < numCells; n++)
+	result = max ? Math.max(result, values[n]) : Math.min(result, values[n]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Scales the rows to 0-1, with 1 being the number of instances with that
+   * class label. The file stays untouched, only a divisor per row gets
+   * stored.
+   */
+  @Override
+  public void scaleRows() {
+    double[]	totals;
+    int		i;
+
+    totals = getTotals();
+    if (m_Divisors == null) {
+      m_Divisors = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++)
+	m_Divisors[i] = 1.0;
+    }
+    for (i = 0; i < m_NumClasses; i++) {
+      if (totals[i] > 0)
+	m_Divisors[i] *= totals[i];
+    }
+    m_ScaledTotals = null;
+  }
+
+  /**
+   * Returns a clone of itself that shares the (read-only) mapping of the
+   * file, i.e., no counts get copied.
+   *
+   * @return		the clone
+   */
+  @Override
+  public ConfusionMatrix clone() {
+    MappedConfusionMatrix	result;
+
+    result                = (MappedConfusionMatrix) super.clone();
+    result.m_Divisors     = (m_Divisors == null) ? null : m_Divisors.clone();
+    result.m_ScaledTotals = null;
+
+    return result;
+  }
+
+  /**
+   * Maps the file again after reading the path (and the divisors), as the
+   * mapped buffers can't be serialized.
+   *
+   * @param in		the stream to read from
+   * @throws IOException	if reading or mapping fails
+   * @throws ClassNotFoundException	if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    map(m_File);
+  }
+}
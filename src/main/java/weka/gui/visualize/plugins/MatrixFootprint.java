@@ -0,0 +1,355 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MatrixFootprint.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.Serializable;
+
+import weka.core.Attribute;
+
+/**
+ * Estimates the heap required for building a confusion matrix with a
+ * certain number of class labels from a certain number of predictions,
+ * for each of the available representations:
+ * <ul>
+ *   <li>{@link #REPRESENTATION_DENSE} - 2-dim double array (fastest)</li>
+ *   <li>{@link #REPRESENTATION_INTEGER} - flattened int array, only for
+ *   integral weights (see {@link IntegerConfusionMatrix})</li>
+ *   <li>{@link #REPRESENTATION_SPARSE} - non-zero cells only, bounded by the
+ *   number of predictions (see {@link SparseConfusionMatrix})</li>
+ *   <li>{@link #REPRESENTATION_OFFHEAP} - dense counts in a memory-mapped
+ *   temporary file (see {@link OffHeapConfusionMatrix})</li>
+ * </ul>
+ * {@link #getRepresentation(boolean)} picks the first one that fits into
+ * {@link #HEAP_FRACTION} of the currently available heap.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MatrixFootprint
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 3486911203544581270L;
+
+  /** dense 2-dim double array. */
+  public final static int REPRESENTATION_DENSE = 0;
+
+  /** flattened int array. */
+  public final static int REPRESENTATION_INTEGER = 1;
+
+  /** non-zero cells only. */
+  public final static int REPRESENTATION_SPARSE = 2;
+
+  /** outside the heap. */
+  public final static int REPRESENTATION_OFFHEAP = 3;
+
+  /** the fraction of the available heap a matrix may occupy. */
+  public final static double HEAP_FRACTION = 0.5;
+
+  /** the overhead of an array object in bytes. */
+  public final static int ARRAY_OVERHEAD = 16;
+
+  /** the size of a reference in bytes (assuming uncompressed ones). */
+  public final static int REFERENCE_SIZE = 8;
+
+  /** the number of class labels. */
+  protected int m_NumClasses;
+
+  /** the (expected) number of predictions. */
+  protected long m_NumPredictions;
+
+  /** the available heap in bytes. */
+  protected long m_AvailableHeap;
+
+  /**
+   * Initializes the estimate using the currently available heap.
+   *
+   * @param classAtt		the class attribute
+   * @param numPredictions	the (expected) number of predictions
+   */
+  public MatrixFootprint(Attribute classAtt, long numPredictions) {
+    this(classAtt.numValues(), numPredictions, getAvailableHeap());
+  }
+
+  /**
+   * Initializes the estimate.
+   *
+   * @param numClasses		the number of class labels
+   * @param numPredictions	the (expected) number of predictions
+   * @param availableHeap	the available heap in bytes
+   */
+  public MatrixFootprint(int numClasses, long numPredictions, long availableHeap) {
+    super();
+    m_NumClasses     = numClasses;
+    m_NumPredictions = numPredictions;
+    m_AvailableHeap  = availableHeap;
+  }
+
+  /**
+   * Returns the heap that is currently available, i.e., the maximum heap
+   * minus the heap in use.
+   *
+   * @return		the bytes
+   */
+  public static long getAvailableHeap() {
+    Runtime	runtime;
+
+    runtime = Runtime.getRuntime();
+
+    return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+  }
+
+  /**
+   * Returns whether the specified number of bytes fits into
+   * {@link #HEAP_FRACTION} of the currently available heap.
+   *
+   * @param bytes	the bytes to allocate
+   * @return		true if it fits
+   */
+  public static boolean fitsHeap(long bytes) {
+    return fits(bytes, getAvailableHeap());
+  }
+
+  /**
+   * Returns whether the specified number of bytes fits into
+   * {@link #HEAP_FRACTION} of the available heap.
+   *
+   * @param bytes	the bytes to allocate
+   * @param available	the available heap
+   * @return		true if it fits
+   */
+  protected static boolean fits(long bytes, long available) {
+    return (bytes <= available * HEAP_FRACTION);
+  }
+
+  /**
+   * Returns the number of class labels.
+   *
+   * @return		the number
+   */
+  public int getNumClasses() {
+    return m_NumClasses;
+  }
+
+  /**
+   * Returns the (expected) number of predictions.
+   *
+   * @return		the number
+   */
+  public long getNumPredictions() {
+    return m_NumPredictions;
+  }
+
+  /**
+   * Returns the available heap the estimate is based on.
+   *
+   * @return		the bytes
+   */
+  public long getAvailable() {
+    return m_AvailableHeap;
+  }
+
+  /**
+   * Returns the number of cells of the matrix.
+   *
+   * @return		the number
+   */
+  public long getNumCells() {
+    return (long) m_NumClasses * (long) m_NumClasses;
+  }
+
+  /**
+   * Returns the maximum number of non-zero cells, i.e., the number of cells
+   * or the number of predictions, whichever is smaller.
+   *
+   * @return		the number
+   */
+  public long getMaxNonZero() {
+    return Math.min(getNumCells(), m_NumPredictions);
+  }
+
+  /**
+   * Returns the bytes for the totals, labels array etc that every
+   * representation requires.
+   *
+   * @return		the bytes
+   */
+  public long getBaseBytes() {
+    return 2 * (ARRAY_OVERHEAD + (long) m_NumClasses * 8L);
+  }
+
+  /**
+   * Returns the bytes of the dense representation.
+   *
+   * @return		the bytes
+   */
+  public long getDenseBytes() {
+    return getBaseBytes()
+	+ ARRAY_OVERHEAD + (long) m_NumClasses * REFERENCE_SIZE
+	+ (long) m_NumClasses * (ARRAY_OVERHEAD + (long) m_NumClasses * 8L);
+  }
+
+  /**
+   * Returns the bytes of the flattened integer representation.
+   *
+   * @return		the bytes, {@link Long#MAX_VALUE} if there are too many
+   * 			cells for a single array
+   */
+  public long getIntegerBytes() {
+    if (getNumCells() > IntegerConfusionMatrix.MAX_CELLS)
+      return Long.MAX_VALUE;
+
+    return getBaseBytes() + ARRAY_OVERHEAD + getNumCells() * 4L;
+  }
+
+  /**
+   * Returns the peak bytes of the sparse representation, i.e., the hash
+   * table used while accumulating (incl. the previous one while growing),
+   * the sorted cells and the compacted rows.
+   *
+   * @return		the bytes, {@link Long#MAX_VALUE} if there are too many
+   * 			non-zero cells for the hash table
+   */
+  public long getSparseBytes() {
+    long	nonZero;
+
+    nonZero = getMaxNonZero();
+    if (SparseConfusionMatrix.capacity(nonZero) > SparseConfusionMatrix.MAX_CAPACITY)
+      return Long.MAX_VALUE;
+
+    return getBaseBytes()
+	+ 2 * ARRAY_OVERHEAD + SparseConfusionMatrix.capacity(nonZero) * 24L
+	+ ARRAY_OVERHEAD + nonZero * 8L
+	+ 3 * ARRAY_OVERHEAD + (m_NumClasses + 1) * 4L + nonZero * 12L;
+  }
+
+  /**
+   * Returns the bytes of the off-heap representation that still reside on
+   * the heap.
+   *
+   * @return		the bytes
+   */
+  public long getOffHeapBytes() {
+    return getBaseBytes() + ARRAY_OVERHEAD + m_NumClasses * 8L;
+  }
+
+  /**
+   * Returns the (peak) heap the specified representation requires.
+   *
+   * @param representation	the representation, e.g., {@link #REPRESENTATION_DENSE}
+   * @return		the bytes
+   */
+  public long getBytes(int representation) {
+    switch (representation) {
+      case REPRESENTATION_DENSE:
+	return getDenseBytes();
+      case REPRESENTATION_INTEGER:
+	return getIntegerBytes();
+      case REPRESENTATION_SPARSE:
+	return getSparseBytes();
+      case REPRESENTATION_OFFHEAP:
+	return getOffHeapBytes();
+      default:
+	throw new IllegalArgumentException("Unknown representation: " + representation);
+    }
+  }
+
+  /**
+   * Returns whether the representation fits into the available heap.
+   *
+   * @param representation	the representation, e.g., {@link #REPRESENTATION_DENSE}
+   * @return		true if it fits
+   */
+  public boolean fits(int representation) {
+    return fits(getBytes(representation), m_AvailableHeap);
+  }
+
+  /**
+   * Picks the representation: dense if it fits, otherwise the smaller one
+   * of integer (only for integral weights) and sparse if either fits,
+   * otherwise off-heap.
+   *
+   * @param integral	whether all weights are integral (and their sum
+   * 			fits into an int)
+   * @return		the representation, e.g., {@link #REPRESENTATION_DENSE}
+   */
+  public int getRepresentation(boolean integral) {
+    int		result;
+
+    if (fits(REPRESENTATION_DENSE))
+      return REPRESENTATION_DENSE;
+
+    result = REPRESENTATION_SPARSE;
+    if (integral && (getIntegerBytes() < getSparseBytes()))
+      result = REPRESENTATION_INTEGER;
+    if (fits(result))
+      return result;
+
+    return REPRESENTATION_OFFHEAP;
+  }
+
+  /**
+   * Returns the bytes of an ARGB image with the specified dimensions.
+   *
+   * @param width	the width in pixels
+   * @param height	the height in pixels
+   * @return		the bytes
+   */
+  public static long getImageBytes(long width, long height) {
+    return ARRAY_OVERHEAD + width * height * 4L;
+  }
+
+  /**
+   * Returns the name of the representation.
+   *
+   * @param representation	the representation, e.g., {@link #REPRESENTATION_DENSE}
+   * @return		the name
+   */
+  public static String toString(int representation) {
+    switch (representation) {
+      case REPRESENTATION_DENSE:
+	return "dense";
+      case REPRESENTATION_INTEGER:
+	return "integer";
+      case REPRESENTATION_SPARSE:
+	return "sparse";
+      case REPRESENTATION_OFFHEAP:
+	return "off-heap";
+      default:
+	return "unknown";
+    }
+  }
+
+  /**
+   * Returns a short description of the estimate.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "classes=" + m_NumClasses
+	+ ", predictions=" + m_NumPredictions
+	+ ", available=" + m_AvailableHeap
+	+ ", dense=" + getDenseBytes()
+	+ ", integer=" + getIntegerBytes()
+	+ ", sparse=" + getSparseBytes()
+	+ ", off-heap=" + getOffHeapBytes();
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MetricsTimer.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free statistics of an operation: count, times (incl. a histogram
+ * with power-of-two buckets in microseconds), processed items, allocated
+ * bytes and matrix dimensions. Operations get recorded via
+ * {@link #record(ConfusionMatrixMetrics.Sample, long, int)}, using a
+ * sample obtained from {@link ConfusionMatrixMetrics#start()}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MetricsTimer
+  implements MetricsTimerMBean {
+
+  /** the number of histogram buckets. */
+  public final static int NUM_BUCKETS = 40;
+
+  /** the name. */
+  protected String m_Name;
+
+  /** the number of operations. */
+  protected AtomicLong m_Count = new AtomicLong();
+
+  /** the total time in nsec. */
+  protected AtomicLong m_TotalNanos = new AtomicLong();
+
+  /** the maximum time in nsec. */
+  protected AtomicLong m_MaxNanos = new AtomicLong();
+
+  /** the histogram. */
+  protected AtomicLongArray m_Histogram = new AtomicLongArray(NUM_BUCKETS);
+
+  /** the number of processed items. */
+  protected AtomicLong m_Items = new AtomicLong();
+
+  /** the allocated bytes (-1 if not available). */
+  protected AtomicLong m_AllocatedBytes = new AtomicLong();
+
+  /** the number of classes of the last matrix. */
+  protected volatile int m_LastNumClasses;
+
+  /** the maximum number of classes. */
+  protected volatile int m_MaxNumClasses;
+
+  /**
+   * Initializes the timer.
+   *
+   * @param name	the name of the timer
+   */
+  public MetricsTimer(String name) {
+    m_Name = name;
+  }
+
+  /**
+   * Returns the name of the timer.
+   *
+   * @return		the name
+   */
+  @Override
+  public String getName() {
+    return m_Name;
+  }
+
+  /**
+   * Records the operation that started with the sample. Does nothing if
+   * the sample is null, i.e., if metrics are disabled.
+   *
+   * @param sample	the sample from the start of the operation, can be null
+   * @param items	the number of processed items (predictions or cells)
+   * @param numClasses	the number of class labels of the matrix
+   */
+  public void record(ConfusionMatrixMetrics.Sample sample, long items, int numClasses) {
+    long	nanos;
+    long	bytes;
+    long	max;
+    int		bucket;
+
+    if (sample == null)
+      return;
+
+    nanos = System.nanoTime() - sample.startNanos;
+    bytes = (sample.startBytes < 0) ? -1 : ConfusionMatrixMetrics.getAllocatedBytes() - sample.startBytes;
+
+    m_Count.incrementAndGet();
+    m_TotalNanos.addAndGet(nanos);
+    do {
+      max = m_MaxNanos.get();
+    }
+    while ((nanos > max) && !m_MaxNanos.compareAndSet(max, nanos));
+    bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+    m_Histogram.incrementAndGet(Math.min(bucket, NUM_BUCKETS - 1));
+    m_Items.addAndGet(items);
+    if (bytes < 0)
+      m_AllocatedBytes.set(-1);
+    else if (m_AllocatedBytes.get() >= 0)
+      m_AllocatedBytes.addAndGet(bytes);
+    m_LastNumClasses = numClasses;
+    if (numClasses > m_MaxNumClasses)
+      m_MaxNumClasses = numClasses;
+  }
+
+  /**
+   * Returns the number of recorded operations.
+   *
+   * @return		the number
+   */
+  @Override
+  public long getCount() {
+    return m_Count.get();
+  }
+
+  /**
+   * Returns the total time of all operations.
+   *
+   * @return		the time in msec
+   */
+  @Override
+  public double getTotalMillis() {
+    return m_TotalNanos.get() / 1000000.0;
+  }
+
+  /**
+   * Returns the mean time per operation.
+   *
+   * @return		the time in msec
+   */
+  @Override
+  public double getMeanMillis() {
+    long	count;
+
+    count = m_Count.get();
+    if (count == 0)
+      return 0;
+
+    return getTotalMillis() / count;
+  }
+
+  /**
+   * Returns the maximum time of an operation.
+   *
+   * @return		the time in msec
+   */
+  @Override
+  public double getMaxMillis() {
+    return m_MaxNanos.get() / 1000000.0;
+  }
+
+  /**
+   * Returns the (approximate) percentile of the time per operation, i.e.,
+   * the upper bound of the histogram bucket the percentile falls into.
+   *
+   * @param percentile	the percentile (0-1)
+   * @return		the time in msec
+   */
+  public double getPercentileMillis(double percentile) {
+    long[]	histogram;
+    long	count;
+    long	sum;
+    int		i;
+
+    histogram = getHistogram();
+    count     = 0;
+    for (i = 0; i < histogram.length; i++)
+      count += histogram[i];
+    if (count == 0)
+      return 0;
+
+    sum = 0;
+    for (i = 0; i < histogram.length - 1; i++) {
+      sum += histogram[i];
+      if (sum >= percentile * count)
+	return Math.min((1L << i) / 1000.0, getMaxMillis());
+    }
+
+    return getMaxMillis();
+  }
+
+  /**
+   * Returns the (approximate) median time per operation.
+   *
+   * @return		the time in msec
+   */
+  @Override
+  public double getMedianMillis() {
+    return getPercentileMillis(0.5);
+  }
+
+  /**
+   * Returns the (approximate) 99th percentile of the time per operation.
+   *
+   * @return		the time in msec
+   */
+  @Override
+  public double getPercentile99Millis() {
+    return getPercentileMillis(0.99);
+  }
+
+  /**
+   * Returns the latency histogram: bucket i counts the operations that took
+   * less than 2^i microseconds (and at least 2^(i-1)).
+   *
+   * @return		the counts per bucket
+   */
+  @Override
+  public long[] getHistogram() {
+    long[]	result;
+    int		i;
+
+    result = new long[NUM_BUCKETS];
+    for (i = 0; i < result.length; i++)
+      result[i] = m_Histogram.get(i);
+
+    return result;
+  }
+
+  /**
+   * Returns the total number of processed items (predictions or cells).
+   *
+   * @return		the number
+   */
+  @Override
+  public long getItems() {
+    return m_Items.get();
+  }
+
+  /**
+   * Returns the number of processed items per second.
+   *
+   * @return		the throughput
+   */
+  @Override
+  public double getItemsPerSecond() {
+    long	nanos;
+
+    nanos = m_TotalNanos.get();
+    if (nanos == 0)
+      return 0;
+
+    return m_Items.get() * 1000000000.0 / nanos;
+  }
+
+  /**
+   * Returns the total number of bytes allocated by the operations, -1 if
+   * not supported by the JVM.
+   *
+   * @return		the bytes
+   */
+  @Override
+  public long getAllocatedBytes() {
+    return m_AllocatedBytes.get();
+  }
+
+  /**
+   * Returns the number of class labels of the last matrix.
+   *
+   * @return		the number
+   */
+  @Override
+  public int getLastNumClasses() {
+    return m_LastNumClasses;
+  }
+
+  /**
+   * Returns the maximum number of class labels of all matrices.
+   *
+   * @return		the number
+   */
+  @Override
+  public int getMaxNumClasses() {
+    return m_MaxNumClasses;
+  }
+
+  /**
+   * Resets all statistics.
+   */
+  @Override
+  public void reset() {
+    int		i;
+
+    m_Count.set(0);
+    m_TotalNanos.set(0);
+    m_MaxNanos.set(0);
+    for (i = 0; i < NUM_BUCKETS; i++)
+      m_Histogram.set(i, 0);
+    m_Items.set(0);
+    m_AllocatedBytes.set(0);
+    m_LastNumClasses = 0;
+    m_MaxNumClasses  = 0;
+  }
+
+  /**
+   * Returns a short description of the statistics.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return m_Name
+	+ ": count=" + getCount()
+	+ ", mean=" + getMeanMillis() + "ms"
+	+ ", median=" + getMedianMillis() + "ms"
+	+ ", p99=" + getPercentile99Millis() + "ms"
+	+ ", max=" + getMaxMillis() + "ms"
+	+ ", items/s=" + getItemsPerSecond()
+	+ ", allocated=" + getAllocatedBytes()
+	+ ", classes=" + getLastNumClasses() + "/" + getMaxNumClasses();
+  }
+}
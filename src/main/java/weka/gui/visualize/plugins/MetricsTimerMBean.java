@@ -0,0 +1,127 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MetricsTimerMBean.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+/**
+ * JMX interface of a {@link MetricsTimer}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public interface MetricsTimerMBean {
+
+  /**
+   * Returns the name of the timer.
+   *
+   * @return		the name
+   */
+  public String getName();
+
+  /**
+   * Returns the number of recorded operations.
+   *
+   * @return		the number
+   */
+  public long getCount();
+
+  /**
+   * Returns the total time of all operations.
+   *
+   * @return		the time in msec
+   */
+  public double getTotalMillis();
+
+  /**
+   * Returns the mean time per operation.
+   *
+   * @return		the time in msec
+   */
+  public double getMeanMillis();
+
+  /**
+   * Returns the maximum time of an operation.
+   *
+   * @return		the time in msec
+   */
+  public double getMaxMillis();
+
+  /**
+   * Returns the (approximate) median time per operation.
+   *
+   * @return		the time in msec
+   */
+  public double getMedianMillis();
+
+  /**
+   * Returns the (approximate) 99th percentile of the time per operation.
+   *
+   * @return		the time in msec
+   */
+  public double getPercentile99Millis();
+
+  /**
+   * Returns the latency histogram: bucket i counts the operations that took
+   * less than 2^i microseconds (and at least 2^(i-1)).
+   *
+   * @return		the counts per bucket
+   */
+  public long[] getHistogram();
+
+  /**
+   * Returns the total number of processed items (predictions or cells).
+   *
+   * @return		the number
+   */
+  public long getItems();
+
+  /**
+   * Returns the number of processed items per second.
+   *
+   * @return		the throughput
+   */
+  public double getItemsPerSecond();
+
+  /**
+   * Returns the total number of bytes allocated by the operations, -1 if
+   * not supported by the JVM.
+   *
+   * @return		the bytes
+   */
+  public long getAllocatedBytes();
+
+  /**
+   * Returns the number of class labels of the last matrix.
+   *
+   * @return		the number
+   */
+  public int getLastNumClasses();
+
+  /**
+   * Returns the maximum number of class labels of all matrices.
+   *
+   * @return		the number
+   */
+  public int getMaxNumClasses();
+
+  /**
+   * Resets all statistics.
+   */
+  public void reset();
+}
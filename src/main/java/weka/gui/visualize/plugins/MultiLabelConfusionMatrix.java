@@ -0,0 +1,501 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MultiLabelConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Confusion matrices of a multi-label (or multi-output) problem: a 2x2
+ * matrix per label (true/false positives/negatives) and the co-error matrix
+ * of the labels, i.e., the weight of the instances for which both labels of
+ * a pair were predicted wrongly (the diagonal contains the errors per
+ * label).
+ * <p/>
+ * All labels get accumulated in a single pass over the instances, using
+ * primitive counters per label; per instance, only the wrongly predicted
+ * labels contribute to the co-error matrix.
+ * <p/>
+ * A single-label matrix can be turned into one-vs-rest matrices via
+ * {@link #MultiLabelConfusionMatrix(ConfusionMatrix)}. In that case, the
+ * co-errors are not stored, but derived from the single-label matrix on
+ * demand, as they only consist of its (mirrored) off-diagonal cells.
+ * <p/>
+ * Only one-vs-rest matrices are available in the Explorer (see
+ * {@link MultiLabelGridVisualization}), as its results are single-label.
+ * Building the matrices of a multi-label dataset via
+ * {@link #MultiLabelConfusionMatrix(Instances, int[], int[])} is API-only,
+ * the result can be displayed via
+ * {@link MultiLabelGridVisualization#display(MultiLabelConfusionMatrix, String)}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MultiLabelConfusionMatrix
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2390561245786218653L;
+
+  /** the caption of the negative value of a label. */
+  public final static String NEGATIVE = "0";
+
+  /** the caption of the positive value of a label. */
+  public final static String POSITIVE = "1";
+
+  /** the labels. */
+  protected String[] m_Labels;
+
+  /** the true positives per label. */
+  protected double[] m_TruePositives;
+
+  /** the false positives per label. */
+  protected double[] m_FalsePositives;
+
+  /** the false negatives per label. */
+  protected double[] m_FalseNegatives;
+
+  /** the true negatives per label. */
+  protected double[] m_TrueNegatives;
+
+  /** the co-errors (label * numLabels + label), null if derived from {@link #m_Base}. */
+  protected double[] m_CoErrors;
+
+  /** the single-label matrix the one-vs-rest matrices were derived from, null if multi-label. */
+  protected ConfusionMatrix m_Base;
+
+  /** the total weight of the instances. */
+  protected double m_Total;
+
+  /** the indices of the wrongly predicted labels of the current instance. */
+  protected transient int[] m_Errors;
+
+  /**
+   * Initializes the empty matrices.
+   *
+   * @param labels	the labels
+   */
+  public MultiLabelConfusionMatrix(String[] labels) {
+    this(labels, true);
+  }
+
+  /**
+   * Initializes the empty matrices.
+   *
+   * @param labels	the labels
+   * @param coErrors	whether to allocate the co-errors
+   */
+  protected MultiLabelConfusionMatrix(String[] labels, boolean coErrors) {
+    super();
+    m_Labels         = labels.clone();
+    m_TruePositives  = new double[labels.length];
+    m_FalsePositives = new double[labels.length];
+    m_FalseNegatives = new double[labels.length];
+    m_TrueNegatives  = new double[labels.length];
+    if (coErrors)
+      m_CoErrors = new double[labels.length * labels.length];
+  }
+
+  /**
+   * Builds the matrices from the dataset in a single pass. The attributes
+   * with the actual and predicted labels can be nominal (first value is
+   * negative) or numeric (0 is negative). Instances with missing values
+   * in any of these attributes get skipped.
+   *
+   * @param data	the dataset
+   * @param actual	the 0-based indices of the attributes with the actual labels
+   * @param predicted	the 0-based indices of the attributes with the predicted labels (same order)
+   * @throws IllegalArgumentException	if the number of attributes differ
+   * @see		ConfusionMatrixMetrics#BUILD
+   */
+  public MultiLabelConfusionMatrix(Instances data, int[] actual, int[] predicted) {
+    this(getLabels(data, actual));
+
+    ConfusionMatrixMetrics.Sample	sample;
+    boolean[]				act;
+    boolean[]				pred;
+    boolean				missing;
+    int					i;
+
+    if (actual.length != predicted.length)
+      throw new IllegalArgumentException(
+	  "Different number of attributes with actual and predicted labels: " + actual.length + " != " + predicted.length);
+
+    sample = ConfusionMatrixMetrics.start();
+    act    = new boolean[actual.length];
+    pred   = new boolean[actual.length];
+    for (Instance inst: data) {
+      missing = false;
+      for (i = 0; i < actual.length; i++) {
+	if (inst.isMissing(actual[i]) || inst.isMissing(predicted[i])) {
+	  missing = true;
+	  break;
+	}
+	act[i]  = (inst.value(actual[i]) != 0);
+	pred[i] = (inst.value(predicted[i]) != 0);
+      }
+      if (!missing)
+	add(act, pred, inst.weight());
+    }
+    ConfusionMatrixMetrics.BUILD.record(sample, data.numInstances(), m_Labels.length);
+  }
+
+  /**
+   * Derives the one-vs-rest matrices from a single-label matrix, i.e., each
+   * class label is treated as a label of its own. An instance of class
+   * <i>a</i> that got predicted as <i>p</i> is an error of both labels,
+   * hence the co-errors of <i>a</i> and <i>p</i> are the sum of both
+   * off-diagonal cells. These get derived from the single-label matrix on
+   * demand instead of allocating numLabels<sup>2</sup> co-errors, hence the
+   * single-label matrix must not be modified or closed afterwards.
+   *
+   * @param matrix	the single-label matrix
+   */
+  public MultiLabelConfusionMatrix(ConfusionMatrix matrix) {
+    this(matrix.getLabels(), false);
+
+    int		numLabels;
+    int[]	cols;
+    double[]	vals;
+    double[]	predicted;
+    double	total;
+    int		count;
+    int		i;
+    int		n;
+
+    numLabels = m_Labels.length;
+    total     = matrix.getTotal();
+    cols      = new int[numLabels];
+    vals      = new double[numLabels];
+    predicted = new double[numLabels];
+    for (i = 0; i < numLabels; i++) {
+      if (matrix.getTotal(i) == 0)
+	continue;
+      count = matrix.getNonZero(i, cols, vals);
+      for (n = 0; n < count; n++)
+	predicted[cols[n]] += vals[n];
+    }
+    for (i = 0; i < numLabels; i++) {
+      m_TruePositives[i]  = matrix.getCorrect(i);
+      m_FalseNegatives[i] = matrix.getTotal(i) - m_TruePositives[i];
+      m_FalsePositives[i] = predicted[i] - m_TruePositives[i];
+      m_TrueNegatives[i]  = total - m_TruePositives[i] - m_FalseNegatives[i] - m_FalsePositives[i];
+    }
+    m_Total = total;
+    m_Base  = matrix;
+  }
+
+  /**
+   * Returns the names of the attributes as labels.
+   *
+   * @param data	the dataset
+   * @param indices	the 0-based indices of the attributes
+   * @return		the labels
+   */
+  protected static String[] getLabels(Instances data, int[] indices) {
+    String[]	result;
+    int		i;
+
+    result = new String[indices.length];
+    for (i = 0; i < indices.length; i++)
+      result[i] = data.attribute(indices[i]).name();
+
+    return result;
+  }
+
+  /**
+   * Adds the actual and predicted labels of a single instance.
+   *
+   * @param actual	whether the labels are relevant
+   * @param predicted	whether the labels were predicted as relevant
+   * @param weight	the weight of the instance
+   * @throws IllegalStateException	if the matrices were derived from a single-label matrix
+   */
+  public void add(boolean[] actual, boolean[] predicted, double weight) {
+    int		numLabels;
+    int		numErrors;
+    int		offset;
+    int		i;
+    int		n;
+
+    if (m_Base != null)
+      throw new IllegalStateException("One-vs-rest matrices cannot be updated!");
+
+    numLabels = m_Labels.length;
+    if (m_Errors == null)
+      m_Errors = new int[numLabels];
+
+    numErrors = 0;
+    for (i = 0; i < numLabels; i++) {
+      if (actual[i]) {
+	if (predicted[i]) {
+	  m_TruePositives[i] += weight;
+	}
+	else {
+	  m_FalseNegatives[i] += weight;
+	  m_Errors[numErrors++] = i;
+	}
+      }
+      else {
+	if (predicted[i]) {
+	  m_FalsePositives[i] += weight;
+	  m_Errors[numErrors++] = i;
+	}
+	else {
+	  m_TrueNegatives[i] += weight;
+	}
+      }
+    }
+
+    for (i = 0; i < numErrors; i++) {
+      offset = m_Errors[i] * numLabels;
+      for (n = 0; n < numErrors; n++)
+	m_CoErrors[offset + m_Errors[n]] += weight;
+    }
+
+    m_Total += weight;
+  }
+
+  /**
+   * Returns the number of labels.
+   *
+   * @return		the number of labels
+   */
+  public int getNumLabels() {
+    return m_Labels.length;
+  }
+
+  /**
+   * Returns the labels.
+   *
+   * @return		the labels
+   */
+  public String[] getLabels() {
+    return m_Labels;
+  }
+
+  /**
+   * Returns the total weight of the instances.
+   *
+   * @return		the total
+   */
+  public double getTotal() {
+    return m_Total;
+  }
+
+  /**
+   * Returns the true positives of the label.
+   *
+   * @param index	the 0-based index of the label
+   * @return		the count
+   */
+  public double getTruePositives(int index) {
+    return m_TruePositives[index];
+  }
+
+  /**
+   * Returns the false positives of the label.
+   *
+   * @param index	the 0-based index of the label
+   * @return		the count
+   */
+  public double getFalsePositives(int index) {
+    return m_FalsePositives[index];
+  }
+
+  /**
+   * Returns the false negatives of the label.
+   *
+   * @param index	the 0-based index of the label
+   * @return		the count
+   */
+  public double getFalseNegatives(int index) {
+    return m_FalseNegatives[index];
+  }
+
+  /**
+   * Returns the true negatives of the label.
+   *
+   * @param index	the 0-based index of the label
+   * @return		the count
+   */
+  public double getTrueNegatives(int index) {
+    return m_TrueNegatives[index];
+  }
+
+  /**
+   * Returns the errors of the label (false positives and negatives).
+   *
+   * @param index	the 0-based index of the label
+   * @return		the count
+   */
+  public double getIncorrect(int index) {
+    return m_FalsePositives[index] + m_FalseNegatives[index];
+  }
+
+  /**
+   * Returns the weight of the instances for which both labels were
+   * predicted wrongly.
+   *
+   * @param first	the 0-based index of the first label
+   * @param second	the 0-based index of the second label
+   * @return		the count
+   */
+  public double getCoErrors(int first, int second) {
+    if (m_Base == null)
+      return m_CoErrors[first * m_Labels.length + second];
+    if (first == second)
+      return getIncorrect(first);
+    return m_Base.getValue(first, second) + m_Base.getValue(second, first);
+  }
+
+  /**
+   * Returns whether the matrices were derived from a single-label matrix.
+   *
+   * @return		true if one-vs-rest
+   */
+  public boolean isOneVsRest() {
+    return (m_Base != null);
+  }
+
+  /**
+   * Returns the 2x2 matrix of the label (first row/column: negative).
+   *
+   * @param index	the 0-based index of the label
+   * @return		the matrix
+   */
+  public ConfusionMatrix getMatrix(int index) {
+    ConfusionMatrix	result;
+    List<String>	values;
+
+    values = new ArrayList<String>();
+    values.add(NEGATIVE);
+    values.add(POSITIVE);
+    result                  = new ConfusionMatrix();
+    result.m_ClassAttribute = new Attribute(m_Labels[index], values);
+    result.m_Labels         = new String[]{NEGATIVE, POSITIVE};
+    result.m_Matrix         = new double[][]{
+	{m_TrueNegatives[index], m_FalsePositives[index]},
+	{m_FalseNegatives[index], m_TruePositives[index]}};
+
+    return result;
+  }
+
+  /**
+   * Returns the class attribute for the co-error matrix.
+   *
+   * @return		the attribute
+   */
+  protected Attribute getCoErrorAttribute() {
+    List<String>	values;
+    int			i;
+
+    values = new ArrayList<String>();
+    for (i = 0; i < m_Labels.length; i++)
+      values.add(m_Labels[i]);
+
+    return new Attribute("co-errors", values);
+  }
+
+  /**
+   * Returns the co-error matrix, with the labels as class labels, e.g.,
+   * for displaying it as heatmap. For one-vs-rest matrices, the
+   * representation gets chosen by {@link MatrixFootprint}, based on the
+   * non-zero cells of the single-label matrix (an off-heap matrix must be
+   * closed by the caller).
+   *
+   * @return		the matrix
+   */
+  public ConfusionMatrix getCoErrorMatrix() {
+    ConfusionMatrix	result;
+    int			numLabels;
+    int			i;
+
+    if (m_Base != null)
+      return getCoErrorMatrix(MatrixFootprint.getAvailableHeap());
+
+    numLabels = m_Labels.length;
+    result                  = new ConfusionMatrix();
+    result.m_ClassAttribute = getCoErrorAttribute();
+    result.m_Labels         = m_Labels.clone();
+    result.m_Matrix         = new double[numLabels][numLabels];
+    for (i = 0; i < numLabels; i++)
+      System.arraycopy(m_CoErrors, i * numLabels, result.m_Matrix[i], 0, numLabels);
+
+    return result;
+  }
+
+  /**
+   * Derives the co-error matrix of one-vs-rest matrices from the
+   * single-label matrix: the off-diagonal cells get mirrored, the diagonal
+   * contains the errors per label. The number of non-zero cells is bounded
+   * by twice the non-zero cells of the single-label matrix plus the
+   * diagonal.
+   *
+   * @param availableHeap	the available heap in bytes
+   * @return		the matrix
+   * @throws IllegalStateException	if not one-vs-rest
+   */
+  protected ConfusionMatrix getCoErrorMatrix(long availableHeap) {
+    ConfusionMatrix	result;
+    MatrixFootprint	footprint;
+    int			numLabels;
+    int[]		cols;
+    double[]		vals;
+    int			count;
+    int			i;
+    int			n;
+
+    if (m_Base == null)
+      throw new IllegalStateException("Co-errors are not derived from a single-label matrix!");
+
+    numLabels = m_Labels.length;
+    footprint = new MatrixFootprint(
+	numLabels, 2 * DiffConfusionMatrix.getMaxNonZero(m_Base) + numLabels, availableHeap);
+    result = ConfusionMatrix.newInstance(
+	getCoErrorAttribute(), m_Labels.clone(), new ArrayList<Prediction>(), null,
+	footprint.getRepresentation(m_Base.hasIntegralCounts()));
+
+    cols = new int[numLabels];
+    vals = new double[numLabels];
+    for (i = 0; i < numLabels; i++) {
+      if (getIncorrect(i) != 0)
+	result.add(i, i, getIncorrect(i));
+      if (m_Base.getTotal(i) == 0)
+	continue;
+      count = m_Base.getNonZero(i, cols, vals);
+      for (n = 0; n < count; n++) {
+	if (cols[n] == i)
+	  continue;
+	result.add(i, cols[n], vals[n]);
+	result.add(cols[n], i, vals[n]);
+      }
+    }
+    result.invalidate();
+
+    return result;
+  }
+}
@@ -0,0 +1,384 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MultiLabelGridPanel.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+/**
+ * Panel that displays the 2x2 matrices of all labels of a
+ * {@link MultiLabelConfusionMatrix} in a compact grid. The cells are colored
+ * by the fraction of their row (i.e., of the negative/positive instances of
+ * the label), the diagonal being the correct ones.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MultiLabelGridPanel
+  extends JPanel {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -1870528941375270369L;
+
+  /** the default size of a cell of a 2x2 matrix. */
+  public final static int CELL_SIZE = 30;
+
+  /** the gap between the matrices. */
+  public final static int GAP = 10;
+
+  /** the height of the caption of a matrix. */
+  public final static int CAPTION_HEIGHT = 14;
+
+  /** the underlying matrices. */
+  protected MultiLabelConfusionMatrix m_Matrix;
+
+  /** the size of a cell. */
+  protected int m_SizeCells = CELL_SIZE;
+
+  /** the number of columns of the grid, 0 for (approximately) square. */
+  protected int m_NumColumns = 0;
+
+  /** the color for a fraction of 0. */
+  protected Color m_ColorFirst = Color.WHITE;
+
+  /** the color for a fraction of 1. */
+  protected Color m_ColorSecond = Color.BLACK;
+
+  /** the panel for displaying the image. */
+  protected HeatmapPanel.ImagePanel m_PanelImage;
+
+  /** the formatter for the counts. */
+  protected NumberFormatter m_Formatter = new NumberFormatter();
+
+  /**
+   * Initializes the panel.
+   *
+   * @param matrix	the matrices to display
+   */
+  public MultiLabelGridPanel(MultiLabelConfusionMatrix matrix) {
+    m_Matrix     = matrix;
+    m_PanelImage = new HeatmapPanel.ImagePanel();
+    setLayout(new FlowLayout(FlowLayout.CENTER));
+    add(m_PanelImage);
+    update();
+    m_PanelImage.addMouseMotionListener(new MouseMotionAdapter() {
+      @Override
+      public void mouseMoved(MouseEvent e) {
+	int index = getIndexAt(e.getX(), e.getY());
+	String tiptext = null;
+	if (index > -1) {
+	  tiptext = m_Matrix.getLabels()[index]
+	      + ": TP=" + m_Formatter.toPlainString(m_Matrix.getTruePositives(index))
+	      + ", FP=" + m_Formatter.toPlainString(m_Matrix.getFalsePositives(index))
+	      + ", FN=" + m_Formatter.toPlainString(m_Matrix.getFalseNegatives(index))
+	      + ", TN=" + m_Formatter.toPlainString(m_Matrix.getTrueNegatives(index));
+	}
+	m_PanelImage.setToolTipText(tiptext);
+      }
+    });
+  }
+
+  /**
+   * Returns the underlying matrices.
+   *
+   * @return		the matrices
+   */
+  public MultiLabelConfusionMatrix getMatrix() {
+    return m_Matrix;
+  }
+
+  /**
+   * Sets the size of a cell.
+   *
+   * @param value	the size
+   */
+  public void setSizeCells(int value) {
+    m_SizeCells = value;
+    update();
+  }
+
+  /**
+   * Returns the size of a cell.
+   *
+   * @return		the size
+   */
+  public int getSizeCells() {
+    return m_SizeCells;
+  }
+
+  /**
+   * Sets the number of columns of the grid.
+   *
+   * @param value	the number of columns, 0 for (approximately) square
+   */
+  public void setNumColumns(int value) {
+    m_NumColumns = value;
+    update();
+  }
+
+  /**
+   * Returns the number of columns of the grid.
+   *
+   * @return		the number of columns, 0 for (approximately) square
+   */
+  public int getNumColumns() {
+    return m_NumColumns;
+  }
+
+  /**
+   * Sets the color for a fraction of 0.
+   *
+   * @param value	the color
+   */
+  public void setFirstColor(Color value) {
+    m_ColorFirst = value;
+    update();
+  }
+
+  /**
+   * Returns the color for a fraction of 0.
+   *
+   * @return		the color
+   */
+  public Color getFirstColor() {
+    return m_ColorFirst;
+  }
+
+  /**
+   * Sets the color for a fraction of 1.
+   *
+   * @param value	the color
+   */
+  public void setSecondColor(Color value) {
+    m_ColorSecond = value;
+    update();
+  }
+
+  /**
+   * Returns the color for a fraction of 1.
+   *
+   * @return		the color
+   */
+  public Color getSecondColor() {
+    return m_ColorSecond;
+  }
+
+  /**
+   * Returns the actual number of columns of the grid.
+   *
+   * @return		the number of columns
+   */
+  protected int getActualNumColumns() {
+    if (m_NumColumns > 0)
+      return Math.min(m_NumColumns, Math.max(1, m_Matrix.getNumLabels()));
+    return Math.max(1, (int) Math.ceil(Math.sqrt(m_Matrix.getNumLabels())));
+  }
+
+  /**
+   * Returns the width of a matrix including the gap.
+   *
+   * @return		the width
+   */
+  protected int getTileWidth() {
+    return 2 * m_SizeCells + GAP;
+  }
+
+  /**
+   * Returns the height of a matrix including caption and gap.
+   *
+   * @return		the height
+   */
+  protected int getTileHeight() {
+    return CAPTION_HEIGHT + 2 * m_SizeCells + GAP;
+  }
+
+  /**
+   * Returns the index of the label whose matrix is at the position.
+   *
+   * @param x		the x position
+   * @param y		the y position
+   * @return		the 0-based index, -1 if none
+   */
+  protected int getIndexAt(int x, int y) {
+    int		result;
+    int		col;
+    int		row;
+
+    col = (x - GAP) / getTileWidth();
+    row = (y - GAP) / getTileHeight();
+    if ((x < GAP) || (y < GAP) || (col >= getActualNumColumns()))
+      return -1;
+    result = row * getActualNumColumns() + col;
+    if (result >= m_Matrix.getNumLabels())
+      return -1;
+
+    return result;
+  }
+
+  /**
+   * Returns the color for the fraction.
+   *
+   * @param fraction	the fraction (0-1)
+   * @return		the color
+   */
+  protected Color getColor(double fraction) {
+    return new Color(
+	(int) (m_ColorFirst.getRed()   + fraction * (m_ColorSecond.getRed()   - m_ColorFirst.getRed())),
+	(int) (m_ColorFirst.getGreen() + fraction * (m_ColorSecond.getGreen() - m_ColorFirst.getGreen())),
+	(int) (m_ColorFirst.getBlue()  + fraction * (m_ColorSecond.getBlue()  - m_ColorFirst.getBlue())));
+  }
+
+  /**
+   * Paints a single cell of a 2x2 matrix, including its count if there is
+   * enough room.
+   *
+   * @param g		the graphics context
+   * @param x		the left of the cell
+   * @param y		the top of the cell
+   * @param count	the count of the cell
+   * @param total	the total of the row
+   */
+  protected void paintCell(Graphics g, int x, int y, double count, double total) {
+    FontMetrics	metrics;
+    Color	color;
+    String	text;
+    double	fraction;
+
+    fraction = (total == 0) ? 0.0 : count / total;
+    color    = getColor(fraction);
+    g.setColor(color);
+    g.fillRect(x, y, m_SizeCells, m_SizeCells);
+
+    text    = m_Formatter.toPlainString(count);
+    metrics = g.getFontMetrics();
+    if ((metrics.stringWidth(text) < m_SizeCells - 2) && (metrics.getHeight() < m_SizeCells)) {
+      // black on light, white on dark cells
+      if (color.getRed() * 299 + color.getGreen() * 587 + color.getBlue() * 114 > 128000)
+	g.setColor(Color.BLACK);
+      else
+	g.setColor(Color.WHITE);
+      g.drawString(
+	  text,
+	  x + (m_SizeCells - metrics.stringWidth(text)) / 2,
+	  y + (m_SizeCells + metrics.getAscent() - metrics.getDescent()) / 2);
+    }
+  }
+
+  /**
+   * Paints the 2x2 matrix of the label.
+   *
+   * @param g		the graphics context
+   * @param index	the 0-based index of the label
+   * @param x		the left of the matrix
+   * @param y		the top of the matrix (including caption)
+   */
+  protected void paintMatrix(Graphics g, int index, int x, int y) {
+    FontMetrics	metrics;
+    String	caption;
+    double	negative;
+    double	positive;
+
+    // caption, truncated to the width of the matrix
+    metrics = g.getFontMetrics();
+    caption = m_Matrix.getLabels()[index];
+    while ((caption.length() > 1) && (metrics.stringWidth(caption) > 2 * m_SizeCells))
+      caption = caption.substring(0, caption.length() - 1);
+    g.setColor(Color.BLACK);
+    g.drawString(caption, x, y + CAPTION_HEIGHT - metrics.getDescent() - 1);
+
+    // cells
+    y       += CAPTION_HEIGHT;
+    negative = m_Matrix.getTrueNegatives(index) + m_Matrix.getFalsePositives(index);
+    positive = m_Matrix.getFalseNegatives(index) + m_Matrix.getTruePositives(index);
+    paintCell(g, x,               y,               m_Matrix.getTrueNegatives(index),  negative);
+    paintCell(g, x + m_SizeCells, y,               m_Matrix.getFalsePositives(index), negative);
+    paintCell(g, x,               y + m_SizeCells, m_Matrix.getFalseNegatives(index), positive);
+    paintCell(g, x + m_SizeCells, y + m_SizeCells, m_Matrix.getTruePositives(index),  positive);
+    g.setColor(Color.GRAY);
+    g.drawRect(x, y, 2 * m_SizeCells, 2 * m_SizeCells);
+  }
+
+  /**
+   * Generates the image with the matrices of all labels.
+   *
+   * @return		the image
+   * @see		ConfusionMatrixMetrics#HEATMAP
+   */
+  protected BufferedImage generateImage() {
+    BufferedImage			image;
+    ConfusionMatrixMetrics.Sample	sample;
+    Graphics				g;
+    int					numCols;
+    int					numRows;
+    int					i;
+
+    sample  = ConfusionMatrixMetrics.start();
+
+    numCols = getActualNumColumns();
+    numRows = (m_Matrix.getNumLabels() + numCols - 1) / numCols;
+    image   = new BufferedImage(
+	GAP + numCols * getTileWidth(), GAP + Math.max(1, numRows) * getTileHeight(), BufferedImage.TYPE_INT_ARGB);
+    g       = image.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g.setFont(g.getFont().deriveFont(Font.PLAIN, 10f));
+    for (i = 0; i < m_Matrix.getNumLabels(); i++) {
+      AbstractConfusionMatrixVisualization.checkInterrupted();
+      paintMatrix(g, i, GAP + (i % numCols) * getTileWidth(), GAP + (i / numCols) * getTileHeight());
+    }
+    g.dispose();
+
+    ConfusionMatrixMetrics.HEATMAP.record(sample, 4L * m_Matrix.getNumLabels(), m_Matrix.getNumLabels());
+
+    return image;
+  }
+
+  /**
+   * Returns the current image.
+   *
+   * @return		the image
+   */
+  public BufferedImage getImage() {
+    return m_PanelImage.getImage();
+  }
+
+  /**
+   * Updates the image using the current parameters.
+   */
+  protected void update() {
+    m_PanelImage.setImage(generateImage());
+    revalidate();
+  }
+
+  /**
+   * Saves the component.
+   */
+  protected void saveComponent() {
+    m_PanelImage.saveComponent();
+  }
+}
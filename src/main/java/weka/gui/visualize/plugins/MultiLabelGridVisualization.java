@@ -0,0 +1,348 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MultiLabelGridVisualization.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+import javax.swing.JButton;
+import javax.swing.JColorChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import weka.gui.ComponentHelper;
+
+/**
+ * Displays the 2x2 confusion matrices of all labels in a compact grid (see
+ * {@link MultiLabelGridPanel}). A single-label matrix gets displayed as
+ * one-vs-rest matrices of its class labels, multi-label matrices get
+ * displayed via {@link #display(MultiLabelConfusionMatrix, String)}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MultiLabelGridVisualization
+  extends AbstractConfusionMatrixVisualization {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 4061268416457237530L;
+
+  /** the generated panel. */
+  protected MultiLabelGridPanel m_Grid;
+
+  /** the spinner for the size of the cells. */
+  protected JSpinner m_SpinnerSize;
+
+  /** the spinner for the number of columns. */
+  protected JSpinner m_SpinnerColumns;
+
+  /** the button for selecting the first color. */
+  protected JButton m_ButtonFirst;
+
+  /** the button for selecting the second color. */
+  protected JButton m_ButtonSecond;
+
+  /**
+   * Returns the text for the menu item.
+   *
+   * @return		the text
+   */
+  @Override
+  public String getMenuItemText() {
+    return "Per-label grid";
+  }
+
+  /**
+   * Returns the initial size of the frame.
+   *
+   * @return		the dimensions
+   */
+  @Override
+  protected Dimension getFrameDimension() {
+    return new Dimension(800, 600);
+  }
+
+  /**
+   * Returns the "save as" menu item.
+   *
+   * @param frame	the frame
+   * @return		the generate menu item, null if not available
+   */
+  @Override
+  protected JMenuItem getSaveAsMenuItem(JFrame frame) {
+    JMenuItem	result;
+
+    result = new JMenuItem("Save as...");
+    result.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	if (m_Grid == null)
+	  return;
+	m_Grid.saveComponent();
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Returns the "print" menu item.
+   *
+   * @param frame	the frame
+   * @return		the generate menu item, null if not available
+   */
+  @Override
+  protected JMenuItem getPrintMenuItem(JFrame frame) {
+    return null;
+  }
+
+  /**
+   * Generates the options panel.
+   *
+   * @return		the panel
+   */
+  protected JPanel generateOptions() {
+    JPanel	result;
+    JPanel	options;
+    JPanel	option;
+    JLabel	label;
+
+    result  = new JPanel(new BorderLayout());
+    options = new JPanel(new GridLayout(0, 1));
+    result.add(options, BorderLayout.NORTH);
+
+    // first color
+    option = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    m_ButtonFirst = new JButton("First color");
+    m_ButtonFirst.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	Color chosen = JColorChooser.showDialog(m_ButtonFirst, "Select first color", m_Grid.getFirstColor());
+	if (chosen != null)
+	  m_Grid.setFirstColor(chosen);
+      }
+    });
+    option.add(m_ButtonFirst);
+    options.add(option);
+
+    // second color
+    option = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    m_ButtonSecond = new JButton("Second color");
+    m_ButtonSecond.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	Color chosen = JColorChooser.showDialog(m_ButtonSecond, "Select second color", m_Grid.getSecondColor());
+	if (chosen != null)
+	  m_Grid.setSecondColor(chosen);
+      }
+    });
+    option.add(m_ButtonSecond);
+    options.add(option);
+
+    // size
+    option = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    m_SpinnerSize = new JSpinner();
+    m_SpinnerSize.setPreferredSize(new Dimension(50, 20));
+    ((SpinnerNumberModel) m_SpinnerSize.getModel()).setMinimum(2);
+    ((SpinnerNumberModel) m_SpinnerSize.getModel()).setMaximum(1000);
+    ((SpinnerNumberModel) m_SpinnerSize.getModel()).setValue(m_Grid.getSizeCells());
+    m_SpinnerSize.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	m_Grid.setSizeCells((Integer) ((SpinnerNumberModel) m_SpinnerSize.getModel()).getValue());
+      }
+    });
+    label = new JLabel("Size of cells");
+    label.setLabelFor(m_SpinnerSize);
+    option.add(m_SpinnerSize);
+    option.add(label);
+    options.add(option);
+
+    // columns
+    option = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    m_SpinnerColumns = new JSpinner();
+    m_SpinnerColumns.setPreferredSize(new Dimension(50, 20));
+    ((SpinnerNumberModel) m_SpinnerColumns.getModel()).setMinimum(0);
+    ((SpinnerNumberModel) m_SpinnerColumns.getModel()).setMaximum(1000);
+    ((SpinnerNumberModel) m_SpinnerColumns.getModel()).setValue(m_Grid.getNumColumns());
+    m_SpinnerColumns.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	m_Grid.setNumColumns((Integer) ((SpinnerNumberModel) m_SpinnerColumns.getModel()).getValue());
+      }
+    });
+    m_SpinnerColumns.setToolTipText("0 = square grid");
+    label = new JLabel("# of columns");
+    label.setLabelFor(m_SpinnerColumns);
+    option.add(m_SpinnerColumns);
+    option.add(label);
+    options.add(option);
+
+    return result;
+  }
+
+  /**
+   * Derives the one-vs-rest matrices in the background.
+   *
+   * @param matrix	the matrix that will get visualized
+   * @return		the {@link MultiLabelConfusionMatrix}
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix) {
+    return new MultiLabelConfusionMatrix(matrix);
+  }
+
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   *
+   * @return		the extension
+   */
+  @Override
+  public String getExportExtension() {
+    return "png";
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., the size of the ARGB image.
+   *
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    long	tile;
+
+    tile = (long) (2 * MultiLabelGridPanel.CELL_SIZE + MultiLabelGridPanel.GAP)
+	* (long) (MultiLabelGridPanel.CAPTION_HEIGHT + 2 * MultiLabelGridPanel.CELL_SIZE + MultiLabelGridPanel.GAP);
+
+    return (long) matrix.getNumClasses() * tile * 4L;
+  }
+
+  /**
+   * Exports the one-vs-rest matrices as PNG image.
+   *
+   * @param matrix	the matrix to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String export(ConfusionMatrix matrix, File file) {
+    return export(new MultiLabelConfusionMatrix(matrix), file);
+  }
+
+  /**
+   * Exports the per-label matrices as PNG image.
+   *
+   * @param matrix	the matrices to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  public String export(MultiLabelConfusionMatrix matrix, File file) {
+    m_Grid = new MultiLabelGridPanel(matrix);
+    try {
+      if (!ImageIO.write(m_Grid.getImage(), "png", file))
+	return "No writer available for PNG images!";
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write per-label grid to " + file + "!");
+      e.printStackTrace();
+      return "Failed to write per-label grid to " + file + ": " + e;
+    }
+    return null;
+  }
+
+  /**
+   * Generates the visualization of the one-vs-rest matrices.
+   *
+   * @param matrix	the matrix to visualize
+   * @return		the panel with the visualization
+   */
+  @Override
+  public JPanel generate(ConfusionMatrix matrix) {
+    return generate(new MultiLabelConfusionMatrix(matrix));
+  }
+
+  /**
+   * Generates the visualization of the prepared one-vs-rest matrices.
+   *
+   * @param matrix	the matrix to visualize
+   * @param precomputed	the {@link MultiLabelConfusionMatrix}, null if not
+   * 			available
+   * @return		the panel with the visualization
+   */
+  @Override
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    if (precomputed == null)
+      return generate(matrix);
+    return generate((MultiLabelConfusionMatrix) precomputed);
+  }
+
+  /**
+   * Generates the visualization of the per-label matrices.
+   *
+   * @param matrix	the matrices to visualize
+   * @return		the panel with the visualization
+   */
+  public JPanel generate(MultiLabelConfusionMatrix matrix) {
+    JPanel	result;
+
+    m_Grid = new MultiLabelGridPanel(matrix);
+    result = new JPanel(new BorderLayout());
+    result.add(createScrollPane(m_Grid), BorderLayout.CENTER);
+    result.add(createScrollPane(generateOptions()), BorderLayout.EAST);
+
+    return result;
+  }
+
+  /**
+   * Opens a frame for the visualization of the per-label matrices.
+   *
+   * @param matrix 	the matrices to display
+   * @param title 	the title of the frame
+   */
+  public void display(MultiLabelConfusionMatrix matrix, String title) {
+    JFrame	jf;
+
+    jf = new JFrame(title + " - " + getMenuItemText());
+    jf.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    jf.setSize(getFrameDimension());
+    jf.setIconImage(ComponentHelper.getImage("weka/gui", "confusionmatrix_logo.png"));
+    jf.getContentPane().setLayout(new BorderLayout());
+    jf.getContentPane().add(generate(matrix), BorderLayout.CENTER);
+    jf.setJMenuBar(getMenuBar(jf));
+    jf.setLocationRelativeTo(null);
+    jf.setVisible(true);
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * NumberFormatter.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import weka.core.Utils;
+
+/**
+ * Formats numbers by writing the digits straight into a reusable char
+ * buffer. Produces the same output as {@link Utils#doubleToString(double, int)},
+ * {@link Utils#doubleToString(double, int, int)} and
+ * {@link Double#toString(double)} (for integral values), but without
+ * creating any objects when appending to a {@link Writer} or
+ * {@link StringBuilder}. Values that can't be handled this way (too large,
+ * too many decimals, too close to a rounding boundary, NaN, infinity) get
+ * formatted with the Weka/JDK methods instead.
+ * <p/>
+ * Not thread-safe, use one instance per thread.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class NumberFormatter {
+
+  /** the maximum number of decimals that are handled directly. */
+  public final static int MAX_DECIMALS = 6;
+
+  /** the largest absolute integral value that gets handled directly. */
+  public final static double MAX_INTEGRAL = 1.0e12;
+
+  /** the largest scaled fractional value that gets rounded reliably. */
+  public final static double MAX_SCALED = 1.0e9;
+
+  /** the largest absolute integral value that Double.toString outputs without exponent. */
+  public final static double MAX_PLAIN = 1.0e7;
+
+  /** the powers of ten. */
+  protected final static long[] POWERS = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+
+  /** the buffer for the digits. */
+  protected char[] m_Digits = new char[32];
+
+  /** the start of the formatted number in the digit buffer. */
+  protected int m_Start;
+
+  /** the position of the decimal point in the digit buffer (-1 if none). */
+  protected int m_Dot;
+
+  /** the buffer for fixed-width output. */
+  protected char[] m_Fixed = new char[32];
+
+  /**
+   * Formats the value, rounded (half up) to the specified maximum number of
+   * decimals without trailing zeros, right-aligned into the digit buffer
+   * (see {@link #m_Start}, {@link #m_Dot}).
+   *
+   * @param value	the value to format
+   * @param afterDecimalPoint	the maximum number of decimals
+   * @return		true if successfully formatted, false if value needs
+   * 			to be handled by {@link Utils#doubleToString(double, int)}
+   */
+  protected boolean format(double value, int afterDecimalPoint) {
+    double	scaled;
+    double	fraction;
+    long	digits;
+    boolean	negative;
+    int		pos;
+    int		decimals;
+
+    if ((afterDecimalPoint < 0) || (afterDecimalPoint > MAX_DECIMALS))
+      return false;
+    if (Double.isNaN(value) || (Math.abs(value) >= MAX_INTEGRAL))
+      return false;
+
+    negative = (value < 0) || ((value == 0) && (1.0 / value < 0));
+    if (value == Math.rint(value)) {
+      digits = (long) Math.abs(value) * POWERS[afterDecimalPoint];
+    }
+    else {
+      scaled = Math.abs(value) * POWERS[afterDecimalPoint];
+      if (scaled >= MAX_SCALED)
+	return false;
+      fraction = scaled - Math.floor(scaled);
+      // too close to the rounding boundary to decide reliably
+      if (Math.abs(fraction - 0.5) < 1e-6)
+	return false;
+      digits = (long) Math.floor(scaled);
+      if (fraction > 0.5)
+	digits++;
+    }
+
+    // remove trailing zeros
+    decimals = afterDecimalPoint;
+    while ((decimals > 0) && (digits % 10 == 0) && (digits != 0)) {
+      digits /= 10;
+      decimals--;
+    }
+    if (digits == 0)
+      decimals = 0;
+
+    pos   = m_Digits.length;
+    m_Dot = -1;
+    do {
+      m_Digits[--pos] = (char) ('0' + (digits % 10));
+      digits /= 10;
+      decimals--;
+      if (decimals == 0) {
+	m_Digits[--pos] = '.';
+	m_Dot = pos;
+	// leading zero
+	if (digits == 0)
+	  m_Digits[--pos] = '0';
+      }
+    }
+    while ((digits > 0) || (decimals > 0));
+    if (negative)
+      m_Digits[--pos] = '-';
+    m_Start = pos;
+
+    return true;
+  }
+
+  /**
+   * Appends the characters to the output, avoids creating objects for
+   * writers and string builders.
+   *
+   * @param output	the output to append to
+   * @param chars	the characters
+   * @param offset	the offset in the characters
+   * @param len		the number of characters
+   * @throws IOException	if appending fails
+   */
+  protected void append(Appendable output, char[] chars, int offset, int len) throws IOException {
+    int		i;
+
+    if (output instanceof Writer) {
+      ((Writer) output).write(chars, offset, len);
+    }
+    else if (output instanceof StringBuilder) {
+      ((StringBuilder) output).append(chars, offset, len);
+    }
+    else {
+      for (i = offset; i < offset + len; i++)
+	output.append(chars[i]);
+    }
+  }
+
+  /**
+   * Appends the value, rounded to the specified maximum number of decimals.
+   * Same output as {@link Utils#doubleToString(double, int)}.
+   *
+   * @param output	the output to append to
+   * @param value	the value to append
+   * @param afterDecimalPoint	the maximum number of decimals
+   * @throws IOException	if appending fails
+   */
+  public void append(Appendable output, double value, int afterDecimalPoint) throws IOException {
+    if (format(value, afterDecimalPoint))
+      append(output, m_Digits, m_Start, m_Digits.length - m_Start);
+    else
+      output.append(Utils.doubleToString(value, afterDecimalPoint));
+  }
+
+  /**
+   * Appends the value, right-aligned to the specified width with the
+   * decimal points aligned. Same output as
+   * {@link Utils#doubleToString(double, int, int)}.
+   *
+   * @param output	the output to append to
+   * @param value	the value to append
+   * @param width	the width
+   * @param afterDecimalPoint	the number of decimals
+   * @throws IOException	if appending fails
+   */
+  public void append(Appendable output, double value, int width, int afterDecimalPoint) throws IOException {
+    int		len;
+    int		dotPosition;
+    int		offset;
+    int		i;
+
+    if ((afterDecimalPoint >= width) || !format(value, afterDecimalPoint)) {
+      output.append(Utils.doubleToString(value, width, afterDecimalPoint));
+      return;
+    }
+
+    len = m_Digits.length - m_Start;
+    if (width > m_Fixed.length)
+      m_Fixed = new char[width];
+    for (i = 0; i < width; i++)
+      m_Fixed[i] = ' ';
+
+    if ((afterDecimalPoint > 0) && (m_Dot != -1)) {
+      dotPosition = m_Dot - m_Start;
+      m_Fixed[width - afterDecimalPoint - 1] = '.';
+    }
+    else {
+      dotPosition = len;
+    }
+
+    offset = width - afterDecimalPoint - dotPosition;
+    if (afterDecimalPoint > 0)
+      offset--;
+
+    // not enough room to decimal align within the supplied width
+    if (offset < 0) {
+      append(output, m_Digits, m_Start, len);
+      return;
+    }
+
+    // before decimal point
+    for (i = 0; i < dotPosition; i++)
+      m_Fixed[offset + i] = m_Digits[m_Start + i];
+    // after decimal point
+    for (i = dotPosition + 1; i < len; i++)
+      m_Fixed[offset + i] = m_Digits[m_Start + i];
+
+    append(output, m_Fixed, 0, width);
+  }
+
+  /**
+   * Appends the value in the same format as {@link Double#toString(double)}.
+   * Integral values below {@link #MAX_PLAIN} get formatted directly.
+   *
+   * @param output	the output to append to
+   * @param value	the value to append
+   * @throws IOException	if appending fails
+   */
+  public void appendPlain(Appendable output, double value) throws IOException {
+    if ((value != Math.rint(value)) || (Math.abs(value) >= MAX_PLAIN) || !format(value, 0)) {
+      output.append(Double.toString(value));
+      return;
+    }
+
+    append(output, m_Digits, m_Start, m_Digits.length - m_Start);
+    output.append('.');
+    output.append('0');
+  }
+
+  /**
+   * Returns the value in the same format as {@link Double#toString(double)}.
+   *
+   * @param value	the value to format
+   * @return		the formatted value
+   */
+  public String toPlainString(double value) {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    try {
+      appendPlain(result, value);
+    }
+    catch (IOException e) {
+      // can't happen with StringBuilder
+    }
+
+    return result.toString();
+  }
+}
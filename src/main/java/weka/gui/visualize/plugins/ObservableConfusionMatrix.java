@@ -0,0 +1,468 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ObservableConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Confusion matrix that can be updated after construction. Keeps track of
+ * the modified cells (per row: the range of modified columns) since the last
+ * time they were retrieved with {@link #drainDirty()}, as well as the minimum
+ * and maximum count.
+ * <p/>
+ * Listeners get only notified when the matrix changes from clean to dirty,
+ * i.e., at most once between two calls of {@link #drainDirty()}. Updates
+ * can be made from any thread; reading the counts via
+ * {@link #getValue(int, int)}, {@link #getRow(int, double[])} and
+ * {@link #getNonZero(int, int[], double[])} synchronizes with them (the
+ * array returned by {@link #getMatrix()} does not).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ObservableConfusionMatrix
+  extends ConfusionMatrix {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3573620427213766541L;
+
+  /**
+   * Container for the modified regions of the matrix.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class DirtyRegion {
+
+    /** the modified rows. */
+    public int[] rows;
+
+    /** the first modified column per row (inclusive). */
+    public int[] fromCols;
+
+    /** the last modified column per row (inclusive). */
+    public int[] toCols;
+  }
+
+  /** the rows that were modified. */
+  protected BitSet m_DirtyRows;
+
+  /** the first modified column per row. */
+  protected int[] m_DirtyFrom;
+
+  /** the last modified column per row. */
+  protected int[] m_DirtyTo;
+
+  /** the current minimum. */
+  protected double m_Min;
+
+  /** the current maximum. */
+  protected double m_Max;
+
+  /** whether minimum/maximum need to be recalculated. */
+  protected boolean m_ExtremaStale;
+
+  /** the listeners. */
+  protected transient Set<ChangeListener> m_ChangeListeners;
+
+  /**
+   * Initializes an empty matrix.
+   *
+   * @param classAtt	the class attribute
+   */
+  public ObservableConfusionMatrix(Attribute classAtt) {
+    this(new ArrayList<Prediction>(), classAtt);
+  }
+
+  /**
+   * Initializes the matrix with the predictions.
+   *
+   * @param preds	the initial predictions
+   * @param classAtt	the class attribute
+   */
+  public ObservableConfusionMatrix(List<Prediction> preds, Attribute classAtt) {
+    super(preds, classAtt);
+  }
+
+  /**
+   * Initializes the matrix.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_DirtyRows    = new BitSet(getNumClasses());
+    m_DirtyFrom    = new int[getNumClasses()];
+    m_DirtyTo      = new int[getNumClasses()];
+    m_ExtremaStale = true;
+  }
+
+  /**
+   * Returns a clone of ifself, using the current counts (and costs). The
+   * clone has no listeners and no dirty regions.
+   *
+   * @return		the clone
+   */
+  @Override
+  public synchronized ObservableConfusionMatrix clone() {
+    ObservableConfusionMatrix	result;
+
+    result                   = (ObservableConfusionMatrix) super.clone();
+    result.m_DirtyRows       = new BitSet(getNumClasses());
+    result.m_DirtyFrom       = new int[getNumClasses()];
+    result.m_DirtyTo         = new int[getNumClasses()];
+    result.m_ChangeListeners = null;
+
+    return result;
+  }
+
+  /**
+   * Marks the cell as dirty.
+   *
+   * @param actual	the row
+   * @param predicted	the column
+   * @return		true if the matrix was clean before
+   */
+  protected boolean markDirty(int actual, int predicted) {
+    boolean	result;
+
+    result = m_DirtyRows.isEmpty();
+    if (!m_DirtyRows.get(actual)) {
+      m_DirtyRows.set(actual);
+      m_DirtyFrom[actual] = predicted;
+      m_DirtyTo[actual]   = predicted;
+    }
+    else {
+      if (predicted < m_DirtyFrom[actual])
+	m_DirtyFrom[actual] = predicted;
+      if (predicted > m_DirtyTo[actual])
+	m_DirtyTo[actual] = predicted;
+    }
+
+    return result;
+  }
+
+  /**
+   * Updates the minimum/maximum with the changed value.
+   *
+   * @param oldValue	the previous value of the cell
+   * @param newValue	the new value of the cell
+   */
+  protected void updateExtrema(double oldValue, double newValue) {
+    if (m_ExtremaStale)
+      return;
+    // the previous extreme might be gone, requires full scan
+    // (minimum is never above 0 and maximum never below 0)
+    if ((oldValue == m_Max) && (newValue < oldValue) && (m_Max > 0))
+      m_ExtremaStale = true;
+    else if ((oldValue == m_Min) && (newValue > oldValue) && (m_Min < 0))
+      m_ExtremaStale = true;
+    else if (newValue > m_Max)
+      m_Max = newValue;
+    else if (newValue < m_Min)
+      m_Min = newValue;
+  }
+
+  /**
+   * Sets the count of the cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param value	the new count
+   */
+  public void setValue(int actual, int predicted, double value) {
+    boolean	wasClean;
+
+    synchronized(this) {
+      updateExtrema(m_Matrix[actual][predicted], value);
+      if (m_Totals != null)
+	m_Totals[actual] += value - m_Matrix[actual][predicted];
+      addCost(actual, predicted, value - m_Matrix[actual][predicted]);
+      m_Matrix[actual][predicted] = value;
+      wasClean = markDirty(actual, predicted);
+    }
+
+    if (wasClean)
+      notifyChangeListeners();
+  }
+
+  /**
+   * Adds the weight to the cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight to add
+   */
+  public void add(int actual, int predicted, double weight) {
+    boolean	wasClean;
+
+    synchronized(this) {
+      updateExtrema(m_Matrix[actual][predicted], m_Matrix[actual][predicted] + weight);
+      m_Matrix[actual][predicted] += weight;
+      if (m_Totals != null)
+	m_Totals[actual] += weight;
+      addCost(actual, predicted, weight);
+      wasClean = markDirty(actual, predicted);
+    }
+
+    if (wasClean)
+      notifyChangeListeners();
+  }
+
+  /**
+   * Adds the prediction to the matrix. The prediction does not get stored.
+   *
+   * @param pred	the prediction to add
+   */
+  public void add(Prediction pred) {
+    add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+  }
+
+  /**
+   * Sets all counts to zero.
+   */
+  public void reset() {
+    boolean	wasClean;
+    int		i;
+
+    synchronized(this) {
+      wasClean = m_DirtyRows.isEmpty();
+      for (i = 0; i < getNumClasses(); i++) {
+	Arrays.fill(m_Matrix[i], 0.0);
+	m_DirtyFrom[i] = 0;
+	m_DirtyTo[i]   = getNumClasses() - 1;
+      }
+      m_DirtyRows.set(0, getNumClasses());
+      invalidate();
+      m_Min          = 0;
+      m_Max          = 0;
+      m_ExtremaStale = false;
+    }
+
+    if (wasClean)
+      notifyChangeListeners();
+  }
+
+  /**
+   * Returns whether there are any modified cells.
+   *
+   * @return		true if modified cells are present
+   */
+  public synchronized boolean isDirty() {
+    return !m_DirtyRows.isEmpty();
+  }
+
+  /**
+   * Returns the regions modified since the last call and resets them.
+   *
+   * @return		the modified regions, null if none
+   */
+  public synchronized DirtyRegion drainDirty() {
+    DirtyRegion	result;
+    int		i;
+    int		row;
+
+    if (m_DirtyRows.isEmpty())
+      return null;
+
+    result          = new DirtyRegion();
+    result.rows     = new int[m_DirtyRows.cardinality()];
+    result.fromCols = new int[result.rows.length];
+    result.toCols   = new int[result.rows.length];
+    i               = 0;
+    for (row = m_DirtyRows.nextSetBit(0); row >= 0; row = m_DirtyRows.nextSetBit(row + 1)) {
+      result.rows[i]     = row;
+      result.fromCols[i] = m_DirtyFrom[row];
+      result.toCols[i]   = m_DirtyTo[row];
+      i++;
+    }
+    m_DirtyRows.clear();
+
+    return result;
+  }
+
+  /**
+   * Returns the totals for all class labels, calculates them if necessary.
+   * 
+   * @return		the totals
+   */
+  @Override
+  protected synchronized double[] getTotals() {
+    return super.getTotals();
+  }
+
+  /**
+   * Returns the cost totals for all class labels, evaluates them if
+   * necessary.
+   *
+   * @return		the cost totals, null if no costs available
+   */
+  @Override
+  protected synchronized double[] getCostTotals() {
+    return super.getCostTotals();
+  }
+
+  /**
+   * Returns the count of the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  @Override
+  public synchronized double getValue(int actual, int predicted) {
+    return super.getValue(actual, predicted);
+  }
+
+  /**
+   * Copies the counts of the specified row into the array, without
+   * interleaving with concurrent updates.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  @Override
+  public synchronized void getRow(int actual, double[] row) {
+    super.getRow(actual, row);
+  }
+
+  /**
+   * Copies the non-zero cells of the specified row into the arrays, without
+   * interleaving with concurrent updates.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param columns	the array for the predicted class labels, needs to
+   * 			have room for all classes
+   * @param values	the array for the counts, needs to have room for all
+   * 			classes
+   * @return		the number of non-zero cells
+   */
+  @Override
+  public synchronized int getNonZero(int actual, int[] columns, double[] values) {
+    return super.getNonZero(actual, columns, values);
+  }
+
+  /**
+   * Recalculates minimum and maximum if necessary.
+   */
+  protected void recalculateExtrema() {
+    if (m_ExtremaStale) {
+      m_Min          = super.getMin();
+      m_Max          = super.getMax();
+      m_ExtremaStale = false;
+    }
+  }
+
+  /**
+   * Returns the maximum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public synchronized double getMax() {
+    recalculateExtrema();
+    return m_Max;
+  }
+
+  /**
+   * Returns the minimum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public synchronized double getMin() {
+    recalculateExtrema();
+    return m_Min;
+  }
+
+  /**
+   * Scales the rows to 0-1, with 1 being the number of instances with that
+   * class label. Marks the whole matrix as dirty.
+   */
+  @Override
+  public void scaleRows() {
+    boolean	wasClean;
+    int		i;
+
+    synchronized(this) {
+      super.scaleRows();
+      wasClean = m_DirtyRows.isEmpty();
+      for (i = 0; i < getNumClasses(); i++) {
+	m_DirtyFrom[i] = 0;
+	m_DirtyTo[i]   = getNumClasses() - 1;
+      }
+      m_DirtyRows.set(0, getNumClasses());
+      m_ExtremaStale = true;
+    }
+
+    if (wasClean)
+      notifyChangeListeners();
+  }
+
+  /**
+   * Adds the listener to be notified when the matrix gets modified.
+   *
+   * @param l		the listener to add
+   */
+  public synchronized void addChangeListener(ChangeListener l) {
+    if (m_ChangeListeners == null)
+      m_ChangeListeners = new HashSet<ChangeListener>();
+    m_ChangeListeners.add(l);
+  }
+
+  /**
+   * Removes the listener.
+   *
+   * @param l		the listener to remove
+   */
+  public synchronized void removeChangeListener(ChangeListener l) {
+    if (m_ChangeListeners != null)
+      m_ChangeListeners.remove(l);
+  }
+
+  /**
+   * Notifies all listeners that the matrix has been modified.
+   */
+  protected void notifyChangeListeners() {
+    ChangeListener[]	listeners;
+    ChangeEvent		e;
+
+    synchronized(this) {
+      if (m_ChangeListeners == null)
+	return;
+      listeners = m_ChangeListeners.toArray(new ChangeListener[m_ChangeListeners.size()]);
+    }
+
+    e = new ChangeEvent(this);
+    for (ChangeListener l: listeners)
+      l.stateChanged(e);
+  }
+}
@@ -0,0 +1,875 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * OffHeapConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Dense confusion matrix that keeps the counts outside the heap, i.e., the
+ * garbage collector never has to deal with them. The counts are stored row
+ * by row in blocks of at most 2^{@link MappedConfusionMatrix#BLOCK_BITS}
+ * cells, either in direct buffers or in a file in the dense format of
+ * {@link ConfusionMatrixFile} that gets memory-mapped for reading and
+ * writing. Direct buffers are limited by the JVM option
+ * <code>-XX:MaxDirectMemorySize</code> (by default the maximum heap size),
+ * mapped files only by the address space.
+ * <p/>
+ * Once {@link #flush()} got called, a mapped file can be opened by other
+ * processes via {@link ConfusionMatrixFile#map(File)}. As the mapping is
+ * shared, counts added afterwards are visible to them as well, but not
+ * minimum, maximum and totals (which get updated by the next flush).
+ * <p/>
+ * {@link #clone()} shares the storage with the original; only when either
+ * of them modifies the counts, the storage gets copied (for mapped files
+ * into a temporary one). {@link #scaleRows()} only stores a divisor per
+ * row, i.e., doesn't modify the counts. {@link #getMatrix()} returns a
+ * dense copy on the heap, prefer {@link #getValue(int, int)} or
+ * {@link #getRow(int, double[])} (bulk copy of a row).
+ * <p/>
+ * Temporary files get deleted once the matrix and all its clones got
+ * closed (see {@link #close()}) or garbage collected, at the latest when
+ * the JVM exits.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OffHeapConfusionMatrix
+  extends ConfusionMatrix
+  implements Closeable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2274130624480716135L;
+
+  /**
+   * The counts outside the heap, shared by a matrix and its clones until
+   * one of them modifies the counts.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  protected static class Storage {
+
+    /** the counts (blocks of rows). */
+    public DoubleBuffer[] values;
+
+    /** the mapped file, null if direct buffers. */
+    public File file;
+
+    /** whether the file gets deleted once the storage is released. */
+    public boolean temporary;
+
+    /** the mapped header, labels and totals (mapped file only). */
+    public MappedByteBuffer header;
+
+    /** the mapped blocks (mapped file only). */
+    public MappedByteBuffer[] mapped;
+
+    /** the offset of the totals in the file. */
+    public long totalsOffset;
+
+    /** the number of matrices using the storage. */
+    protected volatile int m_References = 1;
+
+    /**
+     * Returns whether more than one matrix uses the storage.
+     *
+     * @return		true if shared
+     */
+    public boolean isShared() {
+      return (m_References > 1);
+    }
+
+    /**
+     * Registers another matrix using the storage.
+     */
+    public synchronized void acquire() {
+      m_References++;
+    }
+
+    /**
+     * Unregisters a matrix, disposes the storage if it was the last one.
+     */
+    public synchronized void release() {
+      m_References--;
+      if (m_References == 0)
+	dispose();
+    }
+
+    /**
+     * Exchanges the buffers (and file) with the other storage, the
+     * references stay as they are.
+     *
+     * @param other	the storage to exchange the buffers with
+     */
+    public void swap(Storage other) {
+      DoubleBuffer[]		swapValues;
+      File			swapFile;
+      boolean			swapTemporary;
+      MappedByteBuffer		swapHeader;
+      MappedByteBuffer[]	swapMapped;
+      long			swapTotalsOffset;
+
+      swapValues         = values;
+      swapFile           = file;
+      swapTemporary      = temporary;
+      swapHeader         = header;
+      swapMapped         = mapped;
+      swapTotalsOffset   = totalsOffset;
+      values             = other.values;
+      file               = other.file;
+      temporary          = other.temporary;
+      header             = other.header;
+      mapped             = other.mapped;
+      totalsOffset       = other.totalsOffset;
+      other.values       = swapValues;
+      other.file         = swapFile;
+      other.temporary    = swapTemporary;
+      other.header       = swapHeader;
+      other.mapped       = swapMapped;
+      other.totalsOffset = swapTotalsOffset;
+    }
+
+    /**
+     * Drops the buffers and deletes a temporary file. The mappings only get
+     * released by the garbage collector, on platforms that don't allow
+     * deleting mapped files the file gets deleted on exit instead.
+     */
+    protected void dispose() {
+      values = null;
+      header = null;
+      mapped = null;
+      if (temporary && (file != null))
+	file.delete();
+      file = null;
+    }
+
+    /**
+     * Deletes a temporary file if the matrices using the storage didn't get
+     * closed.
+     *
+     * @throws Throwable	if finalizing fails
+     */
+    @Override
+    protected void finalize() throws Throwable {
+      try {
+	if (m_References > 0)
+	  dispose();
+      }
+      finally {
+	super.finalize();
+      }
+    }
+  }
+
+  /** the number of classes. */
+  protected int m_NumClasses;
+
+  /** the number of rows per block. */
+  protected int m_RowsPerBlock;
+
+  /** the divisors per row, null if not scaled. */
+  protected double[] m_Divisors;
+
+  /** the storage of the counts, null if closed. */
+  protected transient Storage m_Storage;
+
+  /** whether this matrix created the storage (and not a clone). */
+  protected transient boolean m_Owner;
+
+  /**
+   * Initializes the matrix, using direct buffers.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   */
+  public OffHeapConfusionMatrix(List<Prediction> preds, Attribute classAtt) {
+    this(preds, classAtt, null, null);
+  }
+
+  /**
+   * Initializes the matrix, using the (newly created) file for the counts.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param file	the file to create and map (gets overwritten)
+   * @throws IOException	if creating or mapping the file fails
+   */
+  public OffHeapConfusionMatrix(List<Prediction> preds, Attribute classAtt, File file) throws IOException {
+    this(preds, classAtt, null, null, file, false);
+  }
+
+  /**
+   * Initializes the matrix and the cost totals, using direct buffers and
+   * the labels that were derived from the class attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   */
+  protected OffHeapConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs) {
+    super(preds, classAtt, labels, costs);
+  }
+
+  /**
+   * Initializes the matrix and the cost totals, using the (newly created)
+   * file for the counts and the labels that were derived from the class
+   * attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   * @param file	the file to create and map (gets overwritten)
+   * @param temporary	whether to delete the file once the matrix (and its
+   * 			clones) got closed
+   * @throws IOException	if creating or mapping the file fails
+   */
+  protected OffHeapConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs, File file, boolean temporary) throws IOException {
+    super();
+
+    int		i;
+
+    if (labels == null) {
+      labels = new String[classAtt.numValues()];
+      for (i = 0; i < classAtt.numValues(); i++)
+	labels[i] = classAtt.value(i);
+    }
+    m_Predictions    = preds;
+    m_ClassAttribute = classAtt;
+    m_Labels         = labels;
+    m_Costs          = costs;
+    initBlocks(m_Labels.length);
+    m_Storage = newMappedStorage(file, temporary);
+    m_Owner   = true;
+    initialize();
+    m_Predictions = null;
+  }
+
+  /**
+   * Builds the matrix in a temporary file. Uses direct buffers if the file
+   * cannot be created.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   * @return		the matrix
+   */
+  protected static OffHeapConfusionMatrix newTemporary(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs) {
+    try {
+      return new OffHeapConfusionMatrix(preds, classAtt, labels, costs, createTempFile(), true);
+    }
+    catch (IOException e) {
+      System.err.println("Failed to map temporary file, using direct buffers:");
+      e.printStackTrace();
+      return new OffHeapConfusionMatrix(preds, classAtt, labels, costs);
+    }
+  }
+
+  /**
+   * Creates a temporary file that gets deleted on exit (unless deleted
+   * earlier).
+   *
+   * @return		the file
+   * @throws IOException	if creating fails
+   */
+  protected static File createTempFile() throws IOException {
+    File	result;
+
+    result = File.createTempFile("confusionmatrix", ConfusionMatrixFile.EXTENSION);
+    result.deleteOnExit();
+
+    return result;
+  }
+
+  /**
+   * Sets up the number of rows per block for the number of classes.
+   *
+   * @param numClasses	the number of classes
+   */
+  protected void initBlocks(int numClasses) {
+    m_NumClasses   = numClasses;
+    m_RowsPerBlock = (int) Math.max(1, (1L << MappedConfusionMatrix.BLOCK_BITS) / Math.max(1, numClasses));
+  }
+
+  /**
+   * Returns the number of blocks.
+   *
+   * @return		the number of blocks
+   */
+  protected int getNumBlocks() {
+    return (m_NumClasses + m_RowsPerBlock - 1) / m_RowsPerBlock;
+  }
+
+  /**
+   * Returns the number of rows in the block.
+   *
+   * @param block	the 0-based block
+   * @return		the number of rows
+   */
+  protected int getNumRows(int block) {
+    return Math.min(m_RowsPerBlock, m_NumClasses - block * m_RowsPerBlock);
+  }
+
+  /**
+   * Returns the number of bytes of the block.
+   *
+   * @param block	the 0-based block
+   * @return		the number of bytes
+   */
+  protected long getNumBytes(int block) {
+    return (long) getNumRows(block) * (long) m_NumClasses * 8L;
+  }
+
+  /**
+   * Creates the file and maps header and counts.
+   *
+   * @param file	the file to create (gets overwritten)
+   * @param temporary	whether the file gets deleted once the storage is
+   * 			released
+   * @return		the storage
+   * @throws IOException	if creating or mapping fails
+   */
+  protected Storage newMappedStorage(File file, boolean temporary) throws IOException {
+    Storage		result;
+    RandomAccessFile	raf;
+    FileChannel		channel;
+    long		offset;
+    int			i;
+
+    result              = new Storage();
+    result.file         = file;
+    result.temporary    = temporary;
+    result.totalsOffset = ConfusionMatrixFile.createDense(file, m_ClassAttribute.name(), m_Labels);
+    result.values       = new DoubleBuffer[getNumBlocks()];
+    result.mapped       = new MappedByteBuffer[result.values.length];
+    raf                 = new RandomAccessFile(file, "rw");
+    try {
+      channel       = raf.getChannel();
+      offset        = result.totalsOffset + m_NumClasses * 8L;
+      result.header = channel.map(MapMode.READ_WRITE, 0, offset);
+      result.header.order(ByteOrder.LITTLE_ENDIAN);
+      for (i = 0; i < result.values.length; i++) {
+	result.mapped[i] = channel.map(MapMode.READ_WRITE, offset, getNumBytes(i));
+	result.mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+	result.values[i] = result.mapped[i].asDoubleBuffer();
+	offset          += getNumBytes(i);
+      }
+    }
+    finally {
+      // mappings stay valid after closing the channel
+      raf.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Allocates direct buffers for the counts.
+   *
+   * @return		the storage
+   * @throws IllegalStateException	if a block exceeds the size of a
+   * 					direct buffer
+   */
+  protected Storage newDirectStorage() {
+    Storage	result;
+    long	bytes;
+    int		i;
+
+    result        = new Storage();
+    result.values = new DoubleBuffer[getNumBlocks()];
+    for (i = 0; i < result.values.length; i++) {
+      bytes = getNumBytes(i);
+      if (bytes > Integer.MAX_VALUE)
+	throw new IllegalStateException(
+	    "Row of " + m_NumClasses + " classes exceeds maximum size of direct buffer (" + bytes + " > " + Integer.MAX_VALUE + " bytes)!");
+      result.values[i] = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    return result;
+  }
+
+  /**
+   * Copies the counts into new storage of the same kind, i.e., mapped
+   * files get copied into temporary files. Falls back to direct buffers if
+   * the temporary file cannot be mapped.
+   *
+   * @param storage	the storage to copy
+   * @return		the copy
+   */
+  protected Storage copyStorage(Storage storage) {
+    Storage	result;
+    int		i;
+
+    result = null;
+    if (storage.file != null) {
+      try {
+	result = newMappedStorage(createTempFile(), true);
+      }
+      catch (IOException e) {
+	System.err.println("Failed to map temporary file for copy, using direct buffers:");
+	e.printStackTrace();
+      }
+    }
+    if (result == null)
+      result = newDirectStorage();
+    for (i = 0; i < storage.values.length; i++)
+      result.values[i].put(storage.values[i].duplicate()).rewind();
+
+    return result;
+  }
+
+  /**
+   * Ensures that the storage isn't shared before modifying the counts. A
+   * clone gets its own copy, while the matrix that created the storage
+   * (e.g., in a file supplied by the user) keeps it and hands the copy to
+   * its clones.
+   */
+  protected void prepareWrite() {
+    Storage	shared;
+    Storage	copy;
+
+    if (!m_Storage.isShared())
+      return;
+
+    shared = m_Storage;
+    synchronized(shared) {
+      if (!shared.isShared())
+	return;
+      copy = copyStorage(shared);
+      // the clones continue with the copy
+      if (m_Owner)
+	shared.swap(copy);
+      shared.release();
+      m_Storage = copy;
+      m_Owner   = true;
+    }
+  }
+
+  /**
+   * Allocates the direct buffers for the counts, unless mapped already.
+   */
+  @Override
+  protected void allocate() {
+    if (m_Storage != null)
+      return;
+
+    initBlocks(m_Labels.length);
+    m_Storage = newDirectStorage();
+    m_Owner   = true;
+  }
+
+  /**
+   * Adds the weights of the predictions to the counts.
+   *
+   * @param preds	the predictions to add
+   */
+  @Override
+  protected void accumulate(List<Prediction> preds) {
+    DoubleBuffer[]	blocks;
+    DoubleBuffer	values;
+    int			actual;
+    int			index;
+
+    prepareWrite();
+    if (m_CostTotals != null) {
+      for (Prediction pred: preds)
+	add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+    }
+    else {
+      blocks = m_Storage.values;
+      for (Prediction pred: preds) {
+	actual = (int) pred.actual();
+	values = blocks[actual / m_RowsPerBlock];
+	index  = (actual % m_RowsPerBlock) * m_NumClasses + (int) pred.predicted();
+	values.put(index, values.get(index) + pred.weight());
+      }
+    }
+  }
+
+  /**
+   * Adds the weight to the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight to add
+   */
+  @Override
+  protected void add(int actual, int predicted, double weight) {
+    DoubleBuffer	values;
+    int			index;
+
+    prepareWrite();
+    values = m_Storage.values[actual / m_RowsPerBlock];
+    index  = (actual % m_RowsPerBlock) * m_NumClasses + predicted;
+    values.put(index, values.get(index) + weight);
+    addCost(actual, predicted, weight);
+  }
+
+  /**
+   * Returns the mapped file.
+   *
+   * @return		the file, null if using direct buffers
+   */
+  public File getFile() {
+    return m_Storage.file;
+  }
+
+  /**
+   * Returns whether the counts are kept in a memory-mapped file.
+   *
+   * @return		true if mapped
+   */
+  public boolean isMapped() {
+    return (m_Storage.file != null);
+  }
+
+  /**
+   * Returns whether the rows have been scaled.
+   *
+   * @return		true if scaled
+   * @see		#scaleRows()
+   */
+  public boolean isScaled() {
+    return (m_Divisors != null);
+  }
+
+  /**
+   * Writes minimum, maximum and totals of the stored (i.e., unscaled)
+   * counts to the header of the mapped file and forces all changes to the
+   * storage device, making the file available to
+   * {@link ConfusionMatrixFile#map(File)}. Does nothing for direct buffers.
+   *
+   * @throws IOException	if updating the file fails
+   */
+  public void flush() throws IOException {
+    DoubleBuffer	values;
+    double		min;
+    double		max;
+    double		sum;
+    double		value;
+    int			offset;
+    int			i;
+    int			n;
+
+    if (m_Storage.header == null)
+      return;
+
+    min = 0;
+    max = 0;
+    for (i = 0; i < m_NumClasses; i++) {
+      values = m_Storage.values[i / m_RowsPerBlock];
+      offset = (i % m_RowsPerBlock) * m_NumClasses;
+      sum    = 0;
+      for (n = 0; n < m_NumClasses; n++) {
+	value = values.get(offset + n);
+	sum  += value;
+	min   = Math.min(min, value);
+	max   = Math.max(max, value);
+      }
+      m_Storage.header.putDouble((int) m_Storage.totalsOffset + i * 8, sum);
+    }
+    m_Storage.header.putDouble(ConfusionMatrixFile.OFFSET_MIN, min);
+    m_Storage.header.putDouble(ConfusionMatrixFile.OFFSET_MAX, max);
+    m_Storage.header.force();
+    for (i = 0; i < m_Storage.mapped.length; i++)
+      m_Storage.mapped[i].force();
+  }
+
+  /**
+   * Releases the storage; a temporary file gets deleted once all matrices
+   * sharing it got closed. The matrix cannot be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (m_Storage == null)
+      return;
+    m_Storage.release();
+    m_Storage = null;
+  }
+
+  /**
+   * Returns a clone of itself, sharing the storage until either of them
+   * modifies the counts (see {@link #prepareWrite()}).
+   *
+   * @return		the clone
+   */
+  @Override
+  public ConfusionMatrix clone() {
+    OffHeapConfusionMatrix	result;
+
+    result            = (OffHeapConfusionMatrix) super.clone();
+    result.m_Divisors = (m_Divisors == null) ? null : m_Divisors.clone();
+    result.m_Owner    = false;
+    m_Storage.acquire();
+
+    return result;
+  }
+
+  /**
+   * Returns a dense copy of the counts on the heap. Requires 8 bytes per
+   * cell, i.e., defeats the purpose of keeping the counts outside the heap;
+   * prefer {@link #getValue(int, int)} or {@link #getRow(int, double[])}.
+   *
+   * @return		the copy
+   */
+  @Override
+  public double[][] getMatrix() {
+    return toDense();
+  }
+
+  /**
+   * Returns the count of the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  @Override
+  public double getValue(int actual, int predicted) {
+    double	result;
+
+    result = m_Storage.values[actual / m_RowsPerBlock].get((actual % m_RowsPerBlock) * m_NumClasses + predicted);
+    if (m_Divisors != null)
+      result /= m_Divisors[actual];
+
+    return result;
+  }
+
+  /**
+   * Copies the stored (i.e., unscaled) counts of the specified row into the
+   * array (bulk copy).
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  protected void getStoredRow(int actual, double[] row) {
+    DoubleBuffer	values;
+
+    values = m_Storage.values[actual / m_RowsPerBlock].duplicate();
+    values.position((actual % m_RowsPerBlock) * m_NumClasses);
+    values.get(row, 0, m_NumClasses);
+  }
+
+  /**
+   * Copies the counts of the specified row into the array (bulk copy).
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  @Override
+  public void getRow(int actual, double[] row) {
+    int		n;
+
+    getStoredRow(actual, row);
+    if (m_Divisors != null) {
+      for (n = 0; n < m_NumClasses; n++)
+	row[n] /= m_Divisors[actual];
+    }
+  }
+
+  /**
+   * Replaces the stored counts of the specified row (bulk copy).
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the counts
+   */
+  protected void setRow(int actual, double[] row) {
+    DoubleBuffer	values;
+
+    prepareWrite();
+    values = m_Storage.values[actual / m_RowsPerBlock].duplicate();
+    values.position((actual % m_RowsPerBlock) * m_NumClasses);
+    values.put(row, 0, m_NumClasses);
+  }
+
+  /**
+   * Returns the number of classes.
+   *
+   * @return		the number of classes
+   */
+  @Override
+  public int getNumClasses() {
+    return m_NumClasses;
+  }
+
+  /**
+   * Returns the totals for all class labels, calculates them if necessary.
+   *
+   * @return		the totals
+   */
+  @Override
+  protected double[] getTotals() {
+    double[]		result;
+    DoubleBuffer	values;
+    double		sum;
+    int			offset;
+    int			i;
+    int			n;
+
+    result = m_Totals;
+    if (result == null) {
+      result = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++) {
+	values = m_Storage.values[i / m_RowsPerBlock];
+	offset = (i % m_RowsPerBlock) * m_NumClasses;
+	sum    = 0;
+	for (n = 0; n < m_NumClasses; n++)
+	  sum += values.get(offset + n);
+	result[i] = (m_Divisors == null) ? sum : sum / m_Divisors[i];
+      }
+      m_Totals = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines the minimum or maximum of the (scaled) counts.
+   *
+   * @param max		true for the maximum, false for the minimum
+   * @return		the extremum
+   */
+  protected double getExtremum(boolean max) {
+    DoubleBuffer	values;
+    double		result;
+    double		value;
+    int			offset;
+    int			i;
+    int			n;
+
+    result = 0;
+    for (i = 0; i < m_NumClasses; i++) {
+      values = m_Storage.values[i / m_RowsPerBlock];
+      offset = (i % m_RowsPerBlock) * m_NumClasses;
+      for (n = 0; n < m_NumClasses; n++) {
+	value = values.get(offset + n);
+	if (m_Divisors != null)
+	  value /= m_Divisors[i];
+	result = max ? Math.max(result, value) : Math.min(result, value);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the maximum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMax() {
+    return getExtremum(true);
+  }
+
+  /**
+   * Returns the minimum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMin() {
+    return getExtremum(false);
+  }
+
+  /**
+   * Scales the rows to 0-1, with 1 being the number of instances with that
+   * class label. Only stores a divisor per row, i.e., the (possibly
+   * shared) storage doesn't get modified.
+   */
+  @Override
+  public void scaleRows() {
+    double[]	totals;
+    int		i;
+
+    totals = getTotals();
+    if (m_Divisors == null) {
+      m_Divisors = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++)
+	m_Divisors[i] = 1.0;
+    }
+    for (i = 0; i < m_NumClasses; i++) {
+      if (totals[i] > 0)
+	m_Divisors[i] *= totals[i];
+    }
+
+    invalidate();
+  }
+
+  /**
+   * Writes the stored counts row by row, as the buffers can't be
+   * serialized (the divisors get serialized as well).
+   *
+   * @param out		the stream to write to
+   * @throws IOException	if writing fails
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    double[]	row;
+    int		i;
+    int		n;
+
+    out.defaultWriteObject();
+    row = new double[m_NumClasses];
+    for (i = 0; i < m_NumClasses; i++) {
+      getStoredRow(i, row);
+      for (n = 0; n < m_NumClasses; n++)
+	out.writeDouble(row[n]);
+    }
+  }
+
+  /**
+   * Reads the counts into direct buffers.
+   *
+   * @param in		the stream to read from
+   * @throws IOException	if reading fails
+   * @throws ClassNotFoundException	if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    double[]	row;
+    int		i;
+    int		n;
+
+    in.defaultReadObject();
+    allocate();
+    row = new double[m_NumClasses];
+    for (i = 0; i < m_NumClasses; i++) {
+      for (n = 0; n < m_NumClasses; n++)
+	row[n] = in.readDouble();
+      setRow(i, row);
+    }
+  }
+}
@@ -0,0 +1,654 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SliceVisualization.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.gui.ComponentHelper;
+import weka.gui.ExtensionFileFilter;
+
+/**
+ * Lists the slices of the predictions (see {@link ConfusionMatrixSlices}),
+ * sorted by accuracy drop, i.e., the slices where the model performs worst
+ * come first. For the selected slice, its matrix and the normalized
+ * difference to the matrix over all slices get displayed as heatmaps.
+ * <p/>
+ * The Explorer only supplies the predictions, not the instances they were
+ * made for. The dataset defining the slices (the test set, in the same
+ * order as the predictions) gets loaded when the visualization is selected
+ * for a result, which also selects the nominal or string attribute to slice
+ * by; the dataset is only used for that display. Without slices set via
+ * {@link #setSlices(ConfusionMatrixSlices)}, exporting is not available.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SliceVisualization
+  extends AbstractConfusionMatrixVisualization {
+
+  /**
+   * The results of {@link SliceVisualization#precompute(ConfusionMatrix)}.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Prepared {
+
+    /** the prepared slices. */
+    protected ConfusionMatrixSlices m_Slices;
+
+    /** the indices of the slices, sorted by accuracy drop. */
+    protected int[] m_Sorted;
+
+    /**
+     * Initializes the container.
+     *
+     * @param slices	the prepared slices
+     * @param sorted	the indices of the slices, sorted by accuracy drop
+     */
+    public Prepared(ConfusionMatrixSlices slices, int[] sorted) {
+      super();
+      m_Slices = slices;
+      m_Sorted = sorted;
+    }
+
+    /**
+     * Returns the prepared slices.
+     *
+     * @return		the slices
+     */
+    public ConfusionMatrixSlices getSlices() {
+      return m_Slices;
+    }
+
+    /**
+     * Returns the indices of the slices, sorted by accuracy drop.
+     *
+     * @return		the indices
+     */
+    public int[] getSorted() {
+      return m_Sorted;
+    }
+  }
+
+  /** for serialization. */
+  private static final long serialVersionUID = -6204771625130583614L;
+
+  /** the column names of the summary. */
+  public final static String[] COLUMNS = new String[]{"Slice", "Total", "Correct", "Accuracy", "Drop"};
+
+  /** the dataset defining the slices, loaded in the Explorer. */
+  protected transient Instances m_Data;
+
+  /** the 0-based index of the attribute to slice by. */
+  protected int m_Attribute;
+
+  /** the slices (takes precedence over the loaded dataset). */
+  protected ConfusionMatrixSlices m_Slices;
+
+  /** the predictions to slice, only set until the slices are computed. */
+  protected transient List<Prediction> m_Predictions;
+
+  /** the heatmap of the selected slice. */
+  protected HeatmapPanel m_Heatmap;
+
+  /** the heatmap of the difference of the selected slice. */
+  protected HeatmapPanel m_HeatmapDiff;
+
+  /**
+   * Returns the text for the menu item.
+   *
+   * @return		the text
+   */
+  @Override
+  public String getMenuItemText() {
+    return "Slices";
+  }
+
+  /**
+   * Returns the initial size of the frame.
+   *
+   * @return		the dimensions
+   */
+  @Override
+  protected Dimension getFrameDimension() {
+    return new Dimension(1000, 600);
+  }
+
+  /**
+   * Sets the slices to display/export.
+   *
+   * @param value	the slices, null to use the dataset loaded in the
+   * 			Explorer
+   */
+  public void setSlices(ConfusionMatrixSlices value) {
+    m_Slices = value;
+  }
+
+  /**
+   * Returns the slices to display/export.
+   *
+   * @return		the slices, null if none set
+   */
+  public ConfusionMatrixSlices getSlices() {
+    return m_Slices;
+  }
+
+  /**
+   * Returns the "save as" menu item.
+   *
+   * @param frame	the frame
+   * @return		the generate menu item, null if not available
+   */
+  @Override
+  protected JMenuItem getSaveAsMenuItem(final JFrame frame) {
+    JMenuItem	result;
+
+    result = new JMenuItem("Save as...");
+    result.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	JFileChooser fileChooser;
+	String msg;
+	if (m_Slices == null)
+	  return;
+	fileChooser = new JFileChooser();
+	fileChooser.setFileFilter(new ExtensionFileFilter("csv", "CSV files"));
+	if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION)
+	  return;
+	msg = export(m_Slices, fileChooser.getSelectedFile());
+	if (msg != null)
+	  JOptionPane.showMessageDialog(frame, msg);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Returns the "print" menu item.
+   *
+   * @param frame	the frame
+   * @return		the generate menu item, null if not available
+   */
+  @Override
+  protected JMenuItem getPrintMenuItem(JFrame frame) {
+    return null;
+  }
+
+  /**
+   * Computes the slices of the predictions using the dataset loaded in
+   * the Explorer.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @return		the slices
+   * @throws Exception	if slicing fails
+   */
+  protected ConfusionMatrixSlices slice(List<Prediction> preds, Attribute classAtt) throws Exception {
+    ConfusionMatrixSlices	result;
+
+    if (m_Data == null)
+      throw new IllegalStateException("No slicing dataset loaded!");
+
+    result = new ConfusionMatrixSlices(classAtt);
+    result.execute(preds, m_Data, m_Attribute);
+
+    return result;
+  }
+
+  /**
+   * Computes and sorts the slices in the background. Releases the
+   * predictions and the dataset afterwards, the slices only keep the counts.
+   *
+   * @param matrix	the matrix that will get visualized
+   * @return		the {@link Prepared} container, null if no
+   * 			predictions to slice
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix) {
+    ConfusionMatrixSlices	slices;
+
+    if ((m_Slices != null) || (m_Predictions == null))
+      return null;
+    try {
+      slices = slice(m_Predictions, matrix.getClassAttribute());
+      return new Prepared(slices, slices.getSortedByDrop());
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Failed to compute slices!", e);
+    }
+    finally {
+      m_Predictions = null;
+      m_Data        = null;
+    }
+  }
+
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   *
+   * @return		the extension, null if no slices available
+   */
+  @Override
+  public String getExportExtension() {
+    if (m_Slices == null)
+      return null;
+    return "csv";
+  }
+
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires,
+   * i.e., none, the summary of the slices gets streamed.
+   *
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return 0;
+  }
+
+  /**
+   * Exports the summary of the slices set via
+   * {@link #setSlices(ConfusionMatrixSlices)} as CSV.
+   *
+   * @param matrix	ignored
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String export(ConfusionMatrix matrix, File file) {
+    if (m_Slices == null)
+      return "No slices available!";
+    return export(m_Slices, file);
+  }
+
+  /**
+   * Writes the summary of the slices, sorted by accuracy drop.
+   *
+   * @param slices	the slices to write
+   * @param writer	the writer to write to
+   * @throws Exception	if writing fails
+   */
+  protected void write(ConfusionMatrixSlices slices, Writer writer) throws Exception {
+    NumberFormatter	formatter;
+    int			i;
+
+    formatter = new NumberFormatter();
+    for (i = 0; i < COLUMNS.length; i++) {
+      if (i > 0)
+	writer.write(',');
+      writer.write(COLUMNS[i]);
+    }
+    writer.write('\n');
+
+    for (int slice: slices.getSortedByDrop()) {
+      writer.write(Utils.quote(slices.getSlice(slice)));
+      writer.write(',');
+      formatter.appendPlain(writer, slices.getTotal(slice));
+      writer.write(',');
+      formatter.appendPlain(writer, slices.getCorrect(slice));
+      writer.write(',');
+      if (!Double.isNaN(slices.getAccuracy(slice)))
+	formatter.appendPlain(writer, slices.getAccuracy(slice));
+      writer.write(',');
+      if (!Double.isNaN(slices.getAccuracyDrop(slice)))
+	formatter.appendPlain(writer, slices.getAccuracyDrop(slice));
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Exports the summary of the slices as CSV, sorted by accuracy drop.
+   *
+   * @param slices	the slices to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  public String export(ConfusionMatrixSlices slices, File file) {
+    String		result;
+    FileOutputStream	stream;
+    Writer		writer;
+
+    result = null;
+    stream = null;
+    writer = null;
+    try {
+      stream = new FileOutputStream(file);
+      writer = new BufferedWriter(Channels.newWriter(stream.getChannel(), "UTF-8"), CSVExporter.BUFFER_SIZE);
+      write(slices, writer);
+      writer.flush();
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write slices to " + file + "!");
+      e.printStackTrace();
+      result = "Failed to write slices to " + file + ": " + e;
+    }
+    finally {
+      try {
+	if (writer != null)
+	  writer.close();
+	else if (stream != null)
+	  stream.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the visualization of the slices of the predictions.
+   *
+   * @param matrix	the matrix over all predictions
+   * @return		the panel with the visualization
+   */
+  @Override
+  public JPanel generate(ConfusionMatrix matrix) {
+    JPanel	result;
+
+    m_Predictions = null;
+    m_Data        = null;
+
+    if (m_Slices == null) {
+      result = new JPanel(new BorderLayout());
+      result.add(new JLabel("No slices available!"), BorderLayout.NORTH);
+      return result;
+    }
+
+    return generate(m_Slices, m_Slices.getSortedByDrop());
+  }
+
+  /**
+   * Generates the visualization of the prepared slices.
+   *
+   * @param matrix	the matrix over all predictions
+   * @param precomputed	the {@link Prepared} container, null if not available
+   * @return		the panel with the visualization
+   */
+  @Override
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    Prepared	prepared;
+
+    if (precomputed == null)
+      return generate(matrix);
+
+    prepared = (Prepared) precomputed;
+
+    return generate(prepared.getSlices(), prepared.getSorted());
+  }
+
+  /**
+   * Displays the matrix and the difference of the slice.
+   *
+   * @param slices	the slices
+   * @param slice	the 0-based index of the slice
+   * @param tabbed	the pane to add the heatmaps to
+   */
+  protected void showSlice(ConfusionMatrixSlices slices, int slice, JTabbedPane tabbed) {
+    ConfusionMatrix	matrix;
+    int			index;
+
+    index = tabbed.getSelectedIndex();
+    tabbed.removeAll();
+    matrix        = slices.getMatrix(slice);
+    m_Heatmap     = new HeatmapPanel(matrix);
+    m_HeatmapDiff = new HeatmapPanel(DiffConfusionMatrix.create(matrix, slices.getMatrix(), true));
+    tabbed.addTab("Slice", createScrollPane(m_Heatmap));
+    tabbed.addTab("Diff to overall", createScrollPane(m_HeatmapDiff));
+    if (index > -1)
+      tabbed.setSelectedIndex(index);
+  }
+
+  /**
+   * Generates the visualization of the slices.
+   *
+   * @param slices	the slices to visualize
+   * @return		the panel with the visualization
+   */
+  public JPanel generate(ConfusionMatrixSlices slices) {
+    return generate(slices, slices.getSortedByDrop());
+  }
+
+  /**
+   * Generates the visualization of the slices.
+   *
+   * @param slices	the slices to visualize
+   * @param sorted	the indices of the slices, sorted by accuracy drop
+   * @return		the panel with the visualization
+   */
+  protected JPanel generate(final ConfusionMatrixSlices slices, final int[] sorted) {
+    JPanel		result;
+    JSplitPane		split;
+    final JTable	table;
+    final JTabbedPane	tabbed;
+
+    m_Slices = slices;
+    table    = new JTable(new AbstractTableModel() {
+      private static final long serialVersionUID = 4517322838474215395L;
+      @Override
+      public int getRowCount() {
+	return sorted.length;
+      }
+      @Override
+      public int getColumnCount() {
+	return COLUMNS.length;
+      }
+      @Override
+      public String getColumnName(int column) {
+	return COLUMNS[column];
+      }
+      @Override
+      public Class<?> getColumnClass(int column) {
+	return (column == 0) ? String.class : Double.class;
+      }
+      @Override
+      public Object getValueAt(int row, int column) {
+	switch (column) {
+	  case 0:
+	    return slices.getSlice(sorted[row]);
+	  case 1:
+	    return slices.getTotal(sorted[row]);
+	  case 2:
+	    return slices.getCorrect(sorted[row]);
+	  case 3:
+	    return slices.getAccuracy(sorted[row]);
+	  case 4:
+	    return slices.getAccuracyDrop(sorted[row]);
+	  default:
+	    return null;
+	}
+      }
+    });
+    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+    tabbed = new JTabbedPane();
+    table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+      @Override
+      public void valueChanged(ListSelectionEvent e) {
+	if (e.getValueIsAdjusting() || (table.getSelectedRow() < 0))
+	  return;
+	showSlice(slices, sorted[table.getSelectedRow()], tabbed);
+      }
+    });
+    if (sorted.length > 0)
+      table.setRowSelectionInterval(0, 0);
+
+    split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
+    split.setLeftComponent(createScrollPane(table));
+    split.setRightComponent(tabbed);
+    split.setDividerLocation(400);
+    split.setResizeWeight(0.4);
+
+    result = new JPanel(new BorderLayout());
+    result.add(split, BorderLayout.CENTER);
+    result.add(new JLabel(
+	"Accuracy: " + Utils.doubleToString(slices.getAccuracy(), 4)
+	+ ", predictions without slice: " + slices.getNumSkipped()), BorderLayout.SOUTH);
+
+    return result;
+  }
+
+  /**
+   * Opens a frame for the visualization of the slices.
+   *
+   * @param slices 	the slices to display
+   * @param title 	the title of the frame
+   */
+  public void display(ConfusionMatrixSlices slices, String title) {
+    JFrame	jf;
+
+    jf = new JFrame(title + " - " + getMenuItemText());
+    jf.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    jf.setSize(getFrameDimension());
+    jf.setIconImage(ComponentHelper.getImage("weka/gui", "confusionmatrix_logo.png"));
+    jf.getContentPane().setLayout(new BorderLayout());
+    jf.getContentPane().add(generate(slices), BorderLayout.CENTER);
+    jf.setJMenuBar(getMenuBar(jf));
+    jf.setLocationRelativeTo(null);
+    jf.setVisible(true);
+  }
+
+  /**
+   * Lets the user load the dataset defining the slices and select the
+   * attribute to slice by.
+   *
+   * @param numPreds	the number of predictions the dataset must match
+   * @return		true if loaded and selected
+   */
+  protected boolean loadData(int numPreds) {
+    JFileChooser	fileChooser;
+    int			retVal;
+    Instances		data;
+    List<String>	names;
+    List<Integer>	indices;
+    Object		selected;
+    int			i;
+
+    fileChooser = new JFileChooser();
+    retVal = fileChooser.showOpenDialog(null);
+    if (retVal != JFileChooser.APPROVE_OPTION)
+      return false;
+
+    try {
+      data = DataSource.read(fileChooser.getSelectedFile().getAbsolutePath());
+    }
+    catch (Exception e) {
+      System.err.println("Failed to load slicing dataset: " + fileChooser.getSelectedFile());
+      e.printStackTrace();
+      JOptionPane.showMessageDialog(null, "Failed to load slicing dataset " + fileChooser.getSelectedFile() + ":\n" + e);
+      return false;
+    }
+    if (data.numInstances() != numPreds) {
+      JOptionPane.showMessageDialog(null,
+	  "Slicing dataset has " + data.numInstances() + " instances, but there are " + numPreds + " predictions: "
+	  + fileChooser.getSelectedFile());
+      return false;
+    }
+
+    names   = new ArrayList<String>();
+    indices = new ArrayList<Integer>();
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (data.attribute(i).isNominal() || data.attribute(i).isString()) {
+	names.add(data.attribute(i).name());
+	indices.add(i);
+      }
+    }
+    if (names.size() == 0) {
+      JOptionPane.showMessageDialog(null, "Slicing dataset has no nominal or string attributes: " + fileChooser.getSelectedFile());
+      return false;
+    }
+
+    selected = JOptionPane.showInputDialog(
+	null, "Attribute to slice by", "Slices", JOptionPane.QUESTION_MESSAGE,
+	null, names.toArray(), names.get(0));
+    if (selected == null)
+      return false;
+
+    m_Data      = data;
+    m_Attribute = indices.get(names.indexOf(selected));
+
+    return true;
+  }
+
+  /**
+   * Returns a menu item that loads the dataset defining the slices and then
+   * displays the slices of the result.
+   *
+   * @param preds 	predictions
+   * @param classAtt 	class attribute
+   * @return 		the menu item, null if class is not nominal
+   */
+  @Override
+  public JMenuItem getVisualizeMenuItem(final ArrayList<Prediction> preds, final Attribute classAtt) {
+    JMenuItem	result;
+
+    if (!classAtt.isNominal()) {
+      System.err.println("Class is not nominal: " + classAtt.name());
+      return null;
+    }
+
+    result = new JMenuItem(getMenuItemText() + "...");
+    result.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	if (!loadData(preds.size()))
+	  return;
+	m_Slices      = null;
+	m_Predictions = preds;
+	display(preds, classAtt);
+      }
+    });
+
+    return result;
+  }
+}
@@ -0,0 +1,521 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SparseConfusionMatrix.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.Arrays;
+import java.util.List;
+
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Confusion matrix that only stores the non-zero cells, i.e., its size is
+ * bounded by the number of predictions rather than the square of the
+ * number of class labels.
+ * <p/>
+ * The weights get accumulated in an open-addressing hash table, which gets
+ * compacted into sorted rows (column indices and counts per row) by
+ * {@link #invalidate()} (automatically after building the matrix). Reading
+ * a cell is a binary search within its row.
+ * <p/>
+ * {@link #getMatrix()} returns a dense copy, use
+ * {@link #getValue(int, int)} or {@link #getRow(int, double[])} instead.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SparseConfusionMatrix
+  extends ConfusionMatrix {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3717395624087553107L;
+
+  /** the initial capacity of the hash table. */
+  public final static int MIN_CAPACITY = 16;
+
+  /** the maximum capacity of the hash table. */
+  public final static int MAX_CAPACITY = 1 << 30;
+
+  /** marks an empty slot in the hash table. */
+  protected final static long EMPTY = -1;
+
+  /** the number of classes. */
+  protected int m_NumClasses;
+
+  /** the keys of the hash table (actual * numClasses + predicted), null if compacted. */
+  protected transient long[] m_Keys;
+
+  /** the weights of the hash table, null if compacted. */
+  protected transient double[] m_Weights;
+
+  /** the number of occupied slots in the hash table. */
+  protected transient int m_Size;
+
+  /** the start of each row in the compacted arrays (plus end of last row). */
+  protected int[] m_RowStart;
+
+  /** the column indices of the non-zero cells, sorted per row. */
+  protected int[] m_Columns;
+
+  /** the counts of the non-zero cells. */
+  protected double[] m_Values;
+
+  /**
+   * Initializes the matrix.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   */
+  public SparseConfusionMatrix(List<Prediction> preds, Attribute classAtt) {
+    this(preds, classAtt, null);
+  }
+
+  /**
+   * Initializes the matrix, using the labels that were derived from the
+   * class attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   */
+  protected SparseConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels) {
+    this(preds, classAtt, labels, null);
+  }
+
+  /**
+   * Initializes the matrix and the cost totals, using the labels that were
+   * derived from the class attribute already.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param labels	the labels of the class attribute, null to derive them
+   * @param costs	the (checked) costs, null if none
+   */
+  protected SparseConfusionMatrix(List<Prediction> preds, Attribute classAtt, String[] labels, double[][] costs) {
+    super(preds, classAtt, labels, costs);
+  }
+
+  /**
+   * Returns the capacity of the hash table for the specified number of
+   * non-zero cells (load factor of at most 0.5).
+   *
+   * @param nonZero	the number of non-zero cells
+   * @return		the capacity
+   */
+  public static long capacity(long nonZero) {
+    long	result;
+
+    result = MIN_CAPACITY;
+    while (result < nonZero * 2)
+      result <<= 1;
+
+    return result;
+  }
+
+  /**
+   * Allocates the (empty) storage for the counts.
+   */
+  @Override
+  protected void allocate() {
+    m_NumClasses = m_ClassAttribute.numValues();
+    m_RowStart   = new int[m_NumClasses + 1];
+    m_Columns    = new int[0];
+    m_Values     = new double[0];
+  }
+
+  /**
+   * Adds the weights of the predictions to the counts and compacts them.
+   *
+   * @param preds	the predictions to add
+   */
+  @Override
+  protected void accumulate(List<Prediction> preds) {
+    for (Prediction pred: preds)
+      add((int) pred.actual(), (int) pred.predicted(), pred.weight());
+    compact();
+  }
+
+  /**
+   * Returns the slot of the key in the hash table, either the one
+   * containing the key or the empty one to insert it in.
+   *
+   * @param keys	the hash table
+   * @param key		the key to locate
+   * @return		the slot
+   */
+  protected static int slot(long[] keys, long key) {
+    int		result;
+    int		mask;
+
+    mask   = keys.length - 1;
+    result = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    while ((keys[result] != EMPTY) && (keys[result] != key))
+      result = (result + 1) & mask;
+
+    return result;
+  }
+
+  /**
+   * Resizes the hash table and re-inserts all cells.
+   *
+   * @param capacity	the new capacity
+   */
+  protected void rehash(int capacity) {
+    long[]	keys;
+    double[]	weights;
+    int		slot;
+    int		i;
+
+    keys    = new long[capacity];
+    weights = new double[capacity];
+    Arrays.fill(keys, EMPTY);
+    if (m_Keys != null) {
+      for (i = 0; i < m_Keys.length; i++) {
+	if (m_Keys[i] != EMPTY) {
+	  slot          = slot(keys, m_Keys[i]);
+	  keys[slot]    = m_Keys[i];
+	  weights[slot] = m_Weights[i];
+	}
+      }
+    }
+    m_Keys    = keys;
+    m_Weights = weights;
+  }
+
+  /**
+   * Turns the compacted rows back into a hash table, for adding more
+   * weights.
+   */
+  protected void expand() {
+    int		i;
+    int		n;
+    int		slot;
+
+    m_Size = 0;
+    rehash((int) capacity(Math.max(m_Values.length, m_NumClasses)));
+    for (i = 0; i < m_NumClasses; i++) {
+      for (n = m_RowStart[i]; n < m_RowStart[i + 1]; n++) {
+	slot            = slot(m_Keys, (long) i * m_NumClasses + m_Columns[n]);
+	m_Keys[slot]    = (long) i * m_NumClasses + m_Columns[n];
+	m_Weights[slot] = m_Values[n];
+	m_Size++;
+      }
+    }
+  }
+
+  /**
+   * Adds the weight to the specified cell. {@link #invalidate()} must be
+   * called once all weights have been added.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @param weight	the weight to add
+   */
+  @Override
+  protected void add(int actual, int predicted, double weight) {
+    long	key;
+    int		slot;
+
+    if (m_Keys == null)
+      expand();
+
+    key  = (long) actual * m_NumClasses + predicted;
+    slot = slot(m_Keys, key);
+    if (m_Keys[slot] == EMPTY) {
+      if ((m_Size + 1) * 2L > m_Keys.length) {
+	if (m_Keys.length >= MAX_CAPACITY)
+	  throw new IllegalStateException("Too many non-zero cells for sparse storage: " + m_Size);
+	rehash(m_Keys.length * 2);
+	slot = slot(m_Keys, key);
+      }
+      m_Keys[slot] = key;
+      m_Size++;
+    }
+    m_Weights[slot] += weight;
+    addCost(actual, predicted, weight);
+  }
+
+  /**
+   * Compacts the hash table into sorted rows, dropping cells that sum up
+   * to zero. Does nothing if already compacted.
+   */
+  protected void compact() {
+    long[]	keys;
+    int		count;
+    int		row;
+    int		i;
+
+    if (m_Keys == null)
+      return;
+
+    // sorted keys of the non-zero cells
+    keys  = new long[m_Size];
+    count = 0;
+    for (i = 0; i < m_Keys.length; i++) {
+      if ((m_Keys[i] != EMPTY) && (m_Weights[i] != 0))
+	keys[count++] = m_Keys[i];
+    }
+    Arrays.sort(keys, 0, count);
+
+    // rows
+    m_RowStart = new int[m_NumClasses + 1];
+    m_Columns  = new int[count];
+    m_Values   = new double[count];
+    for (i = 0; i < count; i++) {
+      row          = (int) (keys[i] / m_NumClasses);
+      m_Columns[i] = (int) (keys[i] % m_NumClasses);
+      m_Values[i]  = m_Weights[slot(m_Keys, keys[i])];
+      m_RowStart[row + 1]++;
+    }
+    for (i = 0; i < m_NumClasses; i++)
+      m_RowStart[i + 1] += m_RowStart[i];
+
+    m_Keys    = null;
+    m_Weights = null;
+    m_Size    = 0;
+  }
+
+  /**
+   * Adds the non-zero cells (or their costs) of this matrix to the other one.
+   *
+   * @param target	the matrix to add the counts to
+   * @param row		not used
+   * @param costs	the costs to multiply the counts with, null to add
+   * 			the counts
+   */
+  @Override
+  protected void addTo(ConfusionMatrix target, double[] row, double[][] costs) {
+    int		i;
+    int		n;
+
+    compact();
+    for (i = 0; i < m_NumClasses; i++) {
+      for (n = m_RowStart[i]; n < m_RowStart[i + 1]; n++)
+	target.add(i, m_Columns[n], (costs == null) ? m_Values[n] : m_Values[n] * costs[i][m_Columns[n]]);
+    }
+  }
+
+  /**
+   * Evaluates the cost totals per class label for the specified costs over
+   * the non-zero cells.
+   *
+   * @param costs	the costs (rows: actual, columns: predicted)
+   * @return		the cost totals
+   * @throws IllegalArgumentException	if the costs don't match the class labels
+   */
+  @Override
+  public double[] computeCostTotals(double[][] costs) {
+    double[]	result;
+    int		i;
+    int		n;
+
+    check(costs, m_NumClasses);
+    compact();
+    result = new double[m_NumClasses];
+    for (i = 0; i < m_NumClasses; i++) {
+      for (n = m_RowStart[i]; n < m_RowStart[i + 1]; n++)
+	result[i] += m_Values[n] * costs[i][m_Columns[n]];
+    }
+
+    return result;
+  }
+
+  /**
+   * Compacts any added weights and discards cached values.
+   */
+  @Override
+  public void invalidate() {
+    compact();
+    super.invalidate();
+  }
+
+  /**
+   * Returns a clone of itself.
+   *
+   * @return		the clone
+   */
+  @Override
+  public ConfusionMatrix clone() {
+    SparseConfusionMatrix	result;
+
+    compact();
+    result            = (SparseConfusionMatrix) super.clone();
+    result.m_RowStart = m_RowStart.clone();
+    result.m_Columns  = m_Columns.clone();
+    result.m_Values   = m_Values.clone();
+
+    return result;
+  }
+
+  /**
+   * Returns the number of non-zero cells.
+   *
+   * @return		the number of cells
+   */
+  public int getNumNonZero() {
+    return m_Values.length;
+  }
+
+  /**
+   * Returns a dense copy of the counts, i.e., modifying it doesn't change
+   * this matrix. Requires the square of the number of class labels as
+   * doubles on the heap, use {@link #getValue(int, int)} or
+   * {@link #getRow(int, double[])} instead.
+   *
+   * @return		the copy
+   */
+  @Override
+  public double[][] getMatrix() {
+    compact();
+    return toDense();
+  }
+
+  /**
+   * Returns the count of the specified cell.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param predicted	the 0-based index of the predicted class label
+   * @return		the count
+   */
+  @Override
+  public double getValue(int actual, int predicted) {
+    int		index;
+
+    index = Arrays.binarySearch(m_Columns, m_RowStart[actual], m_RowStart[actual + 1], predicted);
+    if (index < 0)
+      return 0;
+
+    return m_Values[index];
+  }
+
+  /**
+   * Copies the counts of the specified row into the array. Only touches the
+   * non-zero cells of the row.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param row		the array to fill, needs to have room for all classes
+   */
+  @Override
+  public void getRow(int actual, double[] row) {
+    int		i;
+
+    Arrays.fill(row, 0, m_NumClasses, 0.0);
+    for (i = m_RowStart[actual]; i < m_RowStart[actual + 1]; i++)
+      row[m_Columns[i]] = m_Values[i];
+  }
+
+  /**
+   * Copies the non-zero cells of the specified row into the arrays.
+   *
+   * @param actual	the 0-based index of the actual class label
+   * @param columns	the array for the predicted class labels
+   * @param values	the array for the counts
+   * @return		the number of non-zero cells
+   */
+  @Override
+  public int getNonZero(int actual, int[] columns, double[] values) {
+    int		result;
+
+    result = m_RowStart[actual + 1] - m_RowStart[actual];
+    System.arraycopy(m_Columns, m_RowStart[actual], columns, 0, result);
+    System.arraycopy(m_Values, m_RowStart[actual], values, 0, result);
+
+    return result;
+  }
+
+  /**
+   * Returns the totals for all class labels, calculates them if necessary.
+   *
+   * @return		the totals
+   */
+  @Override
+  protected double[] getTotals() {
+    double[]	result;
+    int		i;
+    int		n;
+
+    result = m_Totals;
+    if (result == null) {
+      result = new double[m_NumClasses];
+      for (i = 0; i < m_NumClasses; i++) {
+	for (n = m_RowStart[i]; n < m_RowStart[i + 1]; n++)
+	  result[i] += m_Values[n];
+      }
+      m_Totals = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the maximum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMax() {
+    double	result;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < m_Values.length; i++)
+      result = Math.max(result, m_Values[i]);
+
+    return result;
+  }
+
+  /**
+   * Returns the minimum count in the matrix.
+   *
+   * @return		the count
+   */
+  @Override
+  public double getMin() {
+    double	result;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < m_Values.length; i++)
+      result = Math.min(result, m_Values[i]);
+
+    return result;
+  }
+
+  /**
+   * Scales the rows to 0-1, with 1 being the number of instances with that
+   * class label.
+   */
+  @Override
+  public void scaleRows() {
+    double[]	totals;
+    int		i;
+    int		n;
+
+    totals = getTotals();
+    for (i = 0; i < m_NumClasses; i++) {
+      if (totals[i] > 0) {
+	for (n = m_RowStart[i]; n < m_RowStart[i + 1]; n++)
+	  m_Values[n] /= totals[i];
+      }
+    }
+
+    invalidate();
+  }
+}
@@ -21,28 +21,43 @@ package weka.gui.visualize.plugins;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileWriter;
-import java.util.Arrays;
-import java.util.Vector;
+import java.util.ArrayList;
 
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTable;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.UIManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
-import weka.core.Utils;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
 import weka.gui.ExtensionFileFilter;
-import weka.gui.JTableHelper;
 
 /**
- * Generates a simple representation using a table.
+ * Generates a simple representation using a table. Matrices with costs
+ * (or a cost matrix set via {@link #setCosts(CostMatrix)} or selected for
+ * the display) get a cost column as well. The costs only get applied to the
+ * table model, the (possibly cached) matrix doesn't get copied.
  * 
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -50,18 +65,81 @@ import weka.gui.JTableHelper;
 public class TableVisualization
   extends AbstractConfusionMatrixVisualization {
 
+  /**
+   * The results of {@link TableVisualization#precompute(ConfusionMatrix)}.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Prepared {
+    
+    /** the prepared model. */
+    protected ConfusionMatrixTableModel m_Model;
+    
+    /** the column widths of the model. */
+    protected int[] m_Widths;
+    
+    /**
+     * Initializes the container.
+     * 
+     * @param model	the prepared model
+     * @param widths	the column widths of the model
+     */
+    public Prepared(ConfusionMatrixTableModel model, int[] widths) {
+      super();
+      m_Model  = model;
+      m_Widths = widths;
+    }
+    
+    /**
+     * Returns the prepared model.
+     * 
+     * @return		the model
+     */
+    public ConfusionMatrixTableModel getModel() {
+      return m_Model;
+    }
+    
+    /**
+     * Returns the column widths of the model.
+     * 
+     * @return		the widths
+     */
+    public int[] getWidths() {
+      return m_Widths;
+    }
+  }
+
   /** for serialization. */
   private static final long serialVersionUID = -6139634408453147499L;
 
+  /** the maximum number of rows to sample for estimating the column widths. */
+  public final static int MAX_SAMPLES = 100;
+  
+  /** the margin to add to the column widths. */
+  public final static int COLUMN_MARGIN = 10;
+
   /** the table with the confusion matrix. */
   protected JTable m_Table;
 
   /** the model for the table. */
-  protected DefaultTableModel m_Model;
+  protected ConfusionMatrixTableModel m_Model;
+
+  /** the combobox for the sort mode. */
+  protected JComboBox<String> m_ComboBoxSortBy;
+  
+  /** the checkbox for sorting in descending order. */
+  protected JCheckBox m_CheckBoxDescending;
+  
+  /** the spinner for the minimum error rate. */
+  protected JSpinner m_SpinnerMinErrorRate;
 
   /** the file chooser for saving the content. */
   protected JFileChooser m_FileChooser;
 
+  /** the cost matrix for matrices without costs, can be null. */
+  protected CostMatrix m_Costs;
+
   /**
    * Returns the text for the menu item.
    * 
@@ -71,6 +149,24 @@ public class TableVisualization
   public String getMenuItemText() {
     return "Table";
   }
+
+  /**
+   * Sets the cost matrix to use for matrices that don't have costs.
+   *
+   * @param value	the cost matrix, null for none
+   */
+  public void setCosts(CostMatrix value) {
+    m_Costs = value;
+  }
+
+  /**
+   * Returns the cost matrix to use for matrices that don't have costs.
+   *
+   * @return		the cost matrix, null if none set
+   */
+  public CostMatrix getCosts() {
+    return m_Costs;
+  }
   
   /**
    * Returns the initial size of the frame.
@@ -92,6 +188,8 @@ public class TableVisualization
     
     if (m_FileChooser == null) {
       m_FileChooser = new JFileChooser();
+      filter = new ExtensionFileFilter("tsv", "TSV files (*.tsv)");
+      m_FileChooser.addChoosableFileFilter(filter);
       filter = new ExtensionFileFilter("csv", "CSV files (*.csv)");
       m_FileChooser.addChoosableFileFilter(filter);
       m_FileChooser.setFileFilter(filter);
@@ -101,59 +199,33 @@ public class TableVisualization
   }
   
   /**
-   * Saves the current content to the specified file.
+   * Returns the exporter to use for the file. Files with extension ".tsv"
+   * get written tab-separated, all others comma-separated.
+   * 
+   * @param file	the file to export to
+   * @return		the exporter
+   */
+  protected CSVExporter newExporter(File file) {
+    if (file.getName().toLowerCase().endsWith(".tsv"))
+      return new CSVExporter('\t');
+    else
+      return new CSVExporter(',');
+  }
+  
+  /**
+   * Saves the current content (sorted/filtered rows) to the specified file.
    * 
    * @param file	the file to save the content to
    * @return		true if successfully written
    */
   protected boolean save(File file) {
-    boolean		result;
-    BufferedWriter	writer;
-    int			i;
-    int			n;
-    Object		cell;
+    CSVExporter		exporter;
     
-    writer = null;
-    try {
-      result = true;
-      writer = new BufferedWriter(new FileWriter(file));
-      // header
-      for (n = 0; n < m_Model.getColumnCount(); n++) {
-	if (n > 0)
-	  writer.write(",");
-	writer.write(Utils.quote(m_Model.getColumnName(n)));
-      }
-      writer.newLine();
-      // data
-      for (i = 0; i < m_Model.getRowCount(); i++) {
-	for (n = 0; n < m_Model.getColumnCount(); n++) {
-	  if (n > 0)
-	    writer.write(",");
-	  cell = m_Model.getValueAt(i, n);
-	  if (cell != null)
-	    writer.write(Utils.quote(cell.toString()));
-	}
-	writer.newLine();
-      }
-      writer.flush();
-    }
-    catch (Exception e) {
-      System.err.println("Failed to write content to " + file + "!");
-      e.printStackTrace();
-      result = false;
-    }
-    finally {
-      if (writer != null) {
-	try {
-	  writer.close();
-	}
-	catch (Exception e) {
-	  // ignored
-	}
-      }
-    }
+    exporter = newExporter(file);
+    exporter.setRows(m_Model.getClassIndices());
+    exporter.setCostTotals(m_Model.getCostTotals());
     
-    return result;
+    return (exporter.write(m_Model.getMatrix(), file) == null);
   }
   
   /**
@@ -210,45 +282,458 @@ public class TableVisualization
   }
   
   /**
-   * Generates the visualization.
+   * Generates the table model for the matrix. Matrices without costs get
+   * the costs of the cost matrix set via {@link #setCosts(CostMatrix)},
+   * if any.
    * 
-   * @param matrix	the matrix to visualize
-   * @return		the panel with the visualization
+   * @param matrix	the matrix to generate the model for
+   * @return		the model
+   * @throws IllegalArgumentException	if the cost matrix doesn't match
    */
-  @Override
-  public JPanel generate(ConfusionMatrix matrix) {
-    JPanel		result;
-    Vector<String>	cols;
+  protected ConfusionMatrixTableModel createModel(ConfusionMatrix matrix) {
+    return createModel(matrix, null);
+  }
+
+  /**
+   * Generates the table model for the matrix. Matrices without costs get
+   * the costs of the specified cost matrix or, if null, the one set via
+   * {@link #setCosts(CostMatrix)}, if any. Only the cost totals per row
+   * get computed, the matrix doesn't get copied or modified.
+   * 
+   * @param matrix	the matrix to generate the model for
+   * @param costs	the cost matrix for the display, can be null
+   * @return		the model
+   * @throws IllegalArgumentException	if the cost matrix doesn't match
+   */
+  protected ConfusionMatrixTableModel createModel(ConfusionMatrix matrix, CostMatrix costs) {
+    if (costs == null)
+      costs = m_Costs;
+    if (matrix.hasCosts() || (costs == null))
+      return new ConfusionMatrixTableModel(matrix);
+    else
+      return new ConfusionMatrixTableModel(matrix, ConfusionMatrix.toArray(costs, matrix.getNumClasses()));
+  }
+
+  /**
+   * Updates the width of a column if the new width is larger.
+   * 
+   * @param widths	the column widths
+   * @param column	the column to update
+   * @param width	the new width
+   */
+  protected void updateWidth(int[] widths, int column, int width) {
+    if (width > widths[column])
+      widths[column] = width;
+  }
+  
+  /**
+   * Calculates the column widths for the model. Instead of measuring every
+   * cell, the widths are estimated from the header, the row totals (which
+   * bound the counts) and a bounded sample of rows (see
+   * {@link #MAX_SAMPLES}), read via {@link ConfusionMatrix#getRow(int, double[])}.
+   * Only the label column and the per-row statistics get measured for every
+   * row, i.e., the effort is linear in the number of class labels for all
+   * types of matrices. Does not access any Swing components, i.e., can be
+   * called from any thread.
+   * 
+   * @param model	the model to calculate the widths for
+   * @param cellMetrics	the metrics of the cell font
+   * @param headerMetrics	the metrics of the header font
+   * @return		the widths of the columns
+   */
+  protected int[] calcColumnWidths(ConfusionMatrixTableModel model, FontMetrics cellMetrics, FontMetrics headerMetrics) {
+    int[]		result;
+    ConfusionMatrix	matrix;
+    double[]		values;
+    double		min;
+    double		max;
+    boolean		fractional;
+    int			numCols;
+    int			numClasses;
+    int			width;
     int			i;
     int			n;
+    int			step;
+    double		value;
+
+    matrix     = model.getMatrix();
+    numCols    = model.getColumnCount();
+    numClasses = matrix.getNumClasses();
+    result     = new int[numCols];
+    step       = Math.max(1, numClasses / MAX_SAMPLES);
+
+    // header
+    for (n = 0; n < numCols; n++)
+      result[n] = headerMetrics.stringWidth(model.getColumnName(n));
+
+    // counts: bounded by the row totals, fractional values get sampled
+    min    = 0;
+    max    = 0;
+    values = new double[numClasses];
+    for (i = 0; i < numClasses; i++)
+      max = Math.max(max, matrix.getTotal(i));
+    for (i = 0; i < numClasses; i += step) {
+      matrix.getRow(i, values);
+      for (n = 0; n < numClasses; n++) {
+	value = values[n];
+	if (value < min)
+	  min = value;
+	if (value > max)
+	  max = value;
+	if (value != Math.rint(value))
+	  updateWidth(result, n, cellMetrics.stringWidth(Double.toString(value)));
+      }
+    }
+    width = Math.max(
+	cellMetrics.stringWidth(Double.toString(min)),
+	cellMetrics.stringWidth(Double.toString(max)));
+    for (n = 0; n < numClasses; n++)
+      updateWidth(result, n, width);
+
+    // labels
+    for (i = 0; i < numClasses; i++)
+      updateWidth(result, numClasses, cellMetrics.stringWidth(matrix.getLabels()[i]));
+
+    // statistics per row
+    for (n = numClasses + 1; n < numCols; n++) {
+      min        = 0;
+      max        = 0;
+      fractional = false;
+      for (i = 0; i < model.getRowCount(); i++) {
+	value = model.getDoubleAt(i, n);
+	if (value < min)
+	  min = value;
+	if (value > max)
+	  max = value;
+	if (!fractional && (value != Math.rint(value)))
+	  fractional = true;
+      }
+      updateWidth(result, n, cellMetrics.stringWidth(Double.toString(min)));
+      updateWidth(result, n, cellMetrics.stringWidth(Double.toString(max)));
+      if (fractional) {
+	for (i = 0; i < model.getRowCount(); i += step)
+	  updateWidth(result, n, cellMetrics.stringWidth(Double.toString(model.getDoubleAt(i, n))));
+      }
+    }
+
+    for (n = 0; n < numCols; n++)
+      result[n] += COLUMN_MARGIN;
     
-    result = new JPanel(new BorderLayout());
+    return result;
+  }
+  
+  /**
+   * Returns the metrics of the default font that tables use for the
+   * specified element. Uses an offscreen image instead of a Swing component,
+   * i.e., can be called from any thread.
+   * 
+   * @param key		the key of the font in the UI defaults, e.g.,
+   * 			"Table.font"
+   * @return		the metrics
+   */
+  protected FontMetrics getDefaultFontMetrics(String key) {
+    Font		font;
+    Graphics2D		g;
+    
+    font = UIManager.getFont(key);
+    if (font == null)
+      font = new Font(Font.DIALOG, Font.PLAIN, 12);
+    g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    try {
+      return g.getFontMetrics(font);
+    }
+    finally {
+      g.dispose();
+    }
+  }
+  
+  /**
+   * Applies the column widths to the table.
+   * 
+   * @param table	the table to update
+   * @param widths	the widths of the columns
+   */
+  protected void applyColumnWidths(JTable table, int[] widths) {
+    int		i;
+    
+    for (i = 0; (i < widths.length) && (i < table.getColumnModel().getColumnCount()); i++)
+      table.getColumnModel().getColumn(i).setPreferredWidth(widths[i]);
+  }
+  
+  /**
+   * Calculates the optimal column widths in the background and applies them
+   * once available.
+   * 
+   * @param table	the table to update
+   * @param model	the model to calculate the widths for
+   */
+  protected void updateColumnWidths(final JTable table, final ConfusionMatrixTableModel model) {
+    final FontMetrics	cellMetrics;
+    final FontMetrics	headerMetrics;
+    SwingWorker<int[],Object>	worker;
+    
+    cellMetrics   = table.getFontMetrics(table.getFont());
+    headerMetrics = table.getFontMetrics(table.getTableHeader().getFont());
+    worker = new SwingWorker<int[],Object>() {
+      @Override
+      protected int[] doInBackground() throws Exception {
+	return calcColumnWidths(model, cellMetrics, headerMetrics);
+      }
+      @Override
+      protected void done() {
+	int[]	widths;
+	try {
+	  widths = get();
+	}
+	catch (Exception e) {
+	  System.err.println("Failed to calculate column widths!");
+	  e.printStackTrace();
+	  return;
+	}
+	// model replaced in the meantime?
+	if (table.getModel() != model)
+	  return;
+	applyColumnWidths(table, widths);
+      }
+    };
+    worker.execute();
+  }
+
+  /**
+   * Creates the model and calculates the column widths (using the default
+   * fonts of tables) in the background. As the widths get estimated from
+   * the per-row statistics, their totals (and costs) get cached as well.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @param costs	the cost matrix for the display, can be null
+   * @return		the {@link Prepared} container
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix, CostMatrix costs) {
+    ConfusionMatrixTableModel	model;
+    
+    model = createModel(matrix, costs);
+    
+    return new Prepared(
+	model, 
+	calcColumnWidths(model, getDefaultFontMetrics("Table.font"), getDefaultFontMetrics("TableHeader.font")));
+  }
+  
+  /**
+   * Creates the model and calculates the column widths in the background,
+   * without a cost matrix for the display.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @return		the {@link Prepared} container
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix) {
+    return precompute(matrix, null);
+  }
 
-    m_Model = new DefaultTableModel(matrix.getNumClasses(), matrix.getNumClasses() + 4);
-    cols = new Vector<String>();
-    cols.addAll(Arrays.asList(matrix.getLabels()));
-    cols.add("<-- classified as");
-    cols.add("incorrect");
-    cols.add("correct");
-    cols.add("total");
-    m_Model.setColumnIdentifiers(cols);
-    
-    for (i = 0; i < matrix.getNumClasses(); i++)
-      m_Model.setValueAt(matrix.getLabels()[i], i, matrix.getNumClasses());
-
-    for (i = 0; i < matrix.getNumClasses(); i++) {
-      for (n = 0; n < matrix.getNumClasses(); n++)
-	m_Model.setValueAt(matrix.getMatrix()[i][n], i, n);
-      m_Model.setValueAt(matrix.getIncorrect(i), i, matrix.getNumClasses() + 1);
-      m_Model.setValueAt(matrix.getCorrect(i), i, matrix.getNumClasses() + 2);
-      m_Model.setValueAt(matrix.getTotal(i), i, matrix.getNumClasses() + 3);
+  /**
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
+   * 
+   * @return		the extension
+   */
+  @Override
+  public String getExportExtension() {
+    return "csv";
+  }
+  
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires.
+   * The output gets streamed straight from the matrix, only the quoted 
+   * labels and the writer's buffer are required.
+   * 
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return CSVExporter.BUFFER_SIZE * 2 + matrix.getNumClasses() * 64L;
+  }
+  
+  /**
+   * Exports the matrix as CSV file.
+   * 
+   * @param matrix	the matrix to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String export(ConfusionMatrix matrix, File file) {
+    return newExporter(file).write(matrix, file);
+  }
+  
+  /**
+   * Applies the current sort/filter settings to the model.
+   */
+  protected void updateView() {
+    m_Model.setView(
+	m_ComboBoxSortBy.getSelectedIndex(), 
+	m_CheckBoxDescending.isSelected(), 
+	((Number) m_SpinnerMinErrorRate.getValue()).doubleValue());
+  }
+  
+  /**
+   * Generates the panel with the sort/filter options.
+   * 
+   * @return		the panel
+   */
+  protected JPanel generateViewOptions() {
+    JPanel	result;
+    JLabel	label;
+    int		i;
+    
+    result = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    
+    // sort (by cost only if available, always the last mode)
+    m_ComboBoxSortBy = new JComboBox<String>();
+    for (i = 0; i < ConfusionMatrixTableModel.SORT_NAMES.length; i++) {
+      if ((i == ConfusionMatrixTableModel.SORT_COST) && !m_Model.hasCosts())
+	continue;
+      m_ComboBoxSortBy.addItem(ConfusionMatrixTableModel.SORT_NAMES[i]);
     }
+    m_ComboBoxSortBy.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	updateView();
+      }
+    });
+    label = new JLabel("Sort by");
+    label.setLabelFor(m_ComboBoxSortBy);
+    result.add(label);
+    result.add(m_ComboBoxSortBy);
+    
+    m_CheckBoxDescending = new JCheckBox("Descending");
+    m_CheckBoxDescending.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	updateView();
+      }
+    });
+    result.add(m_CheckBoxDescending);
+    
+    // filter
+    m_SpinnerMinErrorRate = new JSpinner(new SpinnerNumberModel(0.0, 0.0, 1.0, 0.05));
+    m_SpinnerMinErrorRate.setPreferredSize(new Dimension(60, 20));
+    m_SpinnerMinErrorRate.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	updateView();
+      }
+    });
+    label = new JLabel("Min. error rate");
+    label.setLabelFor(m_SpinnerMinErrorRate);
+    result.add(label);
+    result.add(m_SpinnerMinErrorRate);
+    
+    return result;
+  }
+  
+  /**
+   * Generates the panel with the table for the model and the view options.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param model	the model to display
+   * @param widths	the column widths, null to calculate them in the
+   * 			background
+   * @return		the panel
+   */
+  protected JPanel generate(ConfusionMatrix matrix, ConfusionMatrixTableModel model, int[] widths) {
+    JPanel				result;
+    ConfusionMatrixMetrics.Sample	sample;
     
+    sample = ConfusionMatrixMetrics.start();
+    result = new JPanel(new BorderLayout());
+
+    m_Model = model;
     m_Table = new JTable(m_Model);
     m_Table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
-    JTableHelper.setOptimalColumnWidth(m_Table);
+    if (widths != null)
+      applyColumnWidths(m_Table, widths);
+    else
+      updateColumnWidths(m_Table, m_Model);
     
     result.add(createScrollPane(m_Table), BorderLayout.CENTER);
+    result.add(generateViewOptions(), BorderLayout.NORTH);
+    ConfusionMatrixMetrics.TABLE.record(sample, (long) matrix.getNumClasses() * (long) matrix.getNumClasses(), matrix.getNumClasses());
+
+    return result;
+  }
+  
+  /**
+   * Generates the visualization from the prepared model and column widths.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param precomputed	the {@link Prepared} container, null if not available
+   * @return		the panel with the visualization
+   */
+  @Override
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    Prepared	prepared;
+    
+    if (precomputed == null)
+      return generate(matrix);
+    
+    prepared = (Prepared) precomputed;
+    
+    return generate(matrix, prepared.getModel(), prepared.getWidths());
+  }
+  
+  /**
+   * Generates the visualization.
+   * 
+   * @param matrix	the matrix to visualize
+   * @return		the panel with the visualization
+   */
+  @Override
+  public JPanel generate(ConfusionMatrix matrix) {
+    return generate(matrix, createModel(matrix), null);
+  }
+
+  /**
+   * Returns a menu for displaying the table, with or without costs loaded
+   * from a file (see {@link CostHeatmapVisualization#loadCosts(java.awt.Component, int)}).
+   *
+   * @param preds 	predictions
+   * @param classAtt 	class attribute
+   * @return 		the menu, null if class is not nominal
+   */
+  @Override
+  public JMenuItem getVisualizeMenuItem(final ArrayList<Prediction> preds, final Attribute classAtt) {
+    JMenu	result;
+    JMenuItem	menuitem;
+
+    if (!classAtt.isNominal()) {
+      System.err.println("Class is not nominal: " + classAtt.name());
+      return null;
+    }
+
+    result = new JMenu(getMenuItemText());
+
+    menuitem = new JMenuItem("Display");
+    menuitem.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	display(preds, classAtt);
+      }
+    });
+    result.add(menuitem);
+
+    menuitem = new JMenuItem("Display with costs...");
+    menuitem.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	CostMatrix costs = CostHeatmapVisualization.loadCosts(null, classAtt.numValues());
+	if (costs == null)
+	  return;
+	display(preds, classAtt, costs);
+      }
+    });
+    result.add(menuitem);
 
     return result;
   }
@@ -27,19 +27,24 @@ import java.awt.event.ActionListener;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.JTextArea;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
 
 import weka.core.Utils;
 import weka.gui.ExtensionFileFilter;
 
 /**
- * Generates a simple textual representation.
+ * Generates a simple textual representation. The text gets rendered
+ * incrementally (see {@link #doGenerate(ConfusionMatrix, Appendable)}):
+ * the viewer only renders the lines that are currently visible and 
+ * "Save as..." streams the text to the file.
  * 
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -50,8 +55,227 @@ public class TextVisualization
   /** for serialization. */
   private static final long serialVersionUID = -6139634408453147499L;
 
-  /** the text area with the confusion matrix. */
-  protected JTextArea m_TextArea;
+  /** the font size. */
+  public final static int FONT_SIZE = 12;
+
+  /** the characters used for the IDs. */
+  protected final static char[] ID_CHARS = { 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k',  'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z' };
+
+  /**
+   * Container for the layout of the textual representation.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Layout {
+    
+    /** the width of the cells. */
+    public int IDWidth;
+    
+    /** whether fractional numbers need displaying. */
+    public boolean fractional;
+
+    /** the formatter for the numbers. */
+    public NumberFormatter formatter = new NumberFormatter();
+
+    /** the buffer for the short IDs. */
+    public char[] ID;
+  }
+  
+  /**
+   * Ancestor for models that render the lines of a textual representation
+   * on demand, one line per row.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static abstract class LinesModel
+    extends AbstractTableModel {
+
+    /** for serialization. */
+    private static final long serialVersionUID = -1645323207290400741L;
+
+    /** the buffer for rendering lines. */
+    protected StringBuilder m_Buffer = new StringBuilder();
+
+    /**
+     * Returns the number of columns.
+     * 
+     * @return		always 1
+     */
+    @Override
+    public int getColumnCount() {
+      return 1;
+    }
+
+    /**
+     * Renders the specified line (incl. new line).
+     * 
+     * @param row	the line to render
+     * @param output	the output to append to
+     * @throws IOException	if appending fails
+     */
+    protected abstract void renderLine(int row, Appendable output) throws IOException;
+
+    /**
+     * Renders the specified line.
+     * 
+     * @param row	the line to render
+     * @param column	ignored
+     * @return		the line
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+      m_Buffer.setLength(0);
+      try {
+	renderLine(row, m_Buffer);
+      }
+      catch (IOException e) {
+	// can't happen with StringBuilder
+      }
+      // remove new line
+      m_Buffer.setLength(m_Buffer.length() - 1);
+      return m_Buffer.toString();
+    }
+
+    /**
+     * Returns the number of characters in the longest line.
+     * 
+     * @return		the number of characters
+     */
+    public abstract int getMaxLineLength();
+  }
+
+  /**
+   * Model that renders the lines of the textual representation on demand.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public class TextModel
+    extends LinesModel {
+
+    /** for serialization. */
+    private static final long serialVersionUID = 3217063858924713469L;
+
+    /** the matrix. */
+    protected ConfusionMatrix m_Matrix;
+    
+    /** the layout. */
+    protected Layout m_Layout;
+    
+    /**
+     * Initializes the model.
+     * 
+     * @param matrix	the matrix to render
+     */
+    public TextModel(ConfusionMatrix matrix) {
+      super();
+      m_Matrix = matrix;
+      m_Layout = determineLayout(matrix);
+    }
+
+    /**
+     * Returns the number of lines.
+     * 
+     * @return		the number of lines (header and one per class label)
+     */
+    @Override
+    public int getRowCount() {
+      return m_Matrix.getNumClasses() + 1;
+    }
+
+    /**
+     * Renders the specified line (incl. new line).
+     * 
+     * @param row	the line to render
+     * @param output	the output to append to
+     * @throws IOException	if appending fails
+     */
+    @Override
+    protected void renderLine(int row, Appendable output) throws IOException {
+      if (row == 0)
+	generateHeader(m_Matrix, m_Layout, output);
+      else
+	generateRow(m_Matrix, m_Layout, row - 1, output);
+    }
+    
+    /**
+     * Returns the number of characters in the longest line.
+     * 
+     * @return		the number of characters
+     */
+    @Override
+    public int getMaxLineLength() {
+      int	result;
+      int	maxLabel;
+      double	maxTotal;
+      int	i;
+      
+      maxLabel = 0;
+      maxTotal = 0;
+      for (i = 0; i < m_Matrix.getNumClasses(); i++) {
+	maxLabel = Math.max(maxLabel, m_Matrix.getLabels()[i].length());
+	maxTotal = Math.max(maxTotal, m_Matrix.getTotal(i));
+      }
+      result = m_Matrix.getNumClasses() * (m_Layout.IDWidth + 1) 
+	  + m_Layout.IDWidth + maxLabel 
+	  + 3 * Utils.doubleToString(maxTotal, 3).length() + 10;
+      
+      return Math.max(result, ((String) getValueAt(0, 0)).length());
+    }
+  }
+  
+  /**
+   * The results of {@link TextVisualization#precompute(ConfusionMatrix)}.
+   * 
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class Prepared {
+    
+    /** the prepared model. */
+    protected LinesModel m_Model;
+    
+    /** the maximum line length of the model. */
+    protected int m_Length;
+    
+    /**
+     * Initializes the container.
+     * 
+     * @param model	the prepared model
+     * @param length	the maximum line length of the model
+     */
+    public Prepared(LinesModel model, int length) {
+      super();
+      m_Model  = model;
+      m_Length = length;
+    }
+    
+    /**
+     * Returns the prepared model.
+     * 
+     * @return		the model
+     */
+    public LinesModel getModel() {
+      return m_Model;
+    }
+    
+    /**
+     * Returns the maximum line length of the model.
+     * 
+     * @return		the length
+     */
+    public int getLength() {
+      return m_Length;
+    }
+  }
+  
+  /** the table displaying the lines of the confusion matrix. */
+  protected JTable m_TableLines;
+  
+  /** the matrix. */
+  protected ConfusionMatrix m_Matrix;
 
   /** the file chooser for saving the content. */
   protected JFileChooser m_FileChooser;
@@ -101,6 +325,17 @@ public class TextVisualization
    * @return		true if successfully written
    */
   protected boolean save(File file) {
+    return save(m_Matrix, file);
+  }
+  
+  /**
+   * Streams the textual representation of the matrix to the specified file.
+   * 
+   * @param matrix	the matrix to save
+   * @param file	the file to save the content to
+   * @return		true if successfully written
+   */
+  protected boolean save(ConfusionMatrix matrix, File file) {
     boolean		result;
     BufferedWriter	writer;
     
@@ -108,8 +343,7 @@ public class TextVisualization
     try {
       result = true;
       writer = new BufferedWriter(new FileWriter(file));
-      writer.write(m_TextArea.getText());
-      writer.newLine();
+      doGenerate(matrix, writer);
       writer.flush();
     }
     catch (Exception e) {
@@ -146,11 +380,11 @@ public class TextVisualization
       @Override
       public void actionPerformed(ActionEvent e) {
 	JFileChooser fileChooser = getFileChooser();
-	int retVal = fileChooser.showSaveDialog(m_TextArea);
+	int retVal = fileChooser.showSaveDialog(m_TableLines);
 	if (retVal != JFileChooser.APPROVE_OPTION)
 	  return;
 	if (!save(fileChooser.getSelectedFile()))
-	  JOptionPane.showMessageDialog(m_TextArea, "Failed to save content to " + fileChooser.getSelectedFile() + "!");
+	  JOptionPane.showMessageDialog(m_TableLines, "Failed to save content to " + fileChooser.getSelectedFile() + "!");
       }
     });
     
@@ -172,10 +406,10 @@ public class TextVisualization
       @Override
       public void actionPerformed(ActionEvent e) {
 	try {
-	  m_TextArea.print();
+	  m_TableLines.print();
 	}
 	catch (Exception ex) {
-	  JOptionPane.showMessageDialog(m_TextArea, "Failed to print!\n" + ex);
+	  JOptionPane.showMessageDialog(m_TableLines, "Failed to print!\n" + ex);
 	  ex.printStackTrace();
 	}
       }
@@ -214,25 +448,48 @@ public class TextVisualization
   }
 
   /**
-   * Generates the textual representation of the matrix.
+   * Generates the short ID for the number in the supplied buffer, padded
+   * with blanks on the left. Same output as
+   * {@link #num2ShortID(int, char[], int)}, but without creating a string.
+   *
+   * @param num integer to format
+   * @param IDChars the characters to use
+   * @param ID the buffer to fill, its length is the width of the entry
+   */
+  protected void num2ShortID(int num, char[] IDChars, char[] ID) {
+    int i;
+
+    for (i = ID.length - 1; i >= 0; i--) {
+      ID[i] = IDChars[num % IDChars.length];
+      num = num / IDChars.length - 1;
+      if (num < 0) {
+        break;
+      }
+    }
+    for (i--; i >= 0; i--) {
+      ID[i] = ' ';
+    }
+  }
+
+  /**
+   * Determines the layout, i.e., width of cells and whether fractional
+   * numbers need to be displayed.
    * <p/>
    * Adapted from {@link weka.classifiers.evaluation.Evaluation#toSummaryString(String, boolean)}
    * 
    * @param matrix	the matrix to use
-   * @return		the generated representation
+   * @return		the layout
    */
-  protected String doGenerate(ConfusionMatrix matrix) {
-    StringBuilder result = new StringBuilder();
-    char[] IDChars = { 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k',  'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z' };
-    int IDWidth;
-    boolean fractional = false;
+  protected Layout determineLayout(ConfusionMatrix matrix) {
+    Layout result = new Layout();
 
     // Find the maximum value in the matrix
     // and check for fractional display requirement
     double maxval = 0;
     for (int i = 0; i < matrix.getNumClasses(); i++) {
+      AbstractConfusionMatrixVisualization.checkInterrupted();
       for (int j = 0; j < matrix.getNumClasses(); j++) {
-        double current = matrix.getMatrix()[i][j];
+        double current = matrix.getValue(i, j);
         if (current < 0) {
           current *= -10;
         }
@@ -240,67 +497,237 @@ public class TextVisualization
           maxval = current;
         }
         double fract = current - Math.rint(current);
-        if (!fractional && ((Math.log(fract) / Math.log(10)) >= -2)) {
-          fractional = true;
+        if (!result.fractional && ((Math.log(fract) / Math.log(10)) >= -2)) {
+          result.fractional = true;
         }
       }
     }
 
-    IDWidth = 1 + Math.max(
-      (int) (Math.log(maxval) / Math.log(10) + (fractional ? 3 : 0)),
-      (int) (Math.log(matrix.getNumClasses()) / Math.log(IDChars.length)));
+    result.IDWidth = 1 + Math.max(
+      (int) (Math.log(maxval) / Math.log(10) + (result.fractional ? 3 : 0)),
+      (int) (Math.log(matrix.getNumClasses()) / Math.log(ID_CHARS.length)));
+    result.ID = new char[result.IDWidth];
+    
+    return result;
+  }
+  
+  /**
+   * Generates the header line (incl. new line).
+   * 
+   * @param matrix	the matrix to use
+   * @param layout	the layout to use
+   * @param output	the output to append to
+   * @throws IOException	if appending fails
+   */
+  protected void generateHeader(ConfusionMatrix matrix, Layout layout, Appendable output) throws IOException {
     for (int i = 0; i < matrix.getNumClasses(); i++) {
-      result.append(" ");
-      if (fractional) {
-        result.append(num2ShortID(i, IDChars, IDWidth - 3));
-        result.append("   ");
+      output.append(" ");
+      if (layout.fractional) {
+        output.append(num2ShortID(i, ID_CHARS, layout.IDWidth - 3));
+        output.append("   ");
       }
       else {
-        result.append(num2ShortID(i, IDChars, IDWidth));
+        output.append(num2ShortID(i, ID_CHARS, layout.IDWidth));
       }
     }
-    result.append("   <-- classified as [incorr/correct/total]\n");
-    for (int i = 0; i < matrix.getNumClasses(); i++) {
-      for (int j = 0; j < matrix.getNumClasses(); j++) {
-        result.append(" ");
-        result.append(
-          Utils.doubleToString(matrix.getMatrix()[i][j], IDWidth, (fractional ? 2 : 0)));
-      }
-      result.append(" | ");
-      result.append(num2ShortID(i, IDChars, IDWidth));
-      result.append(" = ");
-      result.append(matrix.getLabels()[i]);
-      result.append(" [");
-      result.append(Utils.doubleToString(matrix.getIncorrect(i), 3));
-      result.append("/");
-      result.append(Utils.doubleToString(matrix.getCorrect(i), 3));
-      result.append("/");
-      result.append(Utils.doubleToString(matrix.getTotal(i), 3));
-      result.append("]");
-      result.append("\n");
+    output.append("   <-- classified as [incorr/correct/total]\n");
+  }
+  
+  /**
+   * Generates the line for the specified class label (incl. new line).
+   * 
+   * @param matrix	the matrix to use
+   * @param layout	the layout to use
+   * @param i		the 0-based index of the class label
+   * @param output	the output to append to
+   * @throws IOException	if appending fails
+   */
+  protected void generateRow(ConfusionMatrix matrix, Layout layout, int i, Appendable output) throws IOException {
+    for (int j = 0; j < matrix.getNumClasses(); j++) {
+      output.append(' ');
+      layout.formatter.append(output, matrix.getValue(i, j), layout.IDWidth, (layout.fractional ? 2 : 0));
+    }
+    output.append(" | ");
+    num2ShortID(i, ID_CHARS, layout.ID);
+    for (int j = 0; j < layout.ID.length; j++)
+      output.append(layout.ID[j]);
+    output.append(" = ");
+    output.append(matrix.getLabels()[i]);
+    output.append(" [");
+    layout.formatter.append(output, matrix.getIncorrect(i), 3);
+    output.append('/');
+    layout.formatter.append(output, matrix.getCorrect(i), 3);
+    output.append('/');
+    layout.formatter.append(output, matrix.getTotal(i), 3);
+    output.append("]\n");
+  }
+  
+  /**
+   * Generates the textual representation of the matrix, appending it line
+   * by line to the output, e.g., a {@link java.io.Writer}.
+   * 
+   * @param matrix	the matrix to use
+   * @param output	the output to append to
+   * @throws IOException	if appending fails
+   */
+  protected void doGenerate(ConfusionMatrix matrix, Appendable output) throws IOException {
+    ConfusionMatrixMetrics.Sample	sample;
+    Layout				layout;
+    int					i;
+    
+    sample = ConfusionMatrixMetrics.start();
+    layout = determineLayout(matrix);
+    generateHeader(matrix, layout, output);
+    for (i = 0; i < matrix.getNumClasses(); i++) {
+      AbstractConfusionMatrixVisualization.checkInterrupted();
+      generateRow(matrix, layout, i, output);
+    }
+    ConfusionMatrixMetrics.TEXT.record(sample, (long) matrix.getNumClasses() * (long) matrix.getNumClasses(), matrix.getNumClasses());
+  }
+
+  /**
+   * Generates the textual representation of the matrix.
+   * 
+   * @param matrix	the matrix to use
+   * @return		the generated representation
+   */
+  protected String doGenerate(ConfusionMatrix matrix) {
+    StringBuilder	result;
+    
+    result = new StringBuilder();
+    try {
+      doGenerate(matrix, result);
+    }
+    catch (IOException e) {
+      // can't happen with StringBuilder
     }
+    
     return result.toString();
   }
   
   /**
-   * Generates the visualization.
+   * Returns the file extension (without dot) that {@link #export(ConfusionMatrix, File)}
+   * generates.
    * 
-   * @param matrix	the matrix to visualize
-   * @return		the panel with the visualization
+   * @return		the extension
    */
   @Override
-  public JPanel generate(ConfusionMatrix matrix) {
+  public String getExportExtension() {
+    return "txt";
+  }
+  
+  /**
+   * Returns an estimate of how many bytes exporting the matrix requires.
+   * The text gets streamed, only the writer's buffer is required.
+   * 
+   * @param matrix	the matrix to estimate the memory requirements for
+   * @return		the estimated number of bytes
+   */
+  @Override
+  public long estimateExportMemory(ConfusionMatrix matrix) {
+    return 16 * 1024;
+  }
+  
+  /**
+   * Exports the textual representation of the matrix to the specified file.
+   * 
+   * @param matrix	the matrix to export
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String export(ConfusionMatrix matrix, File file) {
+    if (!save(matrix, file))
+      return "Failed to write content to " + file + "!";
+    return null;
+  }
+  
+  /**
+   * Creates the model that renders the lines for the viewer.
+   * 
+   * @param matrix	the matrix to render
+   * @return		the model
+   */
+  protected LinesModel createModel(ConfusionMatrix matrix) {
+    return new TextModel(matrix);
+  }
+  
+  /**
+   * Creates the model and determines its maximum line length in the
+   * background.
+   * 
+   * @param matrix	the matrix that will get visualized
+   * @return		the {@link Prepared} container
+   */
+  @Override
+  protected Object precompute(ConfusionMatrix matrix) {
+    LinesModel	model;
+    
+    model = createModel(matrix);
+    
+    return new Prepared(model, model.getMaxLineLength());
+  }
+  
+  /**
+   * Generates the panel with the lines of the model.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param model	the model to display
+   * @param length	the maximum line length of the model
+   * @return		the panel
+   */
+  protected JPanel generate(ConfusionMatrix matrix, LinesModel model, int length) {
     JPanel		result;
     
     result = new JPanel(new BorderLayout());
 
-    m_TextArea = new JTextArea();
-    m_TextArea.setFont(new Font("monospaced", Font.PLAIN, 12));
-    m_TextArea.setEditable(false);
-    m_TextArea.setText(doGenerate(matrix));
+    m_Matrix     = matrix;
+    m_TableLines = new JTable(model);
+    m_TableLines.setFont(new Font("monospaced", Font.PLAIN, FONT_SIZE));
+    m_TableLines.setRowHeight(m_TableLines.getFontMetrics(m_TableLines.getFont()).getHeight());
+    m_TableLines.setTableHeader(null);
+    m_TableLines.setShowGrid(false);
+    m_TableLines.setIntercellSpacing(new Dimension(0, 0));
+    m_TableLines.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+    m_TableLines.getColumnModel().getColumn(0).setPreferredWidth(
+	m_TableLines.getFontMetrics(m_TableLines.getFont()).charWidth('m') * length);
     
-    result.add(createScrollPane(m_TextArea), BorderLayout.CENTER);
+    result.add(createScrollPane(m_TableLines), BorderLayout.CENTER);
 
     return result;
   }
+  
+  /**
+   * Generates the visualization from the prepared model.
+   * 
+   * @param matrix	the matrix to visualize
+   * @param precomputed	the {@link Prepared} container, null if not available
+   * @return		the panel with the visualization
+   */
+  @Override
+  protected JPanel generate(ConfusionMatrix matrix, Object precomputed) {
+    Prepared	prepared;
+    
+    if (precomputed == null)
+      return generate(matrix);
+    
+    prepared = (Prepared) precomputed;
+    
+    return generate(matrix, prepared.getModel(), prepared.getLength());
+  }
+  
+  /**
+   * Generates the visualization.
+   * 
+   * @param matrix	the matrix to visualize
+   * @return		the panel with the visualization
+   */
+  @Override
+  public JPanel generate(ConfusionMatrix matrix) {
+    LinesModel	model;
+    
+    model = createModel(matrix);
+    
+    return generate(matrix, model, model.getMaxLineLength());
+  }
 }
@@ -0,0 +1,232 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * VisualizationRegistry.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import weka.core.ClassDiscovery;
+
+/**
+ * Keeps track of the available confusion matrix visualizations. The
+ * (expensive) class discovery only happens once per JVM, the first time the
+ * visualizations are requested; the classes themselves only get loaded when
+ * they get instantiated for the first time.
+ * <p/>
+ * Sources of visualizations, in that order:
+ * <ul>
+ *   <li>subclasses of {@link AbstractConfusionMatrixVisualization} in this
+ *   package, found via {@link ClassDiscovery}</li>
+ *   <li>providers listed in
+ *   <code>META-INF/services/weka.gui.visualize.plugins.AbstractConfusionMatrixVisualization</code>
+ *   (see {@link #SERVICE_FILE}, same format as used by {@link ServiceLoader}).
+ *   Unlike {@link ServiceLoader}, the files only get read for the
+ *   classnames, i.e., the providers don't get instantiated during
+ *   discovery; their classes get loaded via the class loader that the file
+ *   was found with.</li>
+ *   <li>classes registered explicitly via {@link #register(Class)} or
+ *   {@link #register(String)}</li>
+ * </ul>
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class VisualizationRegistry {
+
+  /** the provider-configuration file listing visualizations. */
+  public final static String SERVICE_FILE = "META-INF/services/" + AbstractConfusionMatrixVisualization.class.getName();
+
+  /** the classnames of the visualizations (null if not yet discovered). */
+  protected static List<String> m_Classnames;
+
+  /** the classnames that were registered explicitly. */
+  protected static Set<String> m_Registered = new LinkedHashSet<String>();
+
+  /** the classes that have been loaded already. */
+  protected static Map<String, Class<?>> m_Classes = new HashMap<String, Class<?>>();
+
+  /** the class loaders for the classnames listed in provider-configuration files. */
+  protected static Map<String, ClassLoader> m_Loaders = new HashMap<String, ClassLoader>();
+
+  /**
+   * Registers the visualization class.
+   *
+   * @param cls		the class to register
+   */
+  public static synchronized void register(Class<? extends AbstractConfusionMatrixVisualization> cls) {
+    m_Classes.put(cls.getName(), cls);
+    register(cls.getName());
+  }
+
+  /**
+   * Registers the visualization class. The class only gets loaded when
+   * instantiated for the first time.
+   *
+   * @param classname	the classname to register
+   */
+  public static synchronized void register(String classname) {
+    m_Registered.add(classname);
+    if ((m_Classnames != null) && !m_Classnames.contains(classname))
+      m_Classnames.add(classname);
+  }
+
+  /**
+   * Returns the class loader for locating provider-configuration files,
+   * i.e., the context class loader of the current thread (like
+   * {@link ServiceLoader#load(Class)}) or, if not set, the one of this class.
+   *
+   * @return		the class loader
+   */
+  protected static ClassLoader getServiceClassLoader() {
+    ClassLoader	result;
+
+    result = Thread.currentThread().getContextClassLoader();
+    if (result == null)
+      result = VisualizationRegistry.class.getClassLoader();
+
+    return result;
+  }
+
+  /**
+   * Reads the classnames from a provider-configuration file: one classname
+   * per line, comments start with '#', UTF-8 encoded.
+   *
+   * @param url		the file to read
+   * @return		the classnames
+   * @throws IOException	if reading fails
+   */
+  protected static List<String> readServiceFile(URL url) throws IOException {
+    List<String>	result;
+    BufferedReader	reader;
+    String		line;
+    int			pos;
+
+    result = new ArrayList<String>();
+    reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+    try {
+      while ((line = reader.readLine()) != null) {
+	pos = line.indexOf('#');
+	if (pos > -1)
+	  line = line.substring(0, pos);
+	line = line.trim();
+	if (line.length() > 0)
+	  result.add(line);
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Discovers the visualizations.
+   *
+   * @return		the classnames
+   */
+  protected static List<String> discover() {
+    Set<String>		result;
+    ClassLoader		loader;
+    Enumeration<URL>	urls;
+
+    result = new LinkedHashSet<String>();
+    result.addAll(ClassDiscovery.find(AbstractConfusionMatrixVisualization.class, VisualizationRegistry.class.getPackage().getName()));
+    try {
+      loader = getServiceClassLoader();
+      urls   = loader.getResources(SERVICE_FILE);
+      while (urls.hasMoreElements()) {
+	for (String classname: readServiceFile(urls.nextElement())) {
+	  if (!m_Loaders.containsKey(classname))
+	    m_Loaders.put(classname, loader);
+	  result.add(classname);
+	}
+      }
+    }
+    catch (Exception e) {
+      System.err.println("Failed to read confusion matrix visualizations from " + SERVICE_FILE + ":");
+      e.printStackTrace();
+    }
+    result.addAll(m_Registered);
+
+    return new ArrayList<String>(result);
+  }
+
+  /**
+   * Returns the classnames of all available visualizations. Performs the
+   * discovery if necessary.
+   *
+   * @return		the classnames
+   */
+  public static synchronized List<String> getClassnames() {
+    if (m_Classnames == null)
+      m_Classnames = discover();
+    return new ArrayList<String>(m_Classnames);
+  }
+
+  /**
+   * Forces a new discovery the next time the visualizations get requested,
+   * e.g., after new packages got loaded. Explicitly registered classes are
+   * kept.
+   */
+  public static synchronized void refresh() {
+    m_Classnames = null;
+    m_Classes.keySet().retainAll(m_Registered);
+    m_Loaders.clear();
+  }
+
+  /**
+   * Instantiates the visualization, loads the class if necessary (via the
+   * class loader of the provider-configuration file that listed it, if
+   * any).
+   *
+   * @param classname	the visualization to instantiate
+   * @return		the new instance
+   * @throws Exception	if loading or instantiation fails
+   */
+  public static AbstractConfusionMatrixVisualization newInstance(String classname) throws Exception {
+    Class<?>	cls;
+    ClassLoader	loader;
+
+    synchronized(VisualizationRegistry.class) {
+      cls = m_Classes.get(classname);
+      if (cls == null) {
+	loader = m_Loaders.get(classname);
+	if (loader == null)
+	  cls = Class.forName(classname);
+	else
+	  cls = Class.forName(classname, true, loader);
+	m_Classes.put(classname, cls);
+      }
+    }
+
+    return (AbstractConfusionMatrixVisualization) cls.newInstance();
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * AbstractConfusionMatrixTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Ancestor for behavioral tests of the matrix representations: the
+ * representations get compared cell by cell against the dense
+ * {@link ConfusionMatrix} built from the same predictions.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public abstract class AbstractConfusionMatrixTest
+  extends TestCase {
+
+  /** the tolerance when comparing counts. */
+  public final static double TOLERANCE = 1e-9;
+
+  /**
+   * Prediction with a weight.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class WeightedPrediction
+    extends AbstractPerformanceTest.TestPrediction {
+
+    /** the weight. */
+    protected double m_Weight;
+
+    /**
+     * Initializes the prediction.
+     *
+     * @param actual	the actual class label
+     * @param predicted	the predicted class label
+     * @param weight	the weight
+     */
+    public WeightedPrediction(int actual, int predicted, double weight) {
+      super(actual, predicted);
+      m_Weight = weight;
+    }
+
+    /**
+     * Returns the weight.
+     *
+     * @return		the weight
+     */
+    @Override
+    public double weight() {
+      return m_Weight;
+    }
+  }
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public AbstractConfusionMatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns a class attribute.
+   *
+   * @param numClasses	the number of class labels
+   * @return		the attribute
+   */
+  protected static Attribute newClassAttribute(int numClasses) {
+    return AbstractPerformanceTest.newClassAttribute(numClasses);
+  }
+
+  /**
+   * Returns random predictions with weight 1, 80% of them correct.
+   *
+   * @param numClasses	the number of class labels
+   * @param numPredictions	the number of predictions
+   * @return		the predictions
+   */
+  protected static List<Prediction> newPredictions(int numClasses, int numPredictions) {
+    return AbstractPerformanceTest.newPredictions(numClasses, numPredictions);
+  }
+
+  /**
+   * Returns random predictions with non-integral weights, 80% of them
+   * correct.
+   *
+   * @param numClasses	the number of class labels
+   * @param numPredictions	the number of predictions
+   * @return		the predictions
+   */
+  protected static List<Prediction> newWeightedPredictions(int numClasses, int numPredictions) {
+    List<Prediction>	result;
+    Random		rnd;
+    int			actual;
+    int			i;
+
+    result = new ArrayList<Prediction>(numPredictions);
+    rnd    = new Random(AbstractPerformanceTest.SEED);
+    for (i = 0; i < numPredictions; i++) {
+      actual = rnd.nextInt(numClasses);
+      result.add(new WeightedPrediction(
+	  actual, (rnd.nextDouble() < 0.8) ? actual : rnd.nextInt(numClasses), 0.25 + rnd.nextInt(8) * 0.5));
+    }
+
+    return result;
+  }
+
+  /**
+   * Serializes and deserializes the matrix.
+   *
+   * @param matrix	the matrix to serialize
+   * @return		the deserialized matrix
+   * @throws Exception	if serialization fails
+   */
+  protected static ConfusionMatrix serialize(ConfusionMatrix matrix) throws Exception {
+    ByteArrayOutputStream	bos;
+    ObjectOutputStream		oos;
+    ObjectInputStream		ois;
+
+    bos = new ByteArrayOutputStream();
+    oos = new ObjectOutputStream(bos);
+    oos.writeObject(matrix);
+    oos.close();
+    ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    try {
+      return (ConfusionMatrix) ois.readObject();
+    }
+    finally {
+      ois.close();
+    }
+  }
+
+  /**
+   * Asserts that the matrices have the same labels, counts (cells, rows and
+   * dense copy) and aggregates.
+   *
+   * @param msg		the message prefix
+   * @param expected	the expected matrix
+   * @param actual	the matrix to check
+   */
+  protected static void assertMatrixEquals(String msg, ConfusionMatrix expected, ConfusionMatrix actual) {
+    double[][]	dense;
+    double[]	row;
+    int		numClasses;
+    int		i;
+    int		n;
+
+    numClasses = expected.getNumClasses();
+    assertEquals(msg + ": number of classes", numClasses, actual.getNumClasses());
+    for (i = 0; i < numClasses; i++)
+      assertEquals(msg + ": label " + i, expected.getLabels()[i], actual.getLabels()[i]);
+
+    dense = actual.getMatrix();
+    row   = new double[numClasses];
+    for (i = 0; i < numClasses; i++) {
+      actual.getRow(i, row);
+      for (n = 0; n < numClasses; n++) {
+	assertEquals(msg + ": value " + i + "/" + n, expected.getValue(i, n), actual.getValue(i, n), TOLERANCE);
+	assertEquals(msg + ": row " + i + "/" + n, expected.getValue(i, n), row[n], TOLERANCE);
+	assertEquals(msg + ": matrix " + i + "/" + n, expected.getValue(i, n), dense[i][n], TOLERANCE);
+      }
+      assertEquals(msg + ": total " + i, expected.getTotal(i), actual.getTotal(i), TOLERANCE);
+      assertEquals(msg + ": correct " + i, expected.getCorrect(i), actual.getCorrect(i), TOLERANCE);
+    }
+    assertEquals(msg + ": total", expected.getTotal(), actual.getTotal(), TOLERANCE);
+    assertEquals(msg + ": correct", expected.getCorrect(), actual.getCorrect(), TOLERANCE);
+    assertEquals(msg + ": max", expected.getMax(), actual.getMax(), TOLERANCE);
+    assertEquals(msg + ": min", expected.getMin(), actual.getMin(), TOLERANCE);
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * AbstractPerformanceTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Ancestor for performance-contract tests: allocations get measured with
+ * the allocation counter of the current thread (checks get skipped if the
+ * JVM doesn't provide one), timings are the minimum of several runs after
+ * warming up. The bounds are generous, so that the tests only fail if the
+ * complexity of a hot path changes (e.g., allocating per prediction or
+ * quadratic instead of linear scaling), not because of a busy machine.
+ * <p/>
+ * The absolute per-operation bounds can be scaled for slow build machines
+ * via the system property {@link #PROPERTY_TIME_FACTOR} (e.g.,
+ * -Dconfusionmatrix.perf.factor=4).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public abstract class AbstractPerformanceTest
+  extends TestCase {
+
+  /** the seed for the random numbers. */
+  public final static long SEED = 42;
+
+  /** the number of warm-up runs. */
+  public final static int NUM_WARMUP = 10;
+
+  /** the number of measured runs (minimum gets used). */
+  public final static int NUM_RUNS = 5;
+
+  /** the factor by which linear scaling may be exceeded. */
+  public final static double LINEAR_TOLERANCE = 2.5;
+
+  /** the bytes that may get allocated when "allocation-free". */
+  public final static long ALLOCATION_SLACK = 16 * 1024;
+
+  /** the system property for scaling the absolute time bounds. */
+  public final static String PROPERTY_TIME_FACTOR = "confusionmatrix.perf.factor";
+
+  /**
+   * Prediction without class distribution.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class TestPrediction
+    implements Prediction {
+
+    /** the actual class label. */
+    protected int m_Actual;
+
+    /** the predicted class label. */
+    protected int m_Predicted;
+
+    /**
+     * Initializes the prediction.
+     *
+     * @param actual	the actual class label
+     * @param predicted	the predicted class label
+     */
+    public TestPrediction(int actual, int predicted) {
+      m_Actual    = actual;
+      m_Predicted = predicted;
+    }
+
+    /**
+     * Returns the weight.
+     *
+     * @return		always 1
+     */
+    @Override
+    public double weight() {
+      return 1.0;
+    }
+
+    /**
+     * Returns the actual class label.
+     *
+     * @return		the label
+     */
+    @Override
+    public double actual() {
+      return m_Actual;
+    }
+
+    /**
+     * Returns the predicted class label.
+     *
+     * @return		the label
+     */
+    @Override
+    public double predicted() {
+      return m_Predicted;
+    }
+  }
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public AbstractPerformanceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Disables the metrics, which would allocate while measuring.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ConfusionMatrixMetrics.setEnabled(false);
+  }
+
+  /**
+   * Returns a class attribute.
+   *
+   * @param numClasses	the number of class labels
+   * @return		the attribute
+   */
+  protected static Attribute newClassAttribute(int numClasses) {
+    List<String>	labels;
+    int			i;
+
+    labels = new ArrayList<String>();
+    for (i = 0; i < numClasses; i++)
+      labels.add("c" + i);
+
+    return new Attribute("class", labels);
+  }
+
+  /**
+   * Returns random predictions, 80% of them correct.
+   *
+   * @param numClasses	the number of class labels
+   * @param numPredictions	the number of predictions
+   * @return		the predictions
+   */
+  protected static List<Prediction> newPredictions(int numClasses, int numPredictions) {
+    List<Prediction>	result;
+    Random		rnd;
+    int			actual;
+    int			i;
+
+    result = new ArrayList<Prediction>(numPredictions);
+    rnd    = new Random(SEED);
+    for (i = 0; i < numPredictions; i++) {
+      actual = rnd.nextInt(numClasses);
+      result.add(new TestPrediction(actual, (rnd.nextDouble() < 0.8) ? actual : rnd.nextInt(numClasses)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether the JVM can measure the allocated bytes per thread.
+   *
+   * @return		true if supported
+   */
+  protected static boolean isAllocationSupported() {
+    return (ConfusionMatrixMetrics.getAllocatedBytes() >= 0);
+  }
+
+  /**
+   * Runs the task a few times to get it compiled.
+   *
+   * @param task	the task to warm up
+   */
+  protected static void warmUp(Runnable task) {
+    int		i;
+
+    for (i = 0; i < NUM_WARMUP; i++)
+      task.run();
+  }
+
+  /**
+   * Returns the bytes allocated by the task (minimum of several runs,
+   * corrected by the overhead of measuring).
+   *
+   * @param task	the task to measure
+   * @return		the bytes
+   */
+  protected static long measureAllocation(Runnable task) {
+    long	result;
+    long	overhead;
+    long	start;
+    int		i;
+
+    warmUp(task);
+    overhead = Long.MAX_VALUE;
+    result   = Long.MAX_VALUE;
+    for (i = 0; i < NUM_RUNS; i++) {
+      start    = ConfusionMatrixMetrics.getAllocatedBytes();
+      overhead = Math.min(overhead, ConfusionMatrixMetrics.getAllocatedBytes() - start);
+      start    = ConfusionMatrixMetrics.getAllocatedBytes();
+      task.run();
+      result   = Math.min(result, ConfusionMatrixMetrics.getAllocatedBytes() - start);
+    }
+
+    return Math.max(0, result - overhead);
+  }
+
+  /**
+   * Returns the time the task took (minimum of several runs).
+   *
+   * @param task	the task to measure
+   * @return		the time in nsec
+   */
+  protected static long measureTime(Runnable task) {
+    long	result;
+    long	start;
+    int		i;
+
+    warmUp(task);
+    result = Long.MAX_VALUE;
+    for (i = 0; i < NUM_RUNS; i++) {
+      start  = System.nanoTime();
+      task.run();
+      result = Math.min(result, System.nanoTime() - start);
+    }
+
+    return Math.max(1, result);
+  }
+
+  /**
+   * Asserts that the time grows at most linearly (within
+   * {@link #LINEAR_TOLERANCE}) with the size of the input.
+   *
+   * @param msg		the message
+   * @param timeSmall	the time for the small input
+   * @param timeLarge	the time for the large input
+   * @param factor	the factor by which the large input is larger
+   */
+  protected static void assertLinear(String msg, long timeSmall, long timeLarge, double factor) {
+    double	ratio;
+
+    ratio = (double) timeLarge / (double) timeSmall;
+    assertTrue(
+	msg + ": expected time to grow by at most " + (factor * LINEAR_TOLERANCE)
+	+ " (input x" + factor + "), but grew by " + ratio
+	+ " (" + timeSmall + "ns -> " + timeLarge + "ns)",
+	ratio <= factor * LINEAR_TOLERANCE);
+  }
+
+  /**
+   * Returns the factor to scale the absolute time bounds with.
+   *
+   * @return		the factor, 1 if the property is not set or invalid
+   */
+  protected static double getTimeFactor() {
+    String	prop;
+
+    prop = System.getProperty(PROPERTY_TIME_FACTOR);
+    if (prop == null)
+      return 1.0;
+    try {
+      return Math.max(1.0, Double.parseDouble(prop));
+    }
+    catch (NumberFormatException e) {
+      return 1.0;
+    }
+  }
+
+  /**
+   * Asserts that the time per operation stays below the bound (scaled by
+   * {@link #getTimeFactor()}).
+   *
+   * @param msg		the message
+   * @param time	the time in nsec for all operations
+   * @param numOps	the number of operations
+   * @param maxNanos	the maximum time per operation in nsec
+   */
+  protected static void assertNanosPerOp(String msg, long time, long numOps, long maxNanos) {
+    double	perOp;
+    double	max;
+
+    perOp = (double) time / (double) numOps;
+    max   = maxNanos * getTimeFactor();
+    assertTrue(
+	msg + ": expected at most " + max + "ns per operation, but took " + perOp + "ns"
+	+ " (" + numOps + " operations in " + time + "ns)",
+	perOp <= max);
+  }
+
+  /**
+   * Asserts that (close to) no bytes got allocated.
+   *
+   * @param msg		the message
+   * @param bytes	the allocated bytes
+   */
+  protected static void assertAllocationFree(String msg, long bytes) {
+    assertTrue(
+	msg + ": expected at most " + ALLOCATION_SLACK + " bytes to be allocated, but were " + bytes,
+	bytes <= ALLOCATION_SLACK);
+  }
+}
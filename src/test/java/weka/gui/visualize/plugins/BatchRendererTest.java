@@ -0,0 +1,307 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * BatchRendererTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests the batch renderer on small CSV inputs.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class BatchRendererTest
+  extends TestCase {
+
+  /** the directory for the inputs and outputs. */
+  protected File m_TempDir;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public BatchRendererTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates an empty temporary directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_TempDir = File.createTempFile("batch", "");
+    assertTrue("Failed to delete: " + m_TempDir, m_TempDir.delete());
+    assertTrue("Failed to create: " + m_TempDir, m_TempDir.mkdirs());
+  }
+
+  /**
+   * Deletes the temporary directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    delete(m_TempDir);
+
+    super.tearDown();
+  }
+
+  /**
+   * Deletes the file or directory (recursively).
+   *
+   * @param file	the file to delete
+   */
+  protected static void delete(File file) {
+    File[]	files;
+
+    files = file.listFiles();
+    if (files != null) {
+      for (File f: files)
+	delete(f);
+    }
+    file.delete();
+  }
+
+  /**
+   * Writes a CSV file with the actual and predicted labels.
+   *
+   * @param name	the name of the file
+   * @param rows	the rows (actual, predicted)
+   * @return		the file
+   * @throws IOException	if writing fails
+   */
+  protected File writeCSV(String name, String[][] rows) throws IOException {
+    File		result;
+    BufferedWriter	writer;
+
+    result = new File(m_TempDir, name);
+    writer = new BufferedWriter(new FileWriter(result));
+    try {
+      writer.write("actual,predicted");
+      writer.newLine();
+      for (String[] row: rows) {
+	writer.write(row[0] + "," + row[1]);
+	writer.newLine();
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the 0-based index of the label.
+   *
+   * @param matrix	the matrix to search
+   * @param label	the label to look for
+   * @return		the index, -1 if not found
+   */
+  protected static int indexOf(ConfusionMatrix matrix, String label) {
+    String[]	labels;
+    int		i;
+
+    labels = matrix.getLabels();
+    for (i = 0; i < labels.length; i++) {
+      if (labels[i].equals(label))
+	return i;
+    }
+
+    return -1;
+  }
+
+  /**
+   * The matrix of a dataset must contain the counts of the label pairs.
+   *
+   * @throws Exception	if loading fails
+   */
+  public void testLoadDataset() throws Exception {
+    BatchRenderer	renderer;
+    ConfusionMatrix	matrix;
+    File		input;
+    int			a;
+    int			b;
+    int			c;
+
+    input = writeCSV("input.csv", new String[][]{
+	{"a", "a"}, {"a", "b"}, {"b", "b"}, {"b", "b"}, {"c", "a"}, {"a", "a"}});
+    renderer = new BatchRenderer();
+    renderer.setOptions(new String[]{"-input", input.getAbsolutePath()});
+    matrix = renderer.load(input);
+
+    assertEquals("Number of classes", 3, matrix.getNumClasses());
+    a = indexOf(matrix, "a");
+    b = indexOf(matrix, "b");
+    c = indexOf(matrix, "c");
+    assertEquals("a -> a", 2.0, matrix.getValue(a, a));
+    assertEquals("a -> b", 1.0, matrix.getValue(a, b));
+    assertEquals("b -> b", 2.0, matrix.getValue(b, b));
+    assertEquals("c -> a", 1.0, matrix.getValue(c, a));
+    assertEquals("Total", 6.0, matrix.getTotal());
+    assertEquals("Correct", 4.0, matrix.getCorrect());
+  }
+
+  /**
+   * Rendering several inputs concurrently must produce one output per input
+   * and visualization.
+   *
+   * @throws Exception	if rendering fails
+   */
+  public void testExecute() throws Exception {
+    BatchRenderer			renderer;
+    List<BatchRenderer.JobResult>	results;
+    File				output;
+    File				input1;
+    File				input2;
+
+    input1   = writeCSV("input1.csv", new String[][]{{"x", "x"}, {"x", "y"}, {"y", "y"}});
+    input2   = writeCSV("input2.csv", new String[][]{{"p", "q"}, {"q", "q"}, {"r", "p"}, {"r", "r"}});
+    output   = new File(m_TempDir, "out");
+    renderer = new BatchRenderer();
+    renderer.setOptions(new String[]{
+	"-input", input1.getAbsolutePath(),
+	"-input", input2.getAbsolutePath(),
+	"-output-dir", output.getAbsolutePath(),
+	"-visualization", TextVisualization.class.getName(),
+	"-visualization", TableVisualization.class.getName(),
+	"-num-threads", "2",
+	"-timeout", "60"});
+    results = renderer.execute();
+
+    assertEquals("Number of jobs", 4, results.size());
+    for (BatchRenderer.JobResult result: results) {
+      assertNull("Error: " + result, result.error);
+      assertNotNull("Output: " + result, result.output);
+      assertTrue("Output exists: " + result, result.output.exists());
+      assertTrue("Output not empty: " + result, result.output.length() > 0);
+    }
+  }
+
+  /**
+   * Inputs with the same name in different directories must not overwrite
+   * each other's outputs.
+   *
+   * @throws Exception	if rendering fails
+   */
+  public void testUniqueOutputs() throws Exception {
+    BatchRenderer			renderer;
+    List<BatchRenderer.JobResult>	results;
+    File				output;
+    File				input1;
+    File				input2;
+
+    assertTrue(new File(m_TempDir, "a").mkdirs());
+    assertTrue(new File(m_TempDir, "b").mkdirs());
+    input1   = writeCSV("a/x.csv", new String[][]{{"x", "x"}, {"x", "y"}});
+    input2   = writeCSV("b/x.csv", new String[][]{{"p", "q"}, {"q", "q"}});
+    output   = new File(m_TempDir, "out");
+    renderer = new BatchRenderer();
+    renderer.setOptions(new String[]{
+	"-input", input1.getAbsolutePath(),
+	"-input", input2.getAbsolutePath(),
+	"-output-dir", output.getAbsolutePath(),
+	"-visualization", TextVisualization.class.getName(),
+	"-num-threads", "2",
+	"-max-memory", "16"});
+    results = renderer.execute();
+
+    assertEquals("Number of jobs", 2, results.size());
+    assertNull("Error: " + results.get(0), results.get(0).error);
+    assertNull("Error: " + results.get(1), results.get(1).error);
+    assertFalse("Distinct outputs", results.get(0).output.equals(results.get(1).output));
+    assertTrue("Output exists: " + results.get(0), results.get(0).output.exists());
+    assertTrue("Output exists: " + results.get(1), results.get(1).output.exists());
+  }
+
+  /**
+   * Heatmaps of matrices with many class labels must get exported with
+   * smaller squares, within the memory cap, rather than getting skipped.
+   *
+   * @throws Exception	if rendering fails
+   */
+  public void testLargeHeatmap() throws Exception {
+    BatchRenderer			renderer;
+    List<BatchRenderer.JobResult>	results;
+    File				output;
+    File				input;
+    String[][]				rows;
+    BufferedImage			image;
+    int					size;
+    int					i;
+
+    rows = new String[2000][];
+    for (i = 0; i < rows.length; i++)
+      rows[i] = new String[]{"l" + i, "l" + i};
+    size     = rows.length * HeatmapVisualization.getExportSizeSquares(rows.length);
+    assertTrue("Smaller squares", size < rows.length * HeatmapPanel.CELL_SIZE);
+    assertTrue("Within pixel budget", (long) size * (long) size <= HeatmapPanel.MAX_IMAGE_PIXELS);
+    input    = writeCSV("large.csv", rows);
+    output   = new File(m_TempDir, "out");
+    renderer = new BatchRenderer();
+    renderer.setOptions(new String[]{
+	"-input", input.getAbsolutePath(),
+	"-output-dir", output.getAbsolutePath(),
+	"-visualization", HeatmapVisualization.class.getName(),
+	"-max-memory", "128"});
+    results = renderer.execute();
+
+    assertEquals("Number of jobs", 1, results.size());
+    assertNull("Error: " + results.get(0), results.get(0).error);
+    image = ImageIO.read(results.get(0).output);
+    assertEquals("Width", size, image.getWidth());
+    assertEquals("Height", size, image.getHeight());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(BatchRendererTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CSVExporterTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.Utils;
+
+/**
+ * Tests that the {@link CSVExporter} produces the same output as the
+ * former, table model based "save as" of the {@link TableVisualization}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CSVExporterTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 6;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 1000;
+
+  /** the temporary file. */
+  protected File m_File;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public CSVExporterTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the temporary file.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_File = File.createTempFile("matrix", ".csv");
+  }
+
+  /**
+   * Deletes the temporary file.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_File.delete();
+
+    super.tearDown();
+  }
+
+  /**
+   * Generates the output the way the former "save as" did, i.e., quoting
+   * the string representation of every cell of the table model. Uses "\n"
+   * as line separator instead of the platform one.
+   *
+   * @param model	the model to output
+   * @return		the output
+   */
+  protected static String legacySave(ConfusionMatrixTableModel model) {
+    StringBuilder	result;
+    Object		cell;
+    int			i;
+    int			n;
+
+    result = new StringBuilder();
+    // header
+    for (n = 0; n < model.getColumnCount(); n++) {
+      if (n > 0)
+	result.append(",");
+      result.append(Utils.quote(model.getColumnName(n)));
+    }
+    result.append("\n");
+    // data
+    for (i = 0; i < model.getRowCount(); i++) {
+      for (n = 0; n < model.getColumnCount(); n++) {
+	if (n > 0)
+	  result.append(",");
+	cell = model.getValueAt(i, n);
+	if (cell != null)
+	  result.append(Utils.quote(cell.toString()));
+      }
+      result.append("\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Exports the view of the model the way "save as" does.
+   *
+   * @param model	the model to export
+   * @param separator	the separator to use
+   * @return		the output
+   * @throws Exception	if export fails
+   */
+  protected static String export(ConfusionMatrixTableModel model, char separator) throws Exception {
+    CSVExporter		exporter;
+    StringWriter	writer;
+
+    exporter = new CSVExporter(separator);
+    exporter.setRows(model.getClassIndices());
+    exporter.setCostTotals(model.getCostTotals());
+    writer = new StringWriter();
+    exporter.write(model.getMatrix(), writer);
+
+    return writer.toString();
+  }
+
+  /**
+   * Compares the export with the former output.
+   *
+   * @param msg		the message
+   * @param model	the model to export
+   * @throws Exception	if export fails
+   */
+  protected static void assertLegacy(String msg, ConfusionMatrixTableModel model) throws Exception {
+    assertEquals(msg, legacySave(model), export(model, ','));
+  }
+
+  /**
+   * Returns costs that differ per cell, 0 on the diagonal.
+   *
+   * @return		the costs (actual, predicted)
+   */
+  protected static double[][] newCosts() {
+    double[][]	result;
+    int		i;
+    int		n;
+
+    result = new double[NUM_CLASSES][NUM_CLASSES];
+    for (i = 0; i < NUM_CLASSES; i++) {
+      for (n = 0; n < NUM_CLASSES; n++) {
+	if (i != n)
+	  result[i][n] = 0.5 + i + n * 0.25;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Counts and non-integral weights must be output like before.
+   *
+   * @throws Exception	if export fails
+   */
+  public void testValues() throws Exception {
+    Attribute	classAtt;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    assertLegacy("counts", new ConfusionMatrixTableModel(
+	new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt)));
+    assertLegacy("weights", new ConfusionMatrixTableModel(
+	new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt)));
+  }
+
+  /**
+   * Counts beyond the plain notation of Double.toString (1.0E7) must be
+   * output like before.
+   *
+   * @throws Exception	if export fails
+   */
+  public void testLargeCounts() throws Exception {
+    List<Prediction>	preds;
+
+    preds = new ArrayList<Prediction>();
+    preds.add(new WeightedPrediction(0, 0, NumberFormatter.MAX_PLAIN - 1));
+    preds.add(new WeightedPrediction(0, 1, 1));
+    preds.add(new WeightedPrediction(1, 1, NumberFormatter.MAX_PLAIN));
+    preds.add(new WeightedPrediction(1, 0, 123456789));
+    preds.add(new WeightedPrediction(2, 2, 0.1));
+    assertLegacy("large counts", new ConfusionMatrixTableModel(
+	new ConfusionMatrix(preds, newClassAttribute(3))));
+  }
+
+  /**
+   * Labels that require quoting must be output like before.
+   *
+   * @throws Exception	if export fails
+   */
+  public void testQuotedLabels() throws Exception {
+    List<String>	labels;
+    List<Prediction>	preds;
+
+    labels = new ArrayList<String>();
+    labels.add("plain");
+    labels.add("with space");
+    labels.add("with,comma");
+    labels.add("it's");
+    preds  = newPredictions(labels.size(), NUM_PREDICTIONS);
+    assertLegacy("quoted labels", new ConfusionMatrixTableModel(
+	new ConfusionMatrix(preds, new Attribute("class", labels))));
+  }
+
+  /**
+   * The sorted and filtered view and the cost column must be output like
+   * before.
+   *
+   * @throws Exception	if export fails
+   */
+  public void testView() throws Exception {
+    ConfusionMatrix		matrix;
+    ConfusionMatrixTableModel	model;
+
+    matrix = new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    model  = new ConfusionMatrixTableModel(matrix);
+    model.setView(ConfusionMatrixTableModel.SORT_RECALL, true, 0);
+    assertLegacy("sorted", model);
+    model.setView(ConfusionMatrixTableModel.SORT_INCORRECT, false, 0.2);
+    assertTrue("Rows filtered", model.getRowCount() < NUM_CLASSES);
+    assertLegacy("filtered", model);
+
+    model = new ConfusionMatrixTableModel(matrix, newCosts());
+    assertLegacy("supplied costs", model);
+    model.setView(ConfusionMatrixTableModel.SORT_COST, true, 0);
+    assertLegacy("supplied costs, sorted", model);
+
+    matrix = new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES), newCosts());
+    assertLegacy("matrix costs", new ConfusionMatrixTableModel(matrix));
+  }
+
+  /**
+   * Tab-separated output must only differ in the separator, the file
+   * output must be the same as the one of the writer.
+   *
+   * @throws Exception	if export fails
+   */
+  public void testFile() throws Exception {
+    ConfusionMatrixTableModel	model;
+    CSVExporter			exporter;
+    FileInputStream		stream;
+    ByteArrayOutputStream	bytes;
+    byte[]			buffer;
+    int				read;
+
+    model = new ConfusionMatrixTableModel(
+	new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES)));
+    assertEquals("TSV", export(model, ',').replace(',', '\t'), export(model, '\t'));
+
+    exporter = new CSVExporter();
+    assertNull("Written", exporter.write(model.getMatrix(), m_File));
+    bytes  = new ByteArrayOutputStream();
+    buffer = new byte[1024];
+    stream = new FileInputStream(m_File);
+    try {
+      while ((read = stream.read(buffer)) != -1)
+	bytes.write(buffer, 0, read);
+    }
+    finally {
+      stream.close();
+    }
+    assertEquals("File", legacySave(model), new String(bytes.toByteArray(), "UTF-8"));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(CSVExporterTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixBatchTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests that the matrices and merged aggregates of the batch equal the
+ * matrices computed serially from the predictions.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixBatchTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 15;
+
+  /** the number of models. */
+  public final static int NUM_MODELS = 3;
+
+  /** the number of folds. */
+  public final static int NUM_FOLDS = 4;
+
+  /** the number of predictions per model and fold. */
+  public final static int NUM_PREDICTIONS = 500;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixBatchTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the predictions of the model and fold.
+   *
+   * @param preds	all predictions
+   * @param model	the 0-based index of the model
+   * @param fold	the 0-based index of the fold
+   * @return		the predictions
+   */
+  protected static List<Prediction> subset(List<Prediction> preds, int model, int fold) {
+    int		start;
+
+    start = (model * NUM_FOLDS + fold) * NUM_PREDICTIONS;
+
+    return preds.subList(start, start + NUM_PREDICTIONS);
+  }
+
+  /**
+   * Computes the batch with the specified number of threads and compares
+   * all matrices against the serially computed ones.
+   *
+   * @param preds	the predictions of all models and folds
+   * @param numThreads	the number of threads
+   * @throws Exception	if computation fails
+   */
+  protected void check(List<Prediction> preds, int numThreads) throws Exception {
+    Attribute			classAtt;
+    ConfusionMatrixBatch	batch;
+    List<Prediction>		subset;
+    String			msg;
+    int				i;
+    int				n;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    batch    = new ConfusionMatrixBatch(classAtt);
+    batch.setNumThreads(numThreads);
+    for (i = 0; i < NUM_MODELS; i++) {
+      for (n = 0; n < NUM_FOLDS; n++)
+	batch.add("model" + i, n, subset(preds, i, n));
+    }
+    batch.execute();
+    assertTrue("Executed", batch.isExecuted());
+
+    msg = numThreads + " thread(s)";
+    for (i = 0; i < NUM_MODELS; i++) {
+      for (n = 0; n < NUM_FOLDS; n++)
+	assertMatrixEquals(
+	    msg + ", model " + i + ", fold " + n,
+	    new ConfusionMatrix(subset(preds, i, n), classAtt), batch.getMatrix("model" + i, n));
+    }
+
+    for (i = 0; i < NUM_MODELS; i++) {
+      subset = new ArrayList<Prediction>();
+      for (n = 0; n < NUM_FOLDS; n++)
+	subset.addAll(subset(preds, i, n));
+      assertMatrixEquals(msg + ", model " + i, new ConfusionMatrix(subset, classAtt), batch.getModelAggregate("model" + i));
+    }
+
+    for (n = 0; n < NUM_FOLDS; n++) {
+      subset = new ArrayList<Prediction>();
+      for (i = 0; i < NUM_MODELS; i++)
+	subset.addAll(subset(preds, i, n));
+      assertMatrixEquals(msg + ", fold " + n, new ConfusionMatrix(subset, classAtt), batch.getFoldAggregate(n));
+    }
+
+    assertMatrixEquals(msg + ", overall", new ConfusionMatrix(preds, classAtt), batch.getAggregate());
+  }
+
+  /**
+   * Merging integral counts must equal the serial computation.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testIntegral() throws Exception {
+    List<Prediction>	preds;
+
+    preds = newPredictions(NUM_CLASSES, NUM_MODELS * NUM_FOLDS * NUM_PREDICTIONS);
+    check(preds, 1);
+    check(preds, 4);
+  }
+
+  /**
+   * Merging non-integral counts must equal the serial computation.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testWeighted() throws Exception {
+    List<Prediction>	preds;
+
+    preds = newWeightedPredictions(NUM_CLASSES, NUM_MODELS * NUM_FOLDS * NUM_PREDICTIONS);
+    check(preds, 1);
+    check(preds, 4);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixBatchTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
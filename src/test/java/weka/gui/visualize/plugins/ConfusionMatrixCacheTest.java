@@ -0,0 +1,379 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixCacheTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests that the {@link ConfusionMatrixCache} shares built matrices and
+ * pending builds, and only cancels a pending build once all callers waiting
+ * for it have cancelled.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixCacheTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 10;
+
+  /** the number of predictions (more than one progress interval). */
+  public final static int NUM_PREDICTIONS = ConfusionMatrixCache.PROGRESS_INTERVAL + 50000;
+
+  /** the maximum time in seconds to wait for a build. */
+  public final static int TIMEOUT = 60;
+
+  /**
+   * Monitor that can get cancelled and that blocks the build when the first
+   * progress gets reported, until released.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class TestMonitor
+    implements ConfusionMatrixCache.BuildMonitor {
+
+    /** whether to block. */
+    protected boolean m_Blocking;
+
+    /** counted down once the build is blocked. */
+    protected CountDownLatch m_Blocked = new CountDownLatch(1);
+
+    /** counted down to release the build. */
+    protected CountDownLatch m_Release = new CountDownLatch(1);
+
+    /** whether cancelled. */
+    protected volatile boolean m_Cancelled;
+
+    /** the number of progress reports received. */
+    protected volatile int m_NumProgress;
+
+    /**
+     * Initializes the monitor.
+     *
+     * @param blocking	whether to block the build at the first progress
+     */
+    public TestMonitor(boolean blocking) {
+      super();
+      m_Blocking = blocking;
+    }
+
+    /**
+     * Cancels the build.
+     */
+    public void cancel() {
+      m_Cancelled = true;
+    }
+
+    /**
+     * Returns whether cancelled.
+     *
+     * @return		true if cancelled
+     */
+    @Override
+    public boolean isCancelled() {
+      return m_Cancelled;
+    }
+
+    /**
+     * Counts the progress and blocks at the first report, if blocking.
+     *
+     * @param processed	the number of predictions processed so far
+     * @param total	the total number of predictions
+     */
+    @Override
+    public void progress(int processed, int total) {
+      m_NumProgress++;
+      if (m_Blocking && (processed == 0)) {
+	m_Blocked.countDown();
+	try {
+	  m_Release.await(TIMEOUT, TimeUnit.SECONDS);
+	}
+	catch (InterruptedException e) {
+	  // ignored
+	}
+      }
+    }
+
+    /**
+     * Waits until the build is blocked.
+     *
+     * @throws Exception	if interrupted or timed out
+     */
+    public void awaitBlocked() throws Exception {
+      assertTrue("Build blocked", m_Blocked.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Releases the build.
+     */
+    public void release() {
+      m_Release.countDown();
+    }
+  }
+
+  /**
+   * Thread that obtains the matrix from the cache.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class GetThread
+    extends Thread {
+
+    /** the predictions. */
+    protected List<Prediction> m_Predictions;
+
+    /** the class attribute. */
+    protected Attribute m_ClassAttribute;
+
+    /** the monitor. */
+    protected TestMonitor m_Monitor;
+
+    /** the obtained matrix. */
+    protected volatile ConfusionMatrix m_Result;
+
+    /**
+     * Initializes the thread.
+     *
+     * @param preds	the predictions
+     * @param classAtt	the class attribute
+     * @param monitor	the monitor
+     */
+    public GetThread(List<Prediction> preds, Attribute classAtt, TestMonitor monitor) {
+      super();
+      m_Predictions    = preds;
+      m_ClassAttribute = classAtt;
+      m_Monitor        = monitor;
+    }
+
+    /**
+     * Obtains the matrix.
+     */
+    @Override
+    public void run() {
+      m_Result = ConfusionMatrixCache.get(m_Predictions, m_ClassAttribute, m_Monitor);
+    }
+
+    /**
+     * Waits for the thread to finish and returns the matrix.
+     *
+     * @return		the matrix, null if cancelled
+     * @throws Exception	if interrupted
+     */
+    public ConfusionMatrix getResult() throws Exception {
+      join(TIMEOUT * 1000L);
+      assertFalse("Finished", isAlive());
+      return m_Result;
+    }
+  }
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixCacheTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Clears the cache.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ConfusionMatrixCache.clear();
+  }
+
+  /**
+   * Waits until the specified number of callers waits for the pending
+   * build of the predictions.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param numWaiting	the number of callers
+   * @throws Exception	if interrupted or timed out
+   */
+  protected static void awaitWaiting(List<Prediction> preds, Attribute classAtt, int numWaiting) throws Exception {
+    ConfusionMatrixCache.PendingBuild	pending;
+    long				end;
+
+    end = System.currentTimeMillis() + TIMEOUT * 1000L;
+    while (System.currentTimeMillis() < end) {
+      synchronized(ConfusionMatrixCache.class) {
+	pending = ConfusionMatrixCache.m_Pending.get(new ConfusionMatrixCache.Key(preds, classAtt, null));
+      }
+      if (pending != null) {
+	synchronized(pending) {
+	  if (pending.m_NumWaiting == numWaiting)
+	    return;
+	}
+      }
+      Thread.sleep(10);
+    }
+    fail("Callers waiting for the build: " + numWaiting);
+  }
+
+  /**
+   * A built matrix must get shared, but rebuilt if the number of
+   * predictions changes.
+   */
+  public void testShared() {
+    List<Prediction>	preds;
+    Attribute		classAtt;
+    ConfusionMatrix	matrix;
+
+    preds    = newPredictions(NUM_CLASSES, 1000);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    matrix   = ConfusionMatrixCache.get(preds, classAtt);
+    assertSame("Shared", matrix, ConfusionMatrixCache.get(preds, classAtt, new TestMonitor(false)));
+    preds.add(preds.get(0));
+    assertNotSame("Rebuilt", matrix, ConfusionMatrixCache.get(preds, classAtt));
+    assertEquals("Total", 1001.0, ConfusionMatrixCache.get(preds, classAtt).getTotal(), TOLERANCE);
+  }
+
+  /**
+   * A caller asking for a matrix that is still getting built must wait for
+   * that build and receive its progress.
+   *
+   * @throws Exception	if interrupted or timed out
+   */
+  public void testPendingShared() throws Exception {
+    List<Prediction>	preds;
+    Attribute		classAtt;
+    TestMonitor		first;
+    TestMonitor		second;
+    GetThread		thread1;
+    GetThread		thread2;
+
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    first    = new TestMonitor(true);
+    second   = new TestMonitor(false);
+    thread1  = new GetThread(preds, classAtt, first);
+    thread1.start();
+    first.awaitBlocked();
+    thread2  = new GetThread(preds, classAtt, second);
+    thread2.start();
+    awaitWaiting(preds, classAtt, 2);
+    first.release();
+
+    assertNotNull("First", thread1.getResult());
+    assertSame("Same build", thread1.getResult(), thread2.getResult());
+    assertTrue("Progress forwarded", second.m_NumProgress > 0);
+    assertEquals("Total", (double) NUM_PREDICTIONS, thread2.getResult().getTotal(), TOLERANCE);
+    assertSame("Cached", thread1.getResult(), ConfusionMatrixCache.get(preds, classAtt));
+  }
+
+  /**
+   * Cancelling one of the callers must not cancel the build for the other
+   * ones, regardless of which caller started it.
+   *
+   * @throws Exception	if interrupted or timed out
+   */
+  public void testCancelOne() throws Exception {
+    List<Prediction>	preds;
+    Attribute		classAtt;
+    TestMonitor		first;
+    TestMonitor		second;
+    GetThread		thread1;
+    GetThread		thread2;
+
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    first    = new TestMonitor(true);
+    second   = new TestMonitor(false);
+    thread1  = new GetThread(preds, classAtt, first);
+    thread1.start();
+    first.awaitBlocked();
+    thread2  = new GetThread(preds, classAtt, second);
+    thread2.start();
+    awaitWaiting(preds, classAtt, 2);
+    first.cancel();
+    first.release();
+
+    assertNull("Cancelled caller", thread1.getResult());
+    assertNotNull("Other caller", thread2.getResult());
+    assertEquals("Total", (double) NUM_PREDICTIONS, thread2.getResult().getTotal(), TOLERANCE);
+  }
+
+  /**
+   * The build must get cancelled once all callers have cancelled, without
+   * caching anything.
+   *
+   * @throws Exception	if interrupted or timed out
+   */
+  public void testCancelAll() throws Exception {
+    List<Prediction>	preds;
+    Attribute		classAtt;
+    TestMonitor		first;
+    TestMonitor		second;
+    GetThread		thread1;
+    GetThread		thread2;
+
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    first    = new TestMonitor(true);
+    second   = new TestMonitor(false);
+    thread1  = new GetThread(preds, classAtt, first);
+    thread1.start();
+    first.awaitBlocked();
+    thread2  = new GetThread(preds, classAtt, second);
+    thread2.start();
+    awaitWaiting(preds, classAtt, 2);
+    second.cancel();
+    first.cancel();
+    first.release();
+
+    assertNull("First caller", thread1.getResult());
+    assertNull("Second caller", thread2.getResult());
+    assertEquals("Nothing cached", 0, ConfusionMatrixCache.size());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixCacheTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
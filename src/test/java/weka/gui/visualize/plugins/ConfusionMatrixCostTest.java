@@ -0,0 +1,277 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixCostTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests evaluating a cost matrix, while accumulating the predictions as
+ * well as afterwards, and the visualizations that use costs.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixCostTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 8;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 2000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixCostTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns costs that differ per cell, 0 on the diagonal.
+   *
+   * @param numClasses	the number of class labels
+   * @return		the costs (actual, predicted)
+   */
+  protected static double[][] newCosts(int numClasses) {
+    double[][]	result;
+    int		i;
+    int		n;
+
+    result = new double[numClasses][numClasses];
+    for (i = 0; i < numClasses; i++) {
+      for (n = 0; n < numClasses; n++) {
+	if (i != n)
+	  result[i][n] = 1 + i + 0.5 * n;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the costs as Weka cost matrix.
+   *
+   * @param costs	the costs (actual, predicted)
+   * @return		the cost matrix
+   */
+  protected static CostMatrix toCostMatrix(double[][] costs) {
+    CostMatrix	result;
+    int		i;
+    int		n;
+
+    result = new CostMatrix(costs.length);
+    for (i = 0; i < costs.length; i++) {
+      for (n = 0; n < costs.length; n++)
+	result.setElement(i, n, costs[i][n]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Compares the cost totals against the costs summed up per prediction.
+   *
+   * @param msg		the message prefix
+   * @param preds	the predictions
+   * @param costs	the costs
+   * @param matrix	the matrix to check
+   */
+  protected static void assertCosts(String msg, List<Prediction> preds, double[][] costs, ConfusionMatrix matrix) {
+    double[]	totals;
+    double	total;
+    int		i;
+
+    totals = new double[NUM_CLASSES];
+    for (Prediction pred: preds)
+      totals[(int) pred.actual()] += pred.weight() * costs[(int) pred.actual()][(int) pred.predicted()];
+
+    assertTrue(msg + ": has costs", matrix.hasCosts());
+    total = 0;
+    for (i = 0; i < NUM_CLASSES; i++) {
+      assertEquals(msg + ": cost " + i, totals[i], matrix.getCost(i), 1e-6);
+      assertEquals(msg + ": expected cost " + i, totals[i] / matrix.getTotal(i), matrix.getExpectedCost(i), 1e-6);
+      total += totals[i];
+    }
+    assertEquals(msg + ": cost", total, matrix.getCost(), 1e-6);
+    assertEquals(msg + ": expected cost", total / matrix.getTotal(), matrix.getExpectedCost(), 1e-6);
+  }
+
+  /**
+   * The costs evaluated while accumulating must equal the costs summed up
+   * per prediction and the ones evaluated afterwards, for all in-heap
+   * representations.
+   */
+  public void testCosts() {
+    Attribute		classAtt;
+    List<Prediction>	preds;
+    double[][]		costs;
+    ConfusionMatrix	matrix;
+    int[]		representations;
+    String		msg;
+
+    classAtt        = newClassAttribute(NUM_CLASSES);
+    preds           = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    costs           = newCosts(NUM_CLASSES);
+    representations = new int[]{
+	MatrixFootprint.REPRESENTATION_DENSE,
+	MatrixFootprint.REPRESENTATION_SPARSE};
+    for (int representation: representations) {
+      msg    = MatrixFootprint.toString(representation);
+      matrix = ConfusionMatrix.newInstance(classAtt, null, preds, costs, representation);
+      assertCosts(msg + ", same pass", preds, costs, matrix);
+      matrix = ConfusionMatrix.newInstance(classAtt, null, preds, null, representation);
+      assertFalse(msg + ": no costs", matrix.hasCosts());
+      assertEquals(msg + ": no costs", 0.0, matrix.getCost());
+      matrix.setCosts(costs);
+      assertCosts(msg + ", set afterwards", preds, costs, matrix);
+      assertCosts(msg + ", clone", preds, costs, matrix.clone());
+    }
+
+    preds  = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    matrix = ConfusionMatrix.newInstance(classAtt, null, preds, costs, MatrixFootprint.REPRESENTATION_INTEGER);
+    assertCosts("integer, same pass", preds, costs, matrix);
+    matrix = new ConfusionMatrix(preds, classAtt, toCostMatrix(costs));
+    assertCosts("cost matrix", preds, costs, matrix);
+  }
+
+  /**
+   * Costs that don't match the class attribute must get rejected.
+   */
+  public void testMismatch() {
+    ConfusionMatrix	matrix;
+
+    matrix = new ConfusionMatrix(newPredictions(NUM_CLASSES, 100), newClassAttribute(NUM_CLASSES));
+    try {
+      matrix.setCosts(newCosts(NUM_CLASSES + 1));
+      fail("Costs with wrong dimensions accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * The cells of the cost matrix must be count times cost.
+   */
+  public void testToCosts() {
+    ConfusionMatrix	matrix;
+    ConfusionMatrix	cells;
+    double[][]		costs;
+    int			i;
+    int			n;
+
+    costs  = newCosts(NUM_CLASSES);
+    matrix = new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES), costs);
+    cells  = matrix.toCosts();
+    for (i = 0; i < NUM_CLASSES; i++) {
+      for (n = 0; n < NUM_CLASSES; n++)
+	assertEquals("Cell " + i + "/" + n, matrix.getValue(i, n) * costs[i][n], cells.getValue(i, n), 1e-6);
+    }
+  }
+
+  /**
+   * Compares the cost column of the table model with the totals of the
+   * cell costs.
+   *
+   * @param msg		the message prefix
+   * @param cells	the costs of the cells
+   * @param model	the model to check
+   */
+  protected static void assertTableCosts(String msg, ConfusionMatrix cells, ConfusionMatrixTableModel model) {
+    int		i;
+    int		column;
+
+    column = model.getColumnCount() - 1;
+    assertEquals(msg + ": cost column", "cost", model.getColumnName(column));
+    for (i = 0; i < cells.getNumClasses(); i++)
+      assertEquals(msg + ": cost " + i, cells.getTotal(i), model.getDoubleAt(i, column), 1e-6);
+  }
+
+  /**
+   * The cost matrix of a visualization must only apply to the matrices it
+   * displays, not to the matrix itself or to other visualizations.
+   */
+  public void testVisualizations() {
+    ConfusionMatrix		matrix;
+    double[][]			costs;
+    TableVisualization		table;
+    CostHeatmapVisualization	heatmap;
+    ConfusionMatrixTableModel	model;
+
+    costs  = newCosts(NUM_CLASSES);
+    matrix = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+
+    table = new TableVisualization();
+    model = table.createModel(matrix);
+    assertFalse("Table without costs", model.hasCosts());
+    model = table.createModel(matrix, toCostMatrix(costs));
+    assertTrue("Table with display costs", model.hasCosts());
+    assertSame("Table shares matrix", matrix, model.getMatrix());
+    assertTableCosts("Table with display costs", matrix.toCosts(costs), model);
+    assertNull("Display costs not stored", table.getCosts());
+    table.setCosts(toCostMatrix(costs));
+    model = table.createModel(matrix);
+    assertTrue("Table with costs", model.hasCosts());
+    assertTableCosts("Table with costs", matrix.toCosts(costs), model);
+    assertFalse("Matrix unchanged", matrix.hasCosts());
+
+    heatmap = new CostHeatmapVisualization();
+    assertNull("Heatmap without costs", heatmap.getExportExtension());
+    try {
+      heatmap.prepare(matrix);
+      fail("Heatmap prepared without costs");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    assertNull("Costs of other visualization", heatmap.getCosts());
+    heatmap.setCosts(toCostMatrix(costs));
+    assertNotNull("Heatmap with costs", heatmap.getExportExtension());
+    assertMatrixEquals("Heatmap", matrix.toCosts(costs), heatmap.prepare(matrix));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixCostTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
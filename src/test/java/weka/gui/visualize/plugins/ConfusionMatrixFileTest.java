@@ -0,0 +1,175 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixFileTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.File;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests writing matrices in the binary format and mapping them again
+ * (see {@link ConfusionMatrixFile} and {@link MappedConfusionMatrix}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixFileTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 20;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 2000;
+
+  /** the file to write to. */
+  protected File m_File;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixFileTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the temporary file.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_File = File.createTempFile("matrix", ConfusionMatrixFile.EXTENSION);
+  }
+
+  /**
+   * Deletes the temporary file.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_File.delete();
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns the dense matrix with non-integral weights.
+   *
+   * @return		the matrix
+   */
+  protected ConfusionMatrix newMatrix() {
+    return new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+  }
+
+  /**
+   * Dense and sparse storage must map to the same counts as written.
+   *
+   * @throws Exception	if writing or mapping fails
+   */
+  public void testRoundTrip() throws Exception {
+    ConfusionMatrix		matrix;
+    MappedConfusionMatrix	mapped;
+
+    matrix = newMatrix();
+
+    ConfusionMatrixFile.write(matrix, m_File, ConfusionMatrixFile.STORAGE_DENSE);
+    mapped = ConfusionMatrixFile.map(m_File);
+    assertFalse("Dense storage", mapped.isSparse());
+    assertMatrixEquals("Dense storage", matrix, mapped);
+
+    ConfusionMatrixFile.write(matrix, m_File, ConfusionMatrixFile.STORAGE_SPARSE);
+    mapped = ConfusionMatrixFile.map(m_File);
+    assertTrue("Sparse storage", mapped.isSparse());
+    assertMatrixEquals("Sparse storage", matrix, mapped);
+  }
+
+  /**
+   * Scaling a clone must match the scaled dense matrix and leave the
+   * original (and the file) untouched.
+   *
+   * @throws Exception	if writing or mapping fails
+   */
+  public void testCloneAndScale() throws Exception {
+    ConfusionMatrix		matrix;
+    ConfusionMatrix		scaled;
+    MappedConfusionMatrix	mapped;
+    MappedConfusionMatrix	clone;
+
+    matrix = newMatrix();
+    ConfusionMatrixFile.write(matrix, m_File);
+    mapped = ConfusionMatrixFile.map(m_File);
+    clone  = (MappedConfusionMatrix) mapped.clone();
+    clone.scaleRows();
+    scaled = matrix.clone();
+    scaled.scaleRows();
+
+    assertTrue("Clone scaled", clone.isScaled());
+    assertFalse("Original not scaled", mapped.isScaled());
+    assertMatrixEquals("Scaled clone", scaled, clone);
+    assertMatrixEquals("Original", matrix, mapped);
+    assertMatrixEquals("File", matrix, ConfusionMatrixFile.map(m_File));
+  }
+
+  /**
+   * A serialized mapped matrix must map the file again and keep the
+   * scaling.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testSerialization() throws Exception {
+    ConfusionMatrix		matrix;
+    MappedConfusionMatrix	mapped;
+
+    matrix = newMatrix();
+    ConfusionMatrixFile.write(matrix, m_File);
+    mapped = ConfusionMatrixFile.map(m_File);
+    assertMatrixEquals("Unscaled", matrix, serialize(mapped));
+
+    mapped.scaleRows();
+    matrix.scaleRows();
+    assertMatrixEquals("Scaled", matrix, serialize(mapped));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixFileTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixIngestTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests that ingesting label strings results in the same matrix as
+ * building it from the predictions.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixIngestTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 40;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 5000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixIngestTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Ingesting the labels as characters and bytes must equal building the
+   * matrix from the predictions.
+   */
+  public void testDeclaredLabels() {
+    Attribute			classAtt;
+    List<Prediction>		preds;
+    ConfusionMatrixIngest	ingest;
+    String			line;
+    byte[]			bytes;
+    int				tab;
+    int				i;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    ingest   = new ConfusionMatrixIngest(new LabelIndex(classAtt, false), classAtt.name());
+    for (i = 0; i < preds.size(); i++) {
+      line = classAtt.value((int) preds.get(i).actual()) + "\t" + classAtt.value((int) preds.get(i).predicted());
+      tab  = line.indexOf('\t');
+      if (i % 2 == 0) {
+	assertTrue("Added " + i, ingest.add(line, 0, tab, line, tab + 1, line.length(), preds.get(i).weight()));
+      }
+      else {
+	bytes = line.getBytes(ConfusionMatrixFile.UTF8);
+	assertTrue("Added " + i, ingest.add(bytes, 0, tab, bytes, tab + 1, bytes.length, preds.get(i).weight()));
+      }
+    }
+
+    assertEquals("Records", NUM_PREDICTIONS, ingest.size());
+    assertEquals("Skipped", 0, ingest.getNumSkipped());
+    assertTrue("Cells", ingest.getNumCells() <= NUM_CLASSES * NUM_CLASSES);
+    assertMatrixEquals("Ingest", new ConfusionMatrix(preds, classAtt), ingest.build());
+  }
+
+  /**
+   * Records with unknown labels must get skipped if the index isn't
+   * growing.
+   */
+  public void testUnknownLabels() {
+    ConfusionMatrixIngest	ingest;
+    ConfusionMatrix		matrix;
+
+    ingest = new ConfusionMatrixIngest(new LabelIndex(new String[]{"a", "b"}, false), "class");
+    assertTrue("Known", ingest.add("a", "b", 1.0));
+    assertFalse("Unknown actual", ingest.add("c", "b", 1.0));
+    assertFalse("Unknown predicted", ingest.add("a", "c", 1.0));
+    assertTrue("Known", ingest.add("b", "b", 2.0));
+
+    assertEquals("Records", 2, ingest.size());
+    assertEquals("Skipped", 2, ingest.getNumSkipped());
+    matrix = ingest.build();
+    assertEquals("Number of classes", 2, matrix.getNumClasses());
+    assertEquals("a -> b", 1.0, matrix.getValue(0, 1), TOLERANCE);
+    assertEquals("b -> b", 2.0, matrix.getValue(1, 1), TOLERANCE);
+    assertEquals("Total", 3.0, matrix.getTotal(), TOLERANCE);
+  }
+
+  /**
+   * A growing index must append the labels in order of appearance, the
+   * counts of the cells get accumulated.
+   */
+  public void testGrowingIndex() {
+    ConfusionMatrixIngest	ingest;
+    ConfusionMatrix		matrix;
+    int				i;
+
+    ingest = new ConfusionMatrixIngest("class");
+    for (i = 0; i < 100; i++) {
+      ingest.add("x", "y", 1.0);
+      ingest.add("z", "z", 0.5);
+    }
+    assertEquals("Records", 200, ingest.size());
+    assertEquals("Cells", 2, ingest.getNumCells());
+
+    matrix = ingest.build();
+    assertEquals("Labels", "x", matrix.getLabels()[0]);
+    assertEquals("Labels", "y", matrix.getLabels()[1]);
+    assertEquals("Labels", "z", matrix.getLabels()[2]);
+    assertEquals("x -> y", 100.0, matrix.getValue(0, 1), TOLERANCE);
+    assertEquals("z -> z", 50.0, matrix.getValue(2, 2), TOLERANCE);
+
+    // continue after building
+    ingest.add("w", "x", 3.0);
+    matrix = ingest.build();
+    assertEquals("Number of classes", 4, matrix.getNumClasses());
+    assertEquals("w -> x", 3.0, matrix.getValue(3, 0), TOLERANCE);
+    assertEquals("Total", 153.0, matrix.getTotal(), TOLERANCE);
+  }
+
+  /**
+   * The table of cells must grow beyond its initial size without losing
+   * counts.
+   */
+  public void testManyCells() {
+    ConfusionMatrixIngest	ingest;
+    ConfusionMatrix		matrix;
+    int				numLabels;
+    int				i;
+    int				n;
+
+    numLabels = 60;
+    ingest    = new ConfusionMatrixIngest("class");
+    for (i = 0; i < numLabels; i++) {
+      for (n = 0; n < numLabels; n++)
+	ingest.add("l" + i, "l" + n, i + n);
+    }
+    assertTrue("More cells than initial slots", ingest.getNumCells() > ConfusionMatrixIngest.INITIAL_SLOTS);
+    assertEquals("Cells", numLabels * numLabels, ingest.getNumCells());
+
+    matrix = ingest.build();
+    for (i = 0; i < numLabels; i++) {
+      for (n = 0; n < numLabels; n++)
+	assertEquals("Cell " + i + "/" + n, i + n, matrix.getValue(i, n), TOLERANCE);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixIngestTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixMetricsTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests the enable/disable switch and JMX registration of
+ * {@link ConfusionMatrixMetrics} and the statistics of {@link MetricsTimer}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixMetricsTest
+  extends TestCase {
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixMetricsTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Disables the metrics again.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    ConfusionMatrixMetrics.setEnabled(false);
+    ConfusionMatrixMetrics.reset();
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns a sample that started the specified time ago.
+   *
+   * @param micros	the time in microseconds
+   * @return		the sample
+   */
+  protected static ConfusionMatrixMetrics.Sample newSample(long micros) {
+    ConfusionMatrixMetrics.Sample	result;
+
+    result            = new ConfusionMatrixMetrics.Sample();
+    result.startNanos = System.nanoTime() - micros * 1000;
+    result.startBytes = -1;
+
+    return result;
+  }
+
+  /**
+   * When disabled, nothing must get sampled or recorded.
+   */
+  public void testDisabled() {
+    MetricsTimer	timer;
+
+    ConfusionMatrixMetrics.setEnabled(false);
+    assertNull("No sample", ConfusionMatrixMetrics.start());
+
+    timer = new MetricsTimer("test");
+    timer.record(ConfusionMatrixMetrics.start(), 100, 10);
+    assertEquals("Count", 0, timer.getCount());
+    assertEquals("Items", 0, timer.getItems());
+  }
+
+  /**
+   * Enabling must sample and register the MBeans, registering again (also
+   * when the names are taken already) must succeed.
+   *
+   * @throws Exception	if JMX lookup fails
+   */
+  public void testEnabled() throws Exception {
+    ObjectName	name;
+
+    ConfusionMatrixMetrics.setEnabled(true);
+    assertTrue("Enabled", ConfusionMatrixMetrics.isEnabled());
+    assertNotNull("Sample", ConfusionMatrixMetrics.start());
+
+    name = new ObjectName(ConfusionMatrixMetrics.OBJECT_NAME);
+    assertTrue("Registered", ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    assertTrue("Timer registered", ManagementFactory.getPlatformMBeanServer().isRegistered(
+	new ObjectName(ConfusionMatrixMetrics.OBJECT_NAME + ",name=" + ConfusionMatrixMetrics.BUILD.getName())));
+    assertTrue("Register again", ConfusionMatrixMetrics.register());
+
+    // e.g., class loaded again by another classloader
+    synchronized(ConfusionMatrixMetrics.class) {
+      ConfusionMatrixMetrics.m_Registered = false;
+    }
+    assertTrue("Names already taken", ConfusionMatrixMetrics.register());
+
+    ConfusionMatrixMetrics.setEnabled(false);
+    assertFalse("Disabled", ConfusionMatrixMetrics.isEnabled());
+    assertNull("No sample", ConfusionMatrixMetrics.start());
+  }
+
+  /**
+   * The operations must end up in the power-of-two bucket of their time
+   * and the percentiles must be bounded by those buckets.
+   */
+  public void testHistogram() {
+    MetricsTimer	timer;
+    long[]		histogram;
+    int			i;
+
+    timer = new MetricsTimer("test");
+    for (i = 0; i < 9; i++)
+      timer.record(newSample(3000), 10, 5);
+    timer.record(newSample(100000), 10, 20);
+
+    histogram = timer.getHistogram();
+    // 3000us: 2^11 <= x < 2^12, 100000us: 2^16 <= x < 2^17
+    assertEquals("Bucket 12", 9, histogram[12]);
+    assertEquals("Bucket 17", 1, histogram[17]);
+    assertEquals("Count", 10, timer.getCount());
+    assertEquals("Items", 100, timer.getItems());
+    assertEquals("Last classes", 20, timer.getLastNumClasses());
+    assertEquals("Max classes", 20, timer.getMaxNumClasses());
+    assertTrue("Max", timer.getMaxMillis() >= 100.0);
+    assertTrue("Median lower bound", timer.getMedianMillis() >= 2.048);
+    assertTrue("Median upper bound", timer.getMedianMillis() <= 4.096);
+    assertTrue("99th percentile", timer.getPercentile99Millis() >= 65.536);
+    assertTrue("Mean", timer.getMeanMillis() >= 3.0);
+
+    timer.reset();
+    assertEquals("Count after reset", 0, timer.getCount());
+    assertEquals("Median after reset", 0.0, timer.getMedianMillis());
+    for (i = 0; i < MetricsTimer.NUM_BUCKETS; i++)
+      assertEquals("Bucket " + i + " after reset", 0, timer.getHistogram()[i]);
+  }
+
+  /**
+   * Operations longer than the histogram covers must end up in the last
+   * bucket.
+   */
+  public void testHistogramOverflow() {
+    MetricsTimer	timer;
+
+    timer = new MetricsTimer("test");
+    timer.record(newSample(1L << 45), 1, 1);
+    assertEquals("Last bucket", 1, timer.getHistogram()[MetricsTimer.NUM_BUCKETS - 1]);
+  }
+
+  /**
+   * The allocated bytes must be -1 when the JVM has the measurement
+   * disabled, and must not fail if it isn't supported at all.
+   */
+  public void testAllocatedBytesDisabled() {
+    com.sun.management.ThreadMXBean	bean;
+    boolean				enabled;
+
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      assertEquals("Not supported", -1, ConfusionMatrixMetrics.getAllocatedBytes());
+      return;
+    }
+
+    bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!bean.isThreadAllocatedMemorySupported()) {
+      assertEquals("Not supported", -1, ConfusionMatrixMetrics.getAllocatedBytes());
+      return;
+    }
+
+    enabled = bean.isThreadAllocatedMemoryEnabled();
+    try {
+      bean.setThreadAllocatedMemoryEnabled(false);
+      assertEquals("Disabled", -1, ConfusionMatrixMetrics.getAllocatedBytes());
+      bean.setThreadAllocatedMemoryEnabled(true);
+      assertTrue("Enabled", ConfusionMatrixMetrics.getAllocatedBytes() >= 0);
+    }
+    finally {
+      bean.setThreadAllocatedMemoryEnabled(enabled);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixMetricsTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
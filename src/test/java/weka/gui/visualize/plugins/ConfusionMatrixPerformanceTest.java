@@ -0,0 +1,213 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixPerformanceTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Performance contracts of building a matrix and of its aggregate getters.
+ * The absolute bounds are orders of magnitude above the expected timings,
+ * see ConstructionBenchmark and StatisticsBenchmark (benchmarks profile)
+ * for actual numbers.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixPerformanceTest
+  extends AbstractPerformanceTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 100;
+
+  /** the number of predictions of the small input. */
+  public final static int NUM_PREDICTIONS = 50000;
+
+  /** the factor by which the large input is larger. */
+  public final static int FACTOR = 8;
+
+  /** the number of repetitions when timing the getters. */
+  public final static int NUM_REPETITIONS = 200;
+
+  /** the maximum time per prediction in nsec. */
+  public final static long MAX_NANOS_PER_PREDICTION = 2000;
+
+  /** the maximum time per aggregate getter call in nsec. */
+  public final static long MAX_NANOS_PER_GETTER = 200;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixPerformanceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns a task that builds a matrix.
+   *
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param integer	whether to use integer instead of dense storage
+   * @return		the task
+   */
+  protected Runnable newBuildTask(final List<Prediction> preds, final Attribute classAtt, final boolean integer) {
+    return new Runnable() {
+      @Override
+      public void run() {
+	if (integer)
+	  new IntegerConfusionMatrix(preds, classAtt);
+	else
+	  new ConfusionMatrix(preds, classAtt);
+      }
+    };
+  }
+
+  /**
+   * Returns the number of getter calls that the getter task performs.
+   *
+   * @param matrix	the matrix to use
+   * @return		the number of calls
+   */
+  protected static long numGetterCalls(ConfusionMatrix matrix) {
+    return (long) NUM_REPETITIONS * (3 + 3 * matrix.getNumClasses());
+  }
+
+  /**
+   * Returns a task that calls the aggregate getters.
+   *
+   * @param matrix	the matrix to use
+   * @return		the task
+   */
+  protected Runnable newGetterTask(final ConfusionMatrix matrix) {
+    return new Runnable() {
+      @Override
+      public void run() {
+	int	i;
+	int	n;
+	double	sum;
+
+	sum = 0;
+	for (n = 0; n < NUM_REPETITIONS; n++) {
+	  sum += matrix.getTotal() + matrix.getCorrect() + matrix.getIncorrect();
+	  for (i = 0; i < matrix.getNumClasses(); i++)
+	    sum += matrix.getTotal(i) + matrix.getCorrect(i) + matrix.getIncorrect(i);
+	}
+	if (sum < 0)
+	  fail("Negative counts");
+      }
+    };
+  }
+
+  /**
+   * Accumulating the predictions must not allocate per prediction, for
+   * dense and integer storage.
+   */
+  public void testBuildAllocation() {
+    Attribute	classAtt;
+    long	small;
+    long	large;
+    boolean	integer;
+    int		i;
+
+    if (!isAllocationSupported())
+      return;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    for (i = 0; i < 2; i++) {
+      integer = (i == 1);
+      small   = measureAllocation(newBuildTask(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt, integer));
+      large   = measureAllocation(newBuildTask(newPredictions(NUM_CLASSES, NUM_PREDICTIONS * FACTOR), classAtt, integer));
+      assertAllocationFree("Build (" + (integer ? "integer" : "dense") + "), additional predictions", large - small);
+    }
+  }
+
+  /**
+   * Building must scale linearly with the number of predictions and stay
+   * below {@link #MAX_NANOS_PER_PREDICTION}.
+   */
+  public void testBuildTime() {
+    Attribute		classAtt;
+    List<Prediction>	preds;
+    long		small;
+    long		large;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    small    = measureTime(newBuildTask(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt, false));
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS * FACTOR);
+    large    = measureTime(newBuildTask(preds, classAtt, false));
+    assertLinear("Build", small, large, FACTOR);
+    assertNanosPerOp("Build", large, preds.size(), MAX_NANOS_PER_PREDICTION);
+  }
+
+  /**
+   * Once the totals are cached, the aggregate getters must not allocate.
+   */
+  public void testGetterAllocation() {
+    ConfusionMatrix	matrix;
+
+    if (!isAllocationSupported())
+      return;
+
+    matrix = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    assertAllocationFree("Aggregate getters", measureAllocation(newGetterTask(matrix)));
+  }
+
+  /**
+   * The aggregate getters must scale linearly with the number of class
+   * labels (rather than the number of cells), i.e., use the cached totals,
+   * and each call must stay below {@link #MAX_NANOS_PER_GETTER}.
+   */
+  public void testGetterTime() {
+    ConfusionMatrix	small;
+    ConfusionMatrix	large;
+    long		timeLarge;
+
+    small     = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    large     = new ConfusionMatrix(newPredictions(NUM_CLASSES * FACTOR, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES * FACTOR));
+    timeLarge = measureTime(newGetterTask(large));
+    assertLinear("Aggregate getters", measureTime(newGetterTask(small)), timeLarge, FACTOR);
+    assertNanosPerOp("Aggregate getters", timeLarge, numGetterCalls(large), MAX_NANOS_PER_GETTER);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixPerformanceTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixSlicesTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Tests that the matrices of the slices equal the matrices of the
+ * corresponding subsets of predictions and add up to the overall matrix.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixSlicesTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 10;
+
+  /** the number of slices. */
+  public final static int NUM_SLICES = 7;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 4000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixSlicesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the names of the slices.
+   *
+   * @param numSlices	the number of slices
+   * @return		the names
+   */
+  protected static String[] newNames(int numSlices) {
+    String[]	result;
+    int		i;
+
+    result = new String[numSlices];
+    for (i = 0; i < numSlices; i++)
+      result[i] = "s" + i;
+
+    return result;
+  }
+
+  /**
+   * Compares the slices against the matrices of the subsets of
+   * predictions and checks that they add up to the overall statistics.
+   *
+   * @param msg		the message prefix
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param assignment	the slice per prediction, -1 for none
+   * @param slices	the computed slices
+   */
+  protected static void assertSlices(String msg, List<Prediction> preds, Attribute classAtt, int[] assignment, ConfusionMatrixSlices slices) {
+    List<List<Prediction>>	subsets;
+    List<Prediction>		all;
+    ConfusionMatrix		expected;
+    double			total;
+    double			correct;
+    int				skipped;
+    int				i;
+
+    subsets = new ArrayList<List<Prediction>>();
+    for (i = 0; i < slices.getNumSlices(); i++)
+      subsets.add(new ArrayList<Prediction>());
+    all     = new ArrayList<Prediction>();
+    skipped = 0;
+    for (i = 0; i < preds.size(); i++) {
+      if (assignment[i] < 0) {
+	skipped++;
+      }
+      else {
+	subsets.get(assignment[i]).add(preds.get(i));
+	all.add(preds.get(i));
+      }
+    }
+
+    assertTrue(msg + ": executed", slices.isExecuted());
+    assertEquals(msg + ": skipped", skipped, slices.getNumSkipped());
+    total   = 0;
+    correct = 0;
+    for (i = 0; i < slices.getNumSlices(); i++) {
+      expected = new ConfusionMatrix(subsets.get(i), classAtt);
+      assertMatrixEquals(msg + ", slice " + i, expected, slices.getMatrix(i));
+      assertEquals(msg + ": total of slice " + i, expected.getTotal(), slices.getTotal(i), TOLERANCE);
+      assertEquals(msg + ": correct of slice " + i, expected.getCorrect(), slices.getCorrect(i), TOLERANCE);
+      total   += slices.getTotal(i);
+      correct += slices.getCorrect(i);
+    }
+    assertEquals(msg + ": sum of slice totals", slices.getTotal(), total, TOLERANCE);
+    assertEquals(msg + ": sum of slice correct", slices.getCorrect(), correct, TOLERANCE);
+    assertEquals(msg + ": accuracy", correct / total, slices.getAccuracy(), TOLERANCE);
+    assertMatrixEquals(msg + ", overall", new ConfusionMatrix(all, classAtt), slices.getMatrix());
+  }
+
+  /**
+   * Slices defined by indices must match the subsets, regardless of the
+   * number of threads.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testIndices() throws Exception {
+    Attribute			classAtt;
+    List<Prediction>		preds;
+    ConfusionMatrixSlices	slices;
+    int[]			assignment;
+    Random			rnd;
+    int				numThreads;
+    int				i;
+
+    classAtt   = newClassAttribute(NUM_CLASSES);
+    preds      = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    rnd        = new Random(AbstractPerformanceTest.SEED);
+    assignment = new int[preds.size()];
+    for (i = 0; i < assignment.length; i++) {
+      // last slice stays empty
+      assignment[i] = rnd.nextInt(NUM_SLICES) - 1;
+    }
+
+    for (numThreads = 1; numThreads <= 4; numThreads *= 2) {
+      slices = new ConfusionMatrixSlices(classAtt);
+      slices.setNumThreads(numThreads);
+      slices.execute(preds, assignment, newNames(NUM_SLICES));
+      assertSlices(numThreads + " thread(s)", preds, classAtt, assignment, slices);
+      assertEquals("Empty slice", 0.0, slices.getTotal(NUM_SLICES - 1), TOLERANCE);
+    }
+  }
+
+  /**
+   * The slices must be sorted by accuracy drop (largest first), with the
+   * empty ones last.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testSortedByDrop() throws Exception {
+    Attribute			classAtt;
+    List<Prediction>		preds;
+    ConfusionMatrixSlices	slices;
+    int[]			assignment;
+    int[]			sorted;
+    int				i;
+
+    classAtt   = newClassAttribute(NUM_CLASSES);
+    preds      = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    assignment = new int[preds.size()];
+    for (i = 0; i < assignment.length; i++)
+      assignment[i] = i % (NUM_SLICES - 1);
+    slices = new ConfusionMatrixSlices(classAtt);
+    slices.execute(preds, assignment, newNames(NUM_SLICES));
+
+    sorted = slices.getSortedByDrop();
+    assertEquals("Number of slices", NUM_SLICES, sorted.length);
+    for (i = 1; i < NUM_SLICES - 1; i++)
+      assertTrue("Order " + i, slices.getAccuracyDrop(sorted[i - 1]) >= slices.getAccuracyDrop(sorted[i]));
+    assertEquals("Empty slice last", NUM_SLICES - 1, sorted[NUM_SLICES - 1]);
+    assertTrue("Empty slice has no drop", Double.isNaN(slices.getAccuracyDrop(NUM_SLICES - 1)));
+  }
+
+  /**
+   * Slices defined by a nominal or string attribute must use its values,
+   * instances with missing values belong to no slice.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testAttributes() throws Exception {
+    Attribute			classAtt;
+    List<Prediction>		preds;
+    ArrayList<Attribute>	atts;
+    List<String>		values;
+    Instances			data;
+    ConfusionMatrixSlices	slices;
+    int[]			assignment;
+    double[]			row;
+    int				i;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    values   = new ArrayList<String>();
+    for (i = 0; i < 3; i++)
+      values.add("v" + i);
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("nominal", values));
+    atts.add(new Attribute("string", (List<String>) null));
+    data = new Instances("slices", atts, preds.size());
+    assignment = new int[preds.size()];
+    for (i = 0; i < preds.size(); i++) {
+      row = new double[2];
+      if (i % 10 == 9) {
+	row[0]        = Utils.missingValue();
+	row[1]        = Utils.missingValue();
+	assignment[i] = -1;
+      }
+      else {
+	// string values appear in reverse order of the nominal ones
+	row[0]        = 2 - (i % 3);
+	row[1]        = data.attribute(1).addStringValue("v" + (2 - (i % 3)));
+	assignment[i] = 2 - (i % 3);
+      }
+      data.add(new DenseInstance(1.0, row));
+    }
+
+    slices = new ConfusionMatrixSlices(classAtt);
+    slices.execute(preds, data, 0);
+    assertEquals("Nominal: number of slices", 3, slices.getNumSlices());
+    assertEquals("Nominal: first slice", "v0", slices.getSlice(0));
+    assertSlices("Nominal", preds, classAtt, assignment, slices);
+
+    slices = new ConfusionMatrixSlices(classAtt);
+    slices.execute(preds, data, 1);
+    assertEquals("String: number of slices", 3, slices.getNumSlices());
+    assertEquals("String: first slice", "v2", slices.getSlice(0));
+    for (i = 0; i < assignment.length; i++) {
+      if (assignment[i] >= 0)
+	assignment[i] = 2 - assignment[i];
+    }
+    assertSlices("String", preds, classAtt, assignment, slices);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixSlicesTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConfusionMatrixTableModelTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+
+/**
+ * Tests sorting and filtering the rows of the
+ * {@link ConfusionMatrixTableModel}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ConfusionMatrixTableModelTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 5;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ConfusionMatrixTableModelTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns a matrix with known totals:
+   * <pre>
+   * class  correct  incorrect  total  recall  error rate
+   * 0      8        2 (as 1)   10     0.8     0.2
+   * 1      2        3 (as 0)   5      0.4     0.6
+   * 2      0        0          0      0       -
+   * 3      8        2 (as 4)   10     0.8     0.2
+   * 4      10       10 (as 0)  20     0.5     0.5
+   * </pre>
+   *
+   * @return		the matrix
+   */
+  protected static ConfusionMatrix newMatrix() {
+    List<Prediction>	preds;
+
+    preds = new ArrayList<Prediction>();
+    preds.add(new WeightedPrediction(0, 0, 8));
+    preds.add(new WeightedPrediction(0, 1, 2));
+    preds.add(new WeightedPrediction(1, 1, 2));
+    preds.add(new WeightedPrediction(1, 0, 3));
+    preds.add(new WeightedPrediction(3, 3, 8));
+    preds.add(new WeightedPrediction(3, 4, 2));
+    preds.add(new WeightedPrediction(4, 4, 10));
+    preds.add(new WeightedPrediction(4, 0, 10));
+
+    return new ConfusionMatrix(preds, newClassAttribute(NUM_CLASSES));
+  }
+
+  /**
+   * Returns costs of 1 + predicted class label for incorrect predictions,
+   * i.e., cost totals of 4, 3, 0, 10 and 10.
+   *
+   * @return		the costs (actual, predicted)
+   */
+  protected static double[][] newCosts() {
+    double[][]	result;
+    int		i;
+    int		n;
+
+    result = new double[NUM_CLASSES][NUM_CLASSES];
+    for (i = 0; i < NUM_CLASSES; i++) {
+      for (n = 0; n < NUM_CLASSES; n++) {
+	if (i != n)
+	  result[i][n] = 1 + n;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks the class label indices of the rows in the view.
+   *
+   * @param msg		the message prefix
+   * @param expected	the expected class label indices
+   * @param model	the model to check
+   */
+  protected static void assertRows(String msg, int[] expected, ConfusionMatrixTableModel model) {
+    int		i;
+
+    assertEquals(msg + ": rows", expected.length, model.getRowCount());
+    for (i = 0; i < expected.length; i++) {
+      assertEquals(msg + ": row " + i, expected[i], model.getClassIndex(i));
+      assertEquals(msg + ": label " + i, model.getMatrix().getLabels()[expected[i]], model.getValueAt(i, NUM_CLASSES));
+      assertEquals(msg + ": total " + i, model.getMatrix().getTotal(expected[i]), model.getDoubleAt(i, NUM_CLASSES + 3), TOLERANCE);
+    }
+  }
+
+  /**
+   * Sorting must order the rows by the selected key, in ascending or
+   * descending order, with ties in the order of the class labels.
+   */
+  public void testSort() {
+    ConfusionMatrixTableModel	model;
+
+    model = new ConfusionMatrixTableModel(newMatrix());
+    assertNull("All rows in class order", model.getClassIndices());
+    assertRows("class label", new int[]{0, 1, 2, 3, 4}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_NONE, true, 0);
+    assertRows("class label, descending", new int[]{4, 3, 2, 1, 0}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_INCORRECT, false, 0);
+    assertRows("incorrect", new int[]{2, 0, 3, 1, 4}, model);
+    model.setView(ConfusionMatrixTableModel.SORT_INCORRECT, true, 0);
+    assertRows("incorrect, descending", new int[]{4, 1, 0, 3, 2}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_RECALL, false, 0);
+    assertRows("recall", new int[]{2, 1, 4, 0, 3}, model);
+    model.setView(ConfusionMatrixTableModel.SORT_RECALL, true, 0);
+    assertRows("recall, descending", new int[]{0, 3, 4, 1, 2}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_TOTAL, false, 0);
+    assertRows("total", new int[]{2, 1, 0, 3, 4}, model);
+    model.setView(ConfusionMatrixTableModel.SORT_TOTAL, true, 0);
+    assertRows("total, descending", new int[]{4, 0, 3, 1, 2}, model);
+    assertEquals("Sort mode", ConfusionMatrixTableModel.SORT_TOTAL, model.getSortBy());
+    assertTrue("Descending", model.isDescending());
+
+    model.setView(ConfusionMatrixTableModel.SORT_NONE, false, 0);
+    assertNull("Reset", model.getClassIndices());
+    assertRows("reset", new int[]{0, 1, 2, 3, 4}, model);
+  }
+
+  /**
+   * Filtering must only keep the rows with at least the minimum error rate,
+   * dropping class labels without instances.
+   */
+  public void testFilter() {
+    ConfusionMatrixTableModel	model;
+
+    model = new ConfusionMatrixTableModel(newMatrix());
+    model.setView(ConfusionMatrixTableModel.SORT_NONE, false, 0.5);
+    assertRows("error rate >= 0.5", new int[]{1, 4}, model);
+    assertEquals("Minimum error rate", 0.5, model.getMinErrorRate(), TOLERANCE);
+    assertEquals("Incorrect", 10.0, model.getDoubleAt(1, NUM_CLASSES + 1), TOLERANCE);
+    assertEquals("Cell", 10.0, model.getDoubleAt(1, 0), TOLERANCE);
+
+    model.setView(ConfusionMatrixTableModel.SORT_INCORRECT, true, 0.5);
+    assertRows("error rate >= 0.5, incorrect descending", new int[]{4, 1}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_NONE, false, 0.1);
+    assertRows("error rate >= 0.1", new int[]{0, 1, 3, 4}, model);
+
+    model.setView(ConfusionMatrixTableModel.SORT_NONE, false, 0.7);
+    assertRows("error rate >= 0.7", new int[0], model);
+
+    assertEquals("Columns unaffected", NUM_CLASSES + ConfusionMatrixTableModel.NUM_ADDITIONAL_COLUMNS, model.getColumnCount());
+  }
+
+  /**
+   * Supplied costs must add the cost column and be available for sorting,
+   * without modifying the matrix.
+   */
+  public void testCosts() {
+    ConfusionMatrix		matrix;
+    ConfusionMatrixTableModel	model;
+    double[]			expected;
+    int				i;
+
+    matrix = newMatrix();
+    model  = new ConfusionMatrixTableModel(matrix);
+    assertFalse("No costs", model.hasCosts());
+    assertEquals("No cost column", NUM_CLASSES + ConfusionMatrixTableModel.NUM_ADDITIONAL_COLUMNS, model.getColumnCount());
+
+    model    = new ConfusionMatrixTableModel(matrix, newCosts());
+    expected = new double[]{4, 3, 0, 10, 10};
+    assertTrue("Costs", model.hasCosts());
+    assertFalse("Matrix unmodified", matrix.hasCosts());
+    assertEquals("Cost column", NUM_CLASSES + ConfusionMatrixTableModel.NUM_ADDITIONAL_COLUMNS + 1, model.getColumnCount());
+    assertEquals("Cost column name", "cost", model.getColumnName(model.getColumnCount() - 1));
+    for (i = 0; i < NUM_CLASSES; i++)
+      assertEquals("Cost " + i, expected[i], model.getDoubleAt(i, model.getColumnCount() - 1), TOLERANCE);
+
+    model.setView(ConfusionMatrixTableModel.SORT_COST, false, 0);
+    assertRows("cost", new int[]{2, 1, 0, 3, 4}, model);
+    assertEquals("Sorted cost", 4.0, model.getDoubleAt(2, model.getColumnCount() - 1), TOLERANCE);
+    model.setView(ConfusionMatrixTableModel.SORT_COST, true, 0);
+    assertRows("cost, descending", new int[]{3, 4, 0, 1, 2}, model);
+    model.setView(ConfusionMatrixTableModel.SORT_COST, true, 0.5);
+    assertRows("cost, descending, error rate >= 0.5", new int[]{4, 1}, model);
+
+    try {
+      new ConfusionMatrixTableModel(matrix, new double[NUM_CLASSES + 1][NUM_CLASSES + 1]);
+      fail("Costs with wrong dimensions accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ConfusionMatrixTableModelTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
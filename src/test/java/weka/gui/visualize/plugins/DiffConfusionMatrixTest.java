@@ -0,0 +1,212 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DiffConfusionMatrixTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests the cell-wise difference of two matrices ({@link DiffConfusionMatrix})
+ * for dense and sparse inputs and the representation of the result.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class DiffConfusionMatrixTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 30;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 3000;
+
+  /** the number of class labels for the sparse tests. */
+  public final static int NUM_CLASSES_SPARSE = 1000;
+
+  /** the number of predictions for the sparse tests. */
+  public final static int NUM_PREDICTIONS_SPARSE = 200;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public DiffConfusionMatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Asserts that the difference matches the one computed cell by cell.
+   *
+   * @param msg		the message prefix
+   * @param candidate	the matrix that got compared
+   * @param baseline	the matrix that got compared against
+   * @param normalized	whether the counts got normalized
+   * @param diff	the difference to check
+   */
+  protected static void assertDiff(String msg, ConfusionMatrix candidate, ConfusionMatrix baseline, boolean normalized, ConfusionMatrix diff) {
+    double	expected;
+    double	totalCandidate;
+    double	totalBaseline;
+    int		i;
+    int		n;
+
+    assertEquals(msg + ": number of classes", candidate.getNumClasses(), diff.getNumClasses());
+    for (i = 0; i < candidate.getNumClasses(); i++) {
+      totalCandidate = candidate.getTotal(i);
+      totalBaseline  = baseline.getTotal(i);
+      for (n = 0; n < candidate.getNumClasses(); n++) {
+	if (normalized)
+	  expected = ((totalCandidate == 0) ? 0.0 : candidate.getValue(i, n) / totalCandidate)
+	      - ((totalBaseline == 0) ? 0.0 : baseline.getValue(i, n) / totalBaseline);
+	else
+	  expected = candidate.getValue(i, n) - baseline.getValue(i, n);
+	assertEquals(msg + ": " + i + "/" + n, expected, diff.getValue(i, n), TOLERANCE);
+      }
+    }
+  }
+
+  /**
+   * The dense difference must match the cell-wise difference, with and
+   * without normalization.
+   */
+  public void testDense() {
+    Attribute		classAtt;
+    ConfusionMatrix	candidate;
+    ConfusionMatrix	baseline;
+
+    classAtt  = newClassAttribute(NUM_CLASSES);
+    candidate = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt);
+    baseline  = new ConfusionMatrix(newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS / 2), classAtt);
+    assertDiff("Counts", candidate, baseline, false, new DiffConfusionMatrix(candidate, baseline, false));
+    assertDiff("Normalized", candidate, baseline, true, new DiffConfusionMatrix(candidate, baseline, true));
+    assertTrue("Negative differences", new DiffConfusionMatrix(candidate, baseline, false).getMin() < 0);
+  }
+
+  /**
+   * The difference of a matrix to itself must be all zeros.
+   */
+  public void testIdentical() {
+    ConfusionMatrix	matrix;
+    ConfusionMatrix	diff;
+
+    matrix = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    diff   = DiffConfusionMatrix.create(matrix, matrix, true);
+    assertEquals("Max", 0.0, diff.getMax(), TOLERANCE);
+    assertEquals("Min", 0.0, diff.getMin(), TOLERANCE);
+    assertEquals("Total", 0.0, diff.getTotal(), TOLERANCE);
+  }
+
+  /**
+   * Sparse inputs must give the same difference as dense ones, and if the
+   * dense result doesn't fit into the heap, the result must be sparse.
+   */
+  public void testSparse() {
+    Attribute		classAtt;
+    List<Prediction>	predsCandidate;
+    List<Prediction>	predsBaseline;
+    ConfusionMatrix	candidate;
+    ConfusionMatrix	baseline;
+    ConfusionMatrix	diff;
+    MatrixFootprint	footprint;
+    long		heap;
+    int			sparse;
+    boolean		normalized;
+    int			i;
+
+    classAtt       = newClassAttribute(NUM_CLASSES_SPARSE);
+    predsCandidate = newPredictions(NUM_CLASSES_SPARSE, NUM_PREDICTIONS_SPARSE);
+    predsBaseline  = newWeightedPredictions(NUM_CLASSES_SPARSE, NUM_PREDICTIONS_SPARSE / 2);
+    sparse         = MatrixFootprint.REPRESENTATION_SPARSE;
+    candidate      = ConfusionMatrix.newInstance(classAtt, null, predsCandidate, null, sparse);
+    baseline       = ConfusionMatrix.newInstance(classAtt, null, predsBaseline, null, sparse);
+
+    // enough heap for sparse, but not for dense storage
+    footprint = new MatrixFootprint(NUM_CLASSES_SPARSE, NUM_PREDICTIONS_SPARSE + NUM_PREDICTIONS_SPARSE / 2, 0);
+    heap      = 2 * footprint.getSparseBytes();
+    assertFalse("Dense doesn't fit", new MatrixFootprint(NUM_CLASSES_SPARSE, 0, heap).fits(MatrixFootprint.REPRESENTATION_DENSE));
+
+    for (i = 0; i < 2; i++) {
+      normalized = (i == 1);
+      diff       = DiffConfusionMatrix.create(candidate, baseline, normalized, heap);
+      assertTrue("Sparse result (normalized=" + normalized + ")", diff instanceof SparseConfusionMatrix);
+      assertTrue("Bounded by non-zero cells", ((SparseConfusionMatrix) diff).getNumNonZero() <= NUM_PREDICTIONS_SPARSE + NUM_PREDICTIONS_SPARSE / 2);
+      assertDiff("Sparse (normalized=" + normalized + ")", candidate, baseline, normalized, diff);
+      assertMatrixEquals(
+	  "Sparse vs dense inputs (normalized=" + normalized + ")",
+	  new DiffConfusionMatrix(new ConfusionMatrix(predsCandidate, classAtt), new ConfusionMatrix(predsBaseline, classAtt), normalized),
+	  diff);
+    }
+  }
+
+  /**
+   * With enough heap, the result must be dense.
+   */
+  public void testRepresentation() {
+    Attribute		classAtt;
+    ConfusionMatrix	matrix;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    matrix   = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), classAtt);
+    assertTrue("Dense result", DiffConfusionMatrix.create(matrix, matrix, false, Long.MAX_VALUE / 2) instanceof DiffConfusionMatrix);
+  }
+
+  /**
+   * Matrices over different class attributes must get rejected.
+   */
+  public void testIncompatible() {
+    ConfusionMatrix	candidate;
+    ConfusionMatrix	baseline;
+
+    candidate = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    baseline  = new ConfusionMatrix(newPredictions(NUM_CLASSES - 1, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES - 1));
+    try {
+      DiffConfusionMatrix.create(candidate, baseline, false);
+      fail("Incompatible matrices accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DiffConfusionMatrixTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * HeatmapRendererPerformanceTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Performance contracts of rendering the heatmap image. Uses the renderer
+ * directly, i.e., no Swing components get created. Runs headless. The
+ * absolute bound is orders of magnitude above the expected timing, see
+ * RenderingBenchmark (benchmarks profile) for actual numbers.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class HeatmapRendererPerformanceTest
+  extends AbstractPerformanceTest {
+
+  static {
+    System.setProperty("java.awt.headless", "true");
+  }
+
+  /** the number of class labels of the small matrix. */
+  public final static int NUM_CLASSES = 64;
+
+  /** the factor by which the number of class labels of the large matrix is larger. */
+  public final static int FACTOR = 4;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 100000;
+
+  /** the maximum time per cell in nsec. */
+  public final static long MAX_NANOS_PER_CELL = 20000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public HeatmapRendererPerformanceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns a heatmap renderer with one pixel per cell.
+   *
+   * @param numClasses	the number of class labels
+   * @return		the renderer
+   */
+  protected HeatmapRenderer newHeatmap(int numClasses) {
+    HeatmapRenderer	result;
+
+    result = new HeatmapRenderer(new ConfusionMatrix(newPredictions(numClasses, NUM_PREDICTIONS), newClassAttribute(numClasses)));
+    result.setSizeSquares(1);
+
+    return result;
+  }
+
+  /**
+   * Returns a task that generates the heatmap image.
+   *
+   * @param heatmap	the renderer to use
+   * @return		the task
+   */
+  protected Runnable newRenderTask(final HeatmapRenderer heatmap) {
+    return new Runnable() {
+      @Override
+      public void run() {
+	heatmap.generateImage();
+      }
+    };
+  }
+
+  /**
+   * Apart from the image itself, rendering must not allocate per cell.
+   */
+  public void testRenderAllocation() {
+    long	small;
+    long	large;
+
+    if (!isAllocationSupported())
+      return;
+
+    small = measureAllocation(newRenderTask(newHeatmap(NUM_CLASSES)))
+	- MatrixFootprint.getImageBytes(NUM_CLASSES, NUM_CLASSES);
+    large = measureAllocation(newRenderTask(newHeatmap(NUM_CLASSES * FACTOR)))
+	- MatrixFootprint.getImageBytes(NUM_CLASSES * FACTOR, NUM_CLASSES * FACTOR);
+    assertAllocationFree("Render, additional cells", large - small);
+  }
+
+  /**
+   * Rendering must scale linearly with the number of cells and stay below
+   * {@link #MAX_NANOS_PER_CELL}.
+   */
+  public void testRenderTime() {
+    long	small;
+    long	large;
+    long	cells;
+
+    small = measureTime(newRenderTask(newHeatmap(NUM_CLASSES)));
+    large = measureTime(newRenderTask(newHeatmap(NUM_CLASSES * FACTOR)));
+    cells = (long) NUM_CLASSES * FACTOR * NUM_CLASSES * FACTOR;
+    assertLinear("Render", small, large, FACTOR * FACTOR);
+    assertNanosPerOp("Render", large, cells, MAX_NANOS_PER_CELL);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(HeatmapRendererPerformanceTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LabelIndexTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests inserting and looking up labels in the {@link LabelIndex}, as
+ * characters and UTF-8 bytes.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class LabelIndexTest
+  extends TestCase {
+
+  /** the number of labels when testing growth. */
+  public final static int NUM_LABELS = 5000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public LabelIndexTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the UTF-8 bytes of the string.
+   *
+   * @param s		the string
+   * @return		the bytes
+   */
+  protected static byte[] toBytes(String s) {
+    return s.getBytes(ConfusionMatrixFile.UTF8);
+  }
+
+  /**
+   * Declared labels must be found as characters, character ranges and
+   * bytes; unknown labels must not get appended if not growing.
+   */
+  public void testLookup() {
+    LabelIndex	index;
+    String[]	labels;
+    byte[]	bytes;
+    int		i;
+
+    labels = new String[]{"yes", "no", "maybe", "gr\u00fcn", "\u65e5\u672c", ""};
+    index  = new LabelIndex(labels, false);
+    assertEquals("Number of labels", labels.length, index.getNumLabels());
+    for (i = 0; i < labels.length; i++) {
+      assertEquals("Label " + i, labels[i], index.getLabel(i));
+      assertEquals("Characters " + labels[i], i, index.indexOf(labels[i]));
+      assertEquals("Range " + labels[i], i, index.indexOf("<" + labels[i] + ">", 1, labels[i].length() + 1));
+      bytes = toBytes("<" + labels[i] + ">");
+      assertEquals("Bytes " + labels[i], i, index.indexOf(bytes, 1, bytes.length - 2));
+    }
+
+    assertEquals("Unknown characters", -1, index.indexOf("perhaps"));
+    assertEquals("Unknown bytes", -1, index.indexOf(toBytes("perhaps"), 0, 7));
+    assertEquals("Prefix", -1, index.indexOf("ye"));
+    assertEquals("Not appended", labels.length, index.getNumLabels());
+  }
+
+  /**
+   * A growing index must append unknown labels in order of appearance,
+   * without changing the indices of existing ones.
+   */
+  public void testGrowth() {
+    LabelIndex	index;
+    byte[]	bytes;
+    int		i;
+
+    index = new LabelIndex();
+    assertTrue("Growing", index.isGrowing());
+    for (i = 0; i < NUM_LABELS; i++) {
+      if (i % 2 == 0) {
+	assertEquals("Append " + i, i, index.indexOf("label-" + i));
+      }
+      else {
+	bytes = toBytes("label-" + i);
+	assertEquals("Append " + i, i, index.indexOf(bytes, 0, bytes.length));
+      }
+    }
+    assertEquals("Number of labels", NUM_LABELS, index.getNumLabels());
+    for (i = 0; i < NUM_LABELS; i++) {
+      bytes = toBytes("label-" + i);
+      assertEquals("Characters " + i, i, index.indexOf("label-" + i));
+      assertEquals("Bytes " + i, i, index.indexOf(bytes, 0, bytes.length));
+    }
+    assertEquals("Labels", "label-" + (NUM_LABELS - 1), index.getLabels()[NUM_LABELS - 1]);
+
+    index.setGrowing(false);
+    assertEquals("No longer growing", -1, index.indexOf("label-" + NUM_LABELS));
+    assertEquals("Number of labels", NUM_LABELS, index.getNumLabels());
+  }
+
+  /**
+   * Labels listed twice must get rejected.
+   */
+  public void testDuplicate() {
+    try {
+      new LabelIndex(new String[]{"a", "b", "a"}, false);
+      fail("Duplicate label accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * The attribute must list the labels in index order.
+   */
+  public void testToAttribute() {
+    LabelIndex	index;
+
+    index = new LabelIndex();
+    index.indexOf("b");
+    index.indexOf("a");
+    assertEquals("Name", "class", index.toAttribute("class").name());
+    assertEquals("Number of values", 2, index.toAttribute("class").numValues());
+    assertEquals("First value", "b", index.toAttribute("class").value(0));
+    assertEquals("Second value", "a", index.toAttribute("class").value(1));
+  }
+
+  /**
+   * A deserialized index must find the same labels.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testSerialization() throws Exception {
+    LabelIndex			index;
+    ByteArrayOutputStream	bos;
+    ObjectOutputStream		oos;
+    ObjectInputStream		ois;
+
+    index = new LabelIndex(new String[]{"x", "y", "z"}, true);
+    bos   = new ByteArrayOutputStream();
+    oos   = new ObjectOutputStream(bos);
+    oos.writeObject(index);
+    oos.close();
+    ois   = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    index = (LabelIndex) ois.readObject();
+    ois.close();
+
+    assertEquals("Lookup", 1, index.indexOf("y"));
+    assertEquals("Lookup bytes", 2, index.indexOf(toBytes("z"), 0, 1));
+    assertEquals("Append", 3, index.indexOf("w"));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(LabelIndexTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MatrixRepresentationTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests that the compact representations ({@link IntegerConfusionMatrix},
+ * {@link SparseConfusionMatrix}) agree with the dense one and that
+ * {@link MatrixFootprint} picks the representation that fits.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MatrixRepresentationTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 30;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 3000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatrixRepresentationTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Compares the representation with the dense matrix, also after cloning,
+   * scaling and serializing.
+   *
+   * @param representation	the representation to check
+   * @param preds		the predictions
+   * @throws Exception	if serialization fails
+   */
+  protected void check(int representation, List<Prediction> preds) throws Exception {
+    Attribute		classAtt;
+    ConfusionMatrix	dense;
+    ConfusionMatrix	matrix;
+    ConfusionMatrix	clone;
+    double[][]		copy;
+    String		msg;
+
+    msg      = MatrixFootprint.toString(representation);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    dense    = new ConfusionMatrix(preds, classAtt);
+    matrix   = ConfusionMatrix.newInstance(classAtt, null, preds, null, representation);
+    assertMatrixEquals(msg, dense, matrix);
+
+    // getMatrix returns a copy
+    copy = matrix.getMatrix();
+    copy[0][0] += 1000;
+    assertEquals(msg + ": copy modified", dense.getValue(0, 0), matrix.getValue(0, 0), TOLERANCE);
+
+    assertMatrixEquals(msg + ", serialized", dense, serialize(matrix));
+
+    clone = matrix.clone();
+    clone.scaleRows();
+    assertMatrixEquals(msg + ", original of scaled clone", dense, matrix);
+    dense.scaleRows();
+    assertMatrixEquals(msg + ", scaled clone", dense, clone);
+    assertMatrixEquals(msg + ", scaled and serialized", dense, serialize(clone));
+  }
+
+  /**
+   * Dense matrices serialized in the form of older versions (counts as
+   * field) must be readable, matrices of other representations always get
+   * serialized in compact form.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testLegacySerialization() throws Exception {
+    Attribute		classAtt;
+    List<Prediction>	preds;
+    ConfusionMatrix	dense;
+    ConfusionMatrix	sparse;
+    boolean		legacy;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    dense    = new ConfusionMatrix(preds, classAtt);
+    sparse   = ConfusionMatrix.newInstance(classAtt, null, preds, null, MatrixFootprint.REPRESENTATION_SPARSE);
+    legacy   = ConfusionMatrix.isLegacySerialization();
+    try {
+      ConfusionMatrix.setLegacySerialization(true);
+      assertMatrixEquals("Legacy, dense", dense, serialize(dense));
+      assertMatrixEquals("Legacy, sparse", dense, serialize(sparse));
+      ConfusionMatrix.setLegacySerialization(false);
+      assertMatrixEquals("Compact, dense", dense, serialize(dense));
+    }
+    finally {
+      ConfusionMatrix.setLegacySerialization(legacy);
+    }
+  }
+
+  /**
+   * Integer storage must agree with dense storage.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testInteger() throws Exception {
+    check(MatrixFootprint.REPRESENTATION_INTEGER, newPredictions(NUM_CLASSES, NUM_PREDICTIONS));
+  }
+
+  /**
+   * Integer storage must reject non-integral weights rather than truncate
+   * them, while create() must fall back to another representation.
+   */
+  public void testIntegerRejectsFractions() {
+    Attribute		classAtt;
+    List<Prediction>	preds;
+    ConfusionMatrix	matrix;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    try {
+      new IntegerConfusionMatrix(preds, classAtt);
+      fail("Non-integral weights accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    // no heap available: dense doesn't fit, integer must not get picked
+    matrix = ConfusionMatrix.create(preds, classAtt, new MatrixFootprint(NUM_CLASSES, NUM_PREDICTIONS, 0));
+    assertFalse("create() with non-integral weights", matrix instanceof IntegerConfusionMatrix);
+    if (matrix instanceof OffHeapConfusionMatrix)
+      ((OffHeapConfusionMatrix) matrix).close();
+  }
+
+  /**
+   * Integer storage must reject negative weights, as its minimum is always
+   * 0, while create() must fall back to another representation.
+   */
+  public void testIntegerRejectsNegative() {
+    Attribute		classAtt;
+    List<Prediction>	preds;
+    ConfusionMatrix	matrix;
+
+    classAtt = newClassAttribute(NUM_CLASSES);
+    preds    = newPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    preds.add(new WeightedPrediction(0, 1, -1000));
+    try {
+      new IntegerConfusionMatrix(preds, classAtt);
+      fail("Negative weights accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    matrix = ConfusionMatrix.create(preds, classAtt, new MatrixFootprint(NUM_CLASSES, NUM_PREDICTIONS, 0));
+    assertFalse("create() with negative weights", matrix instanceof IntegerConfusionMatrix);
+    assertTrue("Negative minimum", matrix.getMin() < 0);
+    if (matrix instanceof OffHeapConfusionMatrix)
+      ((OffHeapConfusionMatrix) matrix).close();
+  }
+
+  /**
+   * Sparse storage must agree with dense storage, also with non-integral
+   * weights.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testSparse() throws Exception {
+    check(MatrixFootprint.REPRESENTATION_SPARSE, newPredictions(NUM_CLASSES, NUM_PREDICTIONS));
+    check(MatrixFootprint.REPRESENTATION_SPARSE, newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS));
+  }
+
+  /**
+   * The representation must be dense if it fits, otherwise the smaller of
+   * integer (integral weights only) and sparse, otherwise off-heap.
+   */
+  public void testFootprint() {
+    MatrixFootprint	footprint;
+    long		integer;
+    long		dense;
+
+    // many predictions per cell: integer is smaller than sparse
+    footprint = new MatrixFootprint(100, 100000, 0);
+    dense     = footprint.getDenseBytes();
+    integer   = footprint.getIntegerBytes();
+    assertTrue("Integer smaller than dense", integer < dense);
+    assertTrue("Integer smaller than sparse", integer < footprint.getSparseBytes());
+
+    footprint = new MatrixFootprint(100, 100000, 2 * dense);
+    assertEquals("Dense fits", MatrixFootprint.REPRESENTATION_DENSE, footprint.getRepresentation(true));
+    footprint = new MatrixFootprint(100, 100000, 2 * integer);
+    assertEquals("Integer fits", MatrixFootprint.REPRESENTATION_INTEGER, footprint.getRepresentation(true));
+    assertEquals("Sparse doesn't fit", MatrixFootprint.REPRESENTATION_OFFHEAP, footprint.getRepresentation(false));
+
+    // few predictions: sparse is smallest
+    footprint = new MatrixFootprint(1000, 100, 0);
+    footprint = new MatrixFootprint(1000, 100, 2 * footprint.getSparseBytes());
+    assertEquals("Sparse fits", MatrixFootprint.REPRESENTATION_SPARSE, footprint.getRepresentation(true));
+    assertEquals("Sparse fits", MatrixFootprint.REPRESENTATION_SPARSE, footprint.getRepresentation(false));
+
+    footprint = new MatrixFootprint(1000, 100, 1);
+    assertEquals("Nothing fits", MatrixFootprint.REPRESENTATION_OFFHEAP, footprint.getRepresentation(true));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatrixRepresentationTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
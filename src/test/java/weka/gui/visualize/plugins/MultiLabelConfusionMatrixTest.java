@@ -0,0 +1,283 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MultiLabelConfusionMatrixTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Tests the counts of {@link MultiLabelConfusionMatrix} against counts
+ * determined label by label.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MultiLabelConfusionMatrixTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of labels. */
+  public final static int NUM_LABELS = 6;
+
+  /** the number of instances. */
+  public final static int NUM_INSTANCES = 1000;
+
+  /** the number of labels for the sparse test. */
+  public final static int NUM_LABELS_SPARSE = 1000;
+
+  /** the number of instances for the sparse test. */
+  public final static int NUM_INSTANCES_SPARSE = 200;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public MultiLabelConfusionMatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the label names.
+   *
+   * @param numLabels	the number of labels
+   * @return		the names
+   */
+  protected static String[] newLabels(int numLabels) {
+    String[]	result;
+    int		i;
+
+    result = new String[numLabels];
+    for (i = 0; i < numLabels; i++)
+      result[i] = "l" + i;
+
+    return result;
+  }
+
+  /**
+   * Counts per label and label pair must match the counts determined for
+   * each instance separately.
+   */
+  public void testCounts() {
+    MultiLabelConfusionMatrix	matrix;
+    ConfusionMatrix		binary;
+    Random			rnd;
+    boolean[]			actual;
+    boolean[]			predicted;
+    double[][]			counts;
+    double[][]			coErrors;
+    double			weight;
+    double			total;
+    int				i;
+    int				n;
+    int				m;
+
+    matrix    = new MultiLabelConfusionMatrix(newLabels(NUM_LABELS));
+    rnd       = new Random(AbstractPerformanceTest.SEED);
+    actual    = new boolean[NUM_LABELS];
+    predicted = new boolean[NUM_LABELS];
+    counts    = new double[NUM_LABELS][4];  // TN, FP, FN, TP
+    coErrors  = new double[NUM_LABELS][NUM_LABELS];
+    total     = 0;
+    for (i = 0; i < NUM_INSTANCES; i++) {
+      weight = 0.5 + rnd.nextInt(4);
+      for (n = 0; n < NUM_LABELS; n++) {
+	actual[n]    = rnd.nextBoolean();
+	predicted[n] = (rnd.nextDouble() < 0.7) ? actual[n] : !actual[n];
+	counts[n][(actual[n] ? 2 : 0) + (predicted[n] ? 1 : 0)] += weight;
+      }
+      for (n = 0; n < NUM_LABELS; n++) {
+	for (m = 0; m < NUM_LABELS; m++) {
+	  if ((actual[n] != predicted[n]) && (actual[m] != predicted[m]))
+	    coErrors[n][m] += weight;
+	}
+      }
+      total += weight;
+      matrix.add(actual, predicted, weight);
+    }
+
+    assertEquals("Total", total, matrix.getTotal(), TOLERANCE);
+    for (n = 0; n < NUM_LABELS; n++) {
+      assertEquals("TN " + n, counts[n][0], matrix.getTrueNegatives(n), TOLERANCE);
+      assertEquals("FP " + n, counts[n][1], matrix.getFalsePositives(n), TOLERANCE);
+      assertEquals("FN " + n, counts[n][2], matrix.getFalseNegatives(n), TOLERANCE);
+      assertEquals("TP " + n, counts[n][3], matrix.getTruePositives(n), TOLERANCE);
+      assertEquals("Incorrect " + n, counts[n][1] + counts[n][2], matrix.getIncorrect(n), TOLERANCE);
+      binary = matrix.getMatrix(n);
+      for (m = 0; m < 4; m++)
+	assertEquals("Matrix " + n + ", cell " + m, counts[n][m], binary.getValue(m / 2, m % 2), TOLERANCE);
+      for (m = 0; m < NUM_LABELS; m++) {
+	assertEquals("Co-errors " + n + "/" + m, coErrors[n][m], matrix.getCoErrors(n, m), TOLERANCE);
+	assertEquals("Co-error matrix " + n + "/" + m, coErrors[n][m], matrix.getCoErrorMatrix().getValue(n, m), TOLERANCE);
+      }
+    }
+  }
+
+  /**
+   * Building from a dataset must skip instances with missing values and
+   * use the instance weights.
+   */
+  public void testDataset() {
+    ArrayList<Attribute>	atts;
+    List<String>		values;
+    Instances			data;
+    MultiLabelConfusionMatrix	matrix;
+    DenseInstance		inst;
+
+    values = new ArrayList<String>();
+    values.add("no");
+    values.add("yes");
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("a", values));
+    atts.add(new Attribute("b"));
+    atts.add(new Attribute("a-pred", values));
+    atts.add(new Attribute("b-pred"));
+    data = new Instances("multi", atts, 0);
+    data.add(new DenseInstance(1.0, new double[]{1, 1, 1, 0}));
+    data.add(new DenseInstance(2.0, new double[]{0, 1, 1, 1}));
+    data.add(new DenseInstance(1.0, new double[]{0, 0, 0, 0}));
+    inst = new DenseInstance(5.0, new double[]{1, 0, Utils.missingValue(), 0});
+    data.add(inst);
+
+    matrix = new MultiLabelConfusionMatrix(data, new int[]{0, 1}, new int[]{2, 3});
+    assertEquals("Labels", 2, matrix.getNumLabels());
+    assertEquals("Label a", "a", matrix.getLabels()[0]);
+    assertEquals("Total", 4.0, matrix.getTotal(), TOLERANCE);
+    assertEquals("TP a", 1.0, matrix.getTruePositives(0), TOLERANCE);
+    assertEquals("FP a", 2.0, matrix.getFalsePositives(0), TOLERANCE);
+    assertEquals("TN a", 1.0, matrix.getTrueNegatives(0), TOLERANCE);
+    assertEquals("TP b", 2.0, matrix.getTruePositives(1), TOLERANCE);
+    assertEquals("FN b", 1.0, matrix.getFalseNegatives(1), TOLERANCE);
+    assertEquals("TN b", 1.0, matrix.getTrueNegatives(1), TOLERANCE);
+    assertEquals("Co-errors a/b", 0.0, matrix.getCoErrors(0, 1), TOLERANCE);
+  }
+
+  /**
+   * The one-vs-rest matrices of a single-label matrix must equal adding
+   * each prediction as one-hot labels.
+   */
+  public void testOneVsRest() {
+    List<Prediction>		preds;
+    ConfusionMatrix		single;
+    MultiLabelConfusionMatrix	expected;
+    MultiLabelConfusionMatrix	actual;
+    boolean[]			act;
+    boolean[]			pred;
+    int				i;
+    int				n;
+
+    preds    = newPredictions(NUM_LABELS, NUM_INSTANCES);
+    single   = new ConfusionMatrix(preds, newClassAttribute(NUM_LABELS));
+    actual   = new MultiLabelConfusionMatrix(single);
+    expected = new MultiLabelConfusionMatrix(single.getLabels());
+    for (Prediction p: preds) {
+      act  = new boolean[NUM_LABELS];
+      pred = new boolean[NUM_LABELS];
+      act[(int) p.actual()]     = true;
+      pred[(int) p.predicted()] = true;
+      expected.add(act, pred, p.weight());
+    }
+
+    assertEquals("Total", expected.getTotal(), actual.getTotal(), TOLERANCE);
+    for (i = 0; i < NUM_LABELS; i++) {
+      assertEquals("TP " + i, expected.getTruePositives(i), actual.getTruePositives(i), TOLERANCE);
+      assertEquals("FP " + i, expected.getFalsePositives(i), actual.getFalsePositives(i), TOLERANCE);
+      assertEquals("FN " + i, expected.getFalseNegatives(i), actual.getFalseNegatives(i), TOLERANCE);
+      assertEquals("TN " + i, expected.getTrueNegatives(i), actual.getTrueNegatives(i), TOLERANCE);
+      for (n = 0; n < NUM_LABELS; n++) {
+	assertEquals("Co-errors " + i + "/" + n, expected.getCoErrors(i, n), actual.getCoErrors(i, n), TOLERANCE);
+	assertEquals("Co-error matrix " + i + "/" + n, expected.getCoErrors(i, n), actual.getCoErrorMatrix().getValue(i, n), TOLERANCE);
+      }
+    }
+    assertTrue("One-vs-rest", actual.isOneVsRest());
+    assertNull("Co-errors derived", actual.m_CoErrors);
+    try {
+      actual.add(new boolean[NUM_LABELS], new boolean[NUM_LABELS], 1.0);
+      fail("One-vs-rest matrices must not be updatable");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  /**
+   * The co-error matrix of a sparse single-label matrix with many class
+   * labels must be sparse as well, if dense storage doesn't fit.
+   */
+  public void testOneVsRestSparse() {
+    Attribute			classAtt;
+    List<Prediction>		preds;
+    ConfusionMatrix		single;
+    MultiLabelConfusionMatrix	multi;
+    ConfusionMatrix		coErrors;
+    long			maxNonZero;
+    long			heap;
+    int				i;
+    int				n;
+
+    classAtt = newClassAttribute(NUM_LABELS_SPARSE);
+    preds    = newPredictions(NUM_LABELS_SPARSE, NUM_INSTANCES_SPARSE);
+    single   = ConfusionMatrix.newInstance(classAtt, null, preds, null, MatrixFootprint.REPRESENTATION_SPARSE);
+    multi    = new MultiLabelConfusionMatrix(single);
+
+    // enough heap for sparse, but not for dense storage
+    maxNonZero = 2 * NUM_INSTANCES_SPARSE + NUM_LABELS_SPARSE;
+    heap       = 2 * new MatrixFootprint(NUM_LABELS_SPARSE, maxNonZero, 0).getSparseBytes();
+    assertFalse("Dense doesn't fit", new MatrixFootprint(NUM_LABELS_SPARSE, 0, heap).fits(MatrixFootprint.REPRESENTATION_DENSE));
+
+    coErrors = multi.getCoErrorMatrix(heap);
+    assertTrue("Sparse co-errors", coErrors instanceof SparseConfusionMatrix);
+    assertTrue("Bounded by non-zero cells", ((SparseConfusionMatrix) coErrors).getNumNonZero() <= maxNonZero);
+    for (i = 0; i < NUM_LABELS_SPARSE; i++) {
+      assertEquals("Diagonal " + i, multi.getIncorrect(i), coErrors.getValue(i, i), TOLERANCE);
+      for (n = 0; n < NUM_LABELS_SPARSE; n++) {
+	if (i != n)
+	  assertEquals("Co-errors " + i + "/" + n, single.getValue(i, n) + single.getValue(n, i), coErrors.getValue(i, n), TOLERANCE);
+      }
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MultiLabelConfusionMatrixTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
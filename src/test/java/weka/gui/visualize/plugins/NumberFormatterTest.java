@@ -0,0 +1,268 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * NumberFormatterTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Utils;
+
+/**
+ * Tests that the {@link NumberFormatter} produces the same output as
+ * {@link Utils#doubleToString(double, int)},
+ * {@link Utils#doubleToString(double, int, int)} and
+ * {@link Double#toString(double)}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class NumberFormatterTest
+  extends TestCase {
+
+  /** the number of random values to compare. */
+  public final static int NUM_VALUES = 5000;
+
+  /** the maximum number of decimals to compare (beyond the direct handling). */
+  public final static int MAX_DECIMALS = NumberFormatter.MAX_DECIMALS + 2;
+
+  /** the widths to compare. */
+  public final static int[] WIDTHS = {0, 1, 3, 6, 8, 12, 20};
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public NumberFormatterTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Formats the value with the maximum number of decimals.
+   *
+   * @param formatter	the formatter to use
+   * @param value	the value
+   * @param afterDecimalPoint	the number of decimals
+   * @return		the formatted value
+   * @throws Exception	if formatting fails
+   */
+  protected static String format(NumberFormatter formatter, double value, int afterDecimalPoint) throws Exception {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    formatter.append(result, value, afterDecimalPoint);
+
+    return result.toString();
+  }
+
+  /**
+   * Formats the value with the width and number of decimals.
+   *
+   * @param formatter	the formatter to use
+   * @param value	the value
+   * @param width	the width
+   * @param afterDecimalPoint	the number of decimals
+   * @return		the formatted value
+   * @throws Exception	if formatting fails
+   */
+  protected static String format(NumberFormatter formatter, double value, int width, int afterDecimalPoint) throws Exception {
+    StringWriter	result;
+
+    result = new StringWriter();
+    formatter.append(result, value, width, afterDecimalPoint);
+
+    return result.toString();
+  }
+
+  /**
+   * Compares the output of the formatter for the value with the one of
+   * Weka and the JDK.
+   *
+   * @param formatter	the formatter to use
+   * @param value	the value
+   * @throws Exception	if formatting fails
+   */
+  protected static void assertFormat(NumberFormatter formatter, double value) throws Exception {
+    int		decimals;
+
+    for (decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+      assertEquals(value + "/" + decimals, Utils.doubleToString(value, decimals), format(formatter, value, decimals));
+      for (int width: WIDTHS)
+	assertEquals(value + "/" + width + "/" + decimals, Utils.doubleToString(value, width, decimals), format(formatter, value, width, decimals));
+    }
+    assertEquals("Plain " + value, Double.toString(value), formatter.toPlainString(value));
+  }
+
+  /**
+   * Compares random values of various magnitudes, with and without
+   * fraction, positive and negative.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testSweep() throws Exception {
+    NumberFormatter	formatter;
+    Random		rnd;
+    double		value;
+    int			i;
+
+    formatter = new NumberFormatter();
+    rnd       = new Random(AbstractPerformanceTest.SEED);
+    for (i = 0; i < NUM_VALUES; i++) {
+      value = rnd.nextDouble() * Math.pow(10, rnd.nextInt(16) - 4);
+      if (i % 3 == 0)
+	value = Math.rint(value);
+      if (i % 2 == 0)
+	value = -value;
+      assertFormat(formatter, value);
+    }
+  }
+
+  /**
+   * Values close to or exactly on a rounding boundary must be left to Weka,
+   * which rounds the exact binary value.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testRoundingBoundary() throws Exception {
+    NumberFormatter	formatter;
+    double[]		values;
+
+    formatter = new NumberFormatter();
+    // exactly representable halves and ones just below/above them
+    values    = new double[]{0.5, 2.5, 0.125, 0.375, 1.005, 2.675, 1.115, 0.045, -0.125, -2.675};
+    for (double value: values)
+      assertFormat(formatter, value);
+    assertFalse("0.125/2 handled directly", formatter.format(0.125, 2));
+    assertFalse("1.005/2 handled directly", formatter.format(1.005, 2));
+    assertFalse("-2.675/2 handled directly", formatter.format(-2.675, 2));
+    assertTrue("0.126/2 not handled directly", formatter.format(0.126, 2));
+  }
+
+  /**
+   * Trailing zeros (and a trailing decimal point) must get removed.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testTrailingZeros() throws Exception {
+    NumberFormatter	formatter;
+
+    formatter = new NumberFormatter();
+    assertEquals("1.5", format(formatter, 1.5, 3));
+    assertEquals("2", format(formatter, 2.0, 3));
+    assertEquals("100", format(formatter, 100.0, 2));
+    assertEquals("0.1", format(formatter, 0.1000001, 3));
+    assertEquals("1", format(formatter, 0.9999, 2));
+    assertEquals("10", format(formatter, 9.9999, 3));
+    assertEquals("  1.5 ", format(formatter, 1.5, 6, 2));
+    assertEquals("  2   ", format(formatter, 2.0, 6, 2));
+    assertFormat(formatter, 1.5);
+    assertFormat(formatter, 100.0);
+    assertFormat(formatter, 0.1000001);
+    assertFormat(formatter, 9.9999);
+  }
+
+  /**
+   * Negative values, negative values that round to zero and negative zero
+   * must keep the sign like Weka does.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testNegative() throws Exception {
+    NumberFormatter	formatter;
+
+    formatter = new NumberFormatter();
+    assertEquals("-1.23", format(formatter, -1.2345, 2));
+    assertEquals("-0.5", format(formatter, -0.5, 2));
+    assertEquals("-0", format(formatter, -0.0, 2));
+    assertEquals("-0", format(formatter, -0.001, 2));
+    assertEquals("-0.0", formatter.toPlainString(-0.0));
+    assertEquals("0.0", formatter.toPlainString(0.0));
+    assertFormat(formatter, -1.2345);
+    assertFormat(formatter, -0.5);
+    assertFormat(formatter, -0.0);
+    assertFormat(formatter, 0.0);
+    assertFormat(formatter, -0.001);
+    assertFormat(formatter, -123456.0);
+  }
+
+  /**
+   * Double.toString switches to the exponent notation at 1.0E7, the
+   * formatter must do the same.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testMaxPlain() throws Exception {
+    NumberFormatter	formatter;
+
+    formatter = new NumberFormatter();
+    assertEquals("9999999.0", formatter.toPlainString(NumberFormatter.MAX_PLAIN - 1));
+    assertEquals("1.0E7", formatter.toPlainString(NumberFormatter.MAX_PLAIN));
+    assertEquals("-1.0E7", formatter.toPlainString(-NumberFormatter.MAX_PLAIN));
+    assertEquals("1.5", formatter.toPlainString(1.5));
+    assertFormat(formatter, NumberFormatter.MAX_PLAIN - 1);
+    assertFormat(formatter, NumberFormatter.MAX_PLAIN);
+    assertFormat(formatter, -NumberFormatter.MAX_PLAIN);
+    assertFormat(formatter, NumberFormatter.MAX_INTEGRAL);
+    assertFormat(formatter, Double.NaN);
+    assertFormat(formatter, Double.POSITIVE_INFINITY);
+    assertFormat(formatter, Double.NEGATIVE_INFINITY);
+  }
+
+  /**
+   * Values that don't fit into the width must be output without
+   * alignment, like Weka does.
+   *
+   * @throws Exception	if formatting fails
+   */
+  public void testWidthOverflow() throws Exception {
+    NumberFormatter	formatter;
+
+    formatter = new NumberFormatter();
+    assertEquals("123456.79", format(formatter, 123456.789, 5, 2));
+    assertEquals("12", format(formatter, 12.0, 2, 2));
+    assertEquals("  12", format(formatter, 12.0, 4, 0));
+    assertEquals(Utils.doubleToString(123456.789, 5, 2), format(formatter, 123456.789, 5, 2));
+    assertEquals(Utils.doubleToString(12.0, 2, 2), format(formatter, 12.0, 2, 2));
+    assertEquals(Utils.doubleToString(-12.5, 4, 1), format(formatter, -12.5, 4, 1));
+    assertEquals(Utils.doubleToString(1.5, 40, 2), format(formatter, 1.5, 40, 2));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(NumberFormatterTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ObservableConfusionMatrixTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests the dirty-cell tracking of {@link ObservableConfusionMatrix} and the
+ * rescale threshold that the live heatmap uses
+ * ({@link HeatmapRenderer#requiresRescale(double, double, double)}).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ObservableConfusionMatrixTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 20;
+
+  /** the number of threads adding concurrently. */
+  public final static int NUM_THREADS = 4;
+
+  /** the number of additions per thread. */
+  public final static int NUM_ADDS = 20000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public ObservableConfusionMatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * The modified cells must accumulate into one column range per row until
+   * drained.
+   */
+  public void testDirtyRegion() {
+    ObservableConfusionMatrix			matrix;
+    ObservableConfusionMatrix.DirtyRegion	dirty;
+
+    matrix = new ObservableConfusionMatrix(newPredictions(NUM_CLASSES, 100), newClassAttribute(NUM_CLASSES));
+    assertFalse("Clean after construction", matrix.isDirty());
+    assertNull("Nothing to drain", matrix.drainDirty());
+
+    matrix.add(2, 5, 1.0);
+    matrix.add(2, 1, 1.0);
+    matrix.add(4, 3, 1.0);
+    matrix.setValue(2, 3, 7.0);
+    assertTrue("Dirty", matrix.isDirty());
+
+    dirty = matrix.drainDirty();
+    assertNotNull("Dirty region", dirty);
+    assertEquals("Rows", 2, dirty.rows.length);
+    assertEquals("Row 0", 2, dirty.rows[0]);
+    assertEquals("From 0", 1, dirty.fromCols[0]);
+    assertEquals("To 0", 5, dirty.toCols[0]);
+    assertEquals("Row 1", 4, dirty.rows[1]);
+    assertEquals("From 1", 3, dirty.fromCols[1]);
+    assertEquals("To 1", 3, dirty.toCols[1]);
+    assertFalse("Clean after draining", matrix.isDirty());
+    assertNull("Nothing left to drain", matrix.drainDirty());
+    assertEquals("Value", 7.0, matrix.getValue(2, 3), TOLERANCE);
+  }
+
+  /**
+   * Listeners must only get notified when the matrix turns dirty.
+   */
+  public void testNotification() {
+    ObservableConfusionMatrix	matrix;
+    final AtomicInteger		count;
+
+    matrix = new ObservableConfusionMatrix(newClassAttribute(NUM_CLASSES));
+    count  = new AtomicInteger();
+    matrix.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	count.incrementAndGet();
+      }
+    });
+
+    matrix.add(0, 0, 1.0);
+    matrix.add(1, 2, 1.0);
+    assertEquals("Once while dirty", 1, count.get());
+    matrix.drainDirty();
+    matrix.add(3, 3, 1.0);
+    assertEquals("Again after draining", 2, count.get());
+  }
+
+  /**
+   * Additions from other threads while draining must neither get lost in
+   * the counts nor in the dirty regions.
+   *
+   * @throws Exception	if the threads fail
+   */
+  public void testConcurrentDrain() throws Exception {
+    final ObservableConfusionMatrix		matrix;
+    final CountDownLatch			start;
+    final AtomicInteger				running;
+    final boolean[][]				added;
+    boolean[][]					drained;
+    ObservableConfusionMatrix.DirtyRegion	dirty;
+    Thread[]					threads;
+    boolean					finished;
+    int						i;
+    int						n;
+    int						k;
+
+    matrix  = new ObservableConfusionMatrix(newClassAttribute(NUM_CLASSES));
+    start   = new CountDownLatch(1);
+    running = new AtomicInteger(NUM_THREADS);
+    added   = new boolean[NUM_CLASSES][NUM_CLASSES];
+    threads = new Thread[NUM_THREADS];
+    for (i = 0; i < NUM_THREADS; i++) {
+      final int offset = i;
+      threads[i] = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  int	j;
+	  int	actual;
+	  int	predicted;
+	  try {
+	    start.await();
+	    for (j = 0; j < NUM_ADDS; j++) {
+	      actual    = (j + offset) % NUM_CLASSES;
+	      predicted = (j * 7 + offset) % NUM_CLASSES;
+	      matrix.add(actual, predicted, 1.0);
+	    }
+	  }
+	  catch (InterruptedException e) {
+	    // ignored
+	  }
+	  finally {
+	    running.decrementAndGet();
+	  }
+	}
+      });
+      threads[i].start();
+    }
+    for (i = 0; i < NUM_THREADS; i++) {
+      for (n = 0; n < NUM_ADDS; n++)
+	added[(n + i) % NUM_CLASSES][(n * 7 + i) % NUM_CLASSES] = true;
+    }
+
+    drained = new boolean[NUM_CLASSES][NUM_CLASSES];
+    start.countDown();
+    while (true) {
+      // drain at least once after all threads have finished
+      finished = (running.get() == 0);
+      dirty = matrix.drainDirty();
+      if (dirty != null) {
+	for (k = 0; k < dirty.rows.length; k++) {
+	  for (n = dirty.fromCols[k]; n <= dirty.toCols[k]; n++)
+	    drained[dirty.rows[k]][n] = true;
+	}
+      }
+      if (finished)
+	break;
+    }
+    for (i = 0; i < NUM_THREADS; i++)
+      threads[i].join();
+
+    assertEquals("Total", (double) NUM_THREADS * NUM_ADDS, matrix.getTotal(), TOLERANCE);
+    assertFalse("Clean", matrix.isDirty());
+    for (i = 0; i < NUM_CLASSES; i++) {
+      for (n = 0; n < NUM_CLASSES; n++) {
+	if (added[i][n])
+	  assertTrue("Cell " + i + "/" + n + " drained", drained[i][n]);
+      }
+    }
+  }
+
+  /**
+   * Reading rows while another thread updates and rescales them must never
+   * return a partially rescaled row, i.e., the row sum is always 0, 1 (after
+   * scaling) or 2 (after adding another 1 to the scaled row).
+   *
+   * @throws Exception	if the thread fails
+   */
+  public void testConcurrentRead() throws Exception {
+    final ObservableConfusionMatrix	matrix;
+    final AtomicInteger			running;
+    Thread				thread;
+    double[]				row;
+    double[]				values;
+    int[]				columns;
+    boolean				finished;
+    double				sum;
+    int					count;
+    int					n;
+
+    matrix  = new ObservableConfusionMatrix(newClassAttribute(NUM_CLASSES));
+    running = new AtomicInteger(1);
+    thread  = new Thread(new Runnable() {
+      @Override
+      public void run() {
+	int	j;
+	try {
+	  for (j = 0; j < NUM_ADDS; j++) {
+	    matrix.add(0, j % NUM_CLASSES, 1.0);
+	    matrix.scaleRows();
+	  }
+	}
+	finally {
+	  running.decrementAndGet();
+	}
+      }
+    });
+    thread.start();
+
+    row     = new double[NUM_CLASSES];
+    values  = new double[NUM_CLASSES];
+    columns = new int[NUM_CLASSES];
+    while (true) {
+      finished = (running.get() == 0);
+      matrix.getRow(0, row);
+      sum = 0;
+      for (n = 0; n < NUM_CLASSES; n++)
+	sum += row[n];
+      assertEquals("Row sum", Math.rint(sum), sum, 1e-6);
+      count = matrix.getNonZero(0, columns, values);
+      sum   = 0;
+      for (n = 0; n < count; n++)
+	sum += values[n];
+      assertEquals("Non-zero sum", Math.rint(sum), sum, 1e-6);
+      if (finished)
+	break;
+    }
+    thread.join();
+
+    assertEquals("Scaled", 1.0, matrix.getTotal(0), 1e-6);
+  }
+
+  /**
+   * The color scale must only be considered outdated once minimum or
+   * maximum move further than the threshold (in bins).
+   */
+  public void testRescaleThreshold() {
+    ObservableConfusionMatrix	matrix;
+    HeatmapRenderer		renderer;
+    double			binWidth;
+
+    matrix = new ObservableConfusionMatrix(newClassAttribute(NUM_CLASSES));
+    matrix.setValue(0, 0, 1000.0);
+    renderer = new HeatmapRenderer(matrix);
+    renderer.initScale();
+    binWidth = renderer.getBinWidth();
+    assertTrue("Bin width", binWidth > 0);
+    assertFalse("Unchanged", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 1.0));
+
+    matrix.add(0, 0, binWidth / 2);
+    assertFalse("Within threshold", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 1.0));
+    assertTrue("Beyond zero threshold", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 0.0));
+
+    matrix.add(1, 1, 1000.0 + 2 * binWidth);
+    assertTrue("Beyond threshold", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 1.0));
+    assertFalse("Within larger threshold", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 3.0));
+
+    renderer.initScale();
+    assertFalse("After rescaling", renderer.requiresRescale(matrix.getMin(), matrix.getMax(), 1.0));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ObservableConfusionMatrixTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * OffHeapConfusionMatrixTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Attribute;
+
+/**
+ * Tests that {@link OffHeapConfusionMatrix} agrees with the dense matrix,
+ * shares its storage with clones until either gets modified and releases
+ * temporary files when closed (also when discarded by a visualization).
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OffHeapConfusionMatrixTest
+  extends AbstractConfusionMatrixTest {
+
+  /** the number of class labels. */
+  public final static int NUM_CLASSES = 25;
+
+  /** the number of predictions. */
+  public final static int NUM_PREDICTIONS = 3000;
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public OffHeapConfusionMatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Compares the matrix with the dense one, also after cloning, scaling
+   * and serializing. Closes the matrix afterwards.
+   *
+   * @param msg		the message prefix
+   * @param preds	the predictions
+   * @param classAtt	the class attribute
+   * @param matrix	the matrix to check
+   * @throws Exception	if serialization fails
+   */
+  protected void check(String msg, List<Prediction> preds, Attribute classAtt, OffHeapConfusionMatrix matrix) throws Exception {
+    ConfusionMatrix		dense;
+    OffHeapConfusionMatrix	clone;
+    OffHeapConfusionMatrix	serialized;
+
+    dense = new ConfusionMatrix(preds, classAtt);
+    assertMatrixEquals(msg, dense, matrix);
+
+    serialized = (OffHeapConfusionMatrix) serialize(matrix);
+    assertMatrixEquals(msg + ", serialized", dense, serialized);
+    serialized.close();
+
+    clone = (OffHeapConfusionMatrix) matrix.clone();
+    clone.scaleRows();
+    assertTrue(msg + ": clone scaled", clone.isScaled());
+    assertFalse(msg + ": original not scaled", matrix.isScaled());
+    assertMatrixEquals(msg + ", original of scaled clone", dense, matrix);
+    dense.scaleRows();
+    assertMatrixEquals(msg + ", scaled clone", dense, clone);
+    serialized = (OffHeapConfusionMatrix) serialize(clone);
+    assertMatrixEquals(msg + ", scaled and serialized", dense, serialized);
+    serialized.close();
+
+    clone.close();
+    matrix.close();
+  }
+
+  /**
+   * Direct buffers must agree with dense storage.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testDirect() throws Exception {
+    List<Prediction>		preds;
+    Attribute			classAtt;
+    OffHeapConfusionMatrix	matrix;
+
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    matrix   = new OffHeapConfusionMatrix(preds, classAtt);
+    assertFalse("Not mapped", matrix.isMapped());
+    check("Direct", preds, classAtt, matrix);
+  }
+
+  /**
+   * A temporary file must agree with dense storage and get deleted once
+   * the matrix and all its clones are closed.
+   *
+   * @throws Exception	if serialization fails
+   */
+  public void testTemporary() throws Exception {
+    List<Prediction>		preds;
+    Attribute			classAtt;
+    OffHeapConfusionMatrix	matrix;
+    OffHeapConfusionMatrix	clone;
+    File			file;
+
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    matrix   = OffHeapConfusionMatrix.newTemporary(preds, classAtt, null, null);
+    assertTrue("Mapped", matrix.isMapped());
+    file  = matrix.getFile();
+    clone = (OffHeapConfusionMatrix) matrix.clone();
+    check("Temporary", preds, classAtt, matrix);
+    assertTrue("File in use by clone", file.exists());
+    clone.close();
+    assertFalse("File deleted", file.exists());
+  }
+
+  /**
+   * Modifying a clone must copy the storage and leave the original
+   * untouched; the copy of a temporary file gets deleted when closed.
+   */
+  public void testCopyOnWrite() {
+    ConfusionMatrix		dense;
+    OffHeapConfusionMatrix	matrix;
+    OffHeapConfusionMatrix	clone;
+    File			copy;
+
+    dense  = new ConfusionMatrix(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES));
+    matrix = OffHeapConfusionMatrix.newTemporary(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES), null, null);
+    clone  = (OffHeapConfusionMatrix) matrix.clone();
+    assertEquals("Shared file", matrix.getFile(), clone.getFile());
+
+    clone.add(0, 1, 100);
+    clone.invalidate();
+    copy = clone.getFile();
+    assertFalse("Copied file", matrix.getFile().equals(copy));
+    assertEquals("Clone modified", dense.getValue(0, 1) + 100, clone.getValue(0, 1), TOLERANCE);
+    assertMatrixEquals("Original", dense, matrix);
+
+    clone.close();
+    assertFalse("Copy deleted", copy.exists());
+    matrix.close();
+  }
+
+  /**
+   * Discarding the precomputations of a visualization (e.g., when the build
+   * got cancelled) must release the derived matrix, so that the temporary
+   * file gets deleted once the original is closed as well. The
+   * precomputations of other displays of the same visualization must not
+   * be affected.
+   */
+  public void testDiscardPrecomputed() {
+    OffHeapConfusionMatrix		matrix;
+    HeatmapVisualization		visualization;
+    HeatmapVisualization.Prepared	first;
+    HeatmapVisualization.Prepared	second;
+    ConfusionMatrix			expected;
+    File				file;
+
+    matrix = OffHeapConfusionMatrix.newTemporary(newPredictions(NUM_CLASSES, NUM_PREDICTIONS), newClassAttribute(NUM_CLASSES), null, null);
+    file   = matrix.getFile();
+    visualization = new HeatmapVisualizationScaled();
+    expected      = visualization.prepare(matrix);
+    first         = (HeatmapVisualization.Prepared) visualization.precompute(matrix);
+    second        = (HeatmapVisualization.Prepared) visualization.precompute(matrix);
+    assertNotSame("Derived", matrix, first.getMatrix());
+    assertNotSame("Separate", first.getMatrix(), second.getMatrix());
+    visualization.discard(first);
+    assertMatrixEquals("Other display", expected, second.getMatrix());
+    visualization.discard(second);
+    ConfusionMatrix.release(expected);
+    assertTrue("File still in use by original", file.exists());
+    matrix.close();
+    assertFalse("File deleted", file.exists());
+  }
+
+  /**
+   * A user-supplied file must be readable via {@link ConfusionMatrixFile}
+   * after flushing and must not get deleted when closed.
+   *
+   * @throws Exception	if file access fails
+   */
+  public void testFile() throws Exception {
+    List<Prediction>		preds;
+    Attribute			classAtt;
+    OffHeapConfusionMatrix	matrix;
+    MappedConfusionMatrix	mapped;
+    File			file;
+
+    preds    = newWeightedPredictions(NUM_CLASSES, NUM_PREDICTIONS);
+    classAtt = newClassAttribute(NUM_CLASSES);
+    file     = File.createTempFile("offheap", ConfusionMatrixFile.EXTENSION);
+    try {
+      matrix = new OffHeapConfusionMatrix(preds, classAtt, file);
+      assertEquals("File", file, matrix.getFile());
+      matrix.flush();
+      mapped = ConfusionMatrixFile.map(file);
+      assertMatrixEquals("Mapped", new ConfusionMatrix(preds, classAtt), mapped);
+      check("File", preds, classAtt, matrix);
+      assertTrue("File kept", file.exists());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(OffHeapConfusionMatrixTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * VisualizationRegistryTest.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+package weka.gui.visualize.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests reading provider-configuration files and that the
+ * {@link VisualizationRegistry} only instantiates the providers listed in
+ * them when requested.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class VisualizationRegistryTest
+  extends TestCase {
+
+  /**
+   * Visualization that counts its instances.
+   *
+   * @author  fracpete (fracpete at waikato dot ac dot nz)
+   * @version $Revision$
+   */
+  public static class CountingVisualization
+    extends TextVisualization {
+
+    /** for serialization. */
+    private static final long serialVersionUID = -1487251618932006734L;
+
+    /** the number of instances created so far. */
+    public static int m_NumInstances;
+
+    /**
+     * Counts the instance.
+     */
+    public CountingVisualization() {
+      super();
+      m_NumInstances++;
+    }
+  }
+
+  /**
+   * Constructs the test.
+   *
+   * @param name	the name of the test
+   */
+  public VisualizationRegistryTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Writes the content to the file, UTF-8 encoded.
+   *
+   * @param file	the file to write to
+   * @param content	the content to write
+   * @throws Exception	if writing fails
+   */
+  protected static void write(File file, String content) throws Exception {
+    Writer	writer;
+
+    file.getParentFile().mkdirs();
+    writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(content);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Deletes the file or directory (incl. content).
+   *
+   * @param file	the file to delete
+   */
+  protected static void delete(File file) {
+    File[]	files;
+
+    files = file.listFiles();
+    if (files != null) {
+      for (File f: files)
+	delete(f);
+    }
+    file.delete();
+  }
+
+  /**
+   * Comments, blank lines and surrounding whitespace must get skipped.
+   *
+   * @throws Exception	if file access fails
+   */
+  public void testServiceFile() throws Exception {
+    File		file;
+    List<String>	classnames;
+
+    file = File.createTempFile("services", ".txt");
+    try {
+      write(file, "# visualizations\n  a.B  # trailing comment\n\n\tc.D\n");
+      classnames = VisualizationRegistry.readServiceFile(file.toURI().toURL());
+      assertEquals("Number of classnames", 2, classnames.size());
+      assertEquals("First", "a.B", classnames.get(0));
+      assertEquals("Second", "c.D", classnames.get(1));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Discovery must list the providers without instantiating them, they
+   * only get instantiated (via the class loader that found the file) when
+   * requested.
+   *
+   * @throws Exception	if file access or instantiation fails
+   */
+  public void testLazyInstantiation() throws Exception {
+    File			dir;
+    ClassLoader			context;
+    URLClassLoader		loader;
+    String			classname;
+    int				numInstances;
+
+    classname = CountingVisualization.class.getName();
+    dir       = File.createTempFile("services", "");
+    dir.delete();
+    context   = Thread.currentThread().getContextClassLoader();
+    try {
+      write(new File(dir, VisualizationRegistry.SERVICE_FILE), classname + "\n");
+      loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+      Thread.currentThread().setContextClassLoader(loader);
+      VisualizationRegistry.refresh();
+
+      numInstances = CountingVisualization.m_NumInstances;
+      assertTrue("Discovered", VisualizationRegistry.getClassnames().contains(classname));
+      assertEquals("Not instantiated during discovery", numInstances, CountingVisualization.m_NumInstances);
+      assertSame("Class loader of file", loader, VisualizationRegistry.m_Loaders.get(classname));
+
+      assertTrue("Instance", VisualizationRegistry.newInstance(classname) instanceof CountingVisualization);
+      assertEquals("Instantiated on request", numInstances + 1, CountingVisualization.m_NumInstances);
+    }
+    finally {
+      Thread.currentThread().setContextClassLoader(context);
+      VisualizationRegistry.refresh();
+      delete(dir);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(VisualizationRegistryTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}